@@ -0,0 +1,124 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for Android code running in a Robolectric sandbox; see {@link AndroidOperations}.
+ *
+ * <p>Each invocation runs a batch of operations, so the cost of handing the batch to the sandbox's
+ * main thread is spread across it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AndroidBenchmark {
+  private static final int SMALL_BATCH = 1000;
+  private static final int LARGE_BATCH = 10;
+
+  private SandboxedOperations operations;
+
+  @Setup
+  public void setUp() throws Exception {
+    operations = SandboxedOperations.start();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    operations.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void parcel() {
+    operations.run("parcel", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void compactParcel() {
+    operations.run("compactParcel", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LARGE_BATCH)
+  public void largeParcel() {
+    operations.run("largeParcel", LARGE_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LARGE_BATCH)
+  public void compactLargeParcel() {
+    operations.run("compactLargeParcel", LARGE_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void queryIntentActivities() {
+    operations.run("queryIntentActivities", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void resolveDeepLink() {
+    operations.run("resolveDeepLink", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void getResource() {
+    operations.run("getResource", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void getBag() {
+    operations.run("getBag", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void shadowedCall() {
+    operations.run("shadowedCall", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void instrumentedCall() {
+    operations.run("instrumentedCall", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SMALL_BATCH)
+  public void idleFor() {
+    operations.run("idleFor", SMALL_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LARGE_BATCH)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void idleForHourWithFrames() {
+    operations.run("idleForHourWithFrames", LARGE_BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LARGE_BATCH)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void activitySetup() {
+    operations.run("activitySetup", LARGE_BATCH);
+  }
+}
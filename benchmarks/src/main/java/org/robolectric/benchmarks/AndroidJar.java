@@ -0,0 +1,64 @@
+package org.robolectric.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.robolectric.util.Util;
+
+/** Reads classes from the android-all jar on the benchmark classpath. */
+public final class AndroidJar {
+
+  private AndroidJar() {}
+
+  /**
+   * Returns the internal names of the top-level and nested classes in the given package (e.g.
+   * {@code android/widget/}), excluding subpackages.
+   */
+  public static List<String> classNames(String internalPackageName) {
+    URL url = classUrl("android/view/View");
+    List<String> names = new ArrayList<>();
+    try {
+      JarURLConnection connection = (JarURLConnection) url.openConnection();
+      connection.setUseCaches(false);
+      try (JarFile jarFile = connection.getJarFile()) {
+        for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ) {
+          String name = entries.nextElement().getName();
+          if (name.startsWith(internalPackageName)
+              && name.endsWith(".class")
+              && name.indexOf('/', internalPackageName.length()) == -1) {
+            names.add(name.substring(0, name.length() - ".class".length()));
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    names.sort(null);
+    return names;
+  }
+
+  /** Returns the bytes of the given class. */
+  public static byte[] classBytes(String internalClassName) {
+    try (InputStream in = classUrl(internalClassName).openStream()) {
+      return Util.readBytes(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static URL classUrl(String internalClassName) {
+    URL url = AndroidJar.class.getClassLoader().getResource(internalClassName + ".class");
+    if (url == null) {
+      throw new IllegalStateException(
+          internalClassName + " not found; is android-all on the classpath?");
+    }
+    return url;
+  }
+}
@@ -0,0 +1,251 @@
+package org.robolectric.benchmarks;
+
+import static android.os.Looper.getMainLooper;
+import static org.robolectric.Shadows.shadowOf;
+import static org.robolectric.annotation.LooperMode.Mode.PAUSED;
+
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.util.TypedValue;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowPackageManager;
+import org.robolectric.shadows.ShadowParcel;
+
+/**
+ * The Android side of {@link SandboxedOperations}: a test that, once Robolectric has set up the
+ * application, runs requested operations on the main thread until told to stop.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(PAUSED)
+public class AndroidOperations {
+  private static final int[] TEXT_APPEARANCE_ATTRS = {
+    android.R.attr.textSize, android.R.attr.textColor, android.R.attr.textStyle
+  };
+  private static final Runnable NOOP = () -> {};
+  private static final byte[] SMALL_BYTES = new byte[64];
+  private static final byte[] LARGE_BYTES = new byte[1024 * 1024];
+  private static final int MANIFEST_ACTIVITIES = 500;
+
+  @Test
+  public void serve() throws Exception {
+    Map<String, Runnable> operations = createOperations();
+    BlockingQueue<FutureTask<Void>> requests = new LinkedBlockingQueue<>();
+    AtomicBoolean stopped = new AtomicBoolean();
+
+    BiConsumer<String, Integer> host =
+        (name, times) -> {
+          FutureTask<Void> request =
+              new FutureTask<>(
+                  () -> {
+                    if (SandboxedOperations.STOP.equals(name)) {
+                      stopped.set(true);
+                      return null;
+                    }
+                    Runnable operation = operations.get(name);
+                    if (operation == null) {
+                      throw new IllegalArgumentException("no such operation: " + name);
+                    }
+                    for (int i = 0; i < times; i++) {
+                      operation.run();
+                    }
+                    return null;
+                  });
+          requests.add(request);
+          try {
+            request.get();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+          } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+          }
+        };
+
+    @SuppressWarnings("unchecked")
+    SynchronousQueue<BiConsumer<String, Integer>> handoff =
+        (SynchronousQueue<BiConsumer<String, Integer>>)
+            System.getProperties().get(SandboxedOperations.HOST_PROPERTY);
+    handoff.put(host);
+
+    while (!stopped.get()) {
+      requests.take().run();
+    }
+  }
+
+  private static Map<String, Runnable> createOperations() {
+    Resources resources = Resources.getSystem();
+    Resources.Theme theme = resources.newTheme();
+    theme.applyStyle(android.R.style.Theme_DeviceDefault, true);
+    TypedValue typedValue = new TypedValue();
+    Handler handler = new Handler(getMainLooper());
+
+    Map<String, Runnable> operations = new HashMap<>();
+
+    // ShadowParcel: write a mix of values, marshall them and read them back
+    operations.put("parcel", () -> parcelRoundTrip(false, SMALL_BYTES));
+    operations.put("compactParcel", () -> parcelRoundTrip(true, SMALL_BYTES));
+    operations.put("largeParcel", () -> parcelRoundTrip(false, LARGE_BYTES));
+    operations.put("compactLargeParcel", () -> parcelRoundTrip(true, LARGE_BYTES));
+
+    // ShadowApplicationPackageManager's intent resolution, over a large manifest
+    PackageManager packageManager = RuntimeEnvironment.application.getPackageManager();
+    addActivities(shadowOf(packageManager));
+    Intent actionIntent = new Intent(action(MANIFEST_ACTIVITIES / 2));
+    Intent deepLink =
+        new Intent(Intent.ACTION_VIEW, Uri.parse(deepLinkScheme(MANIFEST_ACTIVITIES / 2) + ":x"));
+    deepLink.addCategory(Intent.CATEGORY_BROWSABLE);
+    operations.put(
+        "queryIntentActivities", () -> packageManager.queryIntentActivities(actionIntent, 0));
+    operations.put("resolveDeepLink", () -> packageManager.resolveActivity(deepLink, 0));
+
+    // CppAssetManager2.GetResource
+    operations.put(
+        "getResource", () -> resources.getValue(android.R.dimen.app_icon_size, typedValue, true));
+
+    // CppAssetManager2.GetBag, via style resolution
+    operations.put(
+        "getBag",
+        () -> {
+          TypedArray typedArray =
+              theme.obtainStyledAttributes(
+                  android.R.style.TextAppearance_DeviceDefault, TEXT_APPEARANCE_ATTRS);
+          typedArray.recycle();
+        });
+
+    // a call into a shadowed method, dispatched through the ClassHandler to its shadow
+    operations.put("shadowedCall", SystemClock::uptimeMillis);
+
+    // a call into an instrumented but unshadowed method, which runs the original code
+    operations.put("instrumentedCall", () -> new Rect(0, 0, 10, 10).width());
+
+    // ShadowPausedLooper.idleFor with a single delayed message
+    operations.put(
+        "idleFor",
+        () -> {
+          handler.postDelayed(NOOP, 10);
+          shadowOf(getMainLooper()).idleFor(Duration.ofMillis(10));
+        });
+
+    // ShadowPausedLooper.idleFor across an hour of a 16ms periodic task, like a running animation
+    operations.put(
+        "idleForHourWithFrames",
+        () -> {
+          Runnable frame =
+              new Runnable() {
+                @Override
+                public void run() {
+                  handler.postDelayed(this, 16);
+                }
+              };
+          handler.post(frame);
+          shadowOf(getMainLooper()).idleFor(Duration.ofHours(1));
+          handler.removeCallbacks(frame);
+        });
+
+    // ActivityController.setup() for a small activity, destroyed afterwards
+    operations.put(
+        "activitySetup",
+        () -> Robolectric.buildActivity(SampleActivity.class).setup().pause().stop().destroy());
+
+    return operations;
+  }
+
+  /** Adds activities with an action of their own and a deep link, like a large app's. */
+  private static void addActivities(ShadowPackageManager shadowPackageManager) {
+    try {
+      for (int i = 0; i < MANIFEST_ACTIVITIES; i++) {
+        ComponentName activity = new ComponentName("org.robolectric.benchmarks", "Activity" + i);
+        shadowPackageManager.addActivityIfNotPresent(activity);
+        shadowPackageManager.addIntentFilterForActivity(activity, new IntentFilter(action(i)));
+        IntentFilter deepLinkFilter = new IntentFilter(Intent.ACTION_VIEW);
+        deepLinkFilter.addCategory(Intent.CATEGORY_DEFAULT);
+        deepLinkFilter.addCategory(Intent.CATEGORY_BROWSABLE);
+        deepLinkFilter.addDataScheme(deepLinkScheme(i));
+        shadowPackageManager.addIntentFilterForActivity(activity, deepLinkFilter);
+      }
+    } catch (PackageManager.NameNotFoundException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static String action(int i) {
+    return "org.robolectric.benchmarks.ACTION_" + i;
+  }
+
+  private static String deepLinkScheme(int i) {
+    return "app" + i;
+  }
+
+  private static void parcelRoundTrip(boolean compact, byte[] bytesValue) {
+    ShadowParcel.setCompactParcelsEnabled(compact);
+    Parcel parcel = Parcel.obtain();
+    parcel.writeInt(42);
+    parcel.writeLong(SystemClock.uptimeMillis());
+    parcel.writeString("robolectric");
+    parcel.writeByteArray(bytesValue);
+    Bundle bundle = new Bundle();
+    bundle.putString("key", "value");
+    bundle.putByteArray("bytes", bytesValue);
+    parcel.writeBundle(bundle);
+    byte[] bytes = parcel.marshall();
+    parcel.recycle();
+
+    Parcel copy = Parcel.obtain();
+    copy.unmarshall(bytes, 0, bytes.length);
+    copy.setDataPosition(0);
+    copy.readInt();
+    copy.readLong();
+    copy.readString();
+    copy.createByteArray();
+    copy.readBundle(AndroidOperations.class.getClassLoader()).getByteArray("bytes");
+    copy.recycle();
+  }
+
+  /** A small activity with a view hierarchy built in code. */
+  public static class SampleActivity extends Activity {
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+      super.onCreate(savedInstanceState);
+      LinearLayout layout = new LinearLayout(this);
+      layout.setOrientation(LinearLayout.VERTICAL);
+      for (int i = 0; i < 20; i++) {
+        TextView textView = new TextView(this);
+        textView.setText("Item " + i);
+        layout.addView(textView);
+      }
+      Button button = new Button(this);
+      button.setText("OK");
+      layout.addView(button);
+      setContentView(layout);
+    }
+  }
+}
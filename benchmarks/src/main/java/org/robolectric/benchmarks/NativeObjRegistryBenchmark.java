@@ -0,0 +1,63 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.res.android.NativeObjRegistry;
+
+/**
+ * Measures {@link NativeObjRegistry} lookups and registrations from several threads at once, as
+ * happens when tests run in parallel sandboxes sharing native object registries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class NativeObjRegistryBenchmark {
+  private static final int PREREGISTERED = 10_000;
+
+  private final NativeObjRegistry<Object> registry = new NativeObjRegistry<>(Object.class);
+  private final long[] ids = new long[PREREGISTERED];
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < PREREGISTERED; i++) {
+      ids[i] = registry.register(new Object());
+    }
+  }
+
+  @Benchmark
+  public Object getNativeObject() {
+    return registry.getNativeObject(ids[ThreadLocalRandom.current().nextInt(PREREGISTERED)]);
+  }
+
+  @Benchmark
+  public Object registerAndUnregister() {
+    long id = registry.register(new Object());
+    return registry.unregister(id);
+  }
+
+  /** Three lookups to each registration, roughly the mix seen while drawing. */
+  @Benchmark
+  public Object mixed() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long id = registry.register(new Object());
+    registry.getNativeObject(ids[random.nextInt(PREREGISTERED)]);
+    registry.getNativeObject(ids[random.nextInt(PREREGISTERED)]);
+    registry.getNativeObject(id);
+    return registry.unregister(id);
+  }
+}
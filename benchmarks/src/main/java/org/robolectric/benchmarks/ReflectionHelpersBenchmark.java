@@ -0,0 +1,74 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+/**
+ * Measures the {@link ReflectionHelpers} calls shadows make most, from several threads at once, on
+ * members declared a few classes up the hierarchy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class ReflectionHelpersBenchmark {
+  private final Leaf leaf = new Leaf();
+
+  @Benchmark
+  public Object getInheritedField() {
+    return ReflectionHelpers.getField(leaf, "rootField");
+  }
+
+  @Benchmark
+  public void setInheritedField() {
+    ReflectionHelpers.setField(leaf, "rootField", 1);
+  }
+
+  @Benchmark
+  public Object callInheritedMethod() {
+    return ReflectionHelpers.callInstanceMethod(
+        leaf, "rootMethod", ClassParameter.from(int.class, 1));
+  }
+
+  @Benchmark
+  public Object callStaticMethod() {
+    return ReflectionHelpers.callStaticMethod(Root.class, "staticMethod");
+  }
+
+  @Benchmark
+  public Object getStaticField() {
+    return ReflectionHelpers.getStaticField(Root.class, "STATIC_FIELD");
+  }
+
+  @SuppressWarnings("unused")
+  private static class Root {
+    private static int STATIC_FIELD = 1;
+    private int rootField;
+
+    private int rootMethod(int i) {
+      return rootField + i;
+    }
+
+    private static int staticMethod() {
+      return STATIC_FIELD;
+    }
+  }
+
+  private static class Middle extends Root {}
+
+  private static class Leaf extends Middle {}
+}
@@ -0,0 +1,57 @@
+package org.robolectric.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.InvokeDynamicClassInstrumentor;
+import org.robolectric.internal.bytecode.SandboxClassLoader;
+import org.robolectric.internal.bytecode.ShadowDecorator;
+import org.robolectric.internal.bytecode.UrlResourceProvider;
+
+/**
+ * Measures loading every class in {@code android.widget} through a new {@link SandboxClassLoader},
+ * as each new sandbox does. Classes are loaded but not initialized.
+ *
+ * <p>State shared between sandboxes reading the same jars, like the type hierarchy, stays warm
+ * across invocations, as it would across the sandboxes of a test run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+public class SandboxClassLoaderBenchmark {
+  private final InstrumentationConfiguration config =
+      InstrumentationConfiguration.newBuilder().addInstrumentedPackage("android.").build();
+
+  private List<String> classNames;
+
+  @Setup
+  public void setUp() {
+    classNames = AndroidJar.classNames("android/widget/");
+  }
+
+  @Benchmark
+  public void loadWidgetClasses(Blackhole blackhole) throws Exception {
+    SandboxClassLoader classLoader =
+        new SandboxClassLoader(
+            config,
+            new UrlResourceProvider(),
+            new InvokeDynamicClassInstrumentor(new ShadowDecorator()));
+    for (String className : classNames) {
+      blackhole.consume(Class.forName(className.replace('/', '.'), false, classLoader));
+    }
+  }
+}
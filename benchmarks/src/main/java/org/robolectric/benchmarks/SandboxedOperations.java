@@ -0,0 +1,85 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Runs named operations from {@link AndroidOperations} on the main thread of a live Robolectric
+ * sandbox, so benchmarks can measure Android code without paying for sandbox and application setup
+ * on every invocation.
+ *
+ * <p>{@link AndroidOperations} is run as an ordinary test by {@link JUnitCore}. Its single test
+ * hands a callback back through a system property (the sandbox's copy of this class is not the
+ * benchmark's, but {@code java.*} classes are shared), then services calls to it until {@link
+ * #close()}.
+ */
+final class SandboxedOperations implements AutoCloseable {
+  static final String HOST_PROPERTY = "org.robolectric.benchmarks.host";
+  static final String STOP = "stop";
+
+  private final Thread runnerThread;
+  private final AtomicReference<Result> result;
+  private final BiConsumer<String, Integer> host;
+
+  private SandboxedOperations(
+      Thread runnerThread, AtomicReference<Result> result, BiConsumer<String, Integer> host) {
+    this.runnerThread = runnerThread;
+    this.result = result;
+    this.host = host;
+  }
+
+  static SandboxedOperations start() throws InterruptedException {
+    SynchronousQueue<BiConsumer<String, Integer>> handoff = new SynchronousQueue<>();
+    System.getProperties().put(HOST_PROPERTY, handoff);
+
+    AtomicReference<Result> result = new AtomicReference<>();
+    Thread runnerThread =
+        new Thread(
+            () -> result.set(new JUnitCore().run(AndroidOperations.class)), "sandbox-benchmark");
+    runnerThread.start();
+
+    BiConsumer<String, Integer> host = null;
+    while (host == null) {
+      host = handoff.poll(1, TimeUnit.SECONDS);
+      if (host == null && !runnerThread.isAlive()) {
+        System.getProperties().remove(HOST_PROPERTY);
+        throw new IllegalStateException("sandbox failed to start: " + describe(result.get()));
+      }
+    }
+    return new SandboxedOperations(runnerThread, result, host);
+  }
+
+  /** Runs the named operation {@code times} times on the sandbox's main thread. */
+  void run(String operation, int times) {
+    host.accept(operation, times);
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    try {
+      host.accept(STOP, 0);
+      runnerThread.join();
+    } finally {
+      System.getProperties().remove(HOST_PROPERTY);
+    }
+    if (!result.get().wasSuccessful()) {
+      throw new IllegalStateException("sandbox failed: " + describe(result.get()));
+    }
+  }
+
+  private static String describe(Result result) {
+    if (result == null) {
+      return "no result";
+    }
+    StringBuilder buf = new StringBuilder();
+    for (Failure failure : result.getFailures()) {
+      buf.append('\n').append(failure.getTrace());
+    }
+    return buf.toString();
+  }
+}
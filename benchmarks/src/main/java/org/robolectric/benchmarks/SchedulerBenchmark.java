@@ -0,0 +1,88 @@
+package org.robolectric.benchmarks;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.util.Scheduler;
+
+/**
+ * Measures posting runnables with scattered delays to a paused {@link Scheduler} and then running
+ * them all, against the same work done with a {@link PriorityQueue} as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SchedulerBenchmark {
+  private static final int TASKS = 1000;
+
+  private final long[] delays = new long[TASKS];
+  private int runCount;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    for (int i = 0; i < TASKS; i++) {
+      delays[i] = random.nextInt(10_000);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TASKS)
+  public int scheduler() {
+    Scheduler scheduler = new Scheduler();
+    scheduler.pause();
+    Runnable task = () -> runCount++;
+    for (long delay : delays) {
+      scheduler.postDelayed(task, delay);
+    }
+    scheduler.advanceToLastPostedRunnable();
+    return runCount;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TASKS)
+  public int priorityQueueBaseline() {
+    PriorityQueue<Task> queue = new PriorityQueue<>();
+    Runnable task = () -> runCount++;
+    long seq = 0;
+    for (long delay : delays) {
+      queue.add(new Task(delay, seq++, task));
+    }
+    while (!queue.isEmpty()) {
+      queue.poll().runnable.run();
+    }
+    return runCount;
+  }
+
+  private static final class Task implements Comparable<Task> {
+    final long time;
+    final long seq;
+    final Runnable runnable;
+
+    Task(long time, long seq, Runnable runnable) {
+      this.time = time;
+      this.seq = seq;
+      this.runnable = runnable;
+    }
+
+    @Override
+    public int compareTo(Task other) {
+      int result = Long.compare(time, other.time);
+      return result != 0 ? result : Long.compare(seq, other.seq);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package org.robolectric.internal.bytecode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.robolectric.benchmarks.AndroidJar;
+
+/**
+ * Measures instrumenting the classes in {@code android.widget}, either keeping their original stack
+ * map frames where possible or always recomputing them.
+ *
+ * <p>This lives in Robolectric's bytecode package so it can override {@link
+ * ClassInstrumentor#needsComputedFrames(MutableClass)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ClassInstrumentorBenchmark {
+  private static final int CLASS_COUNT = 200;
+
+  @Param({"true", "false"})
+  public boolean preserveFrames;
+
+  private final InstrumentationConfiguration config =
+      InstrumentationConfiguration.newBuilder().addInstrumentedPackage("android.").build();
+  private final ClassNodeProvider classNodeProvider =
+      new ClassNodeProvider() {
+        @Override
+        protected byte[] getClassBytes(String internalClassName) {
+          return AndroidJar.classBytes(internalClassName);
+        }
+      };
+
+  private ClassInstrumentor instrumentor;
+  private final List<byte[]> classes = new ArrayList<>();
+
+  @Setup
+  public void setUp() {
+    instrumentor =
+        new InvokeDynamicClassInstrumentor(new ShadowDecorator()) {
+          @Override
+          boolean needsComputedFrames(MutableClass mutableClass) {
+            return !preserveFrames || super.needsComputedFrames(mutableClass);
+          }
+        };
+    for (String className : AndroidJar.classNames("android/widget/")) {
+      if (classes.size() == CLASS_COUNT) {
+        break;
+      }
+      classes.add(AndroidJar.classBytes(className));
+    }
+    if (classes.size() < CLASS_COUNT) {
+      throw new IllegalStateException("only found " + classes.size() + " classes");
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CLASS_COUNT)
+  public void instrument(Blackhole blackhole) {
+    for (byte[] bytes : classes) {
+      blackhole.consume(instrumentor.instrument(bytes, config, classNodeProvider));
+    }
+  }
+}
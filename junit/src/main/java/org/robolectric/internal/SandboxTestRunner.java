@@ -41,6 +41,7 @@ import org.robolectric.pluginapi.perf.PerfStatsReporter;
 import org.robolectric.sandbox.ShadowMatcher;
 import org.robolectric.util.PerfStatsCollector;
 import org.robolectric.util.PerfStatsCollector.Event;
+import org.robolectric.util.TestProfiler;
 import org.robolectric.util.Util;
 import org.robolectric.util.inject.Injector;
 
@@ -104,6 +105,7 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
         } finally {
           afterClass();
           loadedTestClasses.clear();
+          TestProfiler.getInstance().finishTestClass(getTestClass().getName());
         }
       }
     };
@@ -278,6 +280,7 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
                 } catch (Exception e) {
                   e.printStackTrace();
                 }
+                TestProfiler.getInstance().finishTest(method.getName());
               }
             });
 
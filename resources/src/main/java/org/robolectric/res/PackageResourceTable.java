@@ -5,6 +5,8 @@ import com.google.common.collect.HashBiMap;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
 import javax.annotation.Nonnull;
 import org.robolectric.res.android.ResTable_config;
 import org.robolectric.res.builder.XmlBlock;
@@ -161,6 +163,19 @@ public class PackageResourceTable implements ResourceTable {
     resources.put(resName, value);
   }
 
+  /** Returns a read-only view of the resource id to name mapping for this package. */
+  Map<Integer, ResName> getResourceIds() {
+    return Collections.unmodifiableMap(resourceTable);
+  }
+
+  /**
+   * Adds a value without any of the name fix-ups performed by {@link #addResource(String, String,
+   * TypedResource)}; used when restoring a previously built table.
+   */
+  void restoreValue(ResName resName, TypedResource value) {
+    resources.put(resName, value);
+  }
+
   private boolean isAndroidPackage(ResName resName) {
     return "android".equals(resName.packageName);
   }
@@ -0,0 +1,617 @@
+package org.robolectric.res;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.robolectric.util.Logger;
+import org.robolectric.util.PerfStatsCollector;
+
+/**
+ * Persists fully built legacy {@link PackageResourceTable}s to disk so subsequent JVMs can skip
+ * parsing resource XML when the inputs haven't changed.
+ *
+ * <p>Tables are keyed on a hash of the R classes, the files under each resource directory (names,
+ * sizes and modification times), and the classes in this package, so upgrading Robolectric doesn't
+ * serve tables built by an older parser. The cache is enabled by pointing the {@code
+ * robolectric.resourceTableCacheDir} system property at a writable directory.
+ */
+@SuppressWarnings("NewApi")
+public class ResourceTableCache {
+
+  public static final String CACHE_DIR_PROPERTY = "robolectric.resourceTableCacheDir";
+
+  private static final int MAGIC = 0x52545443; // "RTTC"
+  private static final int FORMAT_VERSION = 1;
+
+  private static final byte KIND_VALUE = 0;
+  private static final byte KIND_ARRAY = 1;
+  private static final byte KIND_ATTR_DATA = 2;
+  private static final byte KIND_STYLE = 3;
+  private static final byte KIND_PLURALS = 4;
+  private static final byte KIND_FILE = 5;
+  private static final byte KIND_IMAGE = 6;
+
+  /** A hash of the code that builds resource tables, computed once per JVM. */
+  private static final Supplier<HashCode> PARSER_FINGERPRINT =
+      Suppliers.memoize(ResourceTableCache::fingerprintParser);
+
+  private final Path cacheDir;
+
+  public ResourceTableCache(Path cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /** Returns a cache for the directory named by {@link #CACHE_DIR_PROPERTY}, or null if unset. */
+  @Nullable
+  public static ResourceTableCache fromSystemProperties() {
+    String dir = System.getProperty(CACHE_DIR_PROPERTY);
+    return dir == null || dir.isEmpty() ? null : new ResourceTableCache(Paths.get(dir));
+  }
+
+  /**
+   * Computes a key identifying the inputs to a resource table.
+   *
+   * @param framework whether the table is built with framework semantics (internal R class and
+   *     styleable attributes are included)
+   */
+  public String computeKey(String packageName, boolean framework, ResourcePath... resourcePaths)
+      throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    hasher.putBytes(PARSER_FINGERPRINT.get().asBytes());
+    hasher.putString(packageName, UTF_8);
+    hasher.putBoolean(framework);
+    for (ResourcePath resourcePath : resourcePaths) {
+      hashRClass(hasher, resourcePath.getRClass());
+      hashRClass(hasher, resourcePath.getInternalRClass());
+      hashResourceDir(hasher, resourcePath);
+    }
+    return hasher.hash().toString();
+  }
+
+  /** Loads a previously stored table for the given key, or returns null if there isn't one. */
+  @Nullable
+  public PackageResourceTable load(String key, ResourcePath... resourcePaths) {
+    Path file = cacheFile(key);
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+
+    return PerfStatsCollector.getInstance()
+        .measure(
+            "load cached legacy resources",
+            () -> {
+              try {
+                // The whole table is decoded up front, so there's nothing to gain from mapping the
+                // file, and a mapping would keep it open until it's garbage collected.
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+                return new Reader(buffer, resourcePaths).read(key);
+              } catch (IOException | RuntimeException e) {
+                Logger.warn("Ignoring unreadable resource table cache " + file + ": " + e);
+                return null;
+              }
+            });
+  }
+
+  /** Stores the table under the given key, replacing any existing entry atomically. */
+  public void store(String key, PackageResourceTable resourceTable, ResourcePath... resourcePaths) {
+    PerfStatsCollector.getInstance()
+        .measure(
+            "store cached legacy resources",
+            () -> {
+              Path tmpFile = null;
+              try {
+                byte[] bytes = new Writer(resourcePaths).write(key, resourceTable);
+                Files.createDirectories(cacheDir);
+                tmpFile = Files.createTempFile(cacheDir, key, ".tmp");
+                try (OutputStream out =
+                    new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+                  out.write(bytes);
+                }
+                Files.move(
+                    tmpFile,
+                    cacheFile(key),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+              } catch (IOException | RuntimeException e) {
+                Logger.warn("Unable to write resource table cache to " + cacheDir + ": " + e);
+                if (tmpFile != null) {
+                  try {
+                    Files.deleteIfExists(tmpFile);
+                  } catch (IOException ignored) {
+                    // best effort
+                  }
+                }
+              }
+            });
+  }
+
+  private Path cacheFile(String key) {
+    return cacheDir.resolve(key + ".restable");
+  }
+
+  /**
+   * Hashes the class files of this package and its subpackages, which include all of the resource
+   * parsers, from the jar or directory they were loaded from.
+   */
+  private static HashCode fingerprintParser() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    String packagePath = ResourceTableCache.class.getPackage().getName().replace('.', '/') + "/";
+    try {
+      Path location =
+          Paths.get(
+              ResourceTableCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+      if (Files.isDirectory(location)) {
+        Path packageDir = location.resolve(packagePath);
+        List<Path> classFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(packageDir)) {
+          files.filter(Files::isRegularFile).forEach(classFiles::add);
+        }
+        classFiles.sort(null);
+        for (Path classFile : classFiles) {
+          hasher.putString(packageDir.relativize(classFile).toString(), UTF_8);
+          hasher.putBytes(Files.readAllBytes(classFile));
+        }
+      } else {
+        try (JarFile jar = new JarFile(location.toFile())) {
+          List<JarEntry> entries = new ArrayList<>();
+          for (JarEntry entry : Collections.list(jar.entries())) {
+            if (entry.getName().startsWith(packagePath) && !entry.isDirectory()) {
+              entries.add(entry);
+            }
+          }
+          entries.sort(Comparator.comparing(JarEntry::getName));
+          for (JarEntry entry : entries) {
+            hasher.putString(entry.getName(), UTF_8).putLong(entry.getCrc());
+          }
+        }
+      }
+    } catch (IOException | URISyntaxException | RuntimeException e) {
+      // Without a fingerprint, tables from other versions can't be told apart, so don't share any.
+      Logger.warn("Unable to fingerprint resource parser, tables won't be reused: " + e);
+      hasher.putString(UUID.randomUUID().toString(), UTF_8);
+    }
+    return hasher.hash();
+  }
+
+  private static void hashRClass(Hasher hasher, @Nullable Class<?> rClass) {
+    if (rClass == null) {
+      hasher.putInt(0);
+      return;
+    }
+    hasher.putString(rClass.getName(), UTF_8);
+    Class<?>[] innerClasses = rClass.getClasses();
+    Arrays.sort(innerClasses, Comparator.comparing(Class::getName));
+    for (Class<?> innerClass : innerClasses) {
+      hasher.putString(innerClass.getSimpleName(), UTF_8);
+      Field[] fields = innerClass.getDeclaredFields();
+      Arrays.sort(fields, Comparator.comparing(Field::getName));
+      for (Field field : fields) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        try {
+          if (field.getType().equals(Integer.TYPE)) {
+            hasher.putString(field.getName(), UTF_8).putInt(field.getInt(null));
+          } else if (field.getType().equals(int[].class)) {
+            field.setAccessible(true);
+            hasher.putString(field.getName(), UTF_8);
+            for (int value : (int[]) field.get(null)) {
+              hasher.putInt(value);
+            }
+          }
+        } catch (IllegalAccessException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+  }
+
+  private static void hashResourceDir(Hasher hasher, ResourcePath resourcePath)
+      throws IOException {
+    if (!resourcePath.hasResources()) {
+      hasher.putInt(0);
+      return;
+    }
+
+    Path base = resourcePath.getResourceBase();
+    hasher.putString(base.toUri().toString(), UTF_8);
+    List<String> entries = new ArrayList<>();
+    try (Stream<Path> files = Files.walk(base)) {
+      files.forEach(
+          path -> {
+            try {
+              BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+              entries.add(
+                  base.relativize(path)
+                      + "|"
+                      + attrs.size()
+                      + "|"
+                      + attrs.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+              throw new RuntimeException(e);
+            }
+          });
+    }
+    entries.sort(null);
+    for (String entry : entries) {
+      hasher.putString(entry, UTF_8);
+    }
+  }
+
+  private static class Writer {
+    private final ResourcePath[] resourcePaths;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringList = new ArrayList<>();
+    private final Map<XmlContext, Integer> contexts = new IdentityHashMap<>();
+    private final ByteArrayOutputStream contextBytes = new ByteArrayOutputStream();
+    private final DataOutputStream contextOut = new DataOutputStream(contextBytes);
+
+    Writer(ResourcePath[] resourcePaths) {
+      this.resourcePaths = resourcePaths;
+    }
+
+    byte[] write(String key, PackageResourceTable resourceTable) throws IOException {
+      ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+      DataOutputStream body = new DataOutputStream(bodyBytes);
+
+      body.writeInt(string(resourceTable.getPackageName()));
+      Map<Integer, ResName> resourceIds = resourceTable.getResourceIds();
+      body.writeInt(resourceIds.size());
+      for (Map.Entry<Integer, ResName> entry : resourceIds.entrySet()) {
+        body.writeInt(entry.getKey());
+        writeResName(body, entry.getValue());
+      }
+
+      List<Map.Entry<ResName, List<TypedResource>>> values = new ArrayList<>();
+      resourceTable.receive(
+          (resName, items) -> {
+            List<TypedResource> itemList = new ArrayList<>();
+            items.forEach(itemList::add);
+            values.add(new AbstractMap.SimpleEntry<>(resName, itemList));
+          });
+      body.writeInt(values.size());
+      for (Map.Entry<ResName, List<TypedResource>> entry : values) {
+        writeResName(body, entry.getKey());
+        body.writeInt(entry.getValue().size());
+        for (TypedResource typedResource : entry.getValue()) {
+          writeTypedResource(body, typedResource);
+        }
+      }
+
+      ByteArrayOutputStream fileBytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(fileBytes);
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      writeRawString(out, key);
+      out.writeInt(stringList.size());
+      for (String s : stringList) {
+        writeRawString(out, s);
+      }
+      out.writeInt(contexts.size());
+      contextBytes.writeTo(out);
+      bodyBytes.writeTo(out);
+      out.flush();
+      return fileBytes.toByteArray();
+    }
+
+    private void writeResName(DataOutputStream out, ResName resName) throws IOException {
+      out.writeInt(string(resName.packageName));
+      out.writeInt(string(resName.type));
+      out.writeInt(string(resName.name));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeTypedResource(DataOutputStream out, TypedResource<?> typedResource)
+        throws IOException {
+      Object data = typedResource.getData();
+      if (typedResource instanceof FileTypedResource.Image) {
+        out.writeByte(KIND_IMAGE);
+        out.writeBoolean(((FileTypedResource.Image) typedResource).isNinePatch());
+      } else if (typedResource instanceof FileTypedResource) {
+        out.writeByte(KIND_FILE);
+        Path path = ((FileTypedResource) typedResource).getPath();
+        out.writeInt(pathIndex(path));
+        out.writeInt(string(relativePath(path)));
+      } else if (typedResource instanceof PluralRules) {
+        out.writeByte(KIND_PLURALS);
+        List<Plural> plurals = ((PluralRules) typedResource).getData();
+        out.writeInt(plurals.size());
+        for (Plural plural : plurals) {
+          out.writeInt(string(plural.quantity));
+          out.writeInt(string(plural.string));
+        }
+      } else if (typedResource.getClass() != TypedResource.class) {
+        throw new UnsupportedOperationException("can't cache " + typedResource.getClass());
+      } else if (data == null || data instanceof String) {
+        out.writeByte(KIND_VALUE);
+        out.writeInt(string((String) data));
+      } else if (data instanceof List) {
+        out.writeByte(KIND_ARRAY);
+        List<TypedResource> items = (List<TypedResource>) data;
+        out.writeInt(items.size());
+        for (TypedResource item : items) {
+          writeTypedResource(out, item);
+        }
+      } else if (data instanceof AttrData) {
+        out.writeByte(KIND_ATTR_DATA);
+        AttrData attrData = (AttrData) data;
+        out.writeInt(string(attrData.getName()));
+        out.writeInt(string(attrData.getFormat()));
+        List<AttrData.Pair> pairs = attrData.getPairs();
+        out.writeInt(pairs == null ? -1 : pairs.size());
+        if (pairs != null) {
+          for (AttrData.Pair pair : pairs) {
+            out.writeInt(string(pair.getName()));
+            out.writeInt(string(pair.getValue()));
+          }
+        }
+      } else if (data instanceof StyleData) {
+        out.writeByte(KIND_STYLE);
+        StyleData styleData = (StyleData) data;
+        out.writeInt(string(styleData.getPackageName()));
+        out.writeInt(string(styleData.getName()));
+        out.writeInt(string(styleData.getParent()));
+        List<AttributeResource> attributes = new ArrayList<>();
+        styleData.visit(attributes::add);
+        out.writeInt(attributes.size());
+        for (AttributeResource attribute : attributes) {
+          writeResName(out, attribute.resName);
+          out.writeInt(string(attribute.value));
+          out.writeInt(string(attribute.contextPackageName));
+          Integer referenceResId = attribute.getReferenceResId();
+          out.writeBoolean(referenceResId != null);
+          out.writeInt(referenceResId == null ? 0 : referenceResId);
+        }
+      } else {
+        throw new UnsupportedOperationException("can't cache " + data.getClass());
+      }
+
+      ResType resType = typedResource.getResType();
+      out.writeByte(resType == null ? -1 : resType.ordinal());
+      out.writeInt(context(typedResource.getXmlContext()));
+    }
+
+    private int context(XmlContext xmlContext) throws IOException {
+      Integer index = contexts.get(xmlContext);
+      if (index == null) {
+        index = contexts.size();
+        contexts.put(xmlContext, index);
+        Path xmlFile = xmlContext.getXmlFile();
+        contextOut.writeInt(string(xmlContext.getPackageName()));
+        contextOut.writeInt(pathIndex(xmlFile));
+        contextOut.writeInt(string(relativePath(xmlFile)));
+        contextOut.writeInt(string(xmlContext.getQualifiers().toString()));
+      }
+      return index;
+    }
+
+    /** Returns the index of the resource directory containing the path. */
+    private int pathIndex(Path path) {
+      for (int i = 0; i < resourcePaths.length; i++) {
+        Path base = resourcePaths[i].getResourceBase();
+        if (base != null && base.getFileSystem() == path.getFileSystem() && path.startsWith(base)) {
+          return i;
+        }
+      }
+      throw new UnsupportedOperationException(path + " is outside of the resource directories");
+    }
+
+    private String relativePath(Path path) {
+      return resourcePaths[pathIndex(path)].getResourceBase().relativize(path).toString();
+    }
+
+    private int string(@Nullable String s) {
+      if (s == null) {
+        return -1;
+      }
+      Integer index = strings.get(s);
+      if (index == null) {
+        index = stringList.size();
+        strings.put(s, index);
+        stringList.add(s);
+      }
+      return index;
+    }
+
+    private static void writeRawString(DataOutputStream out, String s) throws IOException {
+      byte[] bytes = s.getBytes(UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static class Reader {
+    private final ByteBuffer buffer;
+    private final ResourcePath[] resourcePaths;
+    private final Map<String, Qualifiers> qualifiers = new HashMap<>();
+    private String[] strings;
+    private XmlContext[] contexts;
+
+    Reader(ByteBuffer buffer, ResourcePath[] resourcePaths) {
+      this.buffer = buffer;
+      this.resourcePaths = resourcePaths;
+    }
+
+    @Nullable
+    PackageResourceTable read(String key) {
+      if (buffer.getInt() != MAGIC
+          || buffer.getInt() != FORMAT_VERSION
+          || !key.equals(readRawString())) {
+        return null;
+      }
+
+      strings = new String[buffer.getInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = readRawString();
+      }
+
+      contexts = new XmlContext[buffer.getInt()];
+      for (int i = 0; i < contexts.length; i++) {
+        String packageName = string();
+        Path xmlFile = resolve(buffer.getInt(), string());
+        contexts[i] = new XmlContext(packageName, xmlFile, qualifiers(string()));
+      }
+
+      PackageResourceTable resourceTable = new PackageResourceTable(string());
+      int resourceIdCount = buffer.getInt();
+      for (int i = 0; i < resourceIdCount; i++) {
+        int resId = buffer.getInt();
+        ResName resName = readResName();
+        resourceTable.addResource(resId, resName.type, resName.name);
+      }
+
+      int valueCount = buffer.getInt();
+      for (int i = 0; i < valueCount; i++) {
+        ResName resName = readResName();
+        int itemCount = buffer.getInt();
+        for (int j = 0; j < itemCount; j++) {
+          resourceTable.restoreValue(resName, readTypedResource());
+        }
+      }
+      return resourceTable;
+    }
+
+    private TypedResource<?> readTypedResource() {
+      byte kind = buffer.get();
+      boolean isNinePatch = false;
+      Path path = null;
+      Object data = null;
+      switch (kind) {
+        case KIND_IMAGE:
+          isNinePatch = buffer.get() != 0;
+          break;
+        case KIND_FILE:
+          path = resolve(buffer.getInt(), string());
+          break;
+        case KIND_PLURALS:
+          int pluralCount = buffer.getInt();
+          List<Plural> plurals = new ArrayList<>(pluralCount);
+          for (int i = 0; i < pluralCount; i++) {
+            plurals.add(new Plural(string(), string()));
+          }
+          data = plurals;
+          break;
+        case KIND_VALUE:
+          data = string();
+          break;
+        case KIND_ARRAY:
+          int itemCount = buffer.getInt();
+          List<TypedResource> items = new ArrayList<>(itemCount);
+          for (int i = 0; i < itemCount; i++) {
+            items.add(readTypedResource());
+          }
+          data = items;
+          break;
+        case KIND_ATTR_DATA:
+          String name = string();
+          String format = string();
+          int pairCount = buffer.getInt();
+          List<AttrData.Pair> pairs = null;
+          if (pairCount >= 0) {
+            pairs = new ArrayList<>(pairCount);
+            for (int i = 0; i < pairCount; i++) {
+              pairs.add(new AttrData.Pair(string(), string()));
+            }
+          }
+          data = new AttrData(name, format, pairs);
+          break;
+        case KIND_STYLE:
+          String packageName = string();
+          String styleName = string();
+          String parent = string();
+          int attributeCount = buffer.getInt();
+          List<AttributeResource> attributes = new ArrayList<>(attributeCount);
+          for (int i = 0; i < attributeCount; i++) {
+            ResName attrName = readResName();
+            String value = string();
+            String contextPackageName = string();
+            boolean hasReferenceResId = buffer.get() != 0;
+            int referenceResId = buffer.getInt();
+            attributes.add(
+                new AttributeResource(
+                    attrName,
+                    value,
+                    contextPackageName,
+                    hasReferenceResId ? referenceResId : null));
+          }
+          data = new StyleData(packageName, styleName, parent, attributes);
+          break;
+        default:
+          throw new IllegalStateException("unknown resource kind " + kind);
+      }
+
+      byte resTypeOrdinal = buffer.get();
+      ResType resType = resTypeOrdinal < 0 ? null : ResType.values()[resTypeOrdinal];
+      XmlContext xmlContext = contexts[buffer.getInt()];
+
+      switch (kind) {
+        case KIND_IMAGE:
+          return new FileTypedResource.Image(xmlContext.getXmlFile(), isNinePatch, xmlContext);
+        case KIND_FILE:
+          return new FileTypedResource(path, resType, xmlContext);
+        case KIND_PLURALS:
+          @SuppressWarnings("unchecked")
+          List<Plural> plurals = (List<Plural>) data;
+          return new PluralRules(plurals, resType, xmlContext);
+        default:
+          return new TypedResource<>(data, resType, xmlContext);
+      }
+    }
+
+    private Path resolve(int pathIndex, String relativePath) {
+      return resourcePaths[pathIndex].getResourceBase().resolve(relativePath);
+    }
+
+    private Qualifiers qualifiers(String qualifiersString) {
+      return qualifiers.computeIfAbsent(qualifiersString, Qualifiers::parse);
+    }
+
+    private ResName readResName() {
+      return new ResName(string(), string(), string());
+    }
+
+    private String string() {
+      int index = buffer.getInt();
+      return index < 0 ? null : strings[index];
+    }
+
+    private String readRawString() {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      return new String(bytes, UTF_8);
+    }
+  }
+}
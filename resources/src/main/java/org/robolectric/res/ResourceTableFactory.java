@@ -3,12 +3,32 @@ package org.robolectric.res;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import org.robolectric.util.Logger;
 import org.robolectric.util.PerfStatsCollector;
 
 public class ResourceTableFactory {
+  @Nullable private final ResourceTableCache resourceTableCache;
+
+  public ResourceTableFactory() {
+    this(ResourceTableCache.fromSystemProperties());
+  }
+
+  public ResourceTableFactory(@Nullable ResourceTableCache resourceTableCache) {
+    this.resourceTableCache = resourceTableCache;
+  }
+
   /** Builds an Android framework resource table in the "android" package space. */
   public PackageResourceTable newFrameworkResourceTable(ResourcePath resourcePath) {
+    return withCache(
+        "android",
+        true,
+        () -> buildFrameworkResourceTable(resourcePath),
+        resourcePath);
+  }
+
+  private PackageResourceTable buildFrameworkResourceTable(ResourcePath resourcePath) {
     return PerfStatsCollector.getInstance()
         .measure(
             "load legacy framework resources",
@@ -35,6 +55,15 @@ public class ResourceTableFactory {
    * representing overlayed resource libraries.
    */
   public PackageResourceTable newResourceTable(String packageName, ResourcePath... resourcePaths) {
+    return withCache(
+        packageName,
+        false,
+        () -> buildResourceTable(packageName, resourcePaths),
+        resourcePaths);
+  }
+
+  private PackageResourceTable buildResourceTable(
+      String packageName, ResourcePath... resourcePaths) {
     return PerfStatsCollector.getInstance()
         .measure(
             "load legacy app resources",
@@ -55,6 +84,45 @@ public class ResourceTableFactory {
             });
   }
 
+  /**
+   * Returns a table from the on-disk cache if one was stored for identical inputs, otherwise
+   * builds it and stores it for next time. Tables without any resource directories are cheap to
+   * build and are never cached.
+   */
+  private PackageResourceTable withCache(
+      String packageName,
+      boolean framework,
+      Supplier<PackageResourceTable> builder,
+      ResourcePath... resourcePaths) {
+    if (resourceTableCache == null || !hasResources(resourcePaths)) {
+      return builder.get();
+    }
+
+    String key;
+    try {
+      key = resourceTableCache.computeKey(packageName, framework, resourcePaths);
+    } catch (IOException | RuntimeException e) {
+      Logger.warn("Unable to compute resource table cache key for " + packageName + ": " + e);
+      return builder.get();
+    }
+
+    PackageResourceTable resourceTable = resourceTableCache.load(key, resourcePaths);
+    if (resourceTable == null) {
+      resourceTable = builder.get();
+      resourceTableCache.store(key, resourceTable, resourcePaths);
+    }
+    return resourceTable;
+  }
+
+  private static boolean hasResources(ResourcePath... resourcePaths) {
+    for (ResourcePath resourcePath : resourcePaths) {
+      if (resourcePath.hasResources()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void addRClassValues(PackageResourceTable resourceTable, Class<?> rClass) {
     for (Class innerClass : rClass.getClasses()) {
       String resourceType = innerClass.getSimpleName();
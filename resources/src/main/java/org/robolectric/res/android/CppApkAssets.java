@@ -69,6 +69,15 @@ public class CppApkAssets {
     return loaded_arsc_;
   }
 
+  // Not part of ApkAssets: resolved bags shared by the AssetManagers whose first ApkAssets is this
+  // one. Hanging the cache off the ApkAssets ties its lifetime to that of the sandbox.
+  synchronized ResolvedBagCache GetResolvedBagCache() {
+    if (resolved_bag_cache_ == null) {
+      resolved_bag_cache_ = new ResolvedBagCache();
+    }
+    return resolved_bag_cache_;
+  }
+
   //  private:
   //   DISALLOW_COPY_AND_ASSIGN(ApkAssets);
   //
@@ -91,6 +100,7 @@ public class CppApkAssets {
   Asset resources_asset_;
   Asset idmap_asset_;
   private LoadedArsc loaded_arsc_;
+  private ResolvedBagCache resolved_bag_cache_;
   // };
   //
   // }  // namespace android
@@ -17,14 +17,13 @@ import static org.robolectric.res.android.Util.isTruthy;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.robolectric.res.Fs;
 import org.robolectric.res.android.AssetDir.FileInfo;
 import org.robolectric.res.android.CppApkAssets.ForEachFileCallback;
@@ -39,6 +38,7 @@ import org.robolectric.res.android.ResourceTypes.ResTable_map;
 import org.robolectric.res.android.ResourceTypes.ResTable_map_entry;
 import org.robolectric.res.android.ResourceTypes.ResTable_type;
 import org.robolectric.res.android.ResourceTypes.Res_value;
+import org.robolectric.util.TestProfiler;
 
 // transliterated from
 // https://android.googlesource.com/platform/frameworks/base/+/android-9.0.0_r12/libs/androidfw/include/androidfw/AssetManager2.h
@@ -159,6 +159,71 @@ public class CppAssetManager2 {
   static class FilteredConfigGroup {
     final List<ResTable_config> configurations = new ArrayList<>();
     final List<ResTable_type> types = new ArrayList<>();
+
+    // Not part of AssetManager2: the selection made for each entry index of the type, computed on
+    // first lookup of that entry. Since the group is rebuilt whenever the configuration changes,
+    // later lookups of the same entry become an array read instead of a series of
+    // ResTable_config.isBetterThan() comparisons.
+    //
+    // Lookups normally hold the AssetManager's lock, but this doesn't rely on it: each entry's
+    // type index and offset are packed into one element of an AtomicLongArray, so a reader sees
+    // both from the same computation, and the array is created with all elements 0, meaning "not
+    // computed", before the volatile field publishes it. Threads that race to compute an entry
+    // store the same value.
+    private static final int NOT_COMPUTED = 0;
+    int entry_count;
+    private volatile AtomicLongArray best_by_entry;
+
+    // Returns the index into `types` of the best configuration that defines `entry_idx`, or -1 if
+    // none of them do. The caller must check that entry_idx < entry_count.
+    int GetBestTypeIndex(
+        int entry_idx, ResTable_config desired_config, boolean package_is_overlay) {
+      AtomicLongArray best = best_by_entry;
+      if (best == null) {
+        best_by_entry = best = new AtomicLongArray(entry_count);
+      }
+
+      long packed = best.get(entry_idx);
+      if (packed != NOT_COMPUTED) {
+        return unpackTypeIndex(packed);
+      }
+
+      int best_index = -1;
+      ResTable_config best_config = null;
+      int best_offset = 0;
+      int type_count = configurations.size();
+      for (int i = 0; i < type_count; i++) {
+        ResTable_config this_config = configurations.get(i);
+        if ((best_config == null || this_config.isBetterThan(best_config, desired_config))
+            || (package_is_overlay && this_config.compare(best_config) == 0)) {
+          int offset = LoadedPackage.GetEntryOffset(types.get(i), entry_idx);
+          if (offset == ResTable_type.NO_ENTRY) {
+            continue;
+          }
+          best_index = i;
+          best_config = this_config;
+          best_offset = offset;
+        }
+      }
+      best.set(entry_idx, pack(best_index, best_offset));
+      return best_index;
+    }
+
+    // Returns the entry offset of the configuration GetBestTypeIndex() selected for `entry_idx`.
+    // Only valid once GetBestTypeIndex() has been called for `entry_idx` on this group and
+    // returned an index >= 0.
+    int GetBestOffset(int entry_idx) {
+      return (int) best_by_entry.get(entry_idx);
+    }
+
+    // Stores the index plus one, so that no selection, -1, is distinct from NOT_COMPUTED.
+    private static long pack(int type_index, int offset) {
+      return ((long) (type_index + 1) << 32) | (offset & 0xffffffffL);
+    }
+
+    private static int unpackTypeIndex(long packed) {
+      return (int) (packed >>> 32) - 1;
+    }
   }
 
   // Represents an single package.
@@ -171,9 +236,20 @@ public class CppAssetManager2 {
     // candidate configuration when looking up resources.
     ByteBucketArray<FilteredConfigGroup> filtered_configs_;
 
+    // Not part of AssetManager2: the same lists for lookups with a density override, keyed by the
+    // override density. Cleared along with filtered_configs_. Concurrent, like the selections in
+    // FilteredConfigGroup, so filling it lazily doesn't depend on the AssetManager's lock.
+    final Map<Integer, ByteBucketArray<FilteredConfigGroup>> density_filtered_configs_ =
+        new ConcurrentHashMap<>();
+
     public ConfiguredPackage(LoadedPackage package_) {
       this.loaded_package_ = package_;
     }
+
+    ByteBucketArray<FilteredConfigGroup> GetDensityFilteredConfigs(ResTable_config config) {
+      return density_filtered_configs_.computeIfAbsent(
+          config.density, density -> BuildFilteredConfigs(loaded_package_, config));
+    }
   }
 
   // Represents a logical package, which can be made up of many individual packages. Each package
@@ -208,7 +284,9 @@ public class CppAssetManager2 {
   // Cached set of bags. These are cached because they can inherit keys from parent bags,
   // which involves some calculation.
   //  private std.unordered_map<int, util.unique_cptr<ResolvedBag>> cached_bags_;
-  private final Map<Integer, ResolvedBag> cached_bags_ = new HashMap<>();
+  // Unlike in AssetManager2, the bags are shared with every other AssetManager that has the same
+  // ApkAssets and configuration; see ResolvedBagCache.
+  private ResolvedBagCache.Table cached_bags_ = ResolvedBagCache.Table.unshared();
   //  };
 
   // final ResolvedBag.Entry* begin(final ResolvedBag* bag) { return bag.entries; }
@@ -276,10 +354,10 @@ public class CppAssetManager2 {
     apk_assets_ = apk_assets;
     BuildDynamicRefTable();
     RebuildFilterList();
-    if (invalidate_caches) {
-      //      InvalidateCaches(static_cast<int>(-1));
-      InvalidateCaches(-1);
-    }
+    // The set of ApkAssets is part of the shared bag cache's key, so the cache has to be switched
+    // over even when nothing needs to be purged.
+    //      InvalidateCaches(static_cast<int>(-1));
+    InvalidateCaches(invalidate_caches ? -1 : 0);
     return true;
   }
 
@@ -624,7 +702,7 @@ public class CppAssetManager2 {
     // Select our configuration or generate a density override configuration.
     ResTable_config desired_config = configuration_;
     if (density_override != 0 && density_override != configuration_.density) {
-      density_override_config = configuration_;
+      density_override_config = new ResTable_config(configuration_);
       density_override_config.density = density_override;
       desired_config = density_override_config;
     }
@@ -652,14 +730,9 @@ public class CppAssetManager2 {
     LoadedPackage best_package = null;
     ResTable_type best_type = null;
     ResTable_config best_config = null;
-    ResTable_config best_config_copy;
     int best_offset = 0;
     int type_flags = 0;
 
-    // If desired_config is the same as the set configuration, then we can use our filtered list
-    // and we don't need to match the configurations, since they already matched.
-    boolean use_fast_path = desired_config == configuration_;
-
     for (int pi = 0; pi < package_count; pi++) {
       ConfiguredPackage loaded_package_impl = package_group.packages_.get(pi);
       LoadedPackage loaded_package = loaded_package_impl.loaded_package_;
@@ -689,8 +762,29 @@ public class CppAssetManager2 {
       // If the package is an overlay, then even configurations that are the same MUST be chosen.
       boolean package_is_overlay = loaded_package.IsOverlay();
 
-      FilteredConfigGroup filtered_group = loaded_package_impl.filtered_configs_.get(type_idx);
-      if (use_fast_path) {
+      // Unlike AssetManager2, which matches every configuration of the type when a density
+      // override is in effect, the filtered list for each override density is kept around too, so
+      // both kinds of lookup can skip calling ResTable_config.match().
+      ByteBucketArray<FilteredConfigGroup> filtered_configs =
+          desired_config == configuration_
+              ? loaded_package_impl.filtered_configs_
+              : loaded_package_impl.GetDensityFilteredConfigs(desired_config);
+      FilteredConfigGroup filtered_group = filtered_configs.get(type_idx);
+      if (best_config == null
+          && local_entry_idx >= 0
+          && local_entry_idx < filtered_group.entry_count) {
+        // Nothing has been selected from an earlier package of the group, so the result only
+        // depends on this package and can be looked up in the precomputed table.
+        int best_index =
+            filtered_group.GetBestTypeIndex(local_entry_idx, desired_config, package_is_overlay);
+        if (best_index >= 0) {
+          best_cookie = cookie;
+          best_package = loaded_package;
+          best_type = filtered_group.types.get(best_index);
+          best_config = filtered_group.configurations.get(best_index);
+          best_offset = filtered_group.GetBestOffset(local_entry_idx);
+        }
+      } else {
         List<ResTable_config> candidate_configs = filtered_group.configurations;
         int type_count = candidate_configs.size();
         for (int i = 0; i < type_count; i++) {
@@ -715,36 +809,6 @@ public class CppAssetManager2 {
             best_offset = offset;
           }
         }
-      } else {
-        // This is the slower path, which doesn't use the filtered list of configurations.
-        // Here we must read the ResTable_config from the mmapped APK, convert it to host endianness
-        // and fill in any new fields that did not exist when the APK was compiled.
-        // Furthermore when selecting configurations we can't just record the pointer to the
-        // ResTable_config, we must copy it.
-        // auto iter_end = type_spec.types + type_spec.type_count;
-        //   for (auto iter = type_spec.types; iter != iter_end; ++iter) {
-        for (ResTable_type type : type_spec.types) {
-          ResTable_config this_config = ResTable_config.fromDtoH(type.config);
-
-          if (this_config.match(desired_config)) {
-            if ((best_config == null || this_config.isBetterThan(best_config, desired_config))
-                || (package_is_overlay && this_config.compare(best_config) == 0)) {
-              // The configuration matches and is better than the previous selection.
-              // Find the entry value if it exists for this configuration.
-              int offset = LoadedPackage.GetEntryOffset(type, local_entry_idx);
-              if (offset == ResTable_type.NO_ENTRY) {
-                continue;
-              }
-
-              best_cookie = cookie;
-              best_package = loaded_package;
-              best_type = type;
-              best_config_copy = this_config;
-              best_config = best_config_copy;
-              best_offset = offset;
-            }
-          }
-        }
       }
     }
 
@@ -856,6 +920,7 @@ public class CppAssetManager2 {
       Ref<Res_value> out_value,
       final Ref<ResTable_config> out_selected_config,
       final Ref<Integer> out_flags) {
+    profileResourceLookup(resid);
     final Ref<FindEntryResult> entry = new Ref<>(null);
     ApkAssetsCookie cookie =
         FindEntry(resid, density_override, false /* stop_at_first_match */, entry);
@@ -946,6 +1011,7 @@ public class CppAssetManager2 {
   // been seen while traversing bag parents.
   //  final ResolvedBag* GetBag(int resid);
   public final ResolvedBag GetBag(int resid) {
+    profileResourceLookup(resid);
     List<Integer> found_resids = new ArrayList<>();
     return GetBag(resid, found_resids);
   }
@@ -1220,6 +1286,13 @@ public class CppAssetManager2 {
     return result2;
   }
 
+  private void profileResourceLookup(int resid) {
+    TestProfiler profiler = TestProfiler.getInstance();
+    if (profiler.isEnabled()) {
+      profiler.resourceResolved(resid, this::GetResourceName);
+    }
+  }
+
   String GetResourceName(int resid) {
     ResourceName out_name = new ResourceName();
     if (GetResourceName(resid, out_name)) {
@@ -1318,52 +1391,57 @@ public class CppAssetManager2 {
         //
         // // Re-create it.
         // new (impl.filtered_configs_) ByteBucketArray<FilteredConfigGroup>();
-        impl.filtered_configs_ =
-            new ByteBucketArray<FilteredConfigGroup>(new FilteredConfigGroup()) {
-              @Override
-              FilteredConfigGroup newInstance() {
-                return new FilteredConfigGroup();
-              }
-            };
-
-        // Create the filters here.
-        impl.loaded_package_.ForEachTypeSpec(
-            (TypeSpec spec, byte type_index) -> {
-              FilteredConfigGroup configGroup = impl.filtered_configs_.editItemAt(type_index);
-              // const auto iter_end = spec->types + spec->type_count;
-              //   for (auto iter = spec->types; iter != iter_end; ++iter) {
-              for (ResTable_type iter : spec.types) {
-                ResTable_config this_config = ResTable_config.fromDtoH(iter.config);
-                if (this_config.match(configuration_)) {
-                  configGroup.configurations.add(this_config);
-                  configGroup.types.add(iter);
-                }
-              }
-            });
+        impl.filtered_configs_ = BuildFilteredConfigs(impl.loaded_package_, configuration_);
+        impl.density_filtered_configs_.clear();
       }
     }
   }
 
+  // Creates the lists of types in `loaded_package` that match `config`.
+  static ByteBucketArray<FilteredConfigGroup> BuildFilteredConfigs(
+      LoadedPackage loaded_package, ResTable_config config) {
+    ByteBucketArray<FilteredConfigGroup> filtered_configs =
+        new ByteBucketArray<FilteredConfigGroup>(new FilteredConfigGroup()) {
+          @Override
+          FilteredConfigGroup newInstance() {
+            return new FilteredConfigGroup();
+          }
+        };
+
+    // Create the filters here.
+    loaded_package.ForEachTypeSpec(
+        (TypeSpec spec, byte type_index) -> {
+          FilteredConfigGroup configGroup = filtered_configs.editItemAt(type_index);
+          configGroup.entry_count = dtohl(spec.type_spec.entryCount);
+          // const auto iter_end = spec->types + spec->type_count;
+          //   for (auto iter = spec->types; iter != iter_end; ++iter) {
+          for (ResTable_type iter : spec.types) {
+            ResTable_config this_config = ResTable_config.fromDtoH(iter.config);
+            if (this_config.match(config)) {
+              configGroup.configurations.add(this_config);
+              configGroup.types.add(iter);
+            }
+          }
+        });
+    return filtered_configs;
+  }
+
   // Purge all resources that are cached and vary by the configuration axis denoted by the
   // bitmask `diff`.
   //  void InvalidateCaches(int diff);
   private void InvalidateCaches(int diff) {
-    if (diff == 0xffffffff) {
-      // Everything must go.
-      cached_bags_.clear();
+    // Rather than purging bags that other AssetManagers may still be using, switch over to the
+    // shared table for the new ApkAssets and configuration. A newly created table starts out with
+    // the bags from the current one that don't vary with respect to what changed (diff).
+    ResolvedBagCache shared_cache = ResolvedBagCache.forApkAssets(apk_assets_);
+    if (shared_cache != null) {
+      cached_bags_ = shared_cache.getTable(apk_assets_, configuration_, cached_bags_, diff);
       return;
     }
 
     // Be more conservative with what gets purged. Only if the bag has other possible
     // variations with respect to what changed (diff) should we remove it.
-    // for (auto iter = cached_bags_.cbegin(); iter != cached_bags_.cend();) {
-    for (Integer key : new ArrayList<>(cached_bags_.keySet())) {
-      // if (diff & iter.second.type_spec_flags) {
-      if (isTruthy(diff & cached_bags_.get(key).type_spec_flags)) {
-        // iter = cached_bags_.erase(iter);
-        cached_bags_.remove(key);
-      }
-    }
+    cached_bags_.purge(diff);
   }
 
   // Creates a new Theme from this AssetManager.
@@ -1463,9 +1541,10 @@ public class CppAssetManager2 {
       // const auto bag_iter_end = reverse_bag_iterator(begin(bag));
       //     for (auto bag_iter = reverse_bag_iterator(end(bag)); bag_iter != bag_iter_end;
       // ++bag_iter) {
-      List<Entry> bagEntries = new ArrayList<>(Arrays.asList(bag.entries));
-      Collections.reverse(bagEntries);
-      for (ResolvedBag.Entry bag_iter : bagEntries) {
+      // Bags may be shared with other AssetManagers, so walk the entries in place rather than
+      // copying them.
+      for (int bag_idx = bag.entries.length - 1; bag_idx >= 0; bag_idx--) {
+        final ResolvedBag.Entry bag_iter = bag.entries[bag_idx];
         //   final int attr_resid = bag_iter.key;
         final int attr_resid = bag_iter == null ? 0 : bag_iter.key;
 
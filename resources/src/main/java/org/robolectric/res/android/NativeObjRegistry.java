@@ -2,24 +2,29 @@ package org.robolectric.res.android;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A unique id per object registry. Used to emulate android platform behavior of storing a long
  * which represents a pointer to an object.
+ *
+ * <p>Looking up an object by id, which happens far more often than registering one, doesn't take
+ * a lock. Registration, unregistration and updates are serialized.
  */
 public class NativeObjRegistry<T> {
 
   private static final int INITIAL_ID = 1;
+  private static final int INITIAL_CAPACITY = 16;
 
   private final String name;
   private final boolean debug;
-  private final BiMap<Long, T> nativeObjToIdMap = HashBiMap.create();
+  private volatile IdTable<T> idToNativeObjTable = new IdTable<>(INITIAL_CAPACITY);
+  private final Map<T, Long> nativeObjToIdMap = new HashMap<>();
   private final Map<Long, DebugInfo> idToDebugInfoMap;
 
   private long nextId = INITIAL_ID;
@@ -51,13 +56,13 @@ public class NativeObjRegistry<T> {
   @Deprecated
   public synchronized long getNativeObjectId(T o) {
     checkNotNull(o);
-    Long nativeId = nativeObjToIdMap.inverse().get(o);
+    Long nativeId = nativeObjToIdMap.get(o);
     if (nativeId == null) {
       nativeId = nextId;
       if (debug) {
         System.out.printf("NativeObjRegistry %s: register %d -> %s%n", name, nativeId, o);
       }
-      nativeObjToIdMap.put(nativeId, o);
+      put(nativeId, o);
       nextId++;
     }
     return nativeId;
@@ -70,7 +75,7 @@ public class NativeObjRegistry<T> {
    */
   public synchronized long register(T o) {
     checkNotNull(o);
-    Long nativeId = nativeObjToIdMap.inverse().get(o);
+    Long nativeId = nativeObjToIdMap.get(o);
     if (nativeId != null) {
       if (debug) {
         DebugInfo debugInfo = idToDebugInfoMap.get(nativeId);
@@ -88,7 +93,7 @@ public class NativeObjRegistry<T> {
       System.out.printf("NativeObjRegistry %s: register %d -> %s%n", name, nativeId, o);
       idToDebugInfoMap.put(nativeId, new DebugInfo(new Trace(o)));
     }
-    nativeObjToIdMap.put(nativeId, o);
+    put(nativeId, o);
     nextId++;
     return nativeId;
   }
@@ -101,7 +106,10 @@ public class NativeObjRegistry<T> {
    *     unregistered.
    */
   public synchronized T unregister(long nativeId) {
-    T o = nativeObjToIdMap.remove(nativeId);
+    T o = idToNativeObjTable.remove(nativeId);
+    if (o != null) {
+      nativeObjToIdMap.remove(o);
+    }
     if (debug) {
       System.out.printf("NativeObjRegistry %s: unregister %d -> %s%n", name, nativeId, o);
       new RuntimeException("unregister debug").printStackTrace(System.out);
@@ -126,19 +134,22 @@ public class NativeObjRegistry<T> {
   /** @deprecated Use {@link #unregister(long)} instead. */
   @Deprecated
   public synchronized void unregister(T removed) {
-    nativeObjToIdMap.inverse().remove(removed);
+    Long nativeId = nativeObjToIdMap.remove(removed);
+    if (nativeId != null) {
+      idToNativeObjTable.remove(nativeId);
+    }
   }
 
   /** Retrieve the native object for given id. Throws if object with that id cannot be found */
-  public synchronized T getNativeObject(long nativeId) {
-    T object = nativeObjToIdMap.get(nativeId);
+  public T getNativeObject(long nativeId) {
+    T object = idToNativeObjTable.get(nativeId);
     if (object != null) {
       return object;
     } else {
       throw new NullPointerException(
           String.format(
               "Could not find object with nativeId: %d. Currently registered ids: %s",
-              nativeId, nativeObjToIdMap.keySet()));
+              nativeId, idToNativeObjTable.ids()));
     }
   }
 
@@ -148,31 +159,166 @@ public class NativeObjRegistry<T> {
    * @throws IllegalStateException if no object was registered with the given id before
    */
   public synchronized void update(long nativeId, T o) {
-    T previous = nativeObjToIdMap.get(nativeId);
+    checkNotNull(o);
+    T previous = idToNativeObjTable.get(nativeId);
     if (previous == null) {
       throw new IllegalStateException("Native id " + nativeId + " was never registered");
     }
+    Long existingId = nativeObjToIdMap.get(o);
+    if (existingId != null && existingId != nativeId) {
+      throw new IllegalArgumentException("value already present: " + o);
+    }
     if (debug) {
       System.out.printf("NativeObjRegistry %s: update %d -> %s%n", name, nativeId, o);
       idToDebugInfoMap.put(nativeId, new DebugInfo(new Trace(o)));
     }
-    nativeObjToIdMap.put(nativeId, o);
+    nativeObjToIdMap.remove(previous);
+    put(nativeId, o);
   }
 
   /**
    * Similar to {@link #getNativeObject(long)} but returns null if object with given id cannot be
    * found.
    */
-  public synchronized T peekNativeObject(long nativeId) {
-    return nativeObjToIdMap.get(nativeId);
+  public T peekNativeObject(long nativeId) {
+    return idToNativeObjTable.get(nativeId);
   }
 
   /** WARNING -- dangerous! Call {@link #unregister(long)} instead! */
   public synchronized void clear() {
     nextId = INITIAL_ID;
+    idToNativeObjTable = new IdTable<>(INITIAL_CAPACITY);
     nativeObjToIdMap.clear();
   }
 
+  // Must be called with the lock held.
+  private void put(long nativeId, T o) {
+    IdTable<T> table = idToNativeObjTable;
+    if (!table.put(nativeId, o)) {
+      // Out of free slots; copy the live entries into a new table and publish it, so that
+      // concurrent readers keep seeing a consistent (if slightly stale) table.
+      int capacity = table.capacity();
+      while (table.size() * 2 >= capacity) {
+        capacity *= 2;
+      }
+      IdTable<T> newTable = new IdTable<>(capacity);
+      table.copyInto(newTable);
+      newTable.put(nativeId, o);
+      idToNativeObjTable = newTable;
+    }
+    nativeObjToIdMap.put(o, nativeId);
+  }
+
+  /**
+   * An open-addressed map from id to object that can be read without locking while a single
+   * writer (holding the registry's lock) modifies it.
+   *
+   * <p>Ids are never reused within a table (they only go back to {@link #INITIAL_ID} when the
+   * registry is cleared, which replaces the table), so a removed entry simply keeps its id with a
+   * null object. Id 0 marks a free slot.
+   */
+  private static final class IdTable<T> {
+    private final AtomicLongArray ids;
+    private final AtomicReferenceArray<T> objects;
+    private final int mask;
+    private final int maxUsed;
+    private int used;
+    private int size;
+
+    IdTable(int capacity) {
+      ids = new AtomicLongArray(capacity);
+      objects = new AtomicReferenceArray<>(capacity);
+      mask = capacity - 1;
+      maxUsed = capacity / 4 * 3;
+    }
+
+    T get(long id) {
+      for (int i = indexFor(id); ; i = (i + 1) & mask) {
+        long slotId = ids.get(i);
+        if (slotId == id) {
+          return objects.get(i);
+        }
+        if (slotId == 0) {
+          return null;
+        }
+      }
+    }
+
+    /** Returns false if there's no room left for a new id. */
+    boolean put(long id, T o) {
+      int i = indexFor(id);
+      long slotId;
+      while ((slotId = ids.get(i)) != 0 && slotId != id) {
+        i = (i + 1) & mask;
+      }
+      if (slotId == 0) {
+        if (used == maxUsed) {
+          return false;
+        }
+        // Publish the object before the id, so a reader that finds the id also finds the object.
+        objects.set(i, o);
+        ids.set(i, id);
+        used++;
+        size++;
+      } else {
+        if (objects.get(i) == null) {
+          size++;
+        }
+        objects.set(i, o);
+      }
+      return true;
+    }
+
+    T remove(long id) {
+      for (int i = indexFor(id); ; i = (i + 1) & mask) {
+        long slotId = ids.get(i);
+        if (slotId == id) {
+          T o = objects.getAndSet(i, null);
+          if (o != null) {
+            size--;
+          }
+          return o;
+        }
+        if (slotId == 0) {
+          return null;
+        }
+      }
+    }
+
+    void copyInto(IdTable<T> other) {
+      for (int i = 0; i < ids.length(); i++) {
+        T o = objects.get(i);
+        if (o != null) {
+          other.put(ids.get(i), o);
+        }
+      }
+    }
+
+    List<Long> ids() {
+      List<Long> result = new ArrayList<>();
+      for (int i = 0; i < ids.length(); i++) {
+        if (objects.get(i) != null) {
+          result.add(ids.get(i));
+        }
+      }
+      result.sort(null);
+      return result;
+    }
+
+    int capacity() {
+      return ids.length();
+    }
+
+    int size() {
+      return size;
+    }
+
+    private int indexFor(long id) {
+      long h = id * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32)) & mask;
+    }
+  }
+
   private static class DebugInfo {
     final Trace registrationTrace;
     final List<Trace> unregistrationTraces = new ArrayList<>();
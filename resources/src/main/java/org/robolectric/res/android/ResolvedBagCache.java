@@ -0,0 +1,211 @@
+package org.robolectric.res.android;
+
+import static org.robolectric.res.android.Util.isTruthy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.robolectric.res.android.CppAssetManager2.ResolvedBag;
+
+/**
+ * Resolved bags shared by every {@link CppAssetManager2} that has the same set of {@link
+ * CppApkAssets} and the same configuration.
+ *
+ * <p>Bags of framework styles and themes are identical for every AssetManager created in a sandbox,
+ * so rather than rebuilding them for each new Activity's AssetManager they are kept in a {@link
+ * Table} per (apk assets, configuration) pair. The cache is owned by the first {@link CppApkAssets}
+ * in the list (normally the framework apk), so it lives exactly as long as the sandbox that loaded
+ * it.
+ *
+ * <p>Bags handed out from the cache are shared and must be treated as immutable.
+ */
+public final class ResolvedBagCache {
+
+  // Upper bound on the number of (apk assets, configuration) pairs kept per owner; tests that
+  // cycle through many configurations shouldn't keep every variant alive.
+  private static final int MAX_TABLES = 16;
+
+  private final List<Table> tables = new ArrayList<>();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  ResolvedBagCache() {}
+
+  /** Returns the cache shared by all AssetManagers using {@code apk_assets}, or null if none. */
+  static ResolvedBagCache forApkAssets(List<CppApkAssets> apk_assets) {
+    if (apk_assets == null || apk_assets.isEmpty()) {
+      return null;
+    }
+    return apk_assets.get(0).GetResolvedBagCache();
+  }
+
+  /**
+   * Returns the table of bags for the given apk assets and configuration.
+   *
+   * <p>If no such table exists yet, a new one is created and seeded with the bags from {@code
+   * previous} that don't vary along any of the axes in {@code diff}, mirroring the selective purge
+   * an AssetManager performs when its configuration changes.
+   */
+  synchronized Table getTable(
+      List<CppApkAssets> apk_assets, ResTable_config config, Table previous, int diff) {
+    for (int i = 0; i < tables.size(); i++) {
+      Table table = tables.get(i);
+      if (table.matches(apk_assets, config)) {
+        if (i != tables.size() - 1) {
+          tables.remove(i);
+          tables.add(table);
+        }
+        return table;
+      }
+    }
+
+    Table table = new Table(this, apk_assets, config);
+    if (previous != null && diff != 0xffffffff) {
+      previous.copyInto(table, diff);
+    }
+    if (tables.size() >= MAX_TABLES) {
+      tables.remove(0);
+    }
+    tables.add(table);
+    return table;
+  }
+
+  /** Returns the number of bag lookups that were satisfied from this cache. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of bag lookups that had to be resolved from the resource table. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  private void record(boolean hit) {
+    (hit ? hitCount : missCount).incrementAndGet();
+  }
+
+  /** Resolved bags for a single (apk assets, configuration) pair, keyed by resource id. */
+  static final class Table {
+    private final ResolvedBagCache owner;
+    private final List<CppApkAssets> apk_assets;
+    private final ResTable_config config;
+
+    // Open-addressed map from resid to bag. Resource ids are never 0, so 0 marks an empty slot.
+    private int[] keys = new int[64];
+    private ResolvedBag[] values = new ResolvedBag[64];
+    private int size;
+
+    Table(ResolvedBagCache owner, List<CppApkAssets> apk_assets, ResTable_config config) {
+      this.owner = owner;
+      this.apk_assets = new ArrayList<>(apk_assets);
+      this.config = new ResTable_config(config);
+    }
+
+    /** Creates a table that isn't shared with any other AssetManager. */
+    static Table unshared() {
+      return new Table(null, new ArrayList<>(), new ResTable_config());
+    }
+
+    private boolean matches(List<CppApkAssets> other_apk_assets, ResTable_config other_config) {
+      if (apk_assets.size() != other_apk_assets.size()) {
+        return false;
+      }
+      for (int i = 0; i < apk_assets.size(); i++) {
+        if (apk_assets.get(i) != other_apk_assets.get(i)) {
+          return false;
+        }
+      }
+      return config.diff(other_config) == 0;
+    }
+
+    synchronized ResolvedBag get(int resid) {
+      int mask = keys.length - 1;
+      for (int i = mix(resid) & mask; ; i = (i + 1) & mask) {
+        int key = keys[i];
+        if (key == resid) {
+          ResolvedBag bag = values[i];
+          recordLookup(true);
+          return bag;
+        }
+        if (key == 0) {
+          recordLookup(false);
+          return null;
+        }
+      }
+    }
+
+    synchronized void put(int resid, ResolvedBag bag) {
+      if ((size + 1) * 4 > keys.length * 3) {
+        rehash(keys.length * 2);
+      }
+      int mask = keys.length - 1;
+      int i = mix(resid) & mask;
+      while (keys[i] != 0 && keys[i] != resid) {
+        i = (i + 1) & mask;
+      }
+      if (keys[i] == 0) {
+        keys[i] = resid;
+        size++;
+      }
+      values[i] = bag;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    /** Removes the bags that vary along any of the configuration axes in {@code diff}. */
+    synchronized void purge(int diff) {
+      int[] oldKeys = keys;
+      ResolvedBag[] oldValues = values;
+      keys = new int[64];
+      values = new ResolvedBag[64];
+      size = 0;
+      if (diff == 0xffffffff) {
+        return;
+      }
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0 && !isTruthy(diff & oldValues[i].type_spec_flags)) {
+          put(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+
+    private synchronized void copyInto(Table other, int diff) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != 0 && !isTruthy(diff & values[i].type_spec_flags)) {
+          other.put(keys[i], values[i]);
+        }
+      }
+    }
+
+    private void recordLookup(boolean hit) {
+      if (owner != null) {
+        owner.record(hit);
+      }
+    }
+
+    private void rehash(int capacity) {
+      int[] oldKeys = keys;
+      ResolvedBag[] oldValues = values;
+      keys = new int[capacity];
+      values = new ResolvedBag[capacity];
+      int mask = capacity - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldKeys[j] != 0) {
+          int i = mix(oldKeys[j]) & mask;
+          while (keys[i] != 0) {
+            i = (i + 1) & mask;
+          }
+          keys[i] = oldKeys[j];
+          values[i] = oldValues[j];
+        }
+      }
+    }
+
+    private static int mix(int resid) {
+      int h = resid * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+  }
+}
@@ -1,69 +1,207 @@
 package org.robolectric.res.builder;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.robolectric.res.Fs;
 import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 /**
  * An XML block is a parsed representation of a resource XML file. Similar in nature to Android's
  * XmlBlock class.
+ *
+ * <p>Each file is compiled once into flat int arrays (events, elements, attributes) referencing a
+ * shared string pool, so parsers can walk it from any number of threads without holding on to a
+ * DOM. Compiled blocks are softly cached per path, up to {@link #MAX_CACHED_BLOCKS} of them, and
+ * recompiled if the file changes.
  */
+@SuppressWarnings("NewApi")
 public class XmlBlock {
 
-  private static DocumentBuilder documentBuilder;
+  // Same values as the corresponding XmlPullParser constants.
+  public static final int START_TAG = 2;
+  public static final int END_TAG = 3;
+  public static final int TEXT = 4;
+  public static final int PROCESSING_INSTRUCTION = 8;
+
+  private static final int MAX_CACHED_BLOCKS = 2000;
+
+  private static final String XMLNS_ATTRIBUTE_NS_URI = "http://www.w3.org/2000/xmlns/";
+  private static final String REPORT_CDATA_PROPERTY =
+      "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+  // Element record layout.
+  private static final int ELEMENT_NAME = 0;
+  private static final int ELEMENT_NAMESPACE = 1;
+  private static final int ELEMENT_FIRST_ATTRIBUTE = 2;
+  private static final int ELEMENT_ATTRIBUTE_COUNT = 3;
+  private static final int ELEMENT_FIRST_TEXT_CHUNK = 4;
+  private static final int ELEMENT_END_TEXT_CHUNK = 5;
+  private static final int ELEMENT_STRIDE = 6;
+
+  // Attribute record layout.
+  private static final int ATTRIBUTE_NAMESPACE = 0;
+  private static final int ATTRIBUTE_NAME = 1;
+  private static final int ATTRIBUTE_VALUE = 2;
+  private static final int ATTRIBUTE_STRIDE = 3;
+
+  // XMLInputFactory implementations aren't guaranteed to be thread-safe.
+  private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY =
+      ThreadLocal.withInitial(XmlBlock::newXmlInputFactory);
+  private static final Cache<Path, CacheEntry> CACHE =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_BLOCKS).softValues().build();
 
-  private final Document document;
   private final Path path;
   private final String packageName;
 
-  private static synchronized Document parse(Path xmlFile) {
-    InputStream inputStream = null;
+  private final String[] strings;
+  private final int[] eventTypes;
+  private final int[] eventData;
+  private final int[] elements;
+  private final int[] attributes;
+  private final int[] textChunks;
+
+  @Nullable private Document document;
+
+  public static XmlBlock create(Path path, String packageName) {
+    return new XmlBlock(compile(path), path, packageName);
+  }
+
+  /** Compiles an already parsed DOM, for callers which have a {@link Document} in hand. */
+  public static XmlBlock create(Document document, Path path, String packageName) {
+    Builder builder = new Builder();
+    builder.addNode(document.getDocumentElement());
+    XmlBlock block = builder.build(path, packageName);
+    block.document = document;
+    return block;
+  }
+
+  private static XmlBlock compile(Path path) {
+    BasicFileAttributes attrs = null;
     try {
-      if (documentBuilder == null) {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        documentBuilderFactory.setNamespaceAware(true);
-        documentBuilderFactory.setIgnoringComments(true);
-        documentBuilderFactory.setIgnoringElementContentWhitespace(true);
-        documentBuilder = documentBuilderFactory.newDocumentBuilder();
-      }
-      inputStream = Fs.getInputStream(xmlFile);
-      return documentBuilder.parse(inputStream);
-    } catch (ParserConfigurationException | IOException | SAXException e) {
-      throw new RuntimeException(e);
-    } finally {
-      if (inputStream != null)
-        try {
-          inputStream.close();
-        } catch (IOException e) {
-          // ignore
-        }
+      attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException | UnsupportedOperationException e) {
+      // fall through and let the parse report the problem
     }
+
+    CacheEntry cacheEntry = CACHE.getIfPresent(path);
+    if (cacheEntry != null && attrs != null && cacheEntry.matches(attrs)) {
+      return cacheEntry.block;
+    }
+
+    XmlBlock block = parse(path);
+    if (attrs != null) {
+      CACHE.put(path, new CacheEntry(block, attrs));
+    }
+    return block;
   }
 
-  @Nullable
-  public static XmlBlock create(Path path, String packageName) {
-    Document document = parse(path);
+  private static XmlBlock parse(Path xmlFile) {
+    try (InputStream inputStream = Fs.getInputStream(xmlFile)) {
+      XMLStreamReader reader = XML_INPUT_FACTORY.get().createXMLStreamReader(inputStream);
+      try {
+        Builder builder = new Builder();
+        builder.addAll(reader);
+        return builder.build(xmlFile, "");
+      } finally {
+        reader.close();
+      }
+    } catch (IOException | XMLStreamException e) {
+      throw new RuntimeException("error parsing " + xmlFile, e);
+    }
+  }
 
-    return document == null ? null : new XmlBlock(document, path, packageName);
+  private static XMLInputFactory newXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    if (factory.isPropertySupported(REPORT_CDATA_PROPERTY)) {
+      // Otherwise the JDK's parser reports CDATA sections as plain characters.
+      factory.setProperty(REPORT_CDATA_PROPERTY, true);
+    }
+    return factory;
   }
 
-  private XmlBlock(Document document, Path path, String packageName) {
-    this.document = document;
+  private XmlBlock(
+      Path path,
+      String packageName,
+      String[] strings,
+      int[] eventTypes,
+      int[] eventData,
+      int[] elements,
+      int[] attributes,
+      int[] textChunks) {
     this.path = path;
     this.packageName = packageName;
+    this.strings = strings;
+    this.eventTypes = eventTypes;
+    this.eventData = eventData;
+    this.elements = elements;
+    this.attributes = attributes;
+    this.textChunks = textChunks;
   }
 
-  public Document getDocument() {
+  private XmlBlock(XmlBlock other, Path path, String packageName) {
+    this(
+        path,
+        packageName,
+        other.strings,
+        other.eventTypes,
+        other.eventData,
+        other.elements,
+        other.attributes,
+        other.textChunks);
+  }
+
+  /**
+   * Returns the block as a DOM. Unless the block was created from a {@link Document}, the file is
+   * read and parsed again the first time this is called, and the resulting DOM is retained for
+   * later calls.
+   *
+   * @throws RuntimeException if the file can no longer be read or parsed
+   * @deprecated XmlBlock no longer retains a DOM; use the event accessors instead.
+   */
+  @Deprecated
+  public synchronized Document getDocument() {
+    if (document == null) {
+      document = parseDocument(path);
+    }
     return document;
   }
 
+  private static Document parseDocument(Path path) {
+    try (InputStream inputStream = Fs.getInputStream(path)) {
+      DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+      documentBuilderFactory.setNamespaceAware(true);
+      documentBuilderFactory.setIgnoringComments(true);
+      documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+      DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+      return documentBuilder.parse(inputStream);
+    } catch (ParserConfigurationException | IOException | SAXException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public Path getPath() {
     return path;
   }
@@ -71,4 +209,382 @@ public class XmlBlock {
   public String getPackageName() {
     return packageName;
   }
+
+  /**
+   * Returns the number of events between the start of the root element and its end, inclusive.
+   */
+  public int getEventCount() {
+    return eventTypes.length;
+  }
+
+  /**
+   * Returns {@link #START_TAG}, {@link #END_TAG}, {@link #TEXT} or {@link #PROCESSING_INSTRUCTION}.
+   */
+  public int getEventType(int event) {
+    return eventTypes[event];
+  }
+
+  /** Returns the element index for a tag event, or -1 for any other event. */
+  public int getEventElement(int event) {
+    int type = eventTypes[event];
+    return type == START_TAG || type == END_TAG ? eventData[event] : -1;
+  }
+
+  /** Returns the raw text for a text event, or null for a tag event. */
+  @Nullable
+  public String getEventText(int event) {
+    return eventTypes[event] == TEXT ? strings[eventData[event]] : null;
+  }
+
+  /** Returns the qualified name of the element, e.g. {@code "merge"} or {@code "aapt:attr"}. */
+  public String getElementName(int element) {
+    return strings[elements[element * ELEMENT_STRIDE + ELEMENT_NAME]];
+  }
+
+  @Nullable
+  public String getElementNamespace(int element) {
+    return string(elements[element * ELEMENT_STRIDE + ELEMENT_NAMESPACE]);
+  }
+
+  /** Returns the concatenated character data of the element and all of its descendants. */
+  public String getElementTextContent(int element) {
+    int base = element * ELEMENT_STRIDE;
+    int start = elements[base + ELEMENT_FIRST_TEXT_CHUNK];
+    int end = elements[base + ELEMENT_END_TEXT_CHUNK];
+    if (start == end) {
+      return "";
+    } else if (end - start == 1) {
+      return strings[textChunks[start]];
+    }
+    StringBuilder buf = new StringBuilder();
+    for (int i = start; i < end; i++) {
+      buf.append(strings[textChunks[i]]);
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Returns the number of attributes of the element, including namespace declarations, which are
+   * ordered by qualified name as a DOM would report them.
+   */
+  public int getAttributeCount(int element) {
+    return elements[element * ELEMENT_STRIDE + ELEMENT_ATTRIBUTE_COUNT];
+  }
+
+  @Nullable
+  public String getAttributeNamespace(int element, int index) {
+    return string(attributes[attribute(element, index) + ATTRIBUTE_NAMESPACE]);
+  }
+
+  public String getAttributeName(int element, int index) {
+    return strings[attributes[attribute(element, index) + ATTRIBUTE_NAME]];
+  }
+
+  public String getAttributeValue(int element, int index) {
+    return strings[attributes[attribute(element, index) + ATTRIBUTE_VALUE]];
+  }
+
+  /**
+   * Returns the index of the attribute with the given namespace and local name, or -1. A null
+   * namespace matches attributes without a namespace.
+   */
+  public int indexOfAttribute(int element, @Nullable String namespace, String name) {
+    int count = getAttributeCount(element);
+    for (int i = 0; i < count; i++) {
+      int base = attribute(element, i);
+      if (strings[attributes[base + ATTRIBUTE_NAME]].equals(name)
+          && namespaceEquals(string(attributes[base + ATTRIBUTE_NAMESPACE]), namespace)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int attribute(int element, int index) {
+    if (index < 0 || index >= getAttributeCount(element)) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    return (elements[element * ELEMENT_STRIDE + ELEMENT_FIRST_ATTRIBUTE] + index)
+        * ATTRIBUTE_STRIDE;
+  }
+
+  @Nullable
+  private String string(int index) {
+    return index < 0 ? null : strings[index];
+  }
+
+  private static boolean namespaceEquals(@Nullable String a, @Nullable String b) {
+    if (a == null || a.isEmpty()) {
+      return b == null || b.isEmpty();
+    }
+    return a.equals(b);
+  }
+
+  /** Matches {@code text.split("\\s").length == 0}, i.e. non-empty and all whitespace. */
+  static boolean isWhitespace(String text) {
+    if (text.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      switch (text.charAt(i)) {
+        case ' ':
+        case '\t':
+        case '\n':
+        case '\u000B':
+        case '\f':
+        case '\r':
+          break;
+        default:
+          return false;
+      }
+    }
+    return true;
+  }
+
+  private static class CacheEntry {
+    private final XmlBlock block;
+    private final long lastModified;
+    private final long size;
+
+    CacheEntry(XmlBlock block, BasicFileAttributes attrs) {
+      this.block = block;
+      this.lastModified = attrs.lastModifiedTime().toMillis();
+      this.size = attrs.size();
+    }
+
+    boolean matches(BasicFileAttributes attrs) {
+      return lastModified == attrs.lastModifiedTime().toMillis() && size == attrs.size();
+    }
+  }
+
+  /** Accumulates the flat representation from either a StAX stream or a DOM. */
+  private static class Builder {
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final IntList eventTypes = new IntList();
+    private final IntList eventData = new IntList();
+    private final IntList elements = new IntList();
+    private final IntList attributes = new IntList();
+    private final IntList textChunks = new IntList();
+    private final IntList openElements = new IntList();
+    private final StringBuilder pendingText = new StringBuilder();
+
+    void addAll(XMLStreamReader reader) throws XMLStreamException {
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            startElement(reader);
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            endElement();
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.SPACE:
+            if (openElements.size() > 0) {
+              pendingText.append(reader.getText());
+            }
+            break;
+          case XMLStreamConstants.CDATA:
+            if (openElements.size() > 0) {
+              cdata(reader.getText());
+            }
+            break;
+          case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            if (openElements.size() > 0) {
+              processingInstruction();
+            }
+            break;
+          default:
+            // comments and document-level events aren't exposed
+            break;
+        }
+      }
+    }
+
+    private void startElement(XMLStreamReader reader) {
+      List<String[]> attrs = new ArrayList<>();
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        String prefix = reader.getNamespacePrefix(i);
+        boolean isDefault = prefix == null || prefix.isEmpty();
+        attrs.add(
+            new String[] {
+              isDefault ? "xmlns" : "xmlns:" + prefix,
+              XMLNS_ATTRIBUTE_NS_URI,
+              isDefault ? "xmlns" : prefix,
+              reader.getNamespaceURI(i)
+            });
+      }
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        String prefix = reader.getAttributePrefix(i);
+        String localName = reader.getAttributeLocalName(i);
+        attrs.add(
+            new String[] {
+              prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName,
+              reader.getAttributeNamespace(i),
+              localName,
+              reader.getAttributeValue(i)
+            });
+      }
+      // DOM NamedNodeMaps are ordered by qualified name; keep that order for index-based access.
+      attrs.sort((a, b) -> a[0].compareTo(b[0]));
+
+      String prefix = reader.getPrefix();
+      String localName = reader.getLocalName();
+      startElement(
+          prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName,
+          reader.getNamespaceURI(),
+          attrs);
+    }
+
+    void addNode(Node node) {
+      switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+          NamedNodeMap map = node.getAttributes();
+          List<String[]> attrs = new ArrayList<>(map.getLength());
+          for (int i = 0; i < map.getLength(); i++) {
+            Node attr = map.item(i);
+            String localName = attr.getLocalName();
+            attrs.add(
+                new String[] {
+                  attr.getNodeName(),
+                  attr.getNamespaceURI(),
+                  localName == null ? attr.getNodeName() : localName,
+                  attr.getNodeValue()
+                });
+          }
+          startElement(node.getNodeName(), node.getNamespaceURI(), attrs);
+          for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            addNode(child);
+          }
+          endElement();
+          break;
+        case Node.TEXT_NODE:
+          pendingText.append(node.getNodeValue());
+          flushText();
+          break;
+        case Node.CDATA_SECTION_NODE:
+          cdata(node.getNodeValue());
+          break;
+        case Node.PROCESSING_INSTRUCTION_NODE:
+          processingInstruction();
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void startElement(String qualifiedName, String namespace, List<String[]> attrs) {
+      flushText();
+
+      int element = elements.size() / ELEMENT_STRIDE;
+      elements.add(intern(qualifiedName));
+      elements.add(intern(namespace));
+      elements.add(attributes.size() / ATTRIBUTE_STRIDE);
+      elements.add(attrs.size());
+      elements.add(textChunks.size());
+      elements.add(-1); // end text chunk, filled in by endElement()
+      for (String[] attr : attrs) {
+        attributes.add(intern(attr[1]));
+        attributes.add(intern(attr[2]));
+        attributes.add(intern(attr[3]));
+      }
+
+      openElements.add(element);
+      addEvent(START_TAG, element);
+    }
+
+    private void endElement() {
+      flushText();
+      int element = openElements.removeLast();
+      elements.set(element * ELEMENT_STRIDE + ELEMENT_END_TEXT_CHUNK, textChunks.size());
+      addEvent(END_TAG, element);
+    }
+
+    private void cdata(String text) {
+      // CDATA sections contribute to the text content of their ancestors, but like the DOM
+      // based parser we don't report them as events.
+      flushText();
+      textChunks.add(intern(text));
+    }
+
+    private void processingInstruction() {
+      // Parsers reject these when they reach them, as the DOM based parser did.
+      flushText();
+      addEvent(PROCESSING_INSTRUCTION, -1);
+    }
+
+    private void flushText() {
+      if (pendingText.length() == 0) {
+        return;
+      }
+      String text = pendingText.toString();
+      pendingText.setLength(0);
+      int index = intern(text);
+      textChunks.add(index);
+      if (!isWhitespace(text)) {
+        addEvent(TEXT, index);
+      }
+    }
+
+    private void addEvent(int type, int data) {
+      eventTypes.add(type);
+      eventData.add(data);
+    }
+
+    private int intern(@Nullable String s) {
+      if (s == null) {
+        return -1;
+      }
+      Integer index = stringIndex.get(s);
+      if (index == null) {
+        index = strings.size();
+        stringIndex.put(s, index);
+        strings.add(s);
+      }
+      return index;
+    }
+
+    XmlBlock build(Path path, String packageName) {
+      if (openElements.size() != 0 || eventTypes.size() == 0) {
+        throw new IllegalStateException("incomplete document " + path);
+      }
+      return new XmlBlock(
+          path,
+          packageName,
+          strings.toArray(new String[0]),
+          eventTypes.toArray(),
+          eventData.toArray(),
+          elements.toArray(),
+          attributes.toArray(),
+          textChunks.toArray());
+    }
+  }
+
+  private static class IntList {
+    private int[] values = new int[16];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void set(int index, int value) {
+      values[index] = value;
+    }
+
+    int removeLast() {
+      return values[--size];
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
 }
@@ -0,0 +1,124 @@
+package org.robolectric.res;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.res.android.ResTable_config;
+
+@RunWith(JUnit4.class)
+@SuppressWarnings("NewApi")
+public class ResourceTableCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path resDir;
+  private Path cacheDir;
+  private ResourcePath resourcePath;
+
+  @Before
+  public void setUp() throws Exception {
+    resDir = temporaryFolder.newFolder("res").toPath();
+    cacheDir = temporaryFolder.newFolder("cache").toPath();
+    resourcePath = new ResourcePath(null, resDir, null);
+
+    write(
+        "values/values.xml",
+        "<resources>"
+            + "<string name=\"hello\">Hello</string>"
+            + "<string-array name=\"greetings\"><item>hi</item><item>@string/hello</item>"
+            + "</string-array>"
+            + "<plurals name=\"beers\"><item quantity=\"one\">one beer</item>"
+            + "<item quantity=\"other\">%d beers</item></plurals>"
+            + "<attr name=\"mode\"><enum name=\"on\" value=\"1\"/></attr>"
+            + "<style name=\"Theme.Sample\"><item name=\"mode\">on</item></style>"
+            + "</resources>");
+    write("values-fr/values.xml", "<resources><string name=\"hello\">Bonjour</string></resources>");
+    write("layout/main.xml", "<LinearLayout/>");
+    write("drawable/icon.png", "not really a png");
+  }
+
+  @Test
+  public void storesAndReloadsTable() throws Exception {
+    PackageResourceTable built =
+        new ResourceTableFactory(new ResourceTableCache(cacheDir))
+            .newResourceTable("pkg", resourcePath);
+    PackageResourceTable loaded =
+        new ResourceTableCache(cacheDir)
+            .load(
+                new ResourceTableCache(cacheDir).computeKey("pkg", false, resourcePath),
+                resourcePath);
+
+    assertThat(loaded).isNotNull();
+    assertThat(loaded.getResourceIds()).isEqualTo(built.getResourceIds());
+    assertThat(stringValue(loaded, "pkg:string/hello", "")).isEqualTo("Hello");
+    assertThat(stringValue(loaded, "pkg:string/hello", "fr")).isEqualTo("Bonjour");
+
+    List<?> greetings = (List<?>) value(loaded, "pkg:array/greetings", "").getData();
+    assertThat(greetings).hasSize(2);
+    assertThat(((TypedResource<?>) greetings.get(1)).asString()).isEqualTo("@string/hello");
+
+    PluralRules beers = (PluralRules) value(loaded, "pkg:plurals/beers", "");
+    assertThat(beers.find(2).getString()).isEqualTo("%d beers");
+
+    AttrData mode = (AttrData) value(loaded, "pkg:attr/mode", "").getData();
+    assertThat(mode.getValueFor("on")).isEqualTo("1");
+
+    StyleData style = (StyleData) value(loaded, "pkg:style/Theme.Sample", "").getData();
+    assertThat(style.getParent()).isEqualTo("Theme");
+    assertThat(style.getAttrValue(new ResName("pkg:attr/mode")).value).isEqualTo("on");
+
+    FileTypedResource layout = (FileTypedResource) value(loaded, "pkg:layout/main", "");
+    assertThat(layout.getPath()).isEqualTo(resDir.resolve("layout/main.xml"));
+    assertThat(layout.isXml()).isTrue();
+
+    FileTypedResource.Image icon = (FileTypedResource.Image) value(loaded, "pkg:drawable/icon", "");
+    assertThat(icon.getPath()).isEqualTo(resDir.resolve("drawable/icon.png"));
+    assertThat(icon.isNinePatch()).isFalse();
+  }
+
+  @Test
+  public void changedResourcesProduceDifferentKey() throws Exception {
+    ResourceTableCache cache = new ResourceTableCache(cacheDir);
+    String before = cache.computeKey("pkg", false, resourcePath);
+
+    write("values/more.xml", "<resources><string name=\"bye\">Bye</string></resources>");
+
+    assertThat(cache.computeKey("pkg", false, resourcePath)).isNotEqualTo(before);
+  }
+
+  @Test
+  public void missingCacheEntryReturnsNull() throws Exception {
+    ResourceTableCache cache = new ResourceTableCache(cacheDir);
+
+    assertThat(cache.load(cache.computeKey("pkg", false, resourcePath), resourcePath)).isNull();
+  }
+
+  private void write(String relativePath, String contents) throws IOException {
+    Path file = resDir.resolve(relativePath);
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents.getBytes(UTF_8));
+  }
+
+  private static TypedResource<?> value(
+      PackageResourceTable resourceTable, String resName, String qualifiers) {
+    return resourceTable.getValue(new ResName(resName), config(qualifiers));
+  }
+
+  private static String stringValue(
+      PackageResourceTable resourceTable, String resName, String qualifiers) {
+    return value(resourceTable, resName, qualifiers).asString();
+  }
+
+  private static ResTable_config config(String qualifiers) {
+    return Qualifiers.parse(qualifiers).getConfig();
+  }
+}
@@ -0,0 +1,130 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.res.android.ResourceTypes.RES_TABLE_TYPE_TYPE;
+import static org.robolectric.res.android.ResourceTypes.ResTable_type.NO_ENTRY;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.res.android.CppAssetManager2.FilteredConfigGroup;
+import org.robolectric.res.android.LoadedArsc.LoadedPackage;
+import org.robolectric.res.android.ResourceTypes.ResChunk_header;
+import org.robolectric.res.android.ResourceTypes.ResTable_type;
+
+@RunWith(JUnit4.class)
+public class FilteredConfigGroupTest {
+  // A configuration that ends after minorVersion.
+  private static final int CONFIG_SIZE = 28;
+
+  private final ResTable_config anyConfig = new ResTable_config();
+  private final ResTable_config portConfig = config(ResTable_config.ORIENTATION_PORT);
+  private final ResTable_config landConfig = config(ResTable_config.ORIENTATION_LAND);
+  private final ResTable_type anyType = type(0, 16, 32);
+  private final ResTable_type portType = type(NO_ENTRY, 100, NO_ENTRY);
+  private final ResTable_type landType = type(NO_ENTRY, NO_ENTRY, 200);
+
+  @Test
+  public void getBestTypeIndex_matchesUncachedLookup() {
+    for (ResTable_config desired : Arrays.asList(portConfig, landConfig)) {
+      FilteredConfigGroup group = group(desired);
+      for (int entry = 0; entry < group.entry_count; entry++) {
+        // The first call computes the selection, the second reads it back.
+        for (int i = 0; i < 2; i++) {
+          int index = group.GetBestTypeIndex(entry, desired, false);
+          assertThat(index).isEqualTo(uncachedBestTypeIndex(group, entry, desired));
+          assertThat(group.GetBestOffset(entry))
+              .isEqualTo(LoadedPackage.GetEntryOffset(group.types.get(index), entry));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void getBestTypeIndex_prefersMoreSpecificConfigs() {
+    FilteredConfigGroup group = group(portConfig);
+
+    assertThat(group.types.get(group.GetBestTypeIndex(0, portConfig, false))).isEqualTo(anyType);
+    assertThat(group.types.get(group.GetBestTypeIndex(1, portConfig, false))).isEqualTo(portType);
+    assertThat(group.GetBestOffset(1)).isEqualTo(100);
+    assertThat(group.types.get(group.GetBestTypeIndex(2, portConfig, false))).isEqualTo(anyType);
+  }
+
+  @Test
+  public void getBestTypeIndex_remembersEntriesWithoutMatch() {
+    FilteredConfigGroup group = new FilteredConfigGroup();
+    group.entry_count = 3;
+    add(group, portConfig, portType, portConfig);
+
+    for (int i = 0; i < 2; i++) {
+      assertThat(group.GetBestTypeIndex(0, portConfig, false)).isEqualTo(-1);
+      assertThat(group.GetBestTypeIndex(1, portConfig, false)).isEqualTo(0);
+      assertThat(group.GetBestOffset(1)).isEqualTo(100);
+    }
+  }
+
+  private FilteredConfigGroup group(ResTable_config desired) {
+    FilteredConfigGroup group = new FilteredConfigGroup();
+    group.entry_count = 3;
+    add(group, anyConfig, anyType, desired);
+    add(group, portConfig, portType, desired);
+    add(group, landConfig, landType, desired);
+    return group;
+  }
+
+  private static void add(
+      FilteredConfigGroup group,
+      ResTable_config config,
+      ResTable_type type,
+      ResTable_config desired) {
+    if (config.match(desired)) {
+      group.configurations.add(config);
+      group.types.add(type);
+    }
+  }
+
+  /** The selection CppAssetManager2 makes without the per-entry table. */
+  private static int uncachedBestTypeIndex(
+      FilteredConfigGroup group, int entry, ResTable_config desired) {
+    int bestIndex = -1;
+    ResTable_config bestConfig = null;
+    for (int i = 0; i < group.configurations.size(); i++) {
+      ResTable_config config = group.configurations.get(i);
+      if ((bestConfig == null || config.isBetterThan(bestConfig, desired))
+          && LoadedPackage.GetEntryOffset(group.types.get(i), entry) != NO_ENTRY) {
+        bestIndex = i;
+        bestConfig = config;
+      }
+    }
+    return bestIndex;
+  }
+
+  private static ResTable_config config(int orientation) {
+    ResTable_config config = new ResTable_config();
+    config.orientation = orientation;
+    return config;
+  }
+
+  private static ResTable_type type(int... entryOffsets) {
+    int headerSize = ResChunk_header.SIZEOF + 12 + CONFIG_SIZE;
+    int size = headerSize + entryOffsets.length * 4;
+    ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    buf.putShort((short) RES_TABLE_TYPE_TYPE);
+    buf.putShort((short) headerSize);
+    buf.putInt(size);
+    buf.put((byte) 1); // id
+    buf.put((byte) 0); // flags
+    buf.putShort((short) 0); // reserved
+    buf.putInt(entryOffsets.length);
+    buf.putInt(size); // entriesStart
+    buf.putInt(CONFIG_SIZE);
+    buf.position(headerSize);
+    for (int entryOffset : entryOffsets) {
+      buf.putInt(entryOffset);
+    }
+    return new ResTable_type(buf, 0);
+  }
+}
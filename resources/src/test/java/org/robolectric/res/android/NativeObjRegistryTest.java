@@ -0,0 +1,123 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class NativeObjRegistryTest {
+  private final NativeObjRegistry<String> registry = new NativeObjRegistry<>("test");
+
+  @Test
+  public void registerAssignsIncreasingIds() {
+    long first = registry.register("first");
+    long second = registry.register("second");
+
+    assertThat(second).isGreaterThan(first);
+    assertThat(registry.getNativeObject(first)).isEqualTo("first");
+    assertThat(registry.getNativeObject(second)).isEqualTo("second");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void registerTwice_throws() {
+    registry.register("object");
+
+    registry.register("object");
+  }
+
+  @Test
+  public void unregister_removesObject() {
+    long id = registry.register("object");
+
+    assertThat(registry.unregister(id)).isEqualTo("object");
+    assertThat(registry.peekNativeObject(id)).isNull();
+    try {
+      registry.getNativeObject(id);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+    try {
+      registry.unregister(id);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void update_replacesObject() {
+    long id = registry.register("before");
+
+    registry.update(id, "after");
+
+    assertThat(registry.getNativeObject(id)).isEqualTo("after");
+    // the old object can be registered again under a new id
+    assertThat(registry.register("before")).isNotEqualTo(id);
+  }
+
+  @Test
+  public void clear_resetsIds() {
+    long id = registry.register("object");
+
+    registry.clear();
+
+    assertThat(registry.peekNativeObject(id)).isNull();
+    assertThat(registry.register("other")).isEqualTo(id);
+  }
+
+  @Test
+  public void survivesManyRegistrations() {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      long id = registry.register("object" + i);
+      ids.add(id);
+      if (i % 2 == 1) {
+        registry.unregister(ids.get(i - 1));
+      }
+    }
+
+    for (int i = 0; i < ids.size(); i++) {
+      if (i % 2 == 0) {
+        assertThat(registry.peekNativeObject(ids.get(i))).isNull();
+      } else {
+        assertThat(registry.getNativeObject(ids.get(i))).isEqualTo("object" + i);
+      }
+    }
+  }
+
+  @Test
+  public void concurrentAccess() throws Exception {
+    NativeObjRegistry<Object> objects = new NativeObjRegistry<>("concurrent");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 10_000; i++) {
+                    Object o = new Object();
+                    long id = objects.register(o);
+                    assertThat(objects.getNativeObject(id)).isSameInstanceAs(o);
+                    if (i % 3 != 0) {
+                      assertThat(objects.unregister(id)).isSameInstanceAs(o);
+                    }
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.res.android.CppAssetManager2.ResolvedBag;
+import org.robolectric.res.android.ResolvedBagCache.Table;
+
+@RunWith(JUnit4.class)
+public class ResolvedBagCacheTest {
+  private static final int CONFIG_ORIENTATION = AConfiguration.ACONFIGURATION_ORIENTATION;
+  private static final int CONFIG_DENSITY = AConfiguration.ACONFIGURATION_DENSITY;
+
+  private final List<CppApkAssets> apkAssets = new ArrayList<>();
+
+  @Test
+  public void sharesTablesForEqualConfigurations() {
+    ResolvedBagCache cache = new ResolvedBagCache();
+    Table table = cache.getTable(apkAssets, config(ResTable_config.ORIENTATION_PORT), null, -1);
+    ResolvedBag bag = bag(0);
+    table.put(0x01030005, bag);
+
+    Table other = cache.getTable(apkAssets, config(ResTable_config.ORIENTATION_PORT), null, -1);
+
+    assertThat(other).isSameInstanceAs(table);
+    assertThat(other.get(0x01030005)).isSameInstanceAs(bag);
+    assertThat(other.get(0x01030006)).isNull();
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void newTableKeepsBagsThatDoNotVaryWithTheChange() {
+    ResolvedBagCache cache = new ResolvedBagCache();
+    Table portrait = cache.getTable(apkAssets, config(ResTable_config.ORIENTATION_PORT), null, -1);
+    portrait.put(0x01030001, bag(0));
+    portrait.put(0x01030002, bag(CONFIG_ORIENTATION));
+    portrait.put(0x01030003, bag(CONFIG_DENSITY));
+
+    Table landscape =
+        cache.getTable(
+            apkAssets, config(ResTable_config.ORIENTATION_LAND), portrait, CONFIG_ORIENTATION);
+
+    assertThat(landscape).isNotSameInstanceAs(portrait);
+    assertThat(landscape.size()).isEqualTo(2);
+    assertThat(landscape.get(0x01030002)).isNull();
+    assertThat(portrait.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void purgeRemovesBagsThatVaryWithTheChange() {
+    Table table = Table.unshared();
+    for (int i = 1; i <= 200; i++) {
+      table.put(0x7f100000 + i, bag(i % 2 == 0 ? CONFIG_DENSITY : 0));
+    }
+    assertThat(table.size()).isEqualTo(200);
+
+    table.purge(CONFIG_DENSITY);
+    assertThat(table.size()).isEqualTo(100);
+    assertThat(table.get(0x7f100001)).isNotNull();
+    assertThat(table.get(0x7f100002)).isNull();
+
+    table.purge(0xffffffff);
+    assertThat(table.size()).isEqualTo(0);
+  }
+
+  private static ResolvedBag bag(int typeSpecFlags) {
+    ResolvedBag bag = new ResolvedBag();
+    bag.type_spec_flags = typeSpecFlags;
+    bag.entries = new ResolvedBag.Entry[0];
+    return bag;
+  }
+
+  private static ResTable_config config(int orientation) {
+    ResTable_config config = new ResTable_config();
+    config.orientation = orientation;
+    return config;
+  }
+}
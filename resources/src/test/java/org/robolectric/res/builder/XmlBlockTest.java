@@ -0,0 +1,146 @@
+package org.robolectric.res.builder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.w3c.dom.Document;
+
+@RunWith(JUnit4.class)
+@SuppressWarnings("NewApi")
+public class XmlBlockTest {
+  private static final String LAYOUT =
+      "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\""
+          + " xmlns:app=\"http://schemas.android.com/apk/res-auto\""
+          + " android:orientation=\"vertical\" app:custom=\"2\" tag=\"3\">\n"
+          + "  <!-- comment -->\n"
+          + "  <TextView android:text=\"hi&amp;\"/>x<!-- c -->y<![CDATA[zz]]>w\n"
+          + "</LinearLayout>";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void compilesEventsInDocumentOrder() throws Exception {
+    XmlBlock block = XmlBlock.create(write(LAYOUT), "pkg");
+
+    assertThat(block.getEventCount()).isEqualTo(6);
+    assertThat(block.getEventType(0)).isEqualTo(XmlBlock.START_TAG);
+    assertThat(block.getElementName(block.getEventElement(0))).isEqualTo("LinearLayout");
+    assertThat(block.getEventType(1)).isEqualTo(XmlBlock.START_TAG);
+    assertThat(block.getEventType(2)).isEqualTo(XmlBlock.END_TAG);
+    assertThat(block.getEventType(3)).isEqualTo(XmlBlock.TEXT);
+    assertThat(block.getEventText(3)).isEqualTo("xy");
+    // the CDATA section splits the text but isn't reported itself
+    assertThat(block.getEventType(4)).isEqualTo(XmlBlock.TEXT);
+    assertThat(block.getEventText(4)).isEqualTo("w\n");
+    assertThat(block.getEventType(5)).isEqualTo(XmlBlock.END_TAG);
+    assertThat(block.getElementTextContent(block.getEventElement(5))).contains("xyzzw");
+  }
+
+  @Test
+  public void reportsProcessingInstructionsInsideTheRoot() throws Exception {
+    XmlBlock block = XmlBlock.create(write("<?pi before?><foo>a<?pi inside?>b</foo>"), "pkg");
+
+    assertThat(block.getEventCount()).isEqualTo(5);
+    assertThat(block.getEventType(1)).isEqualTo(XmlBlock.TEXT);
+    assertThat(block.getEventType(2)).isEqualTo(XmlBlock.PROCESSING_INSTRUCTION);
+    assertThat(block.getEventElement(2)).isEqualTo(-1);
+    assertThat(block.getEventText(2)).isNull();
+    assertThat(block.getEventType(3)).isEqualTo(XmlBlock.TEXT);
+  }
+
+  @Test
+  public void attributesAreOrderedLikeTheDom() throws Exception {
+    XmlBlock block = XmlBlock.create(write(LAYOUT), "pkg");
+    int root = block.getEventElement(0);
+
+    assertThat(block.getAttributeCount(root)).isEqualTo(5);
+    assertThat(block.getAttributeName(root, 0)).isEqualTo("orientation");
+    assertThat(block.getAttributeName(root, 1)).isEqualTo("custom");
+    assertThat(block.getAttributeName(root, 2)).isEqualTo("tag");
+    assertThat(block.getAttributeName(root, 3)).isEqualTo("android");
+    assertThat(
+            block.indexOfAttribute(
+                root, "http://schemas.android.com/apk/res-auto", "custom"))
+        .isEqualTo(1);
+    assertThat(block.indexOfAttribute(root, null, "tag")).isEqualTo(2);
+    assertThat(block.indexOfAttribute(root, null, "missing")).isEqualTo(-1);
+  }
+
+  @Test
+  public void matchesCompiledDocument() throws Exception {
+    Path path = write(LAYOUT);
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setIgnoringComments(true);
+    XmlBlock fromDom =
+        XmlBlock.create(factory.newDocumentBuilder().parse(path.toFile()), path, "pkg");
+    XmlBlock fromStream = XmlBlock.create(path, "pkg");
+
+    assertThat(describe(fromStream)).isEqualTo(describe(fromDom));
+  }
+
+  @Test
+  public void recompilesChangedFiles() throws Exception {
+    Path path = write("<foo/>");
+    assertThat(XmlBlock.create(path, "pkg").getElementName(0)).isEqualTo("foo");
+
+    Files.write(path, "<barbaz/>".getBytes(UTF_8));
+
+    assertThat(XmlBlock.create(path, "pkg").getElementName(0)).isEqualTo("barbaz");
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void getDocument_parsesOnceAndRetainsTheDom() throws Exception {
+    Path path = write("<foo/>");
+    XmlBlock block = XmlBlock.create(path, "pkg");
+
+    Document document = block.getDocument();
+    Files.delete(path);
+
+    assertThat(document.getDocumentElement().getTagName()).isEqualTo("foo");
+    assertThat(block.getDocument()).isSameInstanceAs(document);
+  }
+
+  private Path write(String xml) throws Exception {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, xml.getBytes(UTF_8));
+    return path;
+  }
+
+  private static String describe(XmlBlock block) {
+    StringBuilder buf = new StringBuilder();
+    for (int event = 0; event < block.getEventCount(); event++) {
+      buf.append(block.getEventType(event));
+      int element = block.getEventElement(event);
+      if (element < 0) {
+        buf.append(" text=").append(block.getEventText(event));
+      } else {
+        buf.append(' ')
+            .append(block.getElementNamespace(element))
+            .append(':')
+            .append(block.getElementName(element))
+            .append(" content=")
+            .append(block.getElementTextContent(element));
+        for (int i = 0; i < block.getAttributeCount(element); i++) {
+          buf.append(' ')
+              .append(block.getAttributeNamespace(element, i))
+              .append(':')
+              .append(block.getAttributeName(element, i))
+              .append('=')
+              .append(block.getAttributeValue(element, i));
+        }
+      }
+      buf.append('\n');
+    }
+    return buf.toString();
+  }
+}
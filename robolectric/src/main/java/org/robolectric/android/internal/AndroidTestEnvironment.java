@@ -80,6 +80,7 @@ import org.robolectric.util.PerfStatsCollector;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.util.Scheduler;
 import org.robolectric.util.TempDirectory;
+import org.robolectric.util.TempDirectoryMetadata;
 
 @SuppressLint("NewApi")
 public class AndroidTestEnvironment implements TestEnvironment {
@@ -519,6 +520,17 @@ public class AndroidTestEnvironment implements TestEnvironment {
     for (ShadowProvider provider : shadowProviders) {
       provider.reset();
     }
+
+    // Resetting the shadows closes databases and flushes pending writes, so the test's app data
+    // is only complete now.
+    TempDirectory tempDirectory = RuntimeEnvironment.getTempDirectory();
+    PerfStatsCollector perfStatsCollector = PerfStatsCollector.getInstance();
+    if (perfStatsCollector.isEnabled()) {
+      perfStatsCollector.putMetadata(
+          TempDirectoryMetadata.class, new TempDirectoryMetadata(tempDirectory.size()));
+    }
+    // Don't let app data from every test pile up until the JVM exits.
+    tempDirectory.destroyInBackground();
   }
 
   // TODO(christianw): reconcile with ShadowPackageManager.setUpPackageStorage
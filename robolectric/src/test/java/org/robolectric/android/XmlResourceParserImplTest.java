@@ -12,25 +12,25 @@ import android.app.Application;
 import android.content.res.XmlResourceParser;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
-import java.nio.file.Paths;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.robolectric.R;
 import org.robolectric.RuntimeEnvironment;
-import org.w3c.dom.Document;
+import org.robolectric.res.builder.XmlBlock;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -38,6 +38,8 @@ import org.xmlpull.v1.XmlPullParserException;
 public class XmlResourceParserImplTest {
 
   private static final String RES_AUTO_NS = "http://schemas.android.com/apk/res-auto";
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private XmlResourceParser parser;
   private Application context;
 
@@ -62,16 +64,12 @@ public class XmlResourceParserImplTest {
 
   private void forgeAndOpenDocument(String xmlValue) {
     try {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setNamespaceAware(true);
-      factory.setIgnoringComments(true);
-      factory.setIgnoringElementContentWhitespace(true);
-      DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-      Document document = documentBuilder.parse(new ByteArrayInputStream(xmlValue.getBytes(UTF_8)));
+      Path file = temporaryFolder.newFile().toPath();
+      Files.write(file, xmlValue.getBytes(UTF_8));
 
       parser =
           new XmlResourceParserImpl(
-              document, Paths.get("file"), R.class.getPackage().getName(), "org.robolectric", null);
+              XmlBlock.create(file, R.class.getPackage().getName()), "org.robolectric", null);
       // Navigate to the root element
       parseUntilNext(XmlResourceParser.START_TAG);
     } catch (Exception parsingException) {
@@ -262,6 +260,17 @@ public class XmlResourceParserImplTest {
     assertThat(parser.getText()).isEqualTo("bar");
   }
 
+  @Test
+  public void testNext_rejectsProcessingInstructions() throws Exception {
+    forgeAndOpenDocument("<foo><?bar baz?></foo>");
+    try {
+      parser.next();
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected
+    }
+  }
+
   @Test
   public void testGetEventType() throws Exception {
     int evt;
@@ -11,6 +11,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.robolectric.android.AndroidInterceptors;
 import org.robolectric.internal.AndroidConfigurer;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration.Builder;
 
 @RunWith(JUnit4.class)
 public class InstrumentationConfigurationTest {
@@ -182,6 +183,47 @@ public class InstrumentationConfigurationTest {
     assertThat(customConfig.shouldInstrument(wrap("com.random.goodpackage.testclass"))).isTrue();
   }
 
+  @Test
+  public void fingerprint_doesNotDependOnOrder() {
+    InstrumentationConfiguration first =
+        InstrumentationConfiguration.newBuilder()
+            .addInstrumentedPackage("com.a.")
+            .addInstrumentedPackage("com.b.")
+            .doNotAcquirePackage("org.c.")
+            .build();
+    InstrumentationConfiguration second =
+        InstrumentationConfiguration.newBuilder()
+            .doNotAcquirePackage("org.c.")
+            .addInstrumentedPackage("com.b.")
+            .addInstrumentedPackage("com.a.")
+            .build();
+
+    assertThat(first.getFingerprint()).isEqualTo(second.getFingerprint());
+    assertThat(first.getFingerprint()).isEqualTo(new Builder(first).build().getFingerprint());
+  }
+
+  @Test
+  public void fingerprint_coversAllRules() {
+    String base = fingerprint(new Builder());
+
+    assertThat(fingerprint(new Builder().doNotAcquirePackage("a."))).isNotEqualTo(base);
+    assertThat(fingerprint(new Builder().doNotInstrumentPackage("a."))).isNotEqualTo(base);
+    assertThat(fingerprint(new Builder().setDoNotInstrumentClassRegex("a"))).isNotEqualTo(base);
+    assertThat(config.getFingerprint()).isNotEqualTo(base);
+  }
+
+  @Test
+  public void shouldAcquire_isStableForRepeatedLookups() {
+    for (int i = 0; i < 2; i++) {
+      assertThat(config.shouldAcquire("scala.Test")).isFalse();
+      assertThat(config.shouldAcquire("android.content.Intent")).isTrue();
+    }
+  }
+
+  private static String fingerprint(Builder builder) {
+    return builder.build().getFingerprint();
+  }
+
   private MutableClass wrap(final String className) {
     MutableClass info = mock(MutableClass.class);
     when(info.getName()).thenReturn(className);
@@ -5,6 +5,7 @@ import static android.content.ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS;
 import static android.content.ContentResolver.QUERY_ARG_SQL_SORT_ORDER;
 import static android.os.Build.VERSION_CODES.KITKAT;
 import static android.os.Build.VERSION_CODES.O;
+import static android.os.Build.VERSION_CODES.R;
 import static android.provider.MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
 import static com.google.common.truth.Truth.assertThat;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -51,6 +52,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -850,6 +852,16 @@ public class ShadowContentResolverTest {
     }
   }
 
+  @Test
+  public void registerContentObserver_nullObserver_throws() {
+    try {
+      contentResolver.registerContentObserver(EXTERNAL_CONTENT_URI, true, null);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+    assertThat(shadowOf(contentResolver).getContentObservers(EXTERNAL_CONTENT_URI)).isEmpty();
+  }
+
   @Test
   public void shouldClearConfiguredExceptionForRegisteringContentObservers() {
     ShadowContentResolver scr = shadowOf(contentResolver);
@@ -920,6 +932,53 @@ public class ShadowContentResolverTest {
     assertThat(co2.changed).isFalse();
   }
 
+  @Test
+  public void shouldMatchContentObserversByPathSegment() {
+    TestContentObserver co1 = new TestContentObserver(null);
+    TestContentObserver co2 = new TestContentObserver(null);
+    Uri uri = Uri.parse("content://" + AUTHORITY + "/path");
+    ShadowContentResolver scr = shadowOf(contentResolver);
+
+    contentResolver.registerContentObserver(uri, true, co1);
+    contentResolver.registerContentObserver(uri, true, co2);
+    contentResolver.notifyChange(Uri.parse("content://" + AUTHORITY + "/pathology"), null);
+    assertThat(co1.changed).isFalse();
+
+    assertThat(scr.getContentObservers(uri.buildUpon().appendPath("child").build()))
+        .containsExactly(co1, co2)
+        .inOrder();
+    contentResolver.unregisterContentObserver(co1);
+    assertThat(scr.getContentObservers(uri)).containsExactly(co2);
+    contentResolver.unregisterContentObserver(co2);
+    assertThat(scr.getContentObservers(uri)).isEmpty();
+  }
+
+  @Test
+  @Config(minSdk = R)
+  public void notifyChange_withUris_shouldNotifyEachObserverOnce() {
+    Uri uri1 = EXTERNAL_CONTENT_URI.buildUpon().appendPath("1").build();
+    Uri uri2 = EXTERNAL_CONTENT_URI.buildUpon().appendPath("2").build();
+    List<Collection<Uri>> changes = new ArrayList<>();
+    ContentObserver co =
+        new ContentObserver(null) {
+          @Override
+          public void onChange(boolean selfChange, Collection<Uri> uris, int flags) {
+            changes.add(uris);
+          }
+        };
+    ShadowContentResolver scr = shadowOf(contentResolver);
+
+    contentResolver.registerContentObserver(EXTERNAL_CONTENT_URI, true, co);
+    contentResolver.notifyChange(
+        Arrays.asList(uri1, uri2), null, ContentResolver.NOTIFY_SYNC_TO_NETWORK);
+
+    assertThat(changes).hasSize(1);
+    assertThat(changes.get(0)).containsExactly(uri1, uri2).inOrder();
+    assertThat(scr.getNotifiedUris()).hasSize(2);
+    assertThat(scr.getNotifiedUris().get(1).uri).isEqualTo(uri2);
+    assertThat(scr.getNotifiedUris().get(1).syncToNetwork).isTrue();
+  }
+
   @Test
   public void getProvider_shouldCreateProviderFromManifest() throws Exception {
     Uri uri = Uri.parse("content://org.robolectric.authority1/shadows");
@@ -302,6 +302,28 @@ public class ShadowContextWrapperTest {
     assertThat(resultReceiver.resultCode).isEqualTo(1);
   }
 
+  @Test
+  public void sendOrderedBroadcast_ordersByPriorityThenRegistration() {
+    IntentFilter lowFilter = intentFilter("foo");
+    lowFilter.setPriority(1);
+    contextWrapper.registerReceiver(broadcastReceiver("Larry"), lowFilter);
+    IntentFilter highFilter = intentFilter("bar", "foo");
+    highFilter.setPriority(2);
+    contextWrapper.registerReceiver(broadcastReceiver("Bob"), highFilter);
+    BroadcastReceiver unregisteredReceiver = broadcastReceiver("Carol");
+    contextWrapper.registerReceiver(unregisteredReceiver, intentFilter("foo"));
+    IntentFilter otherLowFilter = intentFilter("foo");
+    otherLowFilter.setPriority(1);
+    contextWrapper.registerReceiver(broadcastReceiver("Dave"), otherLowFilter);
+    contextWrapper.unregisterReceiver(unregisteredReceiver);
+
+    contextWrapper.sendOrderedBroadcast(new Intent("foo"), null);
+
+    asyncAssertThat(transcript)
+        .containsExactly("Bob notified of foo", "Larry notified of foo", "Dave notified of foo")
+        .inOrder();
+  }
+
   @Test
   @Config(minSdk = KITKAT)
   public void sendOrderedBroadcastAsUser_shouldReturnValues() throws Exception {
@@ -0,0 +1,33 @@
+package org.robolectric.shadows;
+
+import static android.os.Build.VERSION_CODES.M;
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.annotation.LooperMode.Mode.PAUSED;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.DisplayEventReceiver;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+@RunWith(AndroidJUnit4.class)
+@LooperMode(PAUSED)
+@Config(minSdk = M)
+public class ShadowDisplayEventReceiverTest {
+
+  @Test
+  public void frameSkipping_disposeDropsPendingVsync() {
+    ShadowChoreographer.setFrameSkippingEnabled(true);
+    MessageQueue queue = Looper.getMainLooper().getQueue();
+    DisplayEventReceiver receiver = new DisplayEventReceiver(Looper.getMainLooper()) {};
+
+    receiver.scheduleVsync();
+    assertThat(ShadowDisplayEventReceiver.hasPendingVsync(queue, Long.MAX_VALUE)).isTrue();
+
+    receiver.dispose();
+    assertThat(ShadowDisplayEventReceiver.hasPendingVsync(queue, Long.MAX_VALUE)).isFalse();
+  }
+}
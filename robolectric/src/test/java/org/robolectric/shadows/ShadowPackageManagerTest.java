@@ -1050,6 +1050,47 @@ public class ShadowPackageManagerTest {
     assertThat(intent.resolveActivity(packageManager)).isNull();
   }
 
+  @Test
+  public void queryIntentActivities_seesFilterChanges() throws Exception {
+    ComponentName first = new ComponentName("package", "first");
+    ComponentName second = new ComponentName("package", "second");
+    shadowOf(packageManager).addActivityIfNotPresent(first);
+    shadowOf(packageManager).addActivityIfNotPresent(second);
+    shadowOf(packageManager).addIntentFilterForActivity(first, new IntentFilter("ACTION"));
+    shadowOf(packageManager).addIntentFilterForActivity(second, new IntentFilter("ACTION"));
+    shadowOf(packageManager).addIntentFilterForActivity(second, new IntentFilter("OTHER"));
+    Intent intent = new Intent("ACTION").setPackage("package");
+
+    assertThat(packageManager.queryIntentActivities(intent, 0)).hasSize(2);
+    assertThat(packageManager.queryIntentActivities(new Intent("OTHER"), 0)).hasSize(1);
+
+    shadowOf(packageManager).clearIntentFilterForActivity(first);
+    assertThat(packageManager.queryIntentActivities(intent, 0)).hasSize(1);
+
+    shadowOf(packageManager).removeActivity(second);
+    assertThat(packageManager.queryIntentActivities(intent, 0)).isEmpty();
+    assertThat(packageManager.queryIntentActivities(new Intent("OTHER"), 0)).isEmpty();
+  }
+
+  @Test
+  public void addIntentFilterForActivity_ignoresLaterChangesToFilter() throws Exception {
+    ComponentName componentName = new ComponentName("package", "Activity");
+    shadowOf(packageManager).addActivityIfNotPresent(componentName);
+    IntentFilter filter = new IntentFilter("ACTION");
+    shadowOf(packageManager).addIntentFilterForActivity(componentName, filter);
+
+    filter.addAction("LATER");
+    filter.addDataScheme("https");
+
+    assertThat(packageManager.queryIntentActivities(new Intent("ACTION"), 0)).hasSize(1);
+    assertThat(packageManager.queryIntentActivities(new Intent("LATER"), 0)).isEmpty();
+    List<IntentFilter> filters =
+        shadowOf(packageManager).getIntentFiltersForActivity(componentName);
+    assertThat(filters).hasSize(1);
+    assertThat(filters.get(0).countActions()).isEqualTo(1);
+    assertThat(filters.get(0).countDataSchemes()).isEqualTo(0);
+  }
+
   @Test
   public void resolveActivity_NoMatch() throws Exception {
     Intent i = new Intent();
@@ -0,0 +1,284 @@
+package org.robolectric.shadows;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Parcel;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.shadows.ShadowParcel.UnreliableBehaviorError;
+
+/** Tests for {@link ShadowParcel#setCompactParcelsEnabled}. */
+@RunWith(AndroidJUnit4.class)
+public class ShadowParcelCompactTest {
+
+  private Parcel parcel;
+
+  @Before
+  public void setup() {
+    ShadowParcel.setCompactParcelsEnabled(true);
+    parcel = Parcel.obtain();
+  }
+
+  @After
+  public void tearDown() {
+    parcel.recycle();
+  }
+
+  @Test
+  public void testReadWriteValues() {
+    parcel.writeInt(-7);
+    parcel.writeLong(1L << 40);
+    parcel.writeFloat(1.25f);
+    parcel.writeDouble(-2.5);
+    parcel.writeString("héllo");
+    parcel.writeString(null);
+    parcel.writeString("");
+    parcel.writeByteArray(new byte[] {1, 2, 3});
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.readInt()).isEqualTo(-7);
+    assertThat(parcel.readLong()).isEqualTo(1L << 40);
+    assertThat(parcel.readFloat()).isEqualTo(1.25f);
+    assertThat(parcel.readDouble()).isEqualTo(-2.5);
+    assertThat(parcel.readString()).isEqualTo("héllo");
+    assertThat(parcel.readString()).isNull();
+    assertThat(parcel.readString()).isEmpty();
+    assertThat(parcel.createByteArray()).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(parcel.dataAvailable()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSizesMatchAndroid() {
+    parcel.writeInt(1);
+    assertThat(parcel.dataSize()).isEqualTo(4);
+    parcel.writeLong(1);
+    assertThat(parcel.dataSize()).isEqualTo(12);
+    parcel.writeString("hello");
+    // 4 bytes for the length, then 6 two-byte characters including the terminator.
+    assertThat(parcel.dataSize()).isEqualTo(28);
+    parcel.writeByteArray(new byte[5]);
+    assertThat(parcel.dataSize()).isEqualTo(40);
+  }
+
+  @Test
+  public void testMarshallUnmarshallBundle() {
+    byte[] bytes = new byte[1024 * 1024];
+    Arrays.fill(bytes, (byte) 0x5a);
+    Bundle bundle = new Bundle();
+    bundle.putString("name", "value");
+    bundle.putInt("count", 42);
+    bundle.putByteArray("bytes", bytes);
+    parcel.writeBundle(bundle);
+
+    byte[] marshalled = parcel.marshall();
+    Parcel parcel2 = Parcel.obtain();
+    parcel2.unmarshall(marshalled, 0, marshalled.length);
+    parcel2.setDataPosition(0);
+    Bundle bundle2 = parcel2.readBundle(getClass().getClassLoader());
+    parcel2.recycle();
+
+    assertThat(bundle2.getString("name")).isEqualTo("value");
+    assertThat(bundle2.getInt("count")).isEqualTo(42);
+    assertThat(bundle2.getByteArray("bytes")).isEqualTo(bytes);
+  }
+
+  @Test
+  public void testUnmarshallsNonCompactFormat() {
+    ShadowParcel.setCompactParcelsEnabled(false);
+    Parcel parcel2 = Parcel.obtain();
+    parcel2.writeString("hello");
+    parcel2.writeInt(5);
+    byte[] marshalled = parcel2.marshall();
+    parcel2.recycle();
+    ShadowParcel.setCompactParcelsEnabled(true);
+
+    parcel.unmarshall(marshalled, 0, marshalled.length);
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.readString()).isEqualTo("hello");
+    assertThat(parcel.readInt()).isEqualTo(5);
+  }
+
+  @Test
+  public void testUnmarshallsRawBytesAsUntyped() {
+    byte[] raw = {1, 0, 0, 0, 0, 0, (byte) 0xc0, 0x3f};
+    parcel.unmarshall(raw, 0, raw.length);
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.readInt()).isEqualTo(1);
+    assertThat(parcel.readFloat()).isEqualTo(1.5f);
+  }
+
+  @Test
+  public void testReadingWrongTypeFails() {
+    parcel.writeString("hello");
+    parcel.setDataPosition(0);
+    try {
+      parcel.readLong();
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e)
+          .hasCauseThat()
+          .hasMessageThat()
+          .isEqualTo(
+              "Looking for Long at position 0, found String, and it is non-portable to"
+                  + " reinterpret it");
+    }
+  }
+
+  @Test
+  public void testReadingMiddleOfValueFails() {
+    parcel.writeLong(5);
+    parcel.setDataPosition(4);
+    try {
+      parcel.readInt();
+      fail();
+    } catch (UnreliableBehaviorError e) {
+      assertThat(e)
+          .hasMessageThat()
+          .isEqualTo("Looking for Integer at position 4, found the middle of another value");
+    }
+  }
+
+  @Test
+  public void testZeroesMayBeReadAsAnyType() {
+    parcel.writeLong(0);
+    parcel.writeString("");
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.readInt()).isEqualTo(0);
+    assertThat(parcel.readFloat()).isEqualTo(0f);
+    assertThat(parcel.readString()).isEmpty();
+  }
+
+  @Test
+  public void testReadingTruncatedValueFails() {
+    parcel.writeLong(5);
+    parcel.setDataSize(4);
+    parcel.setDataPosition(0);
+    try {
+      parcel.readLong();
+      fail();
+    } catch (UnreliableBehaviorError e) {
+      assertThat(e)
+          .hasMessageThat()
+          .isEqualTo(
+              "Looking for Long at position 0, but uninitialized data or the end of the buffer"
+                  + " interrupts it at position 4");
+    }
+  }
+
+  @Test
+  public void testReadingAfterWritingWithoutRewindingFails() {
+    parcel.writeInt(1);
+    try {
+      parcel.readInt();
+      fail();
+    } catch (UnreliableBehaviorError e) {
+      assertThat(e)
+          .hasMessageThat()
+          .isEqualTo("Did you forget to setDataPosition(0) before reading the parcel?");
+    }
+  }
+
+  @Test
+  public void testByteArrayLengthMismatchFails() {
+    parcel.writeByteArray(new byte[8]);
+    parcel.setDataPosition(0);
+    parcel.writeInt(4);
+    parcel.setDataPosition(0);
+    try {
+      parcel.createByteArray();
+      fail();
+    } catch (UnreliableBehaviorError e) {
+      assertThat(e)
+          .hasMessageThat()
+          .isEqualTo("Byte array's length prefix is 4 but the array is longer");
+    }
+  }
+
+  @Test
+  public void testBinders() {
+    IBinder binder = new Binder();
+    parcel.writeStrongBinder(binder);
+    parcel.writeStrongBinder(null);
+    parcel.writeInt(3);
+    Parcel parcel2 = Parcel.obtain();
+    parcel2.writeInt(2);
+    parcel2.appendFrom(parcel, 0, parcel.dataSize());
+    parcel2.setDataPosition(0);
+
+    assertThat(parcel2.readInt()).isEqualTo(2);
+    assertThat(parcel2.readStrongBinder()).isSameInstanceAs(binder);
+    assertThat(parcel2.readStrongBinder()).isNull();
+    assertThat(parcel2.readInt()).isEqualTo(3);
+    parcel2.recycle();
+  }
+
+  @Test
+  public void testMarshall_failsWithBinder() {
+    parcel.writeStrongBinder(new Binder());
+    try {
+      parcel.marshall();
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e)
+          .hasMessageThat()
+          .isEqualTo("Tried to marshall a Parcel that contained Binder objects.");
+    }
+  }
+
+  @Test
+  public void testMarshall_allowsNullBinder() {
+    parcel.writeStrongBinder(null);
+    parcel.writeInt(3);
+    byte[] bytes = parcel.marshall();
+    Parcel parcel2 = Parcel.obtain();
+    parcel2.unmarshall(bytes, 0, bytes.length);
+    parcel2.setDataPosition(0);
+
+    assertThat(parcel2.readStrongBinder()).isNull();
+    assertThat(parcel2.readInt()).isEqualTo(3);
+    parcel2.recycle();
+  }
+
+  @Test
+  public void testReadString_truncatedLength() {
+    // Raw bytes from elsewhere are untyped, and may end part way through a string's length.
+    parcel.unmarshall(new byte[] {1, 0, 0, 0, 2, 0}, 0, 6);
+    parcel.setDataPosition(4);
+    try {
+      parcel.readString();
+      fail();
+    } catch (UnreliableBehaviorError e) {
+      assertThat(e)
+          .hasMessageThat()
+          .isEqualTo("Looking for String at position 4, but the end of the buffer interrupts it");
+    }
+  }
+
+  @Test
+  public void testReadString_lengthPastEnd() {
+    // A length of Integer.MAX_VALUE / 2 would overflow the string's size if it wasn't checked.
+    parcel.unmarshall(new byte[] {-1, -1, -1, 0x3f, 1, 0, 2, 0}, 0, 8);
+    parcel.setDataPosition(0);
+    try {
+      parcel.readString();
+      fail();
+    } catch (UnreliableBehaviorError e) {
+      assertThat(e)
+          .hasMessageThat()
+          .isEqualTo(
+              "Looking for String of length 1073741823 at position 0, but the end of the buffer"
+                  + " interrupts it");
+    }
+  }
+}
@@ -3,8 +3,10 @@ package org.robolectric.shadows;
 import static android.os.Looper.getMainLooper;
 import static com.google.common.truth.Truth.assertThat;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
@@ -17,7 +19,13 @@ import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.SystemClock;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.lang.reflect.Method;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -101,6 +109,50 @@ public class ShadowPausedLooperTest {
     verify(mockRunnable, times(1)).run();
   }
 
+  @Test
+  public void postedDelayedTasksAreExecutedOnLooperThreadWhenClockAdvances() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    new Handler(handlerThread.getLooper()).postDelayed(latch::countDown, 100);
+
+    assertThat(latch.await(50, MILLISECONDS)).isFalse();
+    SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + 100);
+
+    assertThat(latch.await(5, SECONDS)).isTrue();
+  }
+
+  @Test
+  public void looperOnVirtualThread_executesPostedTasks() throws Exception {
+    Method ofVirtual;
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+    } catch (NoSuchMethodException e) {
+      assumeTrue("virtual threads are not supported by this JDK", false);
+      return;
+    }
+    Ref<Looper> looperRef = new Ref<>(null);
+    CountDownLatch prepared = new CountDownLatch(1);
+    Runnable loop =
+        () -> {
+          Looper.prepare();
+          looperRef.set(Looper.myLooper());
+          prepared.countDown();
+          Looper.loop();
+        };
+    Object builder = ofVirtual.invoke(null);
+    Method start = Class.forName("java.lang.Thread$Builder").getMethod("start", Runnable.class);
+    Thread thread = (Thread) start.invoke(builder, loop);
+    assertThat(prepared.await(5, SECONDS)).isTrue();
+    try {
+      CountDownLatch ran = new CountDownLatch(1);
+      new Handler(looperRef.get()).post(ran::countDown);
+
+      assertThat(ran.await(5, SECONDS)).isTrue();
+    } finally {
+      looperRef.get().quit();
+      thread.join();
+    }
+  }
+
   @Test
   public void postedBackgroundLooperTasksWhenPaused() throws InterruptedException {
     Runnable mockRunnable = mock(Runnable.class);
@@ -228,6 +280,63 @@ public class ShadowPausedLooperTest {
     verify(mockRunnable, times(1)).run();
   }
 
+  @Test
+  public void idleFor_backgroundLooper_runsPeriodicTaskAtEachTick() {
+    Handler handler = new Handler(handlerThread.getLooper());
+    long startTime = SystemClock.uptimeMillis();
+    List<Long> runTimes = new ArrayList<>();
+    Set<Thread> runThreads = new HashSet<>();
+    Runnable periodicRunnable =
+        new Runnable() {
+          @Override
+          public void run() {
+            runTimes.add(SystemClock.uptimeMillis() - startTime);
+            runThreads.add(Thread.currentThread());
+            handler.postDelayed(this, 16);
+          }
+        };
+    handler.postDelayed(periodicRunnable, 16);
+
+    shadowOf(handlerThread.getLooper()).idleFor(Duration.ofSeconds(10));
+
+    assertThat(runTimes).hasSize(625);
+    assertThat(runTimes.get(0)).isEqualTo(16);
+    assertThat(runTimes.get(624)).isEqualTo(10_000);
+    assertThat(runThreads).containsExactly(handlerThread);
+    assertThat(SystemClock.uptimeMillis()).isEqualTo(startTime + 10_000);
+  }
+
+  @Test
+  public void idleAllLoopersFor_runsTasksOfAllLoopersInTimeOrder() throws Exception {
+    HandlerThread otherThread = new HandlerThread(testName.getMethodName() + "-other");
+    otherThread.start();
+    try {
+      shadowOf(handlerThread.getLooper()).pause();
+      List<String> events = Collections.synchronizedList(new ArrayList<>());
+      Handler mainHandler = new Handler(getMainLooper());
+      Handler backgroundHandler = new Handler(handlerThread.getLooper());
+      Handler otherHandler = new Handler(otherThread.getLooper());
+      mainHandler.postDelayed(() -> events.add("main@100"), 100);
+      backgroundHandler.postDelayed(
+          () -> {
+            events.add("background@50");
+            mainHandler.postDelayed(() -> events.add("main@75"), 25);
+          },
+          50);
+      otherHandler.postDelayed(() -> events.add("other@150"), 150);
+      long startTime = SystemClock.uptimeMillis();
+
+      ShadowLooper.idleAllLoopersFor(Duration.ofMillis(200));
+
+      assertThat(events)
+          .containsExactly("background@50", "main@75", "main@100", "other@150")
+          .inOrder();
+      assertThat(SystemClock.uptimeMillis()).isEqualTo(startTime + 200);
+    } finally {
+      otherThread.quit();
+    }
+  }
+
   @Test
   public void idleExecutesPostedRunnables() {
     ShadowPausedLooper shadowLooper = Shadow.extract(getMainLooper());
@@ -1,5 +1,6 @@
 package org.robolectric.shadows;
 
+import static android.os.Build.VERSION_CODES.O;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -8,9 +9,11 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.Configuration;
 import android.preference.PreferenceManager;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -18,6 +21,7 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
 
 @RunWith(AndroidJUnit4.class)
 public class ShadowSharedPreferencesTest {
@@ -236,4 +240,55 @@ public class ShadowSharedPreferencesTest {
     assertTrue(sharedPreferences.getBoolean("foo", false));
     assertTrue(sharedPreferences.getBoolean("bar", false));
   }
+
+  @Test
+  @Config(minSdk = O)
+  public void writeBehind_writesFileWhenAskedFor() {
+    ShadowSharedPreferences.setWriteBehindEnabled(true);
+    File file = context.getSharedPreferencesPath(FILENAME);
+
+    editor.commit();
+
+    assertThat(file.exists()).isFalse();
+    assertThat(sharedPreferences.getInt("int", 666)).isEqualTo(2);
+    assertThat(context.getSharedPreferencesPath(FILENAME).exists()).isTrue();
+  }
+
+  @Test
+  @Config(minSdk = O)
+  public void writeBehind_openingPreferencesDoesNotWriteFiles() {
+    ShadowSharedPreferences.setWriteBehindEnabled(true);
+    File file = context.getSharedPreferencesPath(FILENAME);
+    File otherFile = context.getSharedPreferencesPath("other");
+    editor.commit();
+    Context otherContext = context.createConfigurationContext(new Configuration());
+
+    otherContext
+        .getSharedPreferences("other", Context.MODE_PRIVATE)
+        .edit()
+        .putInt("int", 1)
+        .commit();
+    SharedPreferences reopened = otherContext.getSharedPreferences(FILENAME, Context.MODE_PRIVATE);
+
+    assertThat(reopened.getInt("int", 666)).isEqualTo(2);
+    assertThat(file.exists()).isFalse();
+    assertThat(otherFile.exists()).isFalse();
+    // Asking for one file's path only writes that file.
+    assertThat(otherContext.getSharedPreferencesPath("other").exists()).isTrue();
+    assertThat(file.exists()).isFalse();
+  }
+
+  @Test
+  @Config(minSdk = O)
+  @SuppressWarnings("deprecation") // MODE_MULTI_PROCESS
+  public void writeBehind_keepsValuesWhenReloadedFromDisk() {
+    ShadowSharedPreferences.setWriteBehindEnabled(true);
+    editor.apply();
+
+    SharedPreferences reloaded =
+        context.getSharedPreferences(FILENAME, Context.MODE_MULTI_PROCESS);
+
+    assertThat(reloaded.getString("string", "wacka wa")).isEqualTo("foobar");
+    assertThat(context.getSharedPreferencesPath(FILENAME).exists()).isTrue();
+  }
 }
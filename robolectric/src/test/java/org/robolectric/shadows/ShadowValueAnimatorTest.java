@@ -1,17 +1,22 @@
 package org.robolectric.shadows;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.annotation.LooperMode.Mode.PAUSED;
 import static org.robolectric.shadows.ShadowLooper.shadowMainLooper;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.Ordering;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.Shadows;
+import org.robolectric.annotation.LooperMode;
 import org.robolectric.util.TimeUtils;
 
 @RunWith(AndroidJUnit4.class)
@@ -61,4 +66,31 @@ public class ShadowValueAnimatorTest {
     shadowMainLooper().idleFor(200, TimeUnit.MILLISECONDS);
     assertThat(animator.isRunning()).isFalse();
   }
+
+  @Test
+  @LooperMode(PAUSED)
+  public void frameSkipping_idleForAcrossAnimation_rendersFinalFrame() {
+    ShadowChoreographer.setFrameSkippingEnabled(true);
+    final List<Integer> values = new ArrayList<>();
+    final List<Animator> ended = new ArrayList<>();
+    ValueAnimator animator = ValueAnimator.ofInt(0, 10);
+    animator.setDuration(10_000);
+    animator.addUpdateListener(animation -> values.add((int) animation.getAnimatedValue()));
+    animator.addListener(
+        new AnimatorListenerAdapter() {
+          @Override
+          public void onAnimationEnd(Animator animation) {
+            ended.add(animation);
+          }
+        });
+
+    animator.start();
+    shadowMainLooper().idle();
+    shadowMainLooper().idleFor(Duration.ofSeconds(20));
+
+    assertThat(animator.isRunning()).isFalse();
+    assertThat(ended).containsExactly(animator);
+    assertThat(values.get(values.size() - 1)).isEqualTo(10);
+    assertThat(values.size()).isLessThan(5);
+  }
 }
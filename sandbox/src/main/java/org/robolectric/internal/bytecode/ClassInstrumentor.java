@@ -20,6 +20,7 @@ import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.FrameNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
@@ -68,7 +69,9 @@ public abstract class ClassInstrumentor {
     instrument(mutableClass);
 
     ClassNode classNode = mutableClass.classNode;
-    ClassWriter writer = new InstrumentingClassWriter(mutableClass.classNodeProvider, classNode);
+    ClassWriter writer =
+        new InstrumentingClassWriter(
+            mutableClass.classNodeProvider, needsComputedFrames(mutableClass));
     Remapper remapper =
         new Remapper() {
           @Override
@@ -81,6 +84,93 @@ public abstract class ClassInstrumentor {
     return writer.toByteArray();
   }
 
+  /**
+   * Returns true if ASM has to compute the stack map frames of the instrumented class.
+   *
+   * <p>Computing frames means running a data-flow analysis over every method and resolving common
+   * supertypes, so it's avoided where possible. The frames read from the original class are kept
+   * as they are, and the code generated here is either branch-free or declares its own frames, so
+   * frames are only computed if the original class had none, if instrumentation invalidated them,
+   * or if some method (e.g. one added by a {@link Decorator}) has branches but no frames.
+   */
+  boolean needsComputedFrames(MutableClass mutableClass) {
+    if (mutableClass.classNode.version < Opcodes.V1_7) {
+      return false;
+    }
+    if (!mutableClass.hasStackMapFrames || mutableClass.stackMapFramesInvalidated) {
+      return true;
+    }
+    for (MethodNode method : mutableClass.classNode.methods) {
+      if (hasBranchesWithoutFrames(method) || hasRemappedFrameTypes(mutableClass, method)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasBranchesWithoutFrames(MethodNode method) {
+    boolean hasBranches = !method.tryCatchBlocks.isEmpty();
+    for (AbstractInsnNode node = method.instructions.getFirst();
+        node != null;
+        node = node.getNext()) {
+      switch (node.getType()) {
+        case AbstractInsnNode.FRAME:
+          return false;
+        case AbstractInsnNode.JUMP_INSN:
+          /* falls through */
+        case AbstractInsnNode.TABLESWITCH_INSN:
+          /* falls through */
+        case AbstractInsnNode.LOOKUPSWITCH_INSN:
+          hasBranches = true;
+          break;
+        default:
+          break;
+      }
+    }
+    return hasBranches;
+  }
+
+  /**
+   * Returns true if a frame of the method mentions a type that's translated to another class,
+   * whose position in the type hierarchy may be different.
+   */
+  private static boolean hasRemappedFrameTypes(MutableClass mutableClass, MethodNode method) {
+    for (AbstractInsnNode node = method.instructions.getFirst();
+        node != null;
+        node = node.getNext()) {
+      if (node.getType() == AbstractInsnNode.FRAME) {
+        FrameNode frame = (FrameNode) node;
+        if (hasRemappedType(mutableClass, frame.local)
+            || hasRemappedType(mutableClass, frame.stack)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasRemappedType(MutableClass mutableClass, List<Object> frameTypes) {
+    if (frameTypes == null) {
+      return false;
+    }
+    for (Object frameType : frameTypes) {
+      if (frameType instanceof String) {
+        String internalName = (String) frameType;
+        if (internalName.startsWith("[")) {
+          Type elementType = Type.getType(internalName).getElementType();
+          if (elementType.getSort() != Type.OBJECT) {
+            continue;
+          }
+          internalName = elementType.getInternalName();
+        }
+        if (!mutableClass.config.mappedTypeName(internalName).equals(internalName)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   public byte[] instrument(
       byte[] origBytes, InstrumentationConfiguration config, ClassNodeProvider classNodeProvider) {
     MutableClass mutableClass = analyzeClass(origBytes, config, classNodeProvider);
@@ -192,6 +282,8 @@ public abstract class ClassInstrumentor {
     generator.putField(
         mutableClass.classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);
     generator.mark(alreadyInitialized);
+    generator.visitFrame(
+        Opcodes.F_NEW, 1, new Object[] {mutableClass.internalClassName}, 0, new Object[0]);
     generator.returnValue();
     mutableClass.addMethod(initMethodNode);
   }
@@ -325,6 +417,14 @@ public abstract class ClassInstrumentor {
               || mnode.owner.equals(mutableClass.classNode.superName)) {
             assert mnode.name.equals("<init>");
 
+            // frames up to here describe an uninitialized `this`, which no longer holds once the
+            // code is split between <init> and __constructor__
+            for (int j = 0; j <= i; j++) {
+              if (insns[j].getType() == AbstractInsnNode.FRAME) {
+                mutableClass.stackMapFramesInvalidated = true;
+              }
+            }
+
             // remove all instructions in the range startIndex..i, from aload_0 to invokespecial
             // <init>
             while (startIndex <= i) {
@@ -337,6 +437,8 @@ public abstract class ClassInstrumentor {
           break;
 
         case Opcodes.ATHROW:
+          // the appended return is unreachable, so needs a frame
+          mutableClass.stackMapFramesInvalidated = true;
           ctor.visitCode();
           ctor.visitInsn(Opcodes.RETURN);
           ctor.visitEnd();
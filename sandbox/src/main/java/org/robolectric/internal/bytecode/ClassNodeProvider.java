@@ -1,30 +1,26 @@
 package org.robolectric.internal.bytecode;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.ClassNode;
+import org.robolectric.internal.bytecode.TypeHierarchy.TypeInfo;
 
 public abstract class ClassNodeProvider {
-  private final Map<String, ClassNode> classNodes = new ConcurrentHashMap<>();
+  private final TypeHierarchy typeHierarchy;
 
-  protected abstract byte[] getClassBytes(String className) throws ClassNotFoundException;
+  /** Creates a provider with its own {@link TypeHierarchy}. */
+  protected ClassNodeProvider() {
+    this(new TypeHierarchy());
+  }
 
-  ClassNode getClassNode(String internalClassName) throws ClassNotFoundException {
-    ClassNode classNode = classNodes.get(internalClassName);
-    if (classNode == null) {
-      classNode = createClassNode(internalClassName);
-      classNodes.put(internalClassName, classNode);
-    }
-    return classNode;
+  /**
+   * Creates a provider that records type information in the given, possibly shared, {@link
+   * TypeHierarchy}.
+   */
+  protected ClassNodeProvider(TypeHierarchy typeHierarchy) {
+    this.typeHierarchy = typeHierarchy;
   }
 
-  private ClassNode createClassNode(String internalClassName) throws ClassNotFoundException {
-    byte[] byteCode = getClassBytes(internalClassName);
-    ClassReader classReader = new ClassReader(byteCode);
-    ClassNode classNode = new ClassNode();
-    classReader.accept(
-        classNode, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-    return classNode;
+  protected abstract byte[] getClassBytes(String className) throws ClassNotFoundException;
+
+  TypeInfo getTypeInfo(String internalClassName) throws ClassNotFoundException {
+    return typeHierarchy.getTypeInfo(internalClassName, this);
   }
 }
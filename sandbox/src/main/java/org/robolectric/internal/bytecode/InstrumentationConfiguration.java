@@ -4,6 +4,10 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -11,6 +15,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.robolectric.annotation.internal.DoNotInstrument;
 import org.robolectric.annotation.internal.Instrument;
@@ -35,6 +41,10 @@ public class InstrumentationConfiguration {
 
   static final Set<String> RESOURCES_TO_ALWAYS_ACQUIRE = Sets.newHashSet("build.prop");
 
+  private static final Pattern FRAMEWORK_R_CLASS_PATTERN =
+      Pattern.compile("(android|com\\.android\\.internal)\\.R(\\$.+)?");
+  private static final Pattern R_CLASS_PATTERN = Pattern.compile(".*\\.R(|\\$[a-z]+)$");
+
   private final List<String> instrumentedPackages;
   private final Set<String> instrumentedClasses;
   private final Set<String> classesToNotInstrument;
@@ -44,6 +54,12 @@ public class InstrumentationConfiguration {
   private final Set<String> classesToNotAcquire;
   private final Set<String> packagesToNotAcquire;
   private final Set<String> packagesToNotInstrument;
+  private final Pattern classesToNotInstrumentPattern;
+  private final PackageMatcher instrumentedPackageMatcher;
+  private final PackageMatcher packagesToNotAcquireMatcher;
+  private final PackageMatcher packagesToNotInstrumentMatcher;
+  private final Map<String, Boolean> acquireDecisions = new ConcurrentHashMap<>();
+  private final String fingerprint;
   private int cachedHashCode;
 
   private final TypeMapper typeMapper;
@@ -68,10 +84,16 @@ public class InstrumentationConfiguration {
     this.classesToNotInstrument = ImmutableSet.copyOf(classesToNotInstrument);
     this.packagesToNotInstrument = ImmutableSet.copyOf(packagesToNotInstrument);
     this.classesToNotInstrumentRegex = classesToNotInstrumentRegex;
+    this.classesToNotInstrumentPattern =
+        classesToNotInstrumentRegex == null ? null : Pattern.compile(classesToNotInstrumentRegex);
+    this.instrumentedPackageMatcher = PackageMatcher.of(this.instrumentedPackages);
+    this.packagesToNotAcquireMatcher = PackageMatcher.of(this.packagesToNotAcquire);
+    this.packagesToNotInstrumentMatcher = PackageMatcher.of(this.packagesToNotInstrument);
     this.cachedHashCode = 0;
 
     this.typeMapper = new TypeMapper(classNameTranslations());
     this.methodsToIntercept = ImmutableSet.copyOf(convertToSlashes(methodsToIntercept()));
+    this.fingerprint = computeFingerprint();
   }
 
   /**
@@ -93,7 +115,8 @@ public class InstrumentationConfiguration {
   }
 
   private boolean classMatchesExclusionRegex(String className) {
-    return classesToNotInstrumentRegex != null && className.matches(classesToNotInstrumentRegex);
+    return classesToNotInstrumentPattern != null
+        && classesToNotInstrumentPattern.matcher(className).matches();
   }
 
   /**
@@ -103,6 +126,16 @@ public class InstrumentationConfiguration {
    * @return True if the class should be loaded.
    */
   public boolean shouldAcquire(String name) {
+    // consulted on every class load, including the ones delegated to the parent class loader
+    Boolean decision = acquireDecisions.get(name);
+    if (decision == null) {
+      decision = computeShouldAcquire(name);
+      acquireDecisions.put(name, decision);
+    }
+    return decision;
+  }
+
+  private boolean computeShouldAcquire(String name) {
     if (CLASSES_TO_ALWAYS_ACQUIRE.contains(name)) {
       return true;
     }
@@ -112,7 +145,7 @@ public class InstrumentationConfiguration {
     }
 
     // android.R and com.android.internal.R classes must be loaded from the framework jar
-    if (name.matches("(android|com\\.android\\.internal)\\.R(\\$.+)?")) {
+    if (FRAMEWORK_R_CLASS_PATTERN.matcher(name).matches()) {
       return true;
     }
 
@@ -122,12 +155,12 @@ public class InstrumentationConfiguration {
       return true;
     }
 
-    for (String packageName : packagesToNotAcquire) {
-      if (name.startsWith(packageName)) return false;
+    if (packagesToNotAcquireMatcher.matches(name)) {
+      return false;
     }
 
     // R classes must be loaded from system CP
-    boolean isRClass = name.matches(".*\\.R(|\\$[a-z]+)$");
+    boolean isRClass = R_CLASS_PATTERN.matcher(name).matches();
     return !isRClass && !classesToNotAcquire.contains(name);
   }
 
@@ -159,21 +192,58 @@ public class InstrumentationConfiguration {
   }
 
   private boolean isInInstrumentedPackage(String className) {
-    for (String instrumentedPackage : instrumentedPackages) {
-      if (className.startsWith(instrumentedPackage)) {
-        return true;
-      }
-    }
-    return false;
+    return instrumentedPackageMatcher.matches(className);
   }
 
   private boolean isInPackagesToNotInstrument(String className) {
-    for (String notInstrumentedPackage : packagesToNotInstrument) {
-      if (className.startsWith(notInstrumentedPackage)) {
-        return true;
-      }
+    return packagesToNotInstrumentMatcher.matches(className);
+  }
+
+  /**
+   * Returns a digest of every rule in this configuration.
+   *
+   * <p>Unlike {@link #hashCode()}, the fingerprint covers all of the rules, and doesn't depend on
+   * the order in which they were added or on the JVM, so it can be used to key caches of
+   * instrumented classes.
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  private String computeFingerprint() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    putSorted(hasher, "instrumentedPackages", instrumentedPackages);
+    putSorted(hasher, "instrumentedClasses", instrumentedClasses);
+    putSorted(hasher, "classesToNotInstrument", classesToNotInstrument);
+    putSorted(hasher, "packagesToNotInstrument", packagesToNotInstrument);
+    putSorted(hasher, "classesToNotAcquire", classesToNotAcquire);
+    putSorted(hasher, "packagesToNotAcquire", packagesToNotAcquire);
+    List<String> translations = new ArrayList<>();
+    for (Map.Entry<String, String> entry : classNameTranslations.entrySet()) {
+      translations.add(entry.getKey() + "=" + entry.getValue());
+    }
+    putSorted(hasher, "classNameTranslations", translations);
+    List<String> methods = new ArrayList<>();
+    for (MethodRef methodRef : interceptedMethods) {
+      methods.add(methodRef.className + "#" + methodRef.methodName);
+    }
+    putSorted(hasher, "interceptedMethods", methods);
+    putSorted(
+        hasher,
+        "classesToNotInstrumentRegex",
+        classesToNotInstrumentRegex == null
+            ? Collections.emptyList()
+            : Collections.singletonList(classesToNotInstrumentRegex));
+    return hasher.hash().toString();
+  }
+
+  private static void putSorted(Hasher hasher, String name, Collection<String> values) {
+    List<String> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    hasher.putString(name, StandardCharsets.UTF_8).putInt(sorted.size());
+    for (String value : sorted) {
+      hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
     }
-    return false;
   }
 
   @Override
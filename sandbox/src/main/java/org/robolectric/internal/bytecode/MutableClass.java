@@ -22,6 +22,12 @@ public class MutableClass {
   final Type classType;
   final ImmutableSet<String> foundMethods;
 
+  /** True if the original class file is required to contain stack map frames. */
+  final boolean hasStackMapFrames;
+
+  /** Set when instrumentation rewrote code in a way that breaks the original stack map frames. */
+  boolean stackMapFramesInvalidated;
+
   MutableClass(
       ClassNode classNode,
       InstrumentationConfiguration config,
@@ -33,6 +39,7 @@ public class MutableClass {
     this.className = classNode.name.replace('/', '.');
     this.classType = Type.getObjectType(internalClassName);
     this.containsStubs = config.containsStubs(className);
+    this.hasStackMapFrames = classNode.version >= Opcodes.V1_7;
 
     List<String> foundMethods = new ArrayList<>(classNode.methods.size());
     for (MethodNode methodNode : getMethods()) {
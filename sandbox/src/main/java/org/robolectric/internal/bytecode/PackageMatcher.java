@@ -0,0 +1,104 @@
+package org.robolectric.internal.bytecode;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Matches names against a fixed set of prefixes, such as the package names in an {@link
+ * InstrumentationConfiguration}.
+ *
+ * <p>The prefixes are compiled into an immutable trie, so a lookup costs one step per character of
+ * the name's longest matching path, however many prefixes there are.
+ */
+final class PackageMatcher {
+
+  private final Node root;
+
+  private PackageMatcher(Node root) {
+    this.root = root;
+  }
+
+  static PackageMatcher of(Collection<String> prefixes) {
+    NodeBuilder rootBuilder = new NodeBuilder();
+    for (String prefix : prefixes) {
+      NodeBuilder builder = rootBuilder;
+      for (int i = 0; i < prefix.length(); i++) {
+        builder = builder.children.computeIfAbsent(prefix.charAt(i), c -> new NodeBuilder());
+      }
+      builder.terminal = true;
+    }
+    return new PackageMatcher(rootBuilder.build());
+  }
+
+  /** Returns true if {@code name} starts with any of the prefixes. */
+  boolean matches(String name) {
+    Node node = root;
+    for (int i = 0; ; i++) {
+      if (node.terminal) {
+        return true;
+      }
+      if (i == name.length()) {
+        return false;
+      }
+      node = node.child(name.charAt(i));
+      if (node == null) {
+        return false;
+      }
+    }
+  }
+
+  private static final class Node {
+    private static final char[] NO_CHARS = new char[0];
+    private static final Node[] NO_NODES = new Node[0];
+
+    final boolean terminal;
+    // sorted, so children can be found by binary search
+    private final char[] chars;
+    private final Node[] children;
+
+    Node(boolean terminal, char[] chars, Node[] children) {
+      this.terminal = terminal;
+      this.chars = chars;
+      this.children = children;
+    }
+
+    Node child(char c) {
+      int lo = 0;
+      int hi = chars.length - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        char midChar = chars[mid];
+        if (midChar < c) {
+          lo = mid + 1;
+        } else if (midChar > c) {
+          hi = mid - 1;
+        } else {
+          return children[mid];
+        }
+      }
+      return null;
+    }
+  }
+
+  private static final class NodeBuilder {
+    final Map<Character, NodeBuilder> children = new TreeMap<>();
+    boolean terminal;
+
+    Node build() {
+      if (terminal) {
+        // nothing below a terminal node can change the outcome of a match
+        return new Node(true, Node.NO_CHARS, Node.NO_NODES);
+      }
+      char[] chars = new char[children.size()];
+      Node[] nodes = new Node[children.size()];
+      int i = 0;
+      for (Map.Entry<Character, NodeBuilder> entry : children.entrySet()) {
+        chars[i] = entry.getKey();
+        nodes[i] = entry.getValue().build();
+        i++;
+      }
+      return new Node(false, chars, nodes);
+    }
+  }
+}
@@ -11,9 +11,11 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Arrays;
 import javax.inject.Inject;
 import org.robolectric.util.Logger;
 import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.TestProfiler;
 import org.robolectric.util.Util;
 
 /**
@@ -56,7 +58,7 @@ public class SandboxClassLoader extends URLClassLoader {
     this.classInstrumentor = classInstrumentor;
 
     classNodeProvider =
-        new ClassNodeProvider() {
+        new ClassNodeProvider(typeHierarchy()) {
           @Override
           protected byte[] getClassBytes(String internalClassName) throws ClassNotFoundException {
             return getByteCode(internalClassName);
@@ -64,6 +66,23 @@ public class SandboxClassLoader extends URLClassLoader {
         };
   }
 
+  /**
+   * Returns the {@link TypeHierarchy} for the classes this loads, shared with other sandboxes that
+   * read the same jars through the same parent class loader.
+   */
+  private TypeHierarchy typeHierarchy() {
+    if (!(resourceProvider instanceof URLClassLoader)) {
+      // Other providers can't be told apart without holding on to them, so don't share.
+      return new TypeHierarchy();
+    }
+    return TypeHierarchy.shared(
+        getParent(),
+        Arrays.asList(
+            getClass().getName(),
+            Arrays.asList(getURLs()),
+            Arrays.asList(((URLClassLoader) resourceProvider).getURLs())));
+  }
+
   private static URL[] getClassPathUrls(ClassLoader classloader) {
     if (classloader instanceof URLClassLoader) {
       return ((URLClassLoader) classloader).getURLs();
@@ -117,9 +136,15 @@ public class SandboxClassLoader extends URLClassLoader {
       }
 
       if (config.shouldAcquire(name)) {
-        loadedClass =
-            PerfStatsCollector.getInstance()
-                .measure("load sandboxed class", () -> maybeInstrumentClass(name));
+        TestProfiler profiler = TestProfiler.getInstance();
+        profiler.classLoadStarted();
+        try {
+          loadedClass =
+              PerfStatsCollector.getInstance()
+                  .measure("load sandboxed class", () -> maybeInstrumentClass(name));
+        } finally {
+          profiler.classLoadFinished(name);
+        }
       } else {
         loadedClass = getParent().loadClass(name);
       }
@@ -144,6 +169,7 @@ public class SandboxClassLoader extends URLClassLoader {
     try {
       final byte[] bytes;
       if (config.shouldInstrument(mutableClass)) {
+        TestProfiler.getInstance().classInstrumented();
         bytes =
             PerfStatsCollector.getInstance()
                 .measure(
@@ -1,13 +1,42 @@
 package org.robolectric.internal.bytecode;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.robolectric.internal.IShadow;
 import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
 public class ShadowImpl implements IShadow {
 
+  private static final Class<?>[] NO_CLASSES = new Class<?>[0];
+  private static final Object[] NO_ARGS = new Object[0];
+  /** The numeric primitives, each of which widens to those after it. */
+  private static final List<Class<?>> WIDENING_ORDER =
+      Arrays.asList(byte.class, short.class, int.class, long.class, float.class, double.class);
+
   private final ProxyMaker proxyMaker = new ProxyMaker(this::directMethodName);
 
+  /**
+   * The direct ({@code $$robo$$}) methods used so far, for each class, by original method name.
+   * Looking them up reflectively and building the direct method name on every call is costly, and
+   * framework shadows call through to real code a lot.
+   */
+  private final ClassValue<Map<String, DirectMethod[]>> directMethods =
+      new ClassValue<Map<String, DirectMethod[]>>() {
+        @Override
+        protected Map<String, DirectMethod[]> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
   @Override
   @SuppressWarnings("TypeParameterUnusedInFormals")
   public <T> T extract(Object instance) {
@@ -61,26 +90,125 @@ public class ShadowImpl implements IShadow {
       Class<T> clazz,
       String methodName,
       ReflectionHelpers.ClassParameter... paramValues) {
-    String directMethodName = directMethodName(clazz.getName(), methodName);
-    return (R)
-        ReflectionHelpers.callInstanceMethod(clazz, shadowedObject, directMethodName, paramValues);
+    DirectMethod method =
+        findDirectMethod(clazz, methodName, ClassParameter.getClasses(paramValues), false);
+    return (R) method.invoke(shadowedObject, ClassParameter.getValues(paramValues));
+  }
+
+  @Override
+  @SuppressWarnings(value = {"unchecked", "TypeParameterUnusedInFormals"})
+  public <R, T> R directlyOn(T shadowedObject, Class<T> clazz, String methodName) {
+    return (R) findDirectMethod(clazz, methodName, false).invoke(shadowedObject);
+  }
+
+  @Override
+  @SuppressWarnings(value = {"unchecked", "TypeParameterUnusedInFormals"})
+  public <R, T> R directlyOn(
+      T shadowedObject, Class<T> clazz, String methodName, Class<?> paramType, Object param) {
+    return (R) findDirectMethod(clazz, methodName, paramType, false).invoke(shadowedObject, param);
   }
 
   @Override
   @SuppressWarnings(value = {"unchecked", "TypeParameterUnusedInFormals"})
   public <R, T> R directlyOn(
       Class<T> clazz, String methodName, ReflectionHelpers.ClassParameter... paramValues) {
-    String directMethodName = directMethodName(clazz.getName(), methodName);
-    return (R) ReflectionHelpers.callStaticMethod(clazz, directMethodName, paramValues);
+    DirectMethod method =
+        findDirectMethod(clazz, methodName, ClassParameter.getClasses(paramValues), true);
+    return (R) method.invoke(null, ClassParameter.getValues(paramValues));
+  }
+
+  @Override
+  @SuppressWarnings(value = {"unchecked", "TypeParameterUnusedInFormals"})
+  public <R, T> R directlyOn(Class<T> clazz, String methodName) {
+    return (R) findDirectMethod(clazz, methodName, true).invoke(null);
   }
 
   @Override
   @SuppressWarnings(value = {"unchecked", "TypeParameterUnusedInFormals"})
   public <R> R invokeConstructor(
       Class<? extends R> clazz, R instance, ReflectionHelpers.ClassParameter... paramValues) {
-    String directMethodName =
-        directMethodName(clazz.getName(), ShadowConstants.CONSTRUCTOR_METHOD_NAME);
-    return (R) ReflectionHelpers.callInstanceMethod(clazz, instance, directMethodName, paramValues);
+    DirectMethod method =
+        findDirectMethod(
+            clazz,
+            ShadowConstants.CONSTRUCTOR_METHOD_NAME,
+            ClassParameter.getClasses(paramValues),
+            false);
+    return (R) method.invoke(instance, ClassParameter.getValues(paramValues));
+  }
+
+  @Override
+  @SuppressWarnings(value = {"unchecked", "TypeParameterUnusedInFormals"})
+  public <R> R invokeConstructor(Class<? extends R> clazz, R instance) {
+    return (R)
+        findDirectMethod(clazz, ShadowConstants.CONSTRUCTOR_METHOD_NAME, false).invoke(instance);
+  }
+
+  private DirectMethod findDirectMethod(Class<?> clazz, String methodName, boolean isStatic) {
+    DirectMethod[] overloads = directMethods.get(clazz).get(methodName);
+    if (overloads != null) {
+      for (DirectMethod method : overloads) {
+        if (method.isStatic == isStatic && method.paramTypes.length == 0) {
+          return method;
+        }
+      }
+    }
+    return addDirectMethod(clazz, methodName, NO_CLASSES, isStatic);
+  }
+
+  private DirectMethod findDirectMethod(
+      Class<?> clazz, String methodName, Class<?> paramType, boolean isStatic) {
+    DirectMethod[] overloads = directMethods.get(clazz).get(methodName);
+    if (overloads != null) {
+      for (DirectMethod method : overloads) {
+        if (method.isStatic == isStatic
+            && method.paramTypes.length == 1
+            && method.paramTypes[0] == paramType) {
+          return method;
+        }
+      }
+    }
+    return addDirectMethod(clazz, methodName, new Class<?>[] {paramType}, isStatic);
+  }
+
+  private DirectMethod findDirectMethod(
+      Class<?> clazz, String methodName, Class<?>[] paramTypes, boolean isStatic) {
+    DirectMethod[] overloads = directMethods.get(clazz).get(methodName);
+    if (overloads != null) {
+      for (DirectMethod method : overloads) {
+        if (method.isStatic == isStatic && Arrays.equals(method.paramTypes, paramTypes)) {
+          return method;
+        }
+      }
+    }
+    return addDirectMethod(clazz, methodName, paramTypes, isStatic);
+  }
+
+  private DirectMethod addDirectMethod(
+      Class<?> clazz, String methodName, Class<?>[] paramTypes, boolean isStatic) {
+    DirectMethod directMethod;
+    try {
+      Method method =
+          clazz.getDeclaredMethod(directMethodName(clazz.getName(), methodName), paramTypes);
+      if (Modifier.isStatic(method.getModifiers()) != isStatic) {
+        throw new IllegalArgumentException(method + (isStatic ? " is not static" : " is static"));
+      }
+      method.setAccessible(true);
+      directMethod = new DirectMethod(method);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+    // Another thread may have got here first, in which case there's a harmless duplicate.
+    directMethods
+        .get(clazz)
+        .merge(
+            methodName,
+            new DirectMethod[] {directMethod},
+            (overloads, added) -> {
+              DirectMethod[] merged = Arrays.copyOf(overloads, overloads.length + 1);
+              merged[overloads.length] = added[0];
+              return merged;
+            });
+    return directMethod;
   }
 
   @Override
@@ -99,4 +227,101 @@ public class ShadowImpl implements IShadow {
       throw new RuntimeException("failed to initialize " + clazz, e);
     }
   }
+
+  /** A direct method, with a {@link MethodHandle} adapted to take an instance and the arguments. */
+  private static class DirectMethod {
+    final Class<?> declaringClass;
+    final Class<?>[] paramTypes;
+    final boolean isStatic;
+    /** Takes the instance (ignored for static methods) and each argument, all as Objects. */
+    private final MethodHandle handle;
+    /** As {@link #handle}, but takes the arguments as an array. */
+    private final MethodHandle spreader;
+
+    DirectMethod(Method method) throws IllegalAccessException {
+      this.declaringClass = method.getDeclaringClass();
+      this.paramTypes = method.getParameterTypes();
+      this.isStatic = Modifier.isStatic(method.getModifiers());
+      MethodHandle handle = MethodHandles.lookup().unreflect(method);
+      handle = handle.asType(handle.type().generic());
+      if (isStatic) {
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      this.handle = handle;
+      this.spreader = handle.asSpreader(Object[].class, paramTypes.length);
+    }
+
+    Object invoke(Object instance) {
+      try {
+        return handle.invokeExact(instance);
+      } catch (ClassCastException e) {
+        throw argumentMismatchOr(e, instance, NO_ARGS);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new RuntimeException(t);
+      }
+    }
+
+    Object invoke(Object instance, Object param) {
+      try {
+        return handle.invokeExact(instance, param);
+      } catch (ClassCastException | NullPointerException e) {
+        throw argumentMismatchOr(e, instance, new Object[] {param});
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new RuntimeException(t);
+      }
+    }
+
+    Object invoke(Object instance, Object[] params) {
+      try {
+        return spreader.invokeExact(instance, params);
+      } catch (ClassCastException | NullPointerException e) {
+        throw argumentMismatchOr(e, instance, params);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new RuntimeException(t);
+      }
+    }
+
+    /**
+     * The handle converts arguments as reflection does, widening primitives, but reports those it
+     * can't convert with a ClassCastException or NullPointerException, which the method itself
+     * might also have thrown. Reflection's {@link IllegalArgumentException} is reported instead
+     * when that was the cause, wrapped as ReflectionHelpers used to.
+     */
+    private RuntimeException argumentMismatchOr(
+        RuntimeException e, Object instance, Object[] params) {
+      if (!isStatic && instance != null && !declaringClass.isInstance(instance)) {
+        return new RuntimeException(
+            new IllegalArgumentException("object is not an instance of declaring class", e));
+      }
+      for (int i = 0; i < paramTypes.length; i++) {
+        if (!isAssignable(paramTypes[i], params[i])) {
+          return new RuntimeException(new IllegalArgumentException("argument type mismatch", e));
+        }
+      }
+      return e;
+    }
+
+    /** Whether reflection would accept {@code value} for a parameter of the given type. */
+    private static boolean isAssignable(Class<?> type, Object value) {
+      if (!type.isPrimitive()) {
+        return value == null || type.isInstance(value);
+      }
+      if (value == null) {
+        return false;
+      }
+      Class<?> unboxed = MethodType.methodType(value.getClass()).unwrap().returnType();
+      if (unboxed == type) {
+        return true;
+      }
+      // char isn't in the order, but widens to int and the types after it.
+      int from = WIDENING_ORDER.indexOf(unboxed == char.class ? int.class : unboxed);
+      return from >= 0 && WIDENING_ORDER.indexOf(type) >= from;
+    }
+  }
 }
@@ -4,6 +4,7 @@ import static java.lang.invoke.MethodHandles.constant;
 import static java.lang.invoke.MethodHandles.dropArguments;
 import static java.lang.invoke.MethodHandles.foldArguments;
 import static java.lang.invoke.MethodHandles.identity;
+import static java.lang.invoke.MethodHandles.insertArguments;
 import static java.lang.invoke.MethodType.methodType;
 
 import com.google.auto.service.AutoService;
@@ -27,6 +28,7 @@ import org.robolectric.annotation.RealObject;
 import org.robolectric.sandbox.ShadowMatcher;
 import org.robolectric.util.Function;
 import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.TestProfiler;
 
 /**
  * ShadowWrangler matches shadowed classes up with corresponding shadows based on a {@link
@@ -69,12 +71,19 @@ public class ShadowWrangler implements ClassHandler {
   public static final MethodHandle DO_NOTHING =
       constant(Void.class, null).asType(methodType(void.class));
   public static final Method DO_NOTHING_METHOD;
+  private static final MethodHandle IMPLEMENTATION_CALLED;
 
   static {
     try {
       DO_NOTHING_METHOD = ShadowWrangler.class.getDeclaredMethod("doNothing");
       DO_NOTHING_METHOD.setAccessible(true);
-    } catch (NoSuchMethodException e) {
+      IMPLEMENTATION_CALLED =
+          MethodHandles.lookup()
+              .findVirtual(
+                  TestProfiler.class,
+                  "implementationCalled",
+                  methodType(void.class, String.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
       throw new RuntimeException(e);
     }
   }
@@ -241,6 +250,14 @@ public class ShadowWrangler implements ClassHandler {
 
               shadowMethod.setAccessible(true);
               MethodHandle mh = LOOKUP.unreflect(shadowMethod);
+              TestProfiler profiler = TestProfiler.getInstance();
+              if (profiler.isEnabled()) {
+                mh =
+                    foldArguments(
+                        mh,
+                        insertArguments(
+                            IMPLEMENTATION_CALLED, 0, profiler, describe(shadowMethod)));
+              }
 
               // Robolectric doesn't actually look for static, this for example happens
               // in MessageQueue.nativeInit() which used to be void non-static in 4.2.
@@ -497,13 +514,16 @@ public class ShadowWrangler implements ClassHandler {
 
   private static class ShadowMethodPlan implements Plan {
     private final Method shadowMethod;
+    private final String description;
 
     public ShadowMethodPlan(Method shadowMethod) {
       this.shadowMethod = shadowMethod;
+      this.description = ShadowWrangler.describe(shadowMethod);
     }
 
     @Override
     public Object run(Object instance, Object[] params) throws Throwable {
+      TestProfiler.getInstance().implementationCalled(description);
       ShadowedObject shadowedObject = (ShadowedObject) instance;
       Object shadow = shadowedObject == null ? null : shadowedObject.$$robo$getData();
       try {
@@ -576,4 +596,9 @@ public class ShadowWrangler implements ClassHandler {
 
   @SuppressWarnings("unused")
   private static void doNothing() {}
+
+  /** Names a shadow method for the {@link TestProfiler}, e.g. {@code ShadowFoo#bar}. */
+  private static String describe(Method shadowMethod) {
+    return shadowMethod.getDeclaringClass().getName() + "#" + shadowMethod.getName();
+  }
 }
@@ -0,0 +1,104 @@
+package org.robolectric.internal.bytecode;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * An index of the superclass and interfaces of each class read from a particular set of class
+ * files, as needed by {@link InstrumentingClassWriter} to compute stack map frames.
+ *
+ * <p>Only the class file header is read, and names are interned, so an entry costs a few dozen
+ * bytes rather than a whole {@link org.objectweb.asm.tree.ClassNode}. Sandboxes that load classes
+ * from the same jars (e.g. the same android-all SDK) share one index via {@link
+ * #shared(ClassLoader, Object)}.
+ */
+public final class TypeHierarchy {
+
+  /**
+   * Shared indexes by parent class loader, then by key. Weak keys, so an index doesn't outlive the
+   * class loader its classes were read through.
+   */
+  private static final Map<ClassLoader, Map<Object, TypeHierarchy>> sharedHierarchies =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static final TypeInfo MISSING = new TypeInfo(0, null, new String[0]);
+
+  private final Map<String, TypeInfo> types = new ConcurrentHashMap<>();
+
+  TypeHierarchy() {}
+
+  /**
+   * Returns the index shared by every user of the given parent class loader and key, creating it
+   * if necessary. It's kept for as long as the parent class loader is reachable.
+   *
+   * <p>Together with the parent, the key must identify the source of class bytes exactly: two
+   * callers using the same ones must get the same bytes for any given class name. The key mustn't
+   * refer to class loaders itself, or they'd never be collected.
+   */
+  public static TypeHierarchy shared(ClassLoader parent, Object key) {
+    return sharedHierarchies
+        .computeIfAbsent(parent, p -> new ConcurrentHashMap<>())
+        .computeIfAbsent(key, k -> new TypeHierarchy());
+  }
+
+  /** Returns the type information for the given class, reading its bytes if necessary. */
+  TypeInfo getTypeInfo(String internalClassName, ClassNodeProvider classNodeProvider)
+      throws ClassNotFoundException {
+    TypeInfo typeInfo = types.get(internalClassName);
+    if (typeInfo == null) {
+      typeInfo = readTypeInfo(internalClassName, classNodeProvider);
+      TypeInfo existing = types.putIfAbsent(internalClassName.intern(), typeInfo);
+      if (existing != null) {
+        typeInfo = existing;
+      }
+    }
+    if (typeInfo == MISSING) {
+      throw new ClassNotFoundException(internalClassName);
+    }
+    return typeInfo;
+  }
+
+  /** Returns the number of classes in this index. */
+  int size() {
+    return types.size();
+  }
+
+  private static TypeInfo readTypeInfo(
+      String internalClassName, ClassNodeProvider classNodeProvider) {
+    byte[] byteCode;
+    try {
+      byteCode = classNodeProvider.getClassBytes(internalClassName);
+    } catch (ClassNotFoundException e) {
+      return MISSING;
+    }
+    ClassReader classReader = new ClassReader(byteCode);
+    String superName = classReader.getSuperName();
+    String[] interfaces = classReader.getInterfaces();
+    for (int i = 0; i < interfaces.length; i++) {
+      interfaces[i] = interfaces[i].intern();
+    }
+    return new TypeInfo(
+        classReader.getAccess(), superName == null ? null : superName.intern(), interfaces);
+  }
+
+  /** The access flags, superclass and interfaces of a class. */
+  static final class TypeInfo {
+    final int access;
+    final String superName;
+    final String[] interfaces;
+
+    TypeInfo(int access, String superName, String[] interfaces) {
+      this.access = access;
+      this.superName = superName;
+      this.interfaces = interfaces;
+    }
+
+    boolean isInterface() {
+      return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
+  }
+}
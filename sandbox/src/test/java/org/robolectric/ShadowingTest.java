@@ -20,6 +20,7 @@ import org.robolectric.internal.bytecode.ShadowConstants;
 import org.robolectric.shadow.api.Shadow;
 import org.robolectric.testing.AnUninstrumentedClass;
 import org.robolectric.testing.Pony;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
 @RunWith(SandboxTestRunner.class)
 public class ShadowingTest {
@@ -138,6 +139,28 @@ public class ShadowingTest {
     assertEquals("Fake whinny! You're on my haunches!", pony.ride("haunches"));
   }
 
+  @Test
+  @SandboxConfig(shadows = {Pony.ShadowPony.class})
+  public void directlyOnByName_shouldCallThroughToOriginalMethodBody() throws Exception {
+    Pony pony = new Pony();
+
+    for (int i = 0; i < 2; i++) {
+      assertThat(
+              (String)
+                  Shadow.directlyOn(
+                      pony, Pony.class, "ride", ClassParameter.from(String.class, "neck")))
+          .isEqualTo("Whinny! You're on my neck!");
+      assertThat((String) Shadow.directlyOn(pony, Pony.class, "ride", String.class, "back"))
+          .isEqualTo("Whinny! You're on my back!");
+      assertThat(
+              (String)
+                  Shadow.directlyOn(
+                      Pony.class, "prance", ClassParameter.from(String.class, "the fields")))
+          .isEqualTo("I'm prancing to the fields!");
+    }
+    assertEquals("Fake whinny! You're on my neck!", pony.ride("neck"));
+  }
+
   @Test
   @SandboxConfig(shadows = {Pony.ShadowPony.class})
   public void shouldCallRealForUnshadowedMethod() throws Exception {
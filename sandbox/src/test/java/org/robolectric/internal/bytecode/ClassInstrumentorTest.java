@@ -0,0 +1,157 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.util.ReflectionHelpers.ClassParameter.from;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.sandbox.ShadowMatcher;
+import org.robolectric.testing.AClassWithBranchesAndTryCatch;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.Util;
+
+@RunWith(JUnit4.class)
+public class ClassInstrumentorTest {
+  private final InstrumentationConfiguration config =
+      InstrumentationConfiguration.newBuilder().build();
+  private final ClassNodeProvider classNodeProvider =
+      new ClassNodeProvider() {
+        @Override
+        protected byte[] getClassBytes(String className) throws ClassNotFoundException {
+          return readClassBytes(className);
+        }
+      };
+
+  @Test
+  public void invokeDynamicInstrumentation_keepsOriginalFrames() throws Exception {
+    ClassInstrumentor instrumentor = new InvokeDynamicClassInstrumentor(new ShadowDecorator());
+
+    MutableClass mutableClass = instrument(instrumentor, Branches.class);
+
+    assertThat(instrumentor.needsComputedFrames(mutableClass)).isFalse();
+  }
+
+  @Test
+  public void generatedBranchesWithoutFrames_computeFrames() throws Exception {
+    ClassInstrumentor instrumentor = new OldClassInstrumentor(new ShadowDecorator());
+
+    MutableClass mutableClass = instrument(instrumentor, Branches.class);
+
+    assertThat(instrumentor.needsComputedFrames(mutableClass)).isTrue();
+  }
+
+  @Test
+  public void branchesBeforeSuperConstructorCall_computeFrames() throws Exception {
+    ClassInstrumentor instrumentor = new InvokeDynamicClassInstrumentor(new ShadowDecorator());
+
+    MutableClass mutableClass = instrument(instrumentor, BranchesBeforeSuper.class);
+
+    assertThat(instrumentor.needsComputedFrames(mutableClass)).isTrue();
+  }
+
+  @Test
+  public void classWithOriginalFrames_loadsAndRunsInSandbox() throws Exception {
+    if (!InvokeDynamic.ENABLED) return;
+
+    List<String> classesWithComputedFrames = new ArrayList<>();
+    ClassInstrumentor instrumentor =
+        new InvokeDynamicClassInstrumentor(new ShadowDecorator()) {
+          @Override
+          boolean needsComputedFrames(MutableClass mutableClass) {
+            boolean needsComputedFrames = super.needsComputedFrames(mutableClass);
+            if (needsComputedFrames) {
+              classesWithComputedFrames.add(mutableClass.getName());
+            }
+            return needsComputedFrames;
+          }
+        };
+    InstrumentationConfiguration sandboxConfig =
+        InstrumentationConfiguration.newBuilder()
+            .doNotAcquirePackage("java.")
+            .doNotAcquirePackage("jdk.internal.")
+            .doNotAcquirePackage("sun.")
+            .doNotAcquirePackage("org.robolectric.annotation.")
+            .doNotAcquirePackage("org.robolectric.internal.")
+            .doNotAcquirePackage("org.robolectric.pluginapi.")
+            .doNotAcquirePackage("org.robolectric.util.")
+            .build();
+    Sandbox sandbox = new Sandbox(sandboxConfig, new UrlResourceProvider(), instrumentor);
+    Interceptors interceptors = new Interceptors(Collections.emptyList());
+    sandbox.configure(
+        new ShadowWrangler(ShadowMap.EMPTY, ShadowMatcher.MATCH_ALL, interceptors), interceptors);
+
+    Class<?> clazz = sandbox.bootstrappedClass(AClassWithBranchesAndTryCatch.class);
+
+    assertThat(clazz.getClassLoader()).isSameInstanceAs(sandbox.getRobolectricClassLoader());
+    assertThat(clazz.getDeclaredField(ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME)).isNotNull();
+    assertThat(classesWithComputedFrames).doesNotContain(clazz.getName());
+
+    Object instance = clazz.getConstructor(int.class).newInstance(-5);
+    int clamped = ReflectionHelpers.callInstanceMethod(instance, "clamp", from(int.class, 3));
+    assertThat(clamped).isEqualTo(3);
+    int parsed =
+        ReflectionHelpers.callStaticMethod(
+            clazz, "parseOrDefault", from(String.class, "42"), from(int.class, -1));
+    assertThat(parsed).isEqualTo(42);
+    int defaulted =
+        ReflectionHelpers.callStaticMethod(
+            clazz, "parseOrDefault", from(String.class, "x"), from(int.class, -1));
+    assertThat(defaulted).isEqualTo(-1);
+  }
+
+  private MutableClass instrument(ClassInstrumentor instrumentor, Class<?> clazz)
+      throws Exception {
+    byte[] bytes = readClassBytes(clazz.getName().replace('.', '/'));
+    MutableClass mutableClass = instrumentor.analyzeClass(bytes, config, classNodeProvider);
+    instrumentor.instrument(mutableClass);
+    return mutableClass;
+  }
+
+  private static byte[] readClassBytes(String internalClassName) throws ClassNotFoundException {
+    try (InputStream in =
+        ClassInstrumentorTest.class
+            .getClassLoader()
+            .getResourceAsStream(internalClassName + ".class")) {
+      if (in == null) {
+        throw new ClassNotFoundException(internalClassName);
+      }
+      return Util.readBytes(in);
+    } catch (IOException e) {
+      throw new ClassNotFoundException(internalClassName, e);
+    }
+  }
+
+  @SuppressWarnings("unused")
+  static class Branches {
+    private int value;
+
+    Branches(int value) {
+      this.value = value < 0 ? -value : value;
+    }
+
+    int clamp(int max) {
+      for (int i = 0; i < 3; i++) {
+        if (value > max) {
+          value = max;
+        }
+      }
+      return value;
+    }
+  }
+
+  static class Base {
+    Base(int value) {}
+  }
+
+  static class BranchesBeforeSuper extends Base {
+    BranchesBeforeSuper(boolean flag) {
+      super(flag ? 1 : 2);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PackageMatcherTest {
+
+  @Test
+  public void matchesNamesStartingWithAnyPrefix() {
+    PackageMatcher matcher =
+        PackageMatcher.of(ImmutableList.of("android.", "androidx.test.", "com.android.", "dalvik"));
+
+    assertThat(matcher.matches("android.view.View")).isTrue();
+    assertThat(matcher.matches("androidx.test.Foo")).isTrue();
+    assertThat(matcher.matches("dalvik.system.DexFile")).isTrue();
+    assertThat(matcher.matches("dalvik")).isTrue();
+    assertThat(matcher.matches("androidx.core.Foo")).isFalse();
+    assertThat(matcher.matches("android")).isFalse();
+    assertThat(matcher.matches("com.google.Foo")).isFalse();
+    assertThat(matcher.matches("")).isFalse();
+  }
+
+  @Test
+  public void shorterPrefixWins() {
+    PackageMatcher matcher = PackageMatcher.of(ImmutableList.of("com.foo.bar.", "com.foo."));
+
+    assertThat(matcher.matches("com.foo.Baz")).isTrue();
+    assertThat(matcher.matches("com.foo.bar.Baz")).isTrue();
+  }
+
+  @Test
+  public void emptyPrefixMatchesEverything() {
+    assertThat(PackageMatcher.of(ImmutableList.of("")).matches("anything")).isTrue();
+    assertThat(PackageMatcher.of(Collections.emptyList()).matches("anything")).isFalse();
+  }
+}
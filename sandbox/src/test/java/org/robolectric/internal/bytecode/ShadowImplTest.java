@@ -0,0 +1,128 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+/**
+ * Tests for the direct method calls of {@link ShadowImpl}, against a class whose direct methods are
+ * written by hand rather than by instrumentation.
+ */
+@RunWith(JUnit4.class)
+public class ShadowImplTest {
+  private final ShadowImpl shadowImpl = new ShadowImpl();
+
+  @Test
+  public void directlyOn_noArgs() {
+    Target target = new Target();
+
+    for (int i = 0; i < 2; i++) {
+      assertThat((String) shadowImpl.directlyOn(target, Target.class, "greet")).isEqualTo("hello");
+      assertThat((Integer) shadowImpl.directlyOn(Target.class, "answer")).isEqualTo(42);
+    }
+  }
+
+  @Test
+  public void invokeConstructor_noArgs() {
+    Target target = new Target();
+
+    shadowImpl.invokeConstructor(Target.class, target);
+
+    assertThat(target.constructed).isTrue();
+  }
+
+  @Test
+  public void directlyOn_wrapsCheckedExceptions() {
+    try {
+      shadowImpl.directlyOn(new Target(), Target.class, "fail");
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+  }
+
+  @Test
+  public void directlyOn_rethrowsUncheckedExceptions() {
+    try {
+      shadowImpl.directlyOn(
+          new Target(), Target.class, "divide", ClassParameter.from(int.class, 0));
+      fail();
+    } catch (ArithmeticException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void directlyOn_widensPrimitiveArguments() {
+    Target target = new Target();
+
+    long sum =
+        shadowImpl.directlyOn(
+            target,
+            Target.class,
+            "add",
+            ClassParameter.from(long.class, 1),
+            ClassParameter.from(double.class, 'a'));
+    assertThat(sum).isEqualTo(98L);
+    long doubled = shadowImpl.directlyOn(target, Target.class, "twice", long.class, (short) 3);
+    assertThat(doubled).isEqualTo(6L);
+  }
+
+  @Test
+  public void directlyOn_rejectsMismatchedArgumentsAsReflectionDid() {
+    Target target = new Target();
+
+    try {
+      shadowImpl.directlyOn(target, Target.class, "twice", long.class, 1.5f);
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+    }
+    try {
+      shadowImpl.directlyOn(target, Target.class, "twice", long.class, null);
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+    }
+  }
+
+  /** Declares direct methods named as {@link ShadowImpl#directMethodName} expects. */
+  @SuppressWarnings("MethodName")
+  public static class Target {
+    boolean constructed;
+
+    public void $$robo$$org_robolectric_internal_bytecode_ShadowImplTest_Target$__constructor__() {
+      constructed = true;
+    }
+
+    String $$robo$$org_robolectric_internal_bytecode_ShadowImplTest_Target$greet() {
+      return "hello";
+    }
+
+    static int $$robo$$org_robolectric_internal_bytecode_ShadowImplTest_Target$answer() {
+      return 42;
+    }
+
+    void $$robo$$org_robolectric_internal_bytecode_ShadowImplTest_Target$fail()
+        throws IOException {
+      throw new IOException();
+    }
+
+    int $$robo$$org_robolectric_internal_bytecode_ShadowImplTest_Target$divide(int divisor) {
+      return 1 / divisor;
+    }
+
+    long $$robo$$org_robolectric_internal_bytecode_ShadowImplTest_Target$add(long a, double b) {
+      return a + (long) b;
+    }
+
+    long $$robo$$org_robolectric_internal_bytecode_ShadowImplTest_Target$twice(long a) {
+      return a * 2;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.objectweb.asm.tree.ClassNode;
+import org.robolectric.internal.bytecode.TypeHierarchy.TypeInfo;
+import org.robolectric.util.Util;
+
+@RunWith(JUnit4.class)
+public class TypeHierarchyTest {
+  private final List<String> requestedClasses = new ArrayList<>();
+
+  @Test
+  public void readsSuperclassAndInterfaces() throws Exception {
+    ClassNodeProvider provider = new CountingClassNodeProvider(new TypeHierarchy());
+
+    TypeInfo arrayList = provider.getTypeInfo("java/util/ArrayList");
+    assertThat(arrayList.isInterface()).isFalse();
+    assertThat(arrayList.superName).isEqualTo("java/util/AbstractList");
+    assertThat(arrayList.interfaces).asList().contains("java/util/List");
+    assertThat(provider.getTypeInfo("java/util/List").isInterface()).isTrue();
+  }
+
+  @Test
+  public void sharedHierarchyReadsEachClassOnce() throws Exception {
+    ClassLoader parent = getClass().getClassLoader();
+    Object key = new Object();
+    ClassNodeProvider first = new CountingClassNodeProvider(TypeHierarchy.shared(parent, key));
+    ClassNodeProvider second = new CountingClassNodeProvider(TypeHierarchy.shared(parent, key));
+
+    TypeInfo typeInfo = first.getTypeInfo("java/util/ArrayList");
+
+    assertThat(second.getTypeInfo("java/util/ArrayList")).isSameInstanceAs(typeInfo);
+    assertThat(requestedClasses).containsExactly("java/util/ArrayList");
+    assertThat(TypeHierarchy.shared(parent, new Object()))
+        .isNotSameInstanceAs(TypeHierarchy.shared(parent, key));
+  }
+
+  @Test
+  public void sharedHierarchiesAreSeparatePerParent() {
+    Object key = new Object();
+    ClassLoader otherParent = new URLClassLoader(new URL[0], null);
+
+    assertThat(TypeHierarchy.shared(otherParent, key))
+        .isNotSameInstanceAs(TypeHierarchy.shared(getClass().getClassLoader(), key));
+    assertThat(TypeHierarchy.shared(otherParent, key))
+        .isSameInstanceAs(TypeHierarchy.shared(otherParent, key));
+  }
+
+  @Test
+  public void missingClassesAreRemembered() throws Exception {
+    ClassNodeProvider provider = new CountingClassNodeProvider(new TypeHierarchy());
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        provider.getTypeInfo("com/example/DoesNotExist");
+        fail();
+      } catch (ClassNotFoundException expected) {
+      }
+    }
+    assertThat(requestedClasses).containsExactly("com/example/DoesNotExist");
+  }
+
+  @Test
+  public void classWriterFindsCommonSuperClass() {
+    ClassNode classNode = new ClassNode();
+    classNode.version = 52;
+    InstrumentingClassWriter writer =
+        new InstrumentingClassWriter(
+            new CountingClassNodeProvider(new TypeHierarchy()), classNode);
+
+    assertThat(writer.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"))
+        .isEqualTo("java/util/AbstractList");
+    assertThat(writer.getCommonSuperClass("java/util/ArrayList", "java/util/Collection"))
+        .isEqualTo("java/util/Collection");
+    assertThat(writer.getCommonSuperClass("java/util/ArrayList", "java/lang/String"))
+        .isEqualTo("java/lang/Object");
+  }
+
+  private class CountingClassNodeProvider extends ClassNodeProvider {
+    CountingClassNodeProvider(TypeHierarchy typeHierarchy) {
+      super(typeHierarchy);
+    }
+
+    @Override
+    protected byte[] getClassBytes(String className) throws ClassNotFoundException {
+      requestedClasses.add(className);
+      try (InputStream in = ClassLoader.getSystemResourceAsStream(className + ".class")) {
+        if (in == null) {
+          throw new ClassNotFoundException(className);
+        }
+        return Util.readBytes(in);
+      } catch (IOException e) {
+        throw new ClassNotFoundException(className, e);
+      }
+    }
+  }
+}
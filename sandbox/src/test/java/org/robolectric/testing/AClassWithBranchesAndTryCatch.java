@@ -0,0 +1,30 @@
+package org.robolectric.testing;
+
+import org.robolectric.annotation.internal.Instrument;
+
+@SuppressWarnings("UnusedDeclaration")
+@Instrument
+public class AClassWithBranchesAndTryCatch {
+  private int value;
+
+  public AClassWithBranchesAndTryCatch(int value) {
+    this.value = value < 0 ? -value : value;
+  }
+
+  public int clamp(int max) {
+    for (int i = 0; i < 3; i++) {
+      if (value > max) {
+        value = max;
+      }
+    }
+    return value;
+  }
+
+  public static int parseOrDefault(String s, int defaultValue) {
+    try {
+      return Integer.parseInt(s);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+}
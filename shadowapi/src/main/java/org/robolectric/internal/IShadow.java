@@ -25,12 +25,21 @@ public interface IShadow {
       String methodName,
       ReflectionHelpers.ClassParameter... paramValues);
 
+  <R, T> R directlyOn(T shadowedObject, Class<T> clazz, String methodName);
+
+  <R, T> R directlyOn(
+      T shadowedObject, Class<T> clazz, String methodName, Class<?> paramType, Object param);
+
   <R, T> R directlyOn(
       Class<T> clazz, String methodName, ReflectionHelpers.ClassParameter... paramValues);
 
+  <R, T> R directlyOn(Class<T> clazz, String methodName);
+
   <R> R invokeConstructor(
       Class<? extends R> clazz, R instance, ReflectionHelpers.ClassParameter... paramValues);
 
+  <R> R invokeConstructor(Class<? extends R> clazz, R instance);
+
   String directMethodName(String className, String methodName);
 
   void directInitialize(Class<?> clazz);
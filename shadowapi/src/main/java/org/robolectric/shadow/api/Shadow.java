@@ -62,17 +62,58 @@ public class Shadow {
     return SHADOW_IMPL.directlyOn(shadowedObject, clazz, methodName, paramValues);
   }
 
+  /**
+   * Calls the original code of a method that takes no arguments, without allocating.
+   *
+   * @since 4.5
+   */
+  @SuppressWarnings("TypeParameterUnusedInFormals")
+  public static <R, T> R directlyOn(T shadowedObject, Class<T> clazz, String methodName) {
+    return SHADOW_IMPL.directlyOn(shadowedObject, clazz, methodName);
+  }
+
+  /**
+   * Calls the original code of a method that takes one argument, of type {@code paramType}, without
+   * allocating.
+   *
+   * @since 4.5
+   */
+  @SuppressWarnings("TypeParameterUnusedInFormals")
+  public static <R, T> R directlyOn(
+      T shadowedObject, Class<T> clazz, String methodName, Class<?> paramType, Object param) {
+    return SHADOW_IMPL.directlyOn(shadowedObject, clazz, methodName, paramType, param);
+  }
+
   @SuppressWarnings("TypeParameterUnusedInFormals")
   public static <R, T> R directlyOn(
       Class<T> clazz, String methodName, ClassParameter... paramValues) {
     return SHADOW_IMPL.directlyOn(clazz, methodName, paramValues);
   }
 
+  /**
+   * Calls the original code of a static method that takes no arguments, without allocating.
+   *
+   * @since 4.5
+   */
+  @SuppressWarnings("TypeParameterUnusedInFormals")
+  public static <R, T> R directlyOn(Class<T> clazz, String methodName) {
+    return SHADOW_IMPL.directlyOn(clazz, methodName);
+  }
+
   public static <R> R invokeConstructor(
       Class<? extends R> clazz, R instance, ClassParameter... paramValues) {
     return SHADOW_IMPL.invokeConstructor(clazz, instance, paramValues);
   }
 
+  /**
+   * Calls the original code of a no-argument constructor, without allocating.
+   *
+   * @since 4.5
+   */
+  public static <R> R invokeConstructor(Class<? extends R> clazz, R instance) {
+    return SHADOW_IMPL.invokeConstructor(clazz, instance);
+  }
+
   public static String directMethodName(String className, String methodName) {
     return SHADOW_IMPL.directMethodName(className, methodName);
   }
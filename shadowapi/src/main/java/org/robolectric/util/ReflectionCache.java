@@ -0,0 +1,223 @@
+package org.robolectric.util;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the fields, methods and constructors looked up by {@link ReflectionHelpers}, already made
+ * accessible, along with the names that didn't resolve to anything.
+ *
+ * <p>Looking members up with {@code getDeclaredField()} and friends copies them every time, and
+ * searching a class hierarchy that way throws an exception at each level that doesn't declare the
+ * member, which adds up over the hundreds of reflective calls shadows make.
+ *
+ * <p>Entries are kept in a {@link ClassValue} for the class they were looked up on, so they don't
+ * keep classes, or a sandbox's class loader, from being unloaded. A missing method or constructor
+ * is only remembered on a class whose class loader can see all of its parameter types; otherwise a
+ * failed lookup on, say, {@code Object} would hold on to a sandbox's classes for good.
+ */
+public final class ReflectionCache {
+
+  /** Marks a member that doesn't exist. */
+  private static final Object MISSING = new Object();
+
+  private static final String CONSTRUCTOR_NAME = "<init>";
+
+  private static final ClassValue<Members> MEMBERS =
+      new ClassValue<Members>() {
+        @Override
+        protected Members computeValue(Class<?> type) {
+          return new Members();
+        }
+      };
+
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder misses = new LongAdder();
+
+  private ReflectionCache() {}
+
+  /** Returns the number of lookups answered from the cache, including for missing members. */
+  public static long getHitCount() {
+    return hits.sum();
+  }
+
+  /** Returns the number of lookups that had to use reflection. */
+  public static long getMissCount() {
+    return misses.sum();
+  }
+
+  /** Returns the named field declared by {@code clazz}, or null if there isn't one. */
+  static Field findDeclaredField(Class<?> clazz, String name) {
+    Map<String, Object> declaredFields = MEMBERS.get(clazz).declaredFields;
+    Object field = declaredFields.get(name);
+    if (field != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+      try {
+        field = makeAccessible(clazz.getDeclaredField(name));
+      } catch (NoSuchFieldException e) {
+        field = MISSING;
+      }
+      declaredFields.putIfAbsent(name, field);
+    }
+    return field == MISSING ? null : (Field) field;
+  }
+
+  /**
+   * Returns the named field declared by {@code clazz} or the nearest superclass that declares one,
+   * or null if there isn't one.
+   */
+  static Field findField(Class<?> clazz, String name) {
+    Map<String, Object> fields = MEMBERS.get(clazz).fields;
+    Object field = fields.get(name);
+    if (field != null) {
+      hits.increment();
+    } else {
+      Field found = findDeclaredField(clazz, name);
+      Class<?> superclass = clazz.getSuperclass();
+      if (found == null && superclass != null) {
+        found = findField(superclass, name);
+      }
+      field = found == null ? MISSING : found;
+      fields.putIfAbsent(name, field);
+    }
+    return field == MISSING ? null : (Field) field;
+  }
+
+  /** Returns the method declared by {@code clazz} with the given signature, or null. */
+  static Method findDeclaredMethod(Class<?> clazz, String name, Class<?>[] paramTypes) {
+    Map<Signature, Object> declaredMethods = MEMBERS.get(clazz).declaredMethods;
+    Signature signature = new Signature(name, paramTypes);
+    Object method = declaredMethods.get(signature);
+    if (method != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+      try {
+        method = makeAccessible(clazz.getDeclaredMethod(name, paramTypes));
+      } catch (NoSuchMethodException e) {
+        method = MISSING;
+      }
+      if (method != MISSING || canRemember(clazz, paramTypes)) {
+        declaredMethods.putIfAbsent(signature, method);
+      }
+    }
+    return method == MISSING ? null : (Method) method;
+  }
+
+  /**
+   * Returns the method with the given signature declared by {@code clazz} or the nearest
+   * superclass that declares one, or null if there isn't one.
+   */
+  static Method findMethod(Class<?> clazz, String name, Class<?>[] paramTypes) {
+    Map<Signature, Object> methods = MEMBERS.get(clazz).methods;
+    Signature signature = new Signature(name, paramTypes);
+    Object method = methods.get(signature);
+    if (method != null) {
+      hits.increment();
+    } else {
+      Method found = findDeclaredMethod(clazz, name, paramTypes);
+      Class<?> superclass = clazz.getSuperclass();
+      if (found == null && superclass != null) {
+        found = findMethod(superclass, name, paramTypes);
+      }
+      method = found == null ? MISSING : found;
+      if (method != MISSING || canRemember(clazz, paramTypes)) {
+        methods.putIfAbsent(signature, method);
+      }
+    }
+    return method == MISSING ? null : (Method) method;
+  }
+
+  /** Returns the constructor declared by {@code clazz} with the given signature, or null. */
+  @SuppressWarnings("unchecked")
+  static <T> Constructor<T> findDeclaredConstructor(Class<T> clazz, Class<?>[] paramTypes) {
+    Map<Signature, Object> declaredMethods = MEMBERS.get(clazz).declaredMethods;
+    Signature signature = new Signature(CONSTRUCTOR_NAME, paramTypes);
+    Object constructor = declaredMethods.get(signature);
+    if (constructor != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+      try {
+        constructor = makeAccessible(clazz.getDeclaredConstructor(paramTypes));
+      } catch (NoSuchMethodException e) {
+        constructor = MISSING;
+      }
+      if (constructor != MISSING || canRemember(clazz, paramTypes)) {
+        declaredMethods.putIfAbsent(signature, constructor);
+      }
+    }
+    return constructor == MISSING ? null : (Constructor<T>) constructor;
+  }
+
+  /**
+   * Returns whether every parameter type was loaded by {@code clazz}'s class loader or one of its
+   * ancestors, so a signature cached on {@code clazz} can't outlive the loaders of its types.
+   */
+  private static boolean canRemember(Class<?> clazz, Class<?>[] paramTypes) {
+    for (Class<?> paramType : paramTypes) {
+      ClassLoader paramLoader = paramType == null ? null : paramType.getClassLoader();
+      if (paramLoader != null && !isSelfOrAncestor(paramLoader, clazz.getClassLoader())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSelfOrAncestor(ClassLoader candidate, ClassLoader loader) {
+    for (ClassLoader current = loader; current != null; current = current.getParent()) {
+      if (current == candidate) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static <T extends AccessibleObject> T makeAccessible(T member) {
+    member.setAccessible(true);
+    return member;
+  }
+
+  /** The members of a class that have been looked up so far. */
+  private static class Members {
+    final Map<String, Object> declaredFields = new ConcurrentHashMap<>();
+    final Map<String, Object> fields = new ConcurrentHashMap<>();
+    final Map<Signature, Object> declaredMethods = new ConcurrentHashMap<>();
+    final Map<Signature, Object> methods = new ConcurrentHashMap<>();
+  }
+
+  private static class Signature {
+    final String name;
+    final Class<?>[] paramTypes;
+
+    Signature(String name, Class<?>[] paramTypes) {
+      this.name = name;
+      this.paramTypes = paramTypes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Signature)) {
+        return false;
+      }
+      Signature that = (Signature) o;
+      return name.equals(that.name) && Arrays.equals(paramTypes, that.paramTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * name.hashCode() + Arrays.hashCode(paramTypes);
+    }
+  }
+}
@@ -118,17 +118,7 @@ public class ReflectionHelpers {
   @SuppressWarnings("unchecked")
   public static <R> R getField(final Object object, final String fieldName) {
     try {
-      return traverseClassHierarchy(
-          object.getClass(),
-          NoSuchFieldException.class,
-          new InsideTraversal<R>() {
-            @Override
-            public R run(Class<?> traversalClass) throws Exception {
-              Field field = traversalClass.getDeclaredField(fieldName);
-              field.setAccessible(true);
-              return (R) field.get(object);
-            }
-          });
+      return (R) findField(object.getClass(), fieldName).get(object);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -144,18 +134,7 @@ public class ReflectionHelpers {
   public static void setField(
       final Object object, final String fieldName, final Object fieldNewValue) {
     try {
-      traverseClassHierarchy(
-          object.getClass(),
-          NoSuchFieldException.class,
-          new InsideTraversal<Void>() {
-            @Override
-            public Void run(Class<?> traversalClass) throws Exception {
-              Field field = traversalClass.getDeclaredField(fieldName);
-              field.setAccessible(true);
-              field.set(object, fieldNewValue);
-              return null;
-            }
-          });
+      findField(object.getClass(), fieldName).set(object, fieldNewValue);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -172,9 +151,7 @@ public class ReflectionHelpers {
   public static void setField(
       Class<?> type, final Object object, final String fieldName, final Object fieldNewValue) {
     try {
-      Field field = type.getDeclaredField(fieldName);
-      field.setAccessible(true);
-      field.set(object, fieldNewValue);
+      findDeclaredField(type, fieldName).set(object, fieldNewValue);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -207,7 +184,7 @@ public class ReflectionHelpers {
    */
   public static <R> R getStaticField(Class<?> clazz, String fieldName) {
     try {
-      return getStaticField(clazz.getDeclaredField(fieldName));
+      return getStaticField(findDeclaredField(clazz, fieldName));
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -237,7 +214,7 @@ public class ReflectionHelpers {
    */
   public static void setStaticField(Class<?> clazz, String fieldName, Object fieldNewValue) {
     try {
-      setStaticField(clazz.getDeclaredField(fieldName), fieldNewValue);
+      setStaticField(findDeclaredField(clazz, fieldName), fieldNewValue);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -255,21 +232,15 @@ public class ReflectionHelpers {
   public static <R> R callInstanceMethod(
       final Object instance, final String methodName, ClassParameter<?>... classParameters) {
     try {
-      final Class<?>[] classes = ClassParameter.getClasses(classParameters);
-      final Object[] values = ClassParameter.getValues(classParameters);
+      Class<?>[] classes = ClassParameter.getClasses(classParameters);
+      Object[] values = ClassParameter.getValues(classParameters);
 
-      return traverseClassHierarchy(
-          instance.getClass(),
-          NoSuchMethodException.class,
-          new InsideTraversal<R>() {
-            @Override
-            @SuppressWarnings("unchecked")
-            public R run(Class<?> traversalClass) throws Exception {
-              Method declaredMethod = traversalClass.getDeclaredMethod(methodName, classes);
-              declaredMethod.setAccessible(true);
-              return (R) declaredMethod.invoke(instance, values);
-            }
-          });
+      Method method = ReflectionCache.findMethod(instance.getClass(), methodName, classes);
+      if (method == null) {
+        // Wrapped, as searching the class hierarchy always did, before being wrapped again below.
+        throw new RuntimeException(noSuchMethod(instance.getClass(), methodName, classes));
+      }
+      return (R) method.invoke(instance, values);
     } catch (InvocationTargetException e) {
       if (e.getTargetException() instanceof RuntimeException) {
         throw (RuntimeException) e.getTargetException();
@@ -302,8 +273,7 @@ public class ReflectionHelpers {
       final Class<?>[] classes = ClassParameter.getClasses(classParameters);
       final Object[] values = ClassParameter.getValues(classParameters);
 
-      Method method = cl.getDeclaredMethod(methodName, classes);
-      method.setAccessible(true);
+      Method method = findDeclaredMethod(cl, methodName, classes);
       if (Modifier.isStatic(method.getModifiers())) {
         throw new IllegalArgumentException(method + " is static");
       }
@@ -356,8 +326,7 @@ public class ReflectionHelpers {
       Class<?>[] classes = ClassParameter.getClasses(classParameters);
       Object[] values = ClassParameter.getValues(classParameters);
 
-      Method method = clazz.getDeclaredMethod(methodName, classes);
-      method.setAccessible(true);
+      Method method = findDeclaredMethod(clazz, methodName, classes);
       if (!Modifier.isStatic(method.getModifiers())) {
         throw new IllegalArgumentException(method + " is not static");
       }
@@ -424,8 +393,11 @@ public class ReflectionHelpers {
       final Class<?>[] classes = ClassParameter.getClasses(classParameters);
       final Object[] values = ClassParameter.getValues(classParameters);
 
-      Constructor<? extends R> constructor = clazz.getDeclaredConstructor(classes);
-      constructor.setAccessible(true);
+      Constructor<? extends R> constructor =
+          ReflectionCache.findDeclaredConstructor(clazz, classes);
+      if (constructor == null) {
+        throw noSuchMethod(clazz, "<init>", classes);
+      }
       return constructor.newInstance(values);
     } catch (InstantiationException e) {
       throw new RuntimeException("error instantiating " + clazz.getName(), e);
@@ -442,23 +414,49 @@ public class ReflectionHelpers {
     }
   }
 
-  private static <R, E extends Exception> R traverseClassHierarchy(
-      Class<?> targetClass, Class<? extends E> exceptionClass, InsideTraversal<R> insideTraversal)
-      throws Exception {
-    Class<?> hierarchyTraversalClass = targetClass;
-    while (true) {
-      try {
-        return insideTraversal.run(hierarchyTraversalClass);
-      } catch (Exception e) {
-        if (!exceptionClass.isInstance(e)) {
-          throw e;
-        }
-        hierarchyTraversalClass = hierarchyTraversalClass.getSuperclass();
-        if (hierarchyTraversalClass == null) {
-          throw new RuntimeException(e);
-        }
+  /**
+   * Returns the named field of {@code clazz} or a superclass. If there isn't one, throws a {@link
+   * NoSuchFieldException} wrapped in a RuntimeException, as searching the class hierarchy always
+   * did, so callers that wrap it again see the same nesting as before.
+   */
+  private static Field findField(Class<?> clazz, String fieldName) {
+    Field field = ReflectionCache.findField(clazz, fieldName);
+    if (field == null) {
+      throw new RuntimeException(new NoSuchFieldException(fieldName));
+    }
+    return field;
+  }
+
+  private static Field findDeclaredField(Class<?> clazz, String fieldName)
+      throws NoSuchFieldException {
+    Field field = ReflectionCache.findDeclaredField(clazz, fieldName);
+    if (field == null) {
+      throw new NoSuchFieldException(fieldName);
+    }
+    return field;
+  }
+
+  private static Method findDeclaredMethod(Class<?> clazz, String methodName, Class<?>[] classes)
+      throws NoSuchMethodException {
+    Method method = ReflectionCache.findDeclaredMethod(clazz, methodName, classes);
+    if (method == null) {
+      throw noSuchMethod(clazz, methodName, classes);
+    }
+    return method;
+  }
+
+  /** Returns an exception with the same message as {@link Class#getDeclaredMethod}'s. */
+  private static NoSuchMethodException noSuchMethod(
+      Class<?> clazz, String methodName, Class<?>[] classes) {
+    StringBuilder message = new StringBuilder(clazz.getName()).append('.').append(methodName);
+    message.append('(');
+    for (int i = 0; i < classes.length; i++) {
+      if (i > 0) {
+        message.append(',');
       }
+      message.append(classes[i] == null ? "null" : classes[i].getName());
     }
+    return new NoSuchMethodException(message.append(')').toString());
   }
 
   private static void makeFieldVeryAccessible(Field field) {
@@ -483,10 +481,6 @@ public class ReflectionHelpers {
     return PRIMITIVE_RETURN_VALUES.get(returnType);
   }
 
-  private interface InsideTraversal<R> {
-    R run(Class<?> traversalClass) throws Exception;
-  }
-
   /**
    * Typed parameter used with reflective method calls.
    *
@@ -0,0 +1,108 @@
+package org.robolectric.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ReflectionCacheTest {
+
+  @Test
+  public void findDeclaredField_returnsSameAccessibleField() {
+    Field field = ReflectionCache.findDeclaredField(Base.class, "baseField");
+    long hits = ReflectionCache.getHitCount();
+    long misses = ReflectionCache.getMissCount();
+
+    assertThat(field.isAccessible()).isTrue();
+    assertThat(ReflectionCache.findDeclaredField(Base.class, "baseField")).isSameInstanceAs(field);
+    assertThat(ReflectionCache.getHitCount()).isEqualTo(hits + 1);
+    assertThat(ReflectionCache.getMissCount()).isEqualTo(misses);
+  }
+
+  @Test
+  public void missingMembers_areCached() {
+    assertThat(ReflectionCache.findDeclaredField(Base.class, "missing")).isNull();
+    long misses = ReflectionCache.getMissCount();
+
+    assertThat(ReflectionCache.findDeclaredField(Base.class, "missing")).isNull();
+    assertThat(ReflectionCache.findDeclaredMethod(Base.class, "missing", new Class<?>[0]))
+        .isNull();
+    assertThat(ReflectionCache.findDeclaredMethod(Base.class, "missing", new Class<?>[0]))
+        .isNull();
+    assertThat(ReflectionCache.getMissCount()).isEqualTo(misses + 1);
+  }
+
+  @Test
+  public void missingMembers_withTypesFromChildLoader_areNotCachedOnAncestors() throws Exception {
+    // A copy of Base from a loader that Object's loader can't see.
+    URL classes = ReflectionCacheTest.class.getProtectionDomain().getCodeSource().getLocation();
+    try (URLClassLoader childLoader = new URLClassLoader(new URL[] {classes}, null)) {
+      Class<?> childType = childLoader.loadClass(Base.class.getName());
+      Class<?>[] paramTypes = {childType};
+
+      assertThat(ReflectionCache.findMethod(Object.class, "missing", paramTypes)).isNull();
+      long misses = ReflectionCache.getMissCount();
+      assertThat(ReflectionCache.findMethod(Object.class, "missing", paramTypes)).isNull();
+      assertThat(ReflectionCache.findDeclaredConstructor(Object.class, paramTypes)).isNull();
+      assertThat(ReflectionCache.getMissCount()).isEqualTo(misses + 2);
+
+      // They're still cached on classes from the same loader.
+      assertThat(ReflectionCache.findDeclaredMethod(childType, "missing", paramTypes)).isNull();
+      misses = ReflectionCache.getMissCount();
+      assertThat(ReflectionCache.findDeclaredMethod(childType, "missing", paramTypes)).isNull();
+      assertThat(ReflectionCache.getMissCount()).isEqualTo(misses);
+    }
+  }
+
+  @Test
+  public void findField_searchesSuperclasses() throws Exception {
+    assertThat(ReflectionCache.findField(Descendant.class, "baseField"))
+        .isEqualTo(Base.class.getDeclaredField("baseField"));
+    assertThat(ReflectionCache.findDeclaredField(Descendant.class, "baseField")).isNull();
+    assertThat(ReflectionCache.findField(Descendant.class, "missing")).isNull();
+  }
+
+  @Test
+  public void findMethod_distinguishesSignatures() throws Exception {
+    Method noArgs = ReflectionCache.findMethod(Descendant.class, "method", new Class<?>[0]);
+    Method intArg =
+        ReflectionCache.findMethod(Descendant.class, "method", new Class<?>[] {int.class});
+
+    assertThat(noArgs).isEqualTo(Base.class.getDeclaredMethod("method"));
+    assertThat(intArg).isEqualTo(Descendant.class.getDeclaredMethod("method", int.class));
+    assertThat(ReflectionCache.findMethod(Descendant.class, "method", new Class<?>[0]))
+        .isSameInstanceAs(noArgs);
+  }
+
+  @Test
+  public void findDeclaredConstructor_returnsAccessibleConstructor() {
+    Constructor<Descendant> constructor =
+        ReflectionCache.findDeclaredConstructor(Descendant.class, new Class<?>[0]);
+
+    assertThat(constructor.isAccessible()).isTrue();
+    assertThat(
+            ReflectionCache.findDeclaredConstructor(Descendant.class, new Class<?>[] {int.class}))
+        .isNull();
+  }
+
+  @SuppressWarnings("unused")
+  private static class Base {
+    private int baseField;
+
+    private void method() {}
+  }
+
+  @SuppressWarnings("unused")
+  private static class Descendant extends Base {
+    private Descendant() {}
+
+    private void method(int i) {}
+  }
+}
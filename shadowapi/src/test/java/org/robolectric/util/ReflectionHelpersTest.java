@@ -40,6 +40,25 @@ public class ReflectionHelpersTest {
     }
   }
 
+  @Test
+  public void getAndSetFieldReflectively_wrapNoSuchFieldExceptionTwice() {
+    ExampleDescendant example = new ExampleDescendant();
+    try {
+      ReflectionHelpers.getField(example, "nonExistent");
+      fail("Expected exception not thrown");
+    } catch (RuntimeException e) {
+      assertThat(e.getCause()).isInstanceOf(RuntimeException.class);
+      assertThat(e.getCause().getCause()).isInstanceOf(NoSuchFieldException.class);
+    }
+    try {
+      ReflectionHelpers.setField(example, "nonExistent", 6);
+      fail("Expected exception not thrown");
+    } catch (RuntimeException e) {
+      assertThat(e.getCause()).isInstanceOf(RuntimeException.class);
+      assertThat(e.getCause().getCause()).isInstanceOf(NoSuchFieldException.class);
+    }
+  }
+
   @Test
   public void setFieldReflectively_setsPrivateFields() {
     ExampleDescendant example = new ExampleDescendant();
@@ -195,6 +214,18 @@ public class ReflectionHelpersTest {
     }
   }
 
+  @Test
+  public void callInstanceMethodReflectively_wrapsNoSuchMethodExceptionTwice() {
+    ExampleDescendant example = new ExampleDescendant();
+    try {
+      ReflectionHelpers.callInstanceMethod(example, "nonExistent");
+      fail("Expected exception not thrown");
+    } catch (RuntimeException e) {
+      assertThat(e.getCause()).isInstanceOf(RuntimeException.class);
+      assertThat(e.getCause().getCause()).isInstanceOf(NoSuchMethodException.class);
+    }
+  }
+
   @Test
   public void callInstanceMethodReflectively_wrapsCheckedException() {
     ExampleDescendant example = new ExampleDescendant();
@@ -17,18 +17,16 @@ import org.robolectric.res.Fs;
 import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceTable;
 import org.robolectric.res.StringResources;
+import org.robolectric.res.builder.XmlBlock;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * Concrete implementation of the {@link XmlResourceParser}.
  *
- * <p>Clients expects a pull parser while the resource loader initialise this object with a {@link
- * Document}. This implementation navigates the dom and emulates a pull parser by raising all the
- * opportune events.
+ * <p>Clients expects a pull parser while the resource loader initialise this object with a
+ * compiled {@link XmlBlock}. This implementation walks the block's flattened events and emulates a
+ * pull parser by raising all the opportune events.
  *
  * <p>Note that the original android implementation is based on a set of native methods calls. Here
  * those methods are re-implemented in java when possible.
@@ -45,13 +43,14 @@ public class XmlResourceParserImpl implements XmlResourceParser {
     XmlResourceParser.FEATURE_PROCESS_DOCDECL, XmlResourceParser.FEATURE_VALIDATION
   };
 
-  private final Document document;
+  private final XmlBlock block;
   private final Path fileName;
   private final String packageName;
   private final ResourceTable resourceTable;
   private final String applicationNamespace;
 
-  private Node currentNode;
+  /** Index of the current event in {@link #block}, or -1 before the root and after the end. */
+  private int currentEvent = -1;
 
   private boolean mStarted = false;
   private boolean mDecNextDepth = false;
@@ -59,8 +58,8 @@ public class XmlResourceParserImpl implements XmlResourceParser {
   private int mEventType = START_DOCUMENT;
 
   /**
-   * @deprecated use {@link XmlResourceParserImpl#XmlResourceParserImpl(Document, Path, String,
-   *     String, ResourceTable)} instead.
+   * @deprecated use {@link XmlResourceParserImpl#XmlResourceParserImpl(XmlBlock, String,
+   *     ResourceTable)} instead.
    */
   @Deprecated
   public XmlResourceParserImpl(
@@ -72,15 +71,25 @@ public class XmlResourceParserImpl implements XmlResourceParser {
     this(document, Fs.fromUrl(fileName), packageName, applicationPackageName, resourceTable);
   }
 
+  /**
+   * @deprecated use {@link XmlResourceParserImpl#XmlResourceParserImpl(XmlBlock, String,
+   *     ResourceTable)} instead.
+   */
+  @Deprecated
   public XmlResourceParserImpl(
       Document document,
       Path fileName,
       String packageName,
       String applicationPackageName,
       ResourceTable resourceTable) {
-    this.document = document;
-    this.fileName = fileName;
-    this.packageName = packageName;
+    this(XmlBlock.create(document, fileName, packageName), applicationPackageName, resourceTable);
+  }
+
+  public XmlResourceParserImpl(
+      XmlBlock block, String applicationPackageName, ResourceTable resourceTable) {
+    this.block = block;
+    this.fileName = block.getPath();
+    this.packageName = block.getPackageName();
     this.resourceTable = resourceTable;
     this.applicationNamespace = ANDROID_RES_NS_PREFIX + applicationPackageName;
   }
@@ -170,10 +179,14 @@ public class XmlResourceParserImpl implements XmlResourceParser {
 
   @Override
   public String getText() {
-    if (currentNode == null) {
+    if (currentEvent < 0) {
       return "";
     }
-    return StringResources.processStringResources(currentNode.getTextContent());
+    String text = block.getEventText(currentEvent);
+    if (text == null) {
+      text = block.getElementTextContent(block.getEventElement(currentEvent));
+    }
+    return StringResources.processStringResources(text);
   }
 
   @Override
@@ -223,7 +236,8 @@ public class XmlResourceParserImpl implements XmlResourceParser {
 
   @Override
   public String getNamespace() {
-    String namespace = currentNode != null ? currentNode.getNamespaceURI() : null;
+    int element = currentElement();
+    String namespace = element >= 0 ? block.getElementNamespace(element) : null;
     if (namespace == null) {
       return "";
     }
@@ -233,46 +247,43 @@ public class XmlResourceParserImpl implements XmlResourceParser {
 
   @Override
   public String getName() {
-    if (currentNode == null) {
+    if (currentEvent < 0) {
       return null;
     }
-    return currentNode.getNodeName();
+    int element = currentElement();
+    return element >= 0 ? block.getElementName(element) : "#text";
   }
 
-  Node getAttributeAt(int index) {
-    if (currentNode == null) {
-      throw new IndexOutOfBoundsException(String.valueOf(index));
-    }
-    NamedNodeMap map = currentNode.getAttributes();
-    if (index >= map.getLength()) {
+  /** Returns the element for the current tag event, or -1 if not positioned on a tag. */
+  private int currentElement() {
+    return currentEvent < 0 ? -1 : block.getEventElement(currentEvent);
+  }
+
+  private int currentElementForAttribute(int index) {
+    int element = currentElement();
+    if (element < 0) {
       throw new IndexOutOfBoundsException(String.valueOf(index));
     }
-    return map.item(index);
+    return element;
   }
 
   public String getAttribute(String namespace, String name) {
-    if (currentNode == null) {
+    int element = currentElement();
+    if (element < 0) {
       return null;
     }
 
-    Element element = (Element) currentNode;
-    if (element.hasAttributeNS(namespace, name)) {
-      return element.getAttributeNS(namespace, name).trim();
-    } else if (applicationNamespace.equals(namespace)
-        && element.hasAttributeNS(AttributeResource.RES_AUTO_NS_URI, name)) {
-      return element.getAttributeNS(AttributeResource.RES_AUTO_NS_URI, name).trim();
+    int index = block.indexOfAttribute(element, namespace, name);
+    if (index < 0 && applicationNamespace.equals(namespace)) {
+      index = block.indexOfAttribute(element, AttributeResource.RES_AUTO_NS_URI, name);
     }
-
-    return null;
+    return index < 0 ? null : block.getAttributeValue(element, index).trim();
   }
 
   @Override
   public String getAttributeNamespace(int index) {
-    Node attr = getAttributeAt(index);
-    if (attr == null) {
-      return "";
-    }
-    return maybeReplaceNamespace(attr.getNamespaceURI());
+    int element = currentElementForAttribute(index);
+    return maybeReplaceNamespace(block.getAttributeNamespace(element, index));
   }
 
   private String maybeReplaceNamespace(String namespace) {
@@ -287,9 +298,7 @@ public class XmlResourceParserImpl implements XmlResourceParser {
 
   @Override
   public String getAttributeName(int index) {
-    Node attr = getAttributeAt(index);
-    String name = attr.getLocalName();
-    return name == null ? attr.getNodeName() : name;
+    return block.getAttributeName(currentElementForAttribute(index), index);
   }
 
   @Override
@@ -306,15 +315,16 @@ public class XmlResourceParserImpl implements XmlResourceParser {
 
   @Override
   public int getAttributeCount() {
-    if (currentNode == null) {
+    int element = currentElement();
+    if (element < 0) {
       return -1;
     }
-    return currentNode.getAttributes().getLength();
+    return block.getAttributeCount(element);
   }
 
   @Override
   public String getAttributeValue(int index) {
-    return qualify(getAttributeAt(index).getNodeValue());
+    return qualify(block.getAttributeValue(currentElementForAttribute(index), index));
   }
 
   // for testing only...
@@ -416,10 +426,6 @@ public class XmlResourceParserImpl implements XmlResourceParser {
           // from the invoker. This should never happen.
           throw new IllegalArgumentException("END_DOCUMENT should not be found here.");
         }
-      case (END_TAG):
-        {
-          return navigateToNextNode(currentNode);
-        }
       case (IGNORABLE_WHITESPACE):
         {
           throw new IllegalArgumentException("IGNORABLE_WHITESPACE");
@@ -429,23 +435,22 @@ public class XmlResourceParserImpl implements XmlResourceParser {
           throw new IllegalArgumentException("PROCESSING_INSTRUCTION");
         }
       case (START_DOCUMENT):
-        {
-          currentNode = document.getDocumentElement();
-          return START_TAG;
-        }
       case (START_TAG):
-        {
-          if (currentNode.hasChildNodes()) {
-            // The node has children, navigate down
-            return processNextNodeType(currentNode.getFirstChild());
-          } else {
-            // The node has no children
-            return END_TAG;
-          }
-        }
+      case (END_TAG):
       case (TEXT):
         {
-          return navigateToNextNode(currentNode);
+          // The block holds the root element's events in document order; once they are exhausted
+          // the document is over.
+          currentEvent++;
+          if (currentEvent >= block.getEventCount()) {
+            currentEvent = -1;
+            return END_DOCUMENT;
+          }
+          int eventType = block.getEventType(currentEvent);
+          if (eventType == XmlBlock.PROCESSING_INSTRUCTION) {
+            throw new IllegalArgumentException("PROCESSING_INSTRUCTION_NODE");
+          }
+          return eventType;
         }
       default:
         {
@@ -456,99 +461,6 @@ public class XmlResourceParserImpl implements XmlResourceParser {
     }
   }
 
-  /*protected*/ int processNextNodeType(Node node) throws XmlPullParserException {
-    switch (node.getNodeType()) {
-      case (Node.ATTRIBUTE_NODE):
-        {
-          throw new IllegalArgumentException("ATTRIBUTE_NODE");
-        }
-      case (Node.CDATA_SECTION_NODE):
-        {
-          return navigateToNextNode(node);
-        }
-      case (Node.COMMENT_NODE):
-        {
-          return navigateToNextNode(node);
-        }
-      case (Node.DOCUMENT_FRAGMENT_NODE):
-        {
-          throw new IllegalArgumentException("DOCUMENT_FRAGMENT_NODE");
-        }
-      case (Node.DOCUMENT_NODE):
-        {
-          throw new IllegalArgumentException("DOCUMENT_NODE");
-        }
-      case (Node.DOCUMENT_TYPE_NODE):
-        {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-      case (Node.ELEMENT_NODE):
-        {
-          currentNode = node;
-          return START_TAG;
-        }
-      case (Node.ENTITY_NODE):
-        {
-          throw new IllegalArgumentException("ENTITY_NODE");
-        }
-      case (Node.ENTITY_REFERENCE_NODE):
-        {
-          throw new IllegalArgumentException("ENTITY_REFERENCE_NODE");
-        }
-      case (Node.NOTATION_NODE):
-        {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-      case (Node.PROCESSING_INSTRUCTION_NODE):
-        {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-      case (Node.TEXT_NODE):
-        {
-          if (isWhitespace(node.getNodeValue())) {
-            // Skip whitespaces
-            return navigateToNextNode(node);
-          } else {
-            currentNode = node;
-            return TEXT;
-          }
-        }
-      default:
-        {
-          throw new RuntimeException(
-              "Robolectric -> Unknown node type: " + node.getNodeType() + ".");
-        }
-    }
-  }
-
-  /**
-   * Navigate to the next node after a node and all of his children have been explored.
-   *
-   * <p>If the node has unexplored siblings navigate to the next sibling. Otherwise return to its
-   * parent.
-   *
-   * @param node the node which was just explored.
-   * @return {@link XmlPullParserException#START_TAG} if the given node has siblings, {@link
-   *     XmlPullParserException#END_TAG} if the node has no unexplored siblings or {@link
-   *     XmlPullParserException#END_DOCUMENT} if the explored was the root document.
-   * @throws XmlPullParserException if the parser fails to parse the next node.
-   */
-  int navigateToNextNode(Node node) throws XmlPullParserException {
-    Node nextNode = node.getNextSibling();
-    if (nextNode != null) {
-      // Move to the next siblings
-      return processNextNodeType(nextNode);
-    } else {
-      // Goes back to the parent
-      if (document.getDocumentElement().equals(node)) {
-        currentNode = null;
-        return END_DOCUMENT;
-      }
-      currentNode = node.getParentNode();
-      return END_TAG;
-    }
-  }
-
   @Override
   public void require(int type, String namespace, String name)
       throws XmlPullParserException, IOException {
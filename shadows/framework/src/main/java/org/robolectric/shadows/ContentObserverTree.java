@@ -0,0 +1,123 @@
+package org.robolectric.shadows;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The content observers registered with a content resolver, in a tree of URI scheme, authority
+ * and path segments like the platform's {@code ContentService.ObserverNode}, so a change is only
+ * matched against the observers registered along its URI's path.
+ */
+class ContentObserverTree {
+
+  private final Node root = new Node(null, null);
+
+  /** The registrations of each observer, so it can be unregistered without searching the tree. */
+  private final Map<ContentObserver, List<Registration>> registrations = new IdentityHashMap<>();
+
+  private long nextSequence;
+
+  synchronized void add(Uri uri, boolean notifyForDescendents, ContentObserver observer) {
+    if (uri == null || observer == null) {
+      throw new NullPointerException();
+    }
+    Node node = root.child(uri.getScheme()).child(uri.getAuthority());
+    for (String segment : uri.getPathSegments()) {
+      node = node.child(segment);
+    }
+    Registration registration =
+        new Registration(nextSequence++, observer, notifyForDescendents, node);
+    node.registrations.add(registration);
+    registrations.computeIfAbsent(observer, o -> new ArrayList<>()).add(registration);
+  }
+
+  /** Removes all of the observer's registrations. */
+  synchronized void remove(ContentObserver observer) {
+    List<Registration> observerRegistrations = registrations.remove(observer);
+    if (observerRegistrations == null) {
+      return;
+    }
+    for (Registration registration : observerRegistrations) {
+      Node node = registration.node;
+      node.registrations.remove(registration);
+      while (node.parent != null && node.isEmpty()) {
+        node.parent.children.remove(node.key);
+        node = node.parent;
+      }
+    }
+  }
+
+  /**
+   * Returns the observers registered for {@code uri}, or for one of its ancestors with {@code
+   * notifyForDescendents}, once for each matching registration, in the order they were registered.
+   */
+  synchronized List<ContentObserver> observersFor(Uri uri) {
+    List<Registration> matches = new ArrayList<>();
+    Node node = root.children.get(uri.getScheme());
+    if (node != null) {
+      node = node.children.get(uri.getAuthority());
+    }
+    List<String> segments = uri.getPathSegments();
+    for (int i = 0; node != null; i++) {
+      if (i == segments.size()) {
+        matches.addAll(node.registrations);
+        break;
+      }
+      for (Registration registration : node.registrations) {
+        if (registration.notifyForDescendents) {
+          matches.add(registration);
+        }
+      }
+      node = node.children.get(segments.get(i));
+    }
+    // Each node's registrations are in order already, but not those of different nodes.
+    matches.sort(Comparator.comparingLong(registration -> registration.sequence));
+
+    List<ContentObserver> observers = new ArrayList<>(matches.size());
+    for (Registration registration : matches) {
+      observers.add(registration.observer);
+    }
+    return observers;
+  }
+
+  private static class Node {
+    final Node parent;
+    final String key;
+    // Schemes, authorities and segments may be null, which HashMap allows as a key.
+    final Map<String, Node> children = new HashMap<>();
+    final List<Registration> registrations = new ArrayList<>();
+
+    Node(Node parent, String key) {
+      this.parent = parent;
+      this.key = key;
+    }
+
+    Node child(String key) {
+      return children.computeIfAbsent(key, k -> new Node(this, k));
+    }
+
+    boolean isEmpty() {
+      return children.isEmpty() && registrations.isEmpty();
+    }
+  }
+
+  private static class Registration {
+    final long sequence;
+    final ContentObserver observer;
+    final boolean notifyForDescendents;
+    final Node node;
+
+    Registration(long sequence, ContentObserver observer, boolean notifyForDescendents, Node node) {
+      this.sequence = sequence;
+      this.observer = observer;
+      this.notifyForDescendents = notifyForDescendents;
+      this.node = node;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package org.robolectric.shadows;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.IntentFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Indexes the intent filters of one kind of component by action and data scheme, so an intent is
+ * only matched against the filters that could accept it, as the platform's {@code IntentResolver}
+ * does.
+ *
+ * <p>Filters are indexed by the actions and schemes they have when they're added, so they mustn't
+ * change after that; ShadowPackageManager adds copies of the filters it's given.
+ */
+class IntentFilterIndex {
+
+  /** The key for filters that don't have data schemes. */
+  private static final String NO_SCHEME = null;
+
+  /** Filters by action, then by scheme. */
+  private final Map<String, Map<String, SortedMap<ComponentName, List<IntentFilter>>>>
+      filtersByAction = new HashMap<>();
+
+  /** The position of each of a component's filters in the order they were added. */
+  private final SortedMap<ComponentName, Map<IntentFilter, Integer>> positions = new TreeMap<>();
+
+  void add(ComponentName componentName, IntentFilter filter) {
+    Map<IntentFilter, Integer> componentPositions =
+        positions.computeIfAbsent(componentName, component -> new IdentityHashMap<>());
+    if (componentPositions.putIfAbsent(filter, componentPositions.size()) != null) {
+      // Only the first time a filter was added to a component matters.
+      return;
+    }
+    for (int i = 0; i < filter.countActions(); i++) {
+      Map<String, SortedMap<ComponentName, List<IntentFilter>>> filtersByScheme =
+          filtersByAction.computeIfAbsent(filter.getAction(i), action -> new HashMap<>());
+      if (filter.countDataSchemes() == 0) {
+        add(filtersByScheme, NO_SCHEME, componentName, filter);
+      }
+      for (int j = 0; j < filter.countDataSchemes(); j++) {
+        add(filtersByScheme, filter.getDataScheme(j), componentName, filter);
+      }
+    }
+  }
+
+  private static void add(
+      Map<String, SortedMap<ComponentName, List<IntentFilter>>> filtersByScheme,
+      String scheme,
+      ComponentName componentName,
+      IntentFilter filter) {
+    List<IntentFilter> filters =
+        filtersByScheme
+            .computeIfAbsent(scheme, s -> new TreeMap<>())
+            .computeIfAbsent(componentName, component -> new ArrayList<>());
+    // A filter may list the same action or scheme twice.
+    if (filters.isEmpty() || filters.get(filters.size() - 1) != filter) {
+      filters.add(filter);
+    }
+  }
+
+  /** Removes all of the component's filters. */
+  void remove(ComponentName componentName) {
+    if (positions.remove(componentName) == null) {
+      return;
+    }
+    removeFromBuckets(filters -> filters.remove(componentName));
+  }
+
+  /** Removes the filters of all of the package's components. */
+  void removePackage(String packageName) {
+    ShadowPackageManager.mapForPackage(positions, packageName).clear();
+    removeFromBuckets(filters -> ShadowPackageManager.mapForPackage(filters, packageName).clear());
+  }
+
+  private void removeFromBuckets(Consumer<SortedMap<ComponentName, List<IntentFilter>>> remover) {
+    for (Iterator<Map<String, SortedMap<ComponentName, List<IntentFilter>>>> byAction =
+            filtersByAction.values().iterator();
+        byAction.hasNext(); ) {
+      Map<String, SortedMap<ComponentName, List<IntentFilter>>> filtersByScheme = byAction.next();
+      for (Iterator<SortedMap<ComponentName, List<IntentFilter>>> byScheme =
+              filtersByScheme.values().iterator();
+          byScheme.hasNext(); ) {
+        SortedMap<ComponentName, List<IntentFilter>> filters = byScheme.next();
+        remover.accept(filters);
+        if (filters.isEmpty()) {
+          byScheme.remove();
+        }
+      }
+      if (filtersByScheme.isEmpty()) {
+        byAction.remove();
+      }
+    }
+  }
+
+  void clear() {
+    filtersByAction.clear();
+    positions.clear();
+  }
+
+  /**
+   * Returns the filters in {@code allFilters}, which this indexes, that could match {@code intent},
+   * in the same order.
+   */
+  SortedMap<ComponentName, List<IntentFilter>> candidates(
+      Intent intent, SortedMap<ComponentName, List<IntentFilter>> allFilters) {
+    String action = intent.getAction();
+    if (action == null) {
+      // Filters don't check the action of intents that don't have one.
+      return allFilters;
+    }
+    Map<String, SortedMap<ComponentName, List<IntentFilter>>> filtersByScheme =
+        filtersByAction.get(action);
+    if (filtersByScheme == null) {
+      return Collections.emptySortedMap();
+    }
+    // Filters with schemes only match intents with one of them; IntentFilter.matchData treats a
+    // missing scheme as "". Filters without schemes may match content: and file: URIs too.
+    String scheme = intent.getScheme();
+    SortedMap<ComponentName, List<IntentFilter>> withScheme =
+        filtersByScheme.get(scheme == null ? "" : scheme);
+    SortedMap<ComponentName, List<IntentFilter>> withoutScheme = filtersByScheme.get(NO_SCHEME);
+    if (withScheme == null) {
+      return withoutScheme == null ? Collections.emptySortedMap() : withoutScheme;
+    } else if (withoutScheme == null) {
+      return withScheme;
+    } else {
+      return merge(withScheme, withoutScheme);
+    }
+  }
+
+  private SortedMap<ComponentName, List<IntentFilter>> merge(
+      SortedMap<ComponentName, List<IntentFilter>> a,
+      SortedMap<ComponentName, List<IntentFilter>> b) {
+    SortedMap<ComponentName, List<IntentFilter>> merged = new TreeMap<>(a);
+    for (Map.Entry<ComponentName, List<IntentFilter>> entry : b.entrySet()) {
+      ComponentName componentName = entry.getKey();
+      List<IntentFilter> filters = merged.get(componentName);
+      if (filters == null) {
+        merged.put(componentName, entry.getValue());
+      } else {
+        // Keep the component's filters in the order they were added, so the same one matches.
+        Map<IntentFilter, Integer> componentPositions = positions.get(componentName);
+        List<IntentFilter> mergedFilters = new ArrayList<>(filters);
+        mergedFilters.addAll(entry.getValue());
+        mergedFilters.sort((f1, f2) -> componentPositions.get(f1) - componentPositions.get(f2));
+        merged.put(componentName, mergedFilters);
+      }
+    }
+    return merged;
+  }
+}
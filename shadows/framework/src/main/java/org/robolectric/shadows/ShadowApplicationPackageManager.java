@@ -478,6 +478,7 @@ public class ShadowApplicationPackageManager extends ShadowPackageManager {
         flags,
         (pkg) -> pkg.services,
         serviceFilters,
+        serviceFilterIndex,
         (resolveInfo, serviceInfo) -> resolveInfo.serviceInfo = serviceInfo,
         (resolveInfo) -> resolveInfo.serviceInfo,
         ServiceInfo::new);
@@ -514,6 +515,7 @@ public class ShadowApplicationPackageManager extends ShadowPackageManager {
         flags,
         (pkg) -> pkg.activities,
         activityFilters,
+        activityFilterIndex,
         (resolveInfo, activityInfo) -> resolveInfo.activityInfo = activityInfo,
         (resolveInfo) -> resolveInfo.activityInfo,
         ActivityInfo::new);
@@ -524,6 +526,7 @@ public class ShadowApplicationPackageManager extends ShadowPackageManager {
       int flags,
       Function<PackageInfo, I[]> componentsInPackage,
       SortedMap<ComponentName, List<IntentFilter>> filters,
+      IntentFilterIndex filterIndex,
       BiConsumer<ResolveInfo, I> componentSetter,
       Function<ResolveInfo, I> componentInResolveInfo,
       Function<I, I> copyConstructor) {
@@ -538,7 +541,8 @@ public class ShadowApplicationPackageManager extends ShadowPackageManager {
       }
 
       result.addAll(
-          queryComponentsInManifest(intent, componentsInPackage, filters, componentSetter));
+          queryComponentsInManifest(
+              intent, componentsInPackage, filters, filterIndex, componentSetter));
 
       for (Iterator<ResolveInfo> iterator = result.iterator(); iterator.hasNext(); ) {
         ResolveInfo resolveInfo = iterator.next();
@@ -609,6 +613,7 @@ public class ShadowApplicationPackageManager extends ShadowPackageManager {
       Intent intent,
       Function<PackageInfo, I[]> componentsInPackage,
       SortedMap<ComponentName, List<IntentFilter>> filters,
+      IntentFilterIndex filterIndex,
       BiConsumer<ResolveInfo, I> componentSetter) {
     synchronized (lock) {
       if (isExplicitIntent(intent)) {
@@ -628,7 +633,7 @@ public class ShadowApplicationPackageManager extends ShadowPackageManager {
       } else {
         List<ResolveInfo> resolveInfoList = new ArrayList<>();
         Map<ComponentName, List<IntentFilter>> filtersForPackage =
-            mapForPackage(filters, intent.getPackage());
+            mapForPackage(filterIndex.candidates(intent, filters), intent.getPackage());
         components:
         for (Map.Entry<ComponentName, List<IntentFilter>> componentEntry :
             filtersForPackage.entrySet()) {
@@ -779,6 +784,7 @@ public class ShadowApplicationPackageManager extends ShadowPackageManager {
         flags,
         (pkg) -> pkg.receivers,
         receiverFilters,
+        receiverFilterIndex,
         (resolveInfo, activityInfo) -> resolveInfo.activityInfo = activityInfo,
         (resolveInfo) -> resolveInfo.activityInfo,
         ActivityInfo::new);
@@ -999,6 +1005,7 @@ public class ShadowApplicationPackageManager extends ShadowPackageManager {
         flags,
         (pkg) -> pkg.providers,
         providerFilters,
+        providerFilterIndex,
         (resolveInfo, providerInfo) -> resolveInfo.providerInfo = providerInfo,
         (resolveInfo) -> resolveInfo.providerInfo,
         ProviderInfo::new);
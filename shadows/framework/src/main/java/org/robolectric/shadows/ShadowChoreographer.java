@@ -67,4 +67,24 @@ public abstract class ShadowChoreographer {
   public static void setFrameInterval(long frameInterval) {
     ShadowLegacyChoreographer.setFrameInterval(frameInterval);
   }
+
+  /**
+   * Sets whether frames are skipped while the clock is advanced. Disabled by default.
+   *
+   * <p>Normally every vsync requested by a {@link Choreographer} is delivered immediately,
+   * advancing the clock by 1ms, so idling across a running animation renders every intermediate
+   * frame. When frame skipping is enabled, requested vsyncs are instead held until the looper is
+   * next idled, and delivered once at the time it is idled to. Idling for the length of an
+   * animation then renders only its final frame, and its end callbacks fire as usual.
+   *
+   * <p>While frame skipping is enabled, {@link ShadowLooper#idle()} renders at most one pending
+   * frame, and {@link ShadowLooper#idleFor(java.time.Duration)} renders at most one per scheduled
+   * task it runs plus one at the end.
+   *
+   * <p>Only supported in {@link LooperMode.Mode#PAUSED}
+   */
+  public static void setFrameSkippingEnabled(boolean enabled) {
+    ShadowLooper.assertLooperMode(LooperMode.Mode.PAUSED);
+    ShadowDisplayEventReceiver.setFrameSkippingEnabled(enabled);
+  }
 }
@@ -6,6 +6,7 @@ import static android.content.ContentResolver.QUERY_ARG_SQL_SORT_ORDER;
 import static android.os.Build.VERSION_CODES.JELLY_BEAN_MR1;
 import static android.os.Build.VERSION_CODES.KITKAT;
 import static android.os.Build.VERSION_CODES.O;
+import static android.os.Build.VERSION_CODES.R;
 
 import android.accounts.Account;
 import android.annotation.NonNull;
@@ -36,9 +37,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Supplier;
 import org.robolectric.RuntimeEnvironment;
@@ -73,8 +77,7 @@ public class ShadowContentResolver {
   private ContentProviderResult[] contentProviderResults;
   private final List<UriPermission> uriPermissions = new ArrayList<>();
 
-  private final CopyOnWriteArrayList<ContentObserverEntry> contentObservers =
-      new CopyOnWriteArrayList<>();
+  private final ContentObserverTree contentObservers = new ContentObserverTree();
 
   private static final Map<String, Map<Account, Status>> syncableAccounts = new HashMap<>();
   private static final Map<String, ContentProvider> providers = new HashMap<>();
@@ -89,37 +92,6 @@ public class ShadowContentResolver {
     masterSyncAutomatically = false;
   }
 
-  private static class ContentObserverEntry {
-    public final Uri uri;
-    public final boolean notifyForDescendents;
-    public final ContentObserver observer;
-
-    private ContentObserverEntry(Uri uri, boolean notifyForDescendents, ContentObserver observer) {
-      this.uri = uri;
-      this.notifyForDescendents = notifyForDescendents;
-      this.observer = observer;
-
-      if (uri == null || observer == null) {
-        throw new NullPointerException();
-      }
-    }
-
-    public boolean matches(Uri test) {
-      if (!Objects.equals(uri.getScheme(), test.getScheme())) {
-        return false;
-      }
-      if (!Objects.equals(uri.getAuthority(), test.getAuthority())) {
-        return false;
-      }
-
-      String uriPath = uri.getPath();
-      String testPath = test.getPath();
-
-      return Objects.equals(uriPath, testPath)
-          || (notifyForDescendents && testPath != null && testPath.startsWith(uriPath));
-    }
-  }
-
   public static class NotifiedUri {
     public final Uri uri;
     public final boolean syncToNetwork;
@@ -450,9 +422,9 @@ public class ShadowContentResolver {
   protected void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
     notifiedUris.add(new NotifiedUri(uri, observer, syncToNetwork));
 
-    for (ContentObserverEntry entry : contentObservers) {
-      if (entry.matches(uri) && entry.observer != observer) {
-        entry.observer.dispatchChange(false, uri);
+    for (ContentObserver registered : contentObservers.observersFor(uri)) {
+      if (registered != observer) {
+        registered.dispatchChange(false, uri);
       }
     }
     if (observer != null && observer.deliverSelfNotifications()) {
@@ -460,6 +432,30 @@ public class ShadowContentResolver {
     }
   }
 
+  /**
+   * Notifies each observer once of all of the changed URIs it's registered for, as the platform
+   * does.
+   */
+  @Implementation(minSdk = R)
+  protected void notifyChange(Collection<Uri> uris, ContentObserver observer, int flags) {
+    boolean syncToNetwork = (flags & ContentResolver.NOTIFY_SYNC_TO_NETWORK) != 0;
+    Map<ContentObserver, Set<Uri>> changesByObserver = new LinkedHashMap<>();
+    for (Uri uri : uris) {
+      notifiedUris.add(new NotifiedUri(uri, observer, syncToNetwork));
+      for (ContentObserver registered : contentObservers.observersFor(uri)) {
+        if (registered != observer) {
+          changesByObserver.computeIfAbsent(registered, o -> new LinkedHashSet<>()).add(uri);
+        }
+      }
+    }
+    for (Map.Entry<ContentObserver, Set<Uri>> changes : changesByObserver.entrySet()) {
+      changes.getKey().dispatchChange(false, changes.getValue(), flags);
+    }
+    if (observer != null && observer.deliverSelfNotifications()) {
+      observer.dispatchChange(true, uris, flags);
+    }
+  }
+
   @Implementation
   protected void notifyChange(Uri uri, ContentObserver observer) {
     notifyChange(uri, observer, false);
@@ -861,7 +857,7 @@ public class ShadowContentResolver {
     if (registerContentProviderExceptions.containsKey(uri)) {
       throw registerContentProviderExceptions.get(uri);
     }
-    contentObservers.add(new ContentObserverEntry(uri, notifyForDescendents, observer));
+    contentObservers.add(uri, notifyForDescendents, observer);
   }
 
   @Implementation(minSdk = JELLY_BEAN_MR1)
@@ -872,13 +868,7 @@ public class ShadowContentResolver {
 
   @Implementation
   protected void unregisterContentObserver(ContentObserver observer) {
-    synchronized (contentObservers) {
-      for (ContentObserverEntry entry : contentObservers) {
-        if (entry.observer == observer) {
-          contentObservers.remove(entry);
-        }
-      }
-    }
+    contentObservers.remove(observer);
   }
 
   @Implementation
@@ -900,13 +890,7 @@ public class ShadowContentResolver {
    * @return The content observers, or null
    */
   public Collection<ContentObserver> getContentObservers(Uri uri) {
-    ArrayList<ContentObserver> observers = new ArrayList<>(1);
-    for (ContentObserverEntry entry : contentObservers) {
-      if (entry.matches(uri)) {
-        observers.add(entry.observer);
-      }
-    }
-    return observers;
+    return contentObservers.observersFor(uri);
   }
 
   private static ContentProvider createAndInitialize(ProviderInfo providerInfo) {
@@ -53,6 +53,11 @@ import org.robolectric.util.reflector.Static;
 public class ShadowContextImpl {
 
   public static final String CLASS_NAME = "android.app.ContextImpl";
+
+  /** Set while ContextImpl opens SharedPreferences, during which it looks up their file itself. */
+  private static final ThreadLocal<Boolean> openingSharedPreferences =
+      ThreadLocal.withInitial(() -> false);
+
   private ContentResolver contentResolver;
 
   @RealObject private Context realContextImpl;
@@ -446,12 +451,34 @@ public class ShadowContextImpl {
     if (!Strings.isNullOrEmpty(name) && File.separatorChar == '\\') {
       name = name.replace(":", "%3A");
     }
-    return directlyOn(
-        realContextImpl,
-        ShadowContextImpl.CLASS_NAME,
-        "getSharedPreferences",
-        ClassParameter.from(String.class, name),
-        ClassParameter.from(int.class, mode));
+    boolean wasOpeningSharedPreferences = openingSharedPreferences.get();
+    openingSharedPreferences.set(true);
+    try {
+      return directlyOn(
+          realContextImpl,
+          ShadowContextImpl.CLASS_NAME,
+          "getSharedPreferences",
+          ClassParameter.from(String.class, name),
+          ClassParameter.from(int.class, mode));
+    } finally {
+      openingSharedPreferences.set(wasOpeningSharedPreferences);
+    }
+  }
+
+  @Implementation(minSdk = N)
+  protected File getSharedPreferencesPath(String name) {
+    File file =
+        directlyOn(
+            realContextImpl,
+            ShadowContextImpl.CLASS_NAME,
+            "getSharedPreferencesPath",
+            ClassParameter.from(String.class, name));
+    // Write-behind SharedPreferences only write their files once something else asks for them,
+    // not when ContextImpl looks up the file of the preferences it's opening.
+    if (!openingSharedPreferences.get()) {
+      ShadowSharedPreferences.flushPendingWrite(file);
+    }
+    return file;
   }
 
   /** Accessor interface for {@link android.app.ContextImpl}'s internals. */
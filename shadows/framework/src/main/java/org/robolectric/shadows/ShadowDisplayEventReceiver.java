@@ -11,13 +11,18 @@ import static android.os.Build.VERSION_CODES.Q;
 import static android.os.Build.VERSION_CODES.R;
 
 import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.view.DisplayEventReceiver;
 import java.lang.ref.WeakReference;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.annotation.Resetter;
 import org.robolectric.res.android.NativeObjRegistry;
 import org.robolectric.shadow.api.Shadow;
 import org.robolectric.util.ReflectionHelpers;
@@ -36,29 +41,36 @@ public class ShadowDisplayEventReceiver {
 
   private static final Duration VSYNC_DELAY = Duration.ofMillis(1);
 
+  private static volatile boolean frameSkippingEnabled;
+
+  // Receivers with a vsync requested while frame skipping was enabled, waiting to be delivered by
+  // their looper. Guarded by itself.
+  private static final List<NativeDisplayEventReceiver> pendingVsyncs = new ArrayList<>();
+
   @Implementation(minSdk = O, maxSdk = Q)
   protected static long nativeInit(
       WeakReference<DisplayEventReceiver> receiver, MessageQueue msgQueue, int vsyncSource) {
-    return nativeObjRegistry.register(new NativeDisplayEventReceiver(receiver));
+    return nativeObjRegistry.register(new NativeDisplayEventReceiver(receiver, msgQueue));
   }
 
   @Implementation(minSdk = M, maxSdk = N_MR1)
   protected static long nativeInit(
       WeakReference<DisplayEventReceiver> receiver, MessageQueue msgQueue) {
-    return nativeObjRegistry.register(new NativeDisplayEventReceiver(receiver));
+    return nativeObjRegistry.register(new NativeDisplayEventReceiver(receiver, msgQueue));
   }
 
   @Implementation(minSdk = KITKAT_WATCH, maxSdk = LOLLIPOP_MR1)
   protected static long nativeInit(DisplayEventReceiver receiver, MessageQueue msgQueue) {
     return nativeObjRegistry.register(
-        new NativeDisplayEventReceiver(new WeakReference<>(receiver)));
+        new NativeDisplayEventReceiver(new WeakReference<>(receiver), msgQueue));
   }
 
   @Implementation(maxSdk = KITKAT)
   protected static int nativeInit(Object receiver, Object msgQueue) {
     return (int)
         nativeObjRegistry.register(
-            new NativeDisplayEventReceiver(new WeakReference<>((DisplayEventReceiver) receiver)));
+            new NativeDisplayEventReceiver(
+                new WeakReference<>((DisplayEventReceiver) receiver), (MessageQueue) msgQueue));
   }
 
   @Implementation(minSdk = R)
@@ -72,12 +84,19 @@ public class ShadowDisplayEventReceiver {
 
   @Implementation(minSdk = KITKAT_WATCH)
   protected static void nativeDispose(long receiverPtr) {
-    nativeObjRegistry.unregister(receiverPtr);
+    dispose(nativeObjRegistry.unregister(receiverPtr));
   }
 
   @Implementation(maxSdk = KITKAT)
   protected static void nativeDispose(int receiverPtr) {
-    nativeObjRegistry.unregister(receiverPtr);
+    dispose(nativeObjRegistry.unregister(receiverPtr));
+  }
+
+  private static void dispose(NativeDisplayEventReceiver nativeReceiver) {
+    // A disposed receiver must not get a held vsync, nor be kept until the next reset.
+    synchronized (pendingVsyncs) {
+      pendingVsyncs.remove(nativeReceiver);
+    }
   }
 
   @Implementation(minSdk = KITKAT_WATCH)
@@ -90,6 +109,64 @@ public class ShadowDisplayEventReceiver {
     nativeObjRegistry.getNativeObject(receiverPtr).scheduleVsync();
   }
 
+  /** @see ShadowChoreographer#setFrameSkippingEnabled(boolean) */
+  static void setFrameSkippingEnabled(boolean enabled) {
+    frameSkippingEnabled = enabled;
+  }
+
+  /**
+   * Returns true if a vsync requested by a receiver on the given queue is waiting to be delivered,
+   * and would be if the clock were advanced to {@code timeMs}.
+   */
+  static boolean hasPendingVsync(MessageQueue queue, long timeMs) {
+    synchronized (pendingVsyncs) {
+      for (NativeDisplayEventReceiver pending : pendingVsyncs) {
+        if (pending.messageQueue == queue && timeMs > pending.lastVsyncTimeMs) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Delivers the vsyncs that receivers on the given queue requested while frame skipping was
+   * enabled, at most once each, at the current time. Must be called on the queue's looper thread.
+   *
+   * <p>Unless {@code force} is set, a receiver that already had a vsync at the current time is left
+   * pending until the clock advances, so a running animation renders one frame per clock change
+   * rather than one per idle.
+   */
+  static void deliverPendingVsyncs(MessageQueue queue, boolean force) {
+    List<NativeDisplayEventReceiver> due;
+    long nowMs = SystemClock.uptimeMillis();
+    synchronized (pendingVsyncs) {
+      if (pendingVsyncs.isEmpty()) {
+        return;
+      }
+      due = new ArrayList<>();
+      for (Iterator<NativeDisplayEventReceiver> it = pendingVsyncs.iterator(); it.hasNext(); ) {
+        NativeDisplayEventReceiver pending = it.next();
+        if (pending.messageQueue == queue && (force || nowMs > pending.lastVsyncTimeMs)) {
+          it.remove();
+          due.add(pending);
+        }
+      }
+    }
+    for (NativeDisplayEventReceiver pending : due) {
+      pending.lastVsyncTimeMs = nowMs;
+      pending.deliverVsync();
+    }
+  }
+
+  @Resetter
+  public static void reset() {
+    frameSkippingEnabled = false;
+    synchronized (pendingVsyncs) {
+      pendingVsyncs.clear();
+    }
+  }
+
   protected void onVsync() {
     if (RuntimeEnvironment.getApiLevel() <= JELLY_BEAN) {
       ReflectionHelpers.callInstanceMethod(
@@ -114,15 +191,33 @@ public class ShadowDisplayEventReceiver {
   private static class NativeDisplayEventReceiver {
 
     private final WeakReference<DisplayEventReceiver> receiverRef;
+    private final MessageQueue messageQueue;
+    // Only written on the looper thread of messageQueue.
+    private volatile long lastVsyncTimeMs = -1;
 
-    public NativeDisplayEventReceiver(WeakReference<DisplayEventReceiver> receiverRef) {
+    public NativeDisplayEventReceiver(
+        WeakReference<DisplayEventReceiver> receiverRef, MessageQueue messageQueue) {
       this.receiverRef = receiverRef;
+      this.messageQueue = messageQueue;
     }
 
     public void scheduleVsync() {
+      if (frameSkippingEnabled && messageQueue != null) {
+        // defer until the looper is next idled, coalescing repeated requests into one frame
+        synchronized (pendingVsyncs) {
+          if (!pendingVsyncs.contains(this)) {
+            pendingVsyncs.add(this);
+          }
+        }
+        return;
+      }
       // simulate an immediate callback
-      DisplayEventReceiver receiver = receiverRef.get();
       ShadowSystemClock.advanceBy(VSYNC_DELAY);
+      deliverVsync();
+    }
+
+    private void deliverVsync() {
+      DisplayEventReceiver receiver = receiverRef.get();
       if (receiver != null) {
         ShadowDisplayEventReceiver shadowReceiver = Shadow.extract(receiver);
         shadowReceiver.onVsync();
@@ -37,6 +37,7 @@ import android.os.UserHandle;
 import android.text.TextUtils;
 import android.util.Pair;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -88,6 +89,8 @@ public class ShadowInstrumentation {
 
   @GuardedBy("itself")
   private final List<Wrapper> registeredReceivers = new ArrayList<>();
+  // an index of registeredReceivers, replaced whenever it changes
+  private volatile ReceiverIndex receiverIndex = new ReceiverIndex(ImmutableList.of());
   // map of pid+uid to granted permissions
   private final Map<Pair<Integer, Integer>, Set<String>> grantedPermissionsMap =
       Collections.synchronizedMap(new HashMap<>());
@@ -245,8 +248,8 @@ public class ShadowInstrumentation {
       Bundle initialExtras,
       Context context) {
     List<Wrapper> receivers =
-        getAppropriateWrappers(context, userHandle, intent, receiverPermission);
-    sortByPriority(receivers);
+        getAppropriateWrappers(
+            context, userHandle, intent, receiverPermission, /*byPriority=*/ true);
     if (resultReceiver != null) {
       receivers.add(new Wrapper(resultReceiver, null, context, null, scheduler));
     }
@@ -278,9 +281,16 @@ public class ShadowInstrumentation {
     }
   }
 
-  /** Returns the BroadcaseReceivers wrappers, matching intent's action and permissions. */
+  /**
+   * Returns the BroadcaseReceivers wrappers, matching intent's action and permissions, in the order
+   * they were registered or, if {@code byPriority}, in decreasing order of priority.
+   */
   private List<Wrapper> getAppropriateWrappers(
-      Context context, @Nullable UserHandle userHandle, Intent intent, String receiverPermission) {
+      Context context,
+      @Nullable UserHandle userHandle,
+      Intent intent,
+      String receiverPermission,
+      boolean byPriority) {
     broadcastIntents.add(intent);
 
     if (userHandle != null) {
@@ -293,18 +303,11 @@ public class ShadowInstrumentation {
     }
 
     List<Wrapper> result = new ArrayList<>();
-
-    List<Wrapper> copy = new ArrayList<>();
-    synchronized (registeredReceivers) {
-      copy.addAll(registeredReceivers);
-    }
-
-    for (Wrapper wrapper : copy) {
+    for (Wrapper wrapper : receiverIndex.candidates(intent, byPriority)) {
       if (broadcastReceiverMatchesIntent(context, wrapper, intent, receiverPermission)) {
         result.add(wrapper);
       }
     }
-    System.err.format("Intent = %s; Matching wrappers: %s\n", intent, result);
     return result;
   }
 
@@ -471,32 +474,19 @@ public class ShadowInstrumentation {
       Context context,
       int resultCode) {
     List<Wrapper> wrappers =
-        getAppropriateWrappers(context, userHandle, intent, receiverPermission);
+        getAppropriateWrappers(
+            context, userHandle, intent, receiverPermission, /*byPriority=*/ false);
     postToWrappers(wrappers, intent, context, resultCode);
   }
 
   void sendOrderedBroadcastWithPermission(
       Intent intent, String receiverPermission, Context context) {
     List<Wrapper> wrappers =
-        getAppropriateWrappers(context, /*userHandle=*/ null, intent, receiverPermission);
-    // sort by the decrease of priorities
-    sortByPriority(wrappers);
-
+        getAppropriateWrappers(
+            context, /*userHandle=*/ null, intent, receiverPermission, /*byPriority=*/ true);
     postOrderedToWrappers(wrappers, intent, 0, null, null, context);
   }
 
-  private void sortByPriority(List<Wrapper> wrappers) {
-    Collections.sort(
-        wrappers,
-        new Comparator<Wrapper>() {
-          @Override
-          public int compare(Wrapper o1, Wrapper o2) {
-            return Integer.compare(
-                o2.getIntentFilter().getPriority(), o1.getIntentFilter().getPriority());
-          }
-        });
-  }
-
   List<Intent> getBroadcastIntents() {
     return broadcastIntents;
   }
@@ -784,6 +774,7 @@ public class ShadowInstrumentation {
       synchronized (registeredReceivers) {
         registeredReceivers.add(
             new Wrapper(receiver, filter, context, broadcastPermission, scheduler));
+        receiverIndex = new ReceiverIndex(registeredReceivers);
       }
     }
     return processStickyIntents(filter, receiver, context);
@@ -821,6 +812,9 @@ public class ShadowInstrumentation {
           found = true;
         }
       }
+      if (found) {
+        receiverIndex = new ReceiverIndex(registeredReceivers);
+      }
     }
 
     if (!found) {
@@ -831,6 +825,7 @@ public class ShadowInstrumentation {
   void clearRegisteredReceivers() {
     synchronized (registeredReceivers) {
       registeredReceivers.clear();
+      receiverIndex = new ReceiverIndex(registeredReceivers);
     }
   }
 
@@ -958,6 +953,61 @@ public class ShadowInstrumentation {
     }
   }
 
+  /**
+   * The registered receivers, indexed by the actions of their filters when they were registered.
+   * It's immutable, so broadcasts can use it without copying or locking.
+   */
+  private static class ReceiverIndex {
+    private static final Comparator<Wrapper> BY_DECREASING_PRIORITY =
+        (o1, o2) ->
+            Integer.compare(o2.getIntentFilter().getPriority(), o1.getIntentFilter().getPriority());
+
+    final ImmutableList<Wrapper> all;
+    final ImmutableList<Wrapper> allByPriority;
+    final ImmutableListMultimap<String, Wrapper> byAction;
+    final ImmutableListMultimap<String, Wrapper> byActionByPriority;
+
+    ReceiverIndex(List<Wrapper> wrappers) {
+      all = ImmutableList.copyOf(wrappers);
+      List<Wrapper> sorted = new ArrayList<>(wrappers);
+      // the sort is stable, so receivers with the same priority stay in registration order
+      Collections.sort(sorted, BY_DECREASING_PRIORITY);
+      allByPriority = ImmutableList.copyOf(sorted);
+      byAction = indexByAction(all);
+      byActionByPriority = indexByAction(allByPriority);
+    }
+
+    private static ImmutableListMultimap<String, Wrapper> indexByAction(List<Wrapper> wrappers) {
+      ImmutableListMultimap.Builder<String, Wrapper> builder = ImmutableListMultimap.builder();
+      for (Wrapper wrapper : wrappers) {
+        Set<String> actions = new HashSet<>();
+        Iterator<String> iterator = wrapper.intentFilter.actionsIterator();
+        while (iterator != null && iterator.hasNext()) {
+          String action = iterator.next();
+          if (actions.add(action)) {
+            builder.put(action, wrapper);
+          }
+        }
+      }
+      return builder.build();
+    }
+
+    /**
+     * Returns the receivers that might match {@code intent}. Only receivers whose filters have its
+     * action match, unless it names a receiver class, which matches regardless of its filters.
+     */
+    List<Wrapper> candidates(Intent intent, boolean byPriority) {
+      if (intent.getComponent() != null) {
+        return byPriority ? allByPriority : all;
+      }
+      String action = intent.getAction();
+      if (action == null) {
+        return ImmutableList.of();
+      }
+      return byPriority ? byActionByPriority.get(action) : byAction.get(action);
+    }
+  }
+
   private static class ServiceConnectionDataWrapper {
     public final ComponentName componentNameForBindService;
     public final IBinder binderForBindService;
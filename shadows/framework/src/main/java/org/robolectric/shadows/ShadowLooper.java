@@ -155,6 +155,21 @@ public abstract class ShadowLooper {
     getShadowMainLooper().idle(amount, unit);
   }
 
+  /**
+   * Advances the system clock by the given amount, running the tasks of every looper, not just the
+   * main looper, as they become due.
+   *
+   * <p>Time is advanced to each scheduled task in turn across all loopers, so tasks that post to
+   * other loopers see the same ordering they would on a device. Loopers with tasks due at the same
+   * time are idled in parallel. Must be called from the main thread.
+   *
+   * <p>Only supported in {@link LooperMode.Mode#PAUSED} mode.
+   */
+  public static void idleAllLoopersFor(Duration duration) {
+    assertLooperMode(LooperMode.Mode.PAUSED);
+    ShadowPausedLooper.idleAllLoopersFor(duration.toMillis());
+  }
+
   public static void idleMainLooperConstantly(boolean shouldIdleConstantly) {
     getShadowMainLooper().idleConstantly(shouldIdleConstantly);
   }
@@ -127,6 +127,12 @@ public class ShadowPackageManager {
   static final SortedMap<ComponentName, List<IntentFilter>> providerFilters = new TreeMap<>();
   static final SortedMap<ComponentName, List<IntentFilter>> receiverFilters = new TreeMap<>();
 
+  // Indexes of the filters in the maps above, which must be updated along with them.
+  static final IntentFilterIndex activityFilterIndex = new IntentFilterIndex();
+  static final IntentFilterIndex serviceFilterIndex = new IntentFilterIndex();
+  static final IntentFilterIndex providerFilterIndex = new IntentFilterIndex();
+  static final IntentFilterIndex receiverFilterIndex = new IntentFilterIndex();
+
   private static Map<String, PackageInfo> packageArchiveInfo = new HashMap<>();
   static final Map<String, PackageStats> packageStatsMap = new HashMap<>();
   static final Map<String, String> packageInstallerMap = new HashMap<>();
@@ -172,6 +178,7 @@ public class ShadowPackageManager {
   public ActivityInfo addActivityIfNotPresent(ComponentName componentName) {
     return addComponent(
         activityFilters,
+        activityFilterIndex,
         p -> p.activities,
         (p, a) -> p.activities = a,
         updateName(componentName, new ActivityInfo()),
@@ -189,6 +196,7 @@ public class ShadowPackageManager {
   public ServiceInfo addServiceIfNotPresent(ComponentName componentName) {
     return addComponent(
         serviceFilters,
+        serviceFilterIndex,
         p -> p.services,
         (p, a) -> p.services = a,
         updateName(componentName, new ServiceInfo()),
@@ -206,6 +214,7 @@ public class ShadowPackageManager {
   public ActivityInfo addReceiverIfNotPresent(ComponentName componentName) {
     return addComponent(
         receiverFilters,
+        receiverFilterIndex,
         p -> p.receivers,
         (p, a) -> p.receivers = a,
         updateName(componentName, new ActivityInfo()),
@@ -223,6 +232,7 @@ public class ShadowPackageManager {
   public ProviderInfo addProviderIfNotPresent(ComponentName componentName) {
     return addComponent(
         providerFilters,
+        providerFilterIndex,
         p -> p.providers,
         (p, a) -> p.providers = a,
         updateName(componentName, new ProviderInfo()),
@@ -249,6 +259,7 @@ public class ShadowPackageManager {
   public void addOrUpdateActivity(ActivityInfo activityInfo) {
     addComponent(
         activityFilters,
+        activityFilterIndex,
         p -> p.activities,
         (p, a) -> p.activities = a,
         new ActivityInfo(activityInfo),
@@ -266,6 +277,7 @@ public class ShadowPackageManager {
   public void addOrUpdateService(ServiceInfo serviceInfo) {
     addComponent(
         serviceFilters,
+        serviceFilterIndex,
         p -> p.services,
         (p, a) -> p.services = a,
         new ServiceInfo(serviceInfo),
@@ -283,6 +295,7 @@ public class ShadowPackageManager {
   public void addOrUpdateReceiver(ActivityInfo receiverInfo) {
     addComponent(
         receiverFilters,
+        receiverFilterIndex,
         p -> p.receivers,
         (p, a) -> p.receivers = a,
         new ActivityInfo(receiverInfo),
@@ -300,6 +313,7 @@ public class ShadowPackageManager {
   public void addOrUpdateProvider(ProviderInfo providerInfo) {
     addComponent(
         providerFilters,
+        providerFilterIndex,
         p -> p.providers,
         (p, a) -> p.providers = a,
         new ProviderInfo(providerInfo),
@@ -314,7 +328,11 @@ public class ShadowPackageManager {
   @Nullable
   public ActivityInfo removeActivity(ComponentName componentName) {
     return removeComponent(
-        componentName, activityFilters, p -> p.activities, (p, a) -> p.activities = a);
+        componentName,
+        activityFilters,
+        activityFilterIndex,
+        p -> p.activities,
+        (p, a) -> p.activities = a);
   }
 
   /**
@@ -325,7 +343,11 @@ public class ShadowPackageManager {
   @Nullable
   public ServiceInfo removeService(ComponentName componentName) {
     return removeComponent(
-        componentName, serviceFilters, p -> p.services, (p, a) -> p.services = a);
+        componentName,
+        serviceFilters,
+        serviceFilterIndex,
+        p -> p.services,
+        (p, a) -> p.services = a);
   }
 
   /**
@@ -336,7 +358,11 @@ public class ShadowPackageManager {
   @Nullable
   public ProviderInfo removeProvider(ComponentName componentName) {
     return removeComponent(
-        componentName, providerFilters, p -> p.providers, (p, a) -> p.providers = a);
+        componentName,
+        providerFilters,
+        providerFilterIndex,
+        p -> p.providers,
+        (p, a) -> p.providers = a);
   }
 
   /**
@@ -347,11 +373,16 @@ public class ShadowPackageManager {
   @Nullable
   public ActivityInfo removeReceiver(ComponentName componentName) {
     return removeComponent(
-        componentName, receiverFilters, p -> p.receivers, (p, a) -> p.receivers = a);
+        componentName,
+        receiverFilters,
+        receiverFilterIndex,
+        p -> p.receivers,
+        (p, a) -> p.receivers = a);
   }
 
   private <C extends ComponentInfo> C addComponent(
       SortedMap<ComponentName, List<IntentFilter>> filtersMap,
+      IntentFilterIndex filterIndex,
       Function<PackageInfo, C[]> componentArrayInPackage,
       BiConsumer<PackageInfo, C[]> componentsSetter,
       C newComponent,
@@ -395,8 +426,9 @@ public class ShadowPackageManager {
       componentsSetter.accept(packageInfo, components);
       components[components.length - 1] = newComponent;
 
-      filtersMap.put(
-          new ComponentName(newComponent.packageName, newComponent.name), new ArrayList<>());
+      ComponentName componentName = new ComponentName(newComponent.packageName, newComponent.name);
+      filtersMap.put(componentName, new ArrayList<>());
+      filterIndex.remove(componentName);
       return newComponent;
     }
   }
@@ -405,10 +437,12 @@ public class ShadowPackageManager {
   private <C extends ComponentInfo> C removeComponent(
       ComponentName componentName,
       SortedMap<ComponentName, List<IntentFilter>> filtersMap,
+      IntentFilterIndex filterIndex,
       Function<PackageInfo, C[]> componentArrayInPackage,
       BiConsumer<PackageInfo, C[]> componentsSetter) {
     synchronized (lock) {
       filtersMap.remove(componentName);
+      filterIndex.remove(componentName);
       String packageName = componentName.getPackageName();
       PackageInfo packageInfo = packageInfos.get(packageName);
       if (packageInfo == null) {
@@ -1085,9 +1119,13 @@ public class ShadowPackageManager {
       deletedPackages.add(packageName);
       packageInfos.remove(packageName);
       mapForPackage(activityFilters, packageName).clear();
+      activityFilterIndex.removePackage(packageName);
       mapForPackage(serviceFilters, packageName).clear();
+      serviceFilterIndex.removePackage(packageName);
       mapForPackage(providerFilters, packageName).clear();
+      providerFilterIndex.removePackage(packageName);
       mapForPackage(receiverFilters, packageName).clear();
+      receiverFilterIndex.removePackage(packageName);
       moduleInfos.remove(packageName);
     }
   }
@@ -1193,14 +1231,15 @@ public class ShadowPackageManager {
     packageInfo.applicationInfo.uid = Process.myUid();
     packageInfo.applicationInfo.dataDir = createTempDir(packageInfo.packageName + "-dataDir");
     installPackage(packageInfo);
-    addFilters(activityFilters, appPackage.activities);
-    addFilters(serviceFilters, appPackage.services);
-    addFilters(providerFilters, appPackage.providers);
-    addFilters(receiverFilters, appPackage.receivers);
+    addFilters(activityFilters, activityFilterIndex, appPackage.activities);
+    addFilters(serviceFilters, serviceFilterIndex, appPackage.services);
+    addFilters(providerFilters, providerFilterIndex, appPackage.providers);
+    addFilters(receiverFilters, receiverFilterIndex, appPackage.receivers);
   }
 
   private void addFilters(
       Map<ComponentName, List<IntentFilter>> componentMap,
+      IntentFilterIndex filterIndex,
       List<? extends PackageParser.Component<?>> components) {
     if (components == null) {
       return;
@@ -1213,7 +1252,9 @@ public class ShadowPackageManager {
         componentMap.put(componentName, registeredFilters);
       }
       for (IntentInfo intentInfo : component.intents) {
-        registeredFilters.add(new IntentFilter(intentInfo));
+        IntentFilter filter = new IntentFilter(intentInfo);
+        registeredFilters.add(filter);
+        filterIndex.add(componentName, filter);
       }
     }
   }
@@ -1372,43 +1413,47 @@ public class ShadowPackageManager {
   }
 
   /**
-   * Add intent filter for given activity.
+   * Add intent filter for given activity. The filter is copied, so changes made to it afterwards
+   * have no effect.
    *
    * @throws NameNotFoundException if component with given name doesn't exist.
    */
   public void addIntentFilterForActivity(ComponentName componentName, IntentFilter filter)
       throws NameNotFoundException {
-    addIntentFilterForComponent(componentName, filter, activityFilters);
+    addIntentFilterForComponent(componentName, filter, activityFilters, activityFilterIndex);
   }
 
   /**
-   * Add intent filter for given service.
+   * Add intent filter for given service. The filter is copied, so changes made to it afterwards
+   * have no effect.
    *
    * @throws NameNotFoundException if component with given name doesn't exist.
    */
   public void addIntentFilterForService(ComponentName componentName, IntentFilter filter)
       throws NameNotFoundException {
-    addIntentFilterForComponent(componentName, filter, serviceFilters);
+    addIntentFilterForComponent(componentName, filter, serviceFilters, serviceFilterIndex);
   }
 
   /**
-   * Add intent filter for given receiver.
+   * Add intent filter for given receiver. The filter is copied, so changes made to it afterwards
+   * have no effect.
    *
    * @throws NameNotFoundException if component with given name doesn't exist.
    */
   public void addIntentFilterForReceiver(ComponentName componentName, IntentFilter filter)
       throws NameNotFoundException {
-    addIntentFilterForComponent(componentName, filter, receiverFilters);
+    addIntentFilterForComponent(componentName, filter, receiverFilters, receiverFilterIndex);
   }
 
   /**
-   * Add intent filter for given provider.
+   * Add intent filter for given provider. The filter is copied, so changes made to it afterwards
+   * have no effect.
    *
    * @throws NameNotFoundException if component with given name doesn't exist.
    */
   public void addIntentFilterForProvider(ComponentName componentName, IntentFilter filter)
       throws NameNotFoundException {
-    addIntentFilterForComponent(componentName, filter, providerFilters);
+    addIntentFilterForComponent(componentName, filter, providerFilters, providerFilterIndex);
   }
 
   /**
@@ -1418,7 +1463,7 @@ public class ShadowPackageManager {
    */
   public void clearIntentFilterForActivity(ComponentName componentName)
       throws NameNotFoundException {
-    clearIntentFilterForComponent(componentName, activityFilters);
+    clearIntentFilterForComponent(componentName, activityFilters, activityFilterIndex);
   }
 
   /**
@@ -1428,7 +1473,7 @@ public class ShadowPackageManager {
    */
   public void clearIntentFilterForService(ComponentName componentName)
       throws NameNotFoundException {
-    clearIntentFilterForComponent(componentName, serviceFilters);
+    clearIntentFilterForComponent(componentName, serviceFilters, serviceFilterIndex);
   }
 
   /**
@@ -1438,7 +1483,7 @@ public class ShadowPackageManager {
    */
   public void clearIntentFilterForReceiver(ComponentName componentName)
       throws NameNotFoundException {
-    clearIntentFilterForComponent(componentName, receiverFilters);
+    clearIntentFilterForComponent(componentName, receiverFilters, receiverFilterIndex);
   }
 
   /**
@@ -1448,31 +1493,38 @@ public class ShadowPackageManager {
    */
   public void clearIntentFilterForProvider(ComponentName componentName)
       throws NameNotFoundException {
-    clearIntentFilterForComponent(componentName, providerFilters);
+    clearIntentFilterForComponent(componentName, providerFilters, providerFilterIndex);
   }
 
   private void addIntentFilterForComponent(
       ComponentName componentName,
       IntentFilter filter,
-      Map<ComponentName, List<IntentFilter>> filterMap)
+      Map<ComponentName, List<IntentFilter>> filterMap,
+      IntentFilterIndex filterIndex)
       throws NameNotFoundException {
     // Existing components should have an entry in respective filterMap.
     // It is OK to search over all filter maps, as it is impossible to have the same component name
     // being of two comopnent types (like activity and service at the same time).
     List<IntentFilter> filters = filterMap.get(componentName);
     if (filters != null) {
-      filters.add(filter);
+      // The index only sees a filter's actions and schemes as they are now, so keep a copy.
+      IntentFilter copy = new IntentFilter(filter);
+      filters.add(copy);
+      filterIndex.add(componentName, copy);
       return;
     }
     throw new NameNotFoundException(componentName + " doesn't exist");
   }
 
   private void clearIntentFilterForComponent(
-      ComponentName componentName, Map<ComponentName, List<IntentFilter>> filterMap)
+      ComponentName componentName,
+      Map<ComponentName, List<IntentFilter>> filterMap,
+      IntentFilterIndex filterIndex)
       throws NameNotFoundException {
     List<IntentFilter> filters = filterMap.get(componentName);
     if (filters != null) {
       filters.clear();
+      filterIndex.remove(componentName);
       return;
     }
     throw new NameNotFoundException(componentName + " doesn't exist");
@@ -1648,9 +1700,13 @@ public class ShadowPackageManager {
       hiddenPackages.clear();
       sequenceNumberChangedPackagesMap.clear();
       activityFilters.clear();
+      activityFilterIndex.clear();
       serviceFilters.clear();
+      serviceFilterIndex.clear();
       providerFilters.clear();
+      providerFilterIndex.clear();
       receiverFilters.clear();
+      receiverFilterIndex.clear();
       packageSettings.clear();
       safeMode = false;
     }
@@ -36,6 +36,7 @@ import org.robolectric.annotation.HiddenApi;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.annotation.Resetter;
 import org.robolectric.res.android.NativeObjRegistry;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.util.ReflectionHelpers.ClassParameter;
@@ -52,8 +53,12 @@ public class ShadowParcel {
   private static final String TAG = "Parcel";
 
   @RealObject private Parcel realObject;
-  private static final NativeObjRegistry<ByteBuffer> NATIVE_BYTE_BUFFER_REGISTRY =
-      new NativeObjRegistry<>(ByteBuffer.class);
+  private static final NativeObjRegistry<Buffer> NATIVE_BYTE_BUFFER_REGISTRY =
+      new NativeObjRegistry<>(Buffer.class);
+
+  private static final boolean COMPACT_PARCELS_BY_DEFAULT =
+      Boolean.getBoolean("robolectric.compactParcels");
+  private static volatile boolean compactParcels = COMPACT_PARCELS_BY_DEFAULT;
 
   @Implementation(maxSdk = JELLY_BEAN_MR1)
   @SuppressWarnings("TypeParameterUnusedInFormals")
@@ -157,7 +162,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static int nativeDataSize(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).dataSize();
+    return getBuffer(nativePtr).dataSize();
   }
 
   @HiddenApi
@@ -168,7 +173,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static int nativeDataAvail(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).dataAvailable();
+    return getBuffer(nativePtr).dataAvailable();
   }
 
   @HiddenApi
@@ -179,7 +184,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static int nativeDataPosition(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).dataPosition();
+    return getBuffer(nativePtr).dataPosition();
   }
 
   @HiddenApi
@@ -190,7 +195,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static int nativeDataCapacity(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).dataCapacity();
+    return getBuffer(nativePtr).dataCapacity();
   }
 
   @HiddenApi
@@ -202,7 +207,7 @@ public class ShadowParcel {
   @Implementation(minSdk = LOLLIPOP)
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeSetDataSize(long nativePtr, int size) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).setDataSize(size);
+    getBuffer(nativePtr).setDataSize(size);
   }
 
   @HiddenApi
@@ -213,7 +218,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeSetDataPosition(long nativePtr, int pos) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).setDataPosition(pos);
+    getBuffer(nativePtr).setDataPosition(pos);
   }
 
   @HiddenApi
@@ -224,7 +229,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeSetDataCapacity(long nativePtr, int size) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).setDataCapacityAtLeast(size);
+    getBuffer(nativePtr).setDataCapacityAtLeast(size);
   }
 
   @HiddenApi
@@ -235,7 +240,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeWriteByteArray(long nativePtr, byte[] b, int offset, int len) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeByteArray(b, offset, len);
+    getBuffer(nativePtr).writeByteArray(b, offset, len);
   }
 
   // duplicate the writeBlob implementation from latest android, to avoid referencing the
@@ -275,7 +280,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeWriteInt(long nativePtr, int val) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeInt(val);
+    getBuffer(nativePtr).writeInt(val);
   }
 
   @HiddenApi
@@ -286,7 +291,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeWriteLong(long nativePtr, long val) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeLong(val);
+    getBuffer(nativePtr).writeLong(val);
   }
 
   @HiddenApi
@@ -297,7 +302,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeWriteFloat(long nativePtr, float val) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeFloat(val);
+    getBuffer(nativePtr).writeFloat(val);
   }
 
   @HiddenApi
@@ -308,7 +313,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeWriteDouble(long nativePtr, double val) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeDouble(val);
+    getBuffer(nativePtr).writeDouble(val);
   }
 
   @HiddenApi
@@ -319,7 +324,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP, maxSdk = Q)
   protected static void nativeWriteString(long nativePtr, String val) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeString(val);
+    getBuffer(nativePtr).writeString(val);
   }
 
   @HiddenApi
@@ -330,7 +335,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeWriteStrongBinder(long nativePtr, IBinder val) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeStrongBinder(val);
+    getBuffer(nativePtr).writeStrongBinder(val);
   }
 
   @HiddenApi
@@ -341,7 +346,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static byte[] nativeCreateByteArray(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).createByteArray();
+    return getBuffer(nativePtr).createByteArray();
   }
 
   // nativeReadBlob was introduced in lollipop, thus no need for a int nativePtr variant
@@ -352,7 +357,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = O_MR1)
   protected static boolean nativeReadByteArray(long nativePtr, byte[] dest, int destLen) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readByteArray(dest, destLen);
+    return getBuffer(nativePtr).readByteArray(dest, destLen);
   }
 
   @HiddenApi
@@ -363,7 +368,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static int nativeReadInt(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readInt();
+    return getBuffer(nativePtr).readInt();
   }
 
   @HiddenApi
@@ -374,7 +379,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static long nativeReadLong(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readLong();
+    return getBuffer(nativePtr).readLong();
   }
 
   @HiddenApi
@@ -385,7 +390,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static float nativeReadFloat(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readFloat();
+    return getBuffer(nativePtr).readFloat();
   }
 
   @HiddenApi
@@ -396,7 +401,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static double nativeReadDouble(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readDouble();
+    return getBuffer(nativePtr).readDouble();
   }
 
   @HiddenApi
@@ -407,7 +412,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP, maxSdk = Q)
   protected static String nativeReadString(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readString();
+    return getBuffer(nativePtr).readString();
   }
 
   @HiddenApi
@@ -418,13 +423,13 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static IBinder nativeReadStrongBinder(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readStrongBinder();
+    return getBuffer(nativePtr).readStrongBinder();
   }
 
   @Implementation
   @HiddenApi
   public static Number nativeCreate() {
-    return castNativePtr(NATIVE_BYTE_BUFFER_REGISTRY.register(new ByteBuffer()));
+    return castNativePtr(NATIVE_BYTE_BUFFER_REGISTRY.register(newBuffer()));
   }
 
   @HiddenApi
@@ -436,7 +441,7 @@ public class ShadowParcel {
   @Implementation(minSdk = LOLLIPOP)
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeFreeBuffer(long nativePtr) {
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).clear();
+    getBuffer(nativePtr).clear();
   }
 
   @HiddenApi
@@ -458,7 +463,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static byte[] nativeMarshall(long nativePtr) {
-    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).toByteArray();
+    return getBuffer(nativePtr).toByteArray();
   }
 
   @HiddenApi
@@ -470,7 +475,47 @@ public class ShadowParcel {
   @Implementation(minSdk = LOLLIPOP)
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeUnmarshall(long nativePtr, byte[] data, int offset, int length) {
-    NATIVE_BYTE_BUFFER_REGISTRY.update(nativePtr, ByteBuffer.fromByteArray(data, offset, length));
+    Buffer buffer;
+    if (CompactByteBuffer.isCompactFormat(data, offset, length)) {
+      buffer = CompactByteBuffer.fromByteArray(data, offset, length);
+    } else if (compactParcels && !ByteBuffer.isSerializedFormat(data, offset, length)) {
+      buffer = CompactByteBuffer.fromRawBytes(data, offset, length);
+    } else {
+      buffer = ByteBuffer.fromByteArray(data, offset, length);
+    }
+    NATIVE_BYTE_BUFFER_REGISTRY.update(nativePtr, buffer);
+  }
+
+  /**
+   * Sets whether parcels use a compact representation, storing their contents as real bytes
+   * instead of as typed objects; see {@link CompactByteBuffer}. Compact parcels use far less memory
+   * and marshall much faster, which helps tests that parcel large bundles or bitmaps, but are less
+   * forgiving of some test bugs, and their marshalled form differs.
+   *
+   * <p>Defaults to the value of the {@code robolectric.compactParcels} system property, and is
+   * reset to that after each test. Parcels that already hold data keep their representation.
+   */
+  public static void setCompactParcelsEnabled(boolean enabled) {
+    compactParcels = enabled;
+  }
+
+  @Resetter
+  public static void reset() {
+    compactParcels = COMPACT_PARCELS_BY_DEFAULT;
+  }
+
+  private static Buffer newBuffer() {
+    return compactParcels ? new CompactByteBuffer() : new ByteBuffer();
+  }
+
+  private static Buffer getBuffer(long nativePtr) {
+    Buffer buffer = NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr);
+    if (buffer.isCompact() != compactParcels && buffer.dataSize() == 0) {
+      // An empty parcel, e.g. from Parcel's pool, created before the representation changed.
+      buffer = newBuffer();
+      NATIVE_BYTE_BUFFER_REGISTRY.update(nativePtr, buffer);
+    }
+    return buffer;
   }
 
   @HiddenApi
@@ -484,8 +529,8 @@ public class ShadowParcel {
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeAppendFrom(
       long thisNativePtr, long otherNativePtr, int offset, int length) {
-    ByteBuffer thisByteBuffer = NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(thisNativePtr);
-    ByteBuffer otherByteBuffer = NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(otherNativePtr);
+    Buffer thisByteBuffer = getBuffer(thisNativePtr);
+    Buffer otherByteBuffer = getBuffer(otherNativePtr);
     thisByteBuffer.appendFrom(otherByteBuffer, offset, length);
   }
 
@@ -595,10 +640,11 @@ public class ShadowParcel {
    *       with existing clients that rely on the Java-serialization-based format.
    *   <li>Uses substantially more memory, since each "byte" takes at minimum 4 bytes for a pointer,
    *       and even more for the overhead of allocating a record for each write. But note there is
-   *       only at most one allocation for every 4 byte positions.
+   *       only at most one allocation for every 4 byte positions. {@link CompactByteBuffer} avoids
+   *       this.
    * </ul>
    */
-  private static class ByteBuffer {
+  private static class ByteBuffer implements Buffer {
     /** Number of bytes in Parcel used by an int, length, or anything smaller. */
     private static final int INT_SIZE_BYTES = 4;
     /** Number of bytes in Parcel used by a long or double. */
@@ -820,7 +866,8 @@ public class ShadowParcel {
      * @param offset number of bytes from beginning of byte buffer to start copy from
      * @param length number of bytes to copy
      */
-    public void appendFrom(ByteBuffer other, int offset, int length) {
+    public void appendFrom(Buffer otherBuffer, int offset, int length) {
+      ByteBuffer other = checkSameRepresentation(this, otherBuffer);
       int oldSize = dataSize;
       if (dataPosition != dataSize) {
         // Parcel.cpp will always expand the buffer by length even if it is overwriting existing
@@ -867,6 +914,16 @@ public class ShadowParcel {
       return true;
     }
 
+    public boolean isCompact() {
+      return false;
+    }
+
+    /** Returns whether the given bytes start like the output of {@link #toByteArray()}. */
+    static boolean isSerializedFormat(byte[] array, int offset, int length) {
+      // the stream magic written by ObjectOutputStream
+      return length >= 2 && array[offset] == (byte) 0xAC && array[offset + 1] == (byte) 0xED;
+    }
+
     /**
      * Creates a Byte buffer from a raw byte array.
      *
@@ -1161,6 +1218,677 @@ public class ShadowParcel {
     }
   }
 
+  /**
+   * The representation of a parcel's data; see {@link ByteBuffer} and {@link CompactByteBuffer}.
+   */
+  private interface Buffer {
+    void clear();
+
+    byte[] createByteArray();
+
+    boolean readByteArray(byte[] dest, int destLen);
+
+    void writeByteArray(byte[] b, int offset, int length);
+
+    void writeInt(int i);
+
+    int readInt();
+
+    void writeLong(long l);
+
+    long readLong();
+
+    void writeFloat(float f);
+
+    float readFloat();
+
+    void writeDouble(double d);
+
+    double readDouble();
+
+    void writeString(String s);
+
+    String readString();
+
+    void writeStrongBinder(IBinder b);
+
+    IBinder readStrongBinder();
+
+    void appendFrom(Buffer other, int offset, int length);
+
+    byte[] toByteArray();
+
+    int dataAvailable();
+
+    int dataCapacity();
+
+    int dataPosition();
+
+    int dataSize();
+
+    void setDataPosition(int pos);
+
+    void setDataSize(int size);
+
+    void setDataCapacityAtLeast(int newCapacity);
+
+    /** Returns true for {@link CompactByteBuffer}. */
+    boolean isCompact();
+  }
+
+  private static <T extends Buffer> T checkSameRepresentation(T buffer, Buffer other) {
+    if (buffer.getClass() != other.getClass()) {
+      throw new UnreliableBehaviorError(
+          "Can't append from a parcel with a different representation; was"
+              + " setCompactParcelsEnabled() changed while both were in use?");
+    }
+    @SuppressWarnings("unchecked")
+    T result = (T) other;
+    return result;
+  }
+
+  /**
+   * CompactByteBuffer is an alternative to {@link ByteBuffer} that stores a parcel's contents as
+   * real bytes, enabled with {@link #setCompactParcelsEnabled(boolean)}.
+   *
+   * <p>Values are written little-endian with Parcel's 4-byte alignment, so a parcel takes about as
+   * much memory as on a device. A side table holds one tag for each 4-byte word, recording the type
+   * of the value that starts there, or that the word continues the value before it. This keeps
+   * most of ByteBuffer's fail-fast checks:
+   *
+   * <ul>
+   *   <li>Reading a different type than was written, or from the middle of a value, fails unless
+   *       the bytes read are all zero.
+   *   <li>Reading uninitialized, truncated or partially overwritten values fails.
+   *   <li>Reading past the end after writing without calling setDataPosition(0) fails.
+   * </ul>
+   *
+   * <p>It differs from ByteBuffer in that:
+   *
+   * <ul>
+   *   <li>Values are always copied, never shared with the writer.
+   *   <li>Writing at a position that isn't 4-byte aligned fails.
+   *   <li>Binders are kept in a side list, and parcels holding them can't be marshalled, as on
+   *       Android.
+   *   <li>The marshalled form is a short header, the raw bytes and the tags. Unmarshalling bytes
+   *       from elsewhere, e.g. a device, gives untyped data that may be read as any type.
+   * </ul>
+   */
+  private static class CompactByteBuffer implements Buffer {
+    private static final int INT_SIZE_BYTES = 4;
+    private static final int LONG_OR_DOUBLE_SIZE_BYTES = 8;
+    /** Size of struct flat_binder_object in android/binder.h. */
+    private static final int BINDER_SIZE_BYTES = 5 * INT_SIZE_BYTES;
+    /** The type field of a flat_binder_object for a local binder, BINDER_TYPE_BINDER. */
+    private static final int BINDER_TYPE_BINDER = 0x73622a85;
+    /** Leads the marshalled form: "RPC1" in little-endian order. */
+    private static final int MAGIC = 0x31435052;
+
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+    // Tags for each 4-byte word of data.
+    private static final byte UNINITIALIZED = 0;
+    private static final byte CONTINUATION = 1;
+    private static final byte UNTYPED = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte STRING = 7;
+    private static final byte BYTES = 8;
+    private static final byte BINDER = 9;
+
+    private byte[] data;
+    private byte[] tags;
+    private final List<IBinder> binders = new ArrayList<>();
+    private int dataPosition;
+    private int dataSize;
+    /** As for {@link ByteBuffer#failNextReadIfPastEnd}. */
+    private boolean failNextReadIfPastEnd;
+
+    CompactByteBuffer() {
+      clear();
+    }
+
+    @Override
+    public boolean isCompact() {
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      data = EMPTY_BYTE_ARRAY;
+      tags = EMPTY_BYTE_ARRAY;
+      binders.clear();
+      dataPosition = 0;
+      dataSize = 0;
+      failNextReadIfPastEnd = false;
+    }
+
+    @Override
+    public void writeInt(int i) {
+      int start = beginWrite(INT, INT_SIZE_BYTES);
+      putInt(start, i);
+    }
+
+    @Override
+    public int readInt() {
+      if (readZeroes(INT_SIZE_BYTES) || isPastEnd()) {
+        return 0;
+      }
+      return getInt(beginRead(INT, INT_SIZE_BYTES, Integer.class));
+    }
+
+    @Override
+    public void writeLong(long l) {
+      int start = beginWrite(LONG, LONG_OR_DOUBLE_SIZE_BYTES);
+      putLong(start, l);
+    }
+
+    @Override
+    public long readLong() {
+      if (readZeroes(LONG_OR_DOUBLE_SIZE_BYTES) || isPastEnd()) {
+        return 0L;
+      }
+      return getLong(beginRead(LONG, LONG_OR_DOUBLE_SIZE_BYTES, Long.class));
+    }
+
+    @Override
+    public void writeFloat(float f) {
+      int start = beginWrite(FLOAT, INT_SIZE_BYTES);
+      putInt(start, Float.floatToRawIntBits(f));
+    }
+
+    @Override
+    public float readFloat() {
+      if (readZeroes(INT_SIZE_BYTES) || isPastEnd()) {
+        return 0f;
+      }
+      return Float.intBitsToFloat(getInt(beginRead(FLOAT, INT_SIZE_BYTES, Float.class)));
+    }
+
+    @Override
+    public void writeDouble(double d) {
+      int start = beginWrite(DOUBLE, LONG_OR_DOUBLE_SIZE_BYTES);
+      putLong(start, Double.doubleToRawLongBits(d));
+    }
+
+    @Override
+    public double readDouble() {
+      if (readZeroes(LONG_OR_DOUBLE_SIZE_BYTES) || isPastEnd()) {
+        return 0d;
+      }
+      return Double.longBitsToDouble(
+          getLong(beginRead(DOUBLE, LONG_OR_DOUBLE_SIZE_BYTES, Double.class)));
+    }
+
+    @Override
+    public void writeString(String s) {
+      if (s == null) {
+        putInt(beginWrite(STRING, INT_SIZE_BYTES), -1);
+        return;
+      }
+      // Android encodes strings as length plus a null-terminated array of 2-byte characters.
+      int length = s.length();
+      int start = beginWrite(STRING, alignToInt(INT_SIZE_BYTES + (length + 1) * 2));
+      putInt(start, length);
+      int pos = start + INT_SIZE_BYTES;
+      for (int i = 0; i < length; i++) {
+        char c = s.charAt(i);
+        data[pos++] = (byte) c;
+        data[pos++] = (byte) (c >> 8);
+      }
+      Arrays.fill(data, pos, dataPosition, (byte) 0);
+    }
+
+    @Override
+    public String readString() {
+      if (readZeroes(INT_SIZE_BYTES * 2)) {
+        // Empty string is 4 bytes for length of 0, and 4 bytes for null terminator and padding.
+        return "";
+      }
+      if (isPastEnd()) {
+        return null;
+      }
+      checkReadable(STRING, String.class);
+      if (dataPosition + INT_SIZE_BYTES > dataSize) {
+        throw new UnreliableBehaviorError(
+            String.format(
+                Locale.US,
+                "Looking for String at position %d, but the end of the buffer interrupts it",
+                dataPosition));
+      }
+      int length = getInt(dataPosition);
+      if (length < 0) {
+        beginRead(STRING, INT_SIZE_BYTES, String.class);
+        return null;
+      }
+      if (length > (dataSize - dataPosition - INT_SIZE_BYTES) / 2) {
+        // Checked up front, since the size computed below overflows for large lengths.
+        throw new UnreliableBehaviorError(
+            String.format(
+                Locale.US,
+                "Looking for String of length %d at position %d, but the end of the buffer"
+                    + " interrupts it",
+                length, dataPosition));
+      }
+      int start = beginRead(STRING, alignToInt(INT_SIZE_BYTES + (length + 1) * 2), String.class);
+      char[] chars = new char[length];
+      int pos = start + INT_SIZE_BYTES;
+      for (int i = 0; i < length; i++) {
+        chars[i] = (char) ((data[pos++] & 0xff) | (data[pos++] & 0xff) << 8);
+      }
+      return new String(chars);
+    }
+
+    @Override
+    public void writeByteArray(byte[] b, int offset, int length) {
+      writeInt(length);
+      if (length != 0) {
+        int start = beginWrite(BYTES, alignToInt(length));
+        System.arraycopy(b, offset, data, start, length);
+        Arrays.fill(data, start + length, dataPosition, (byte) 0);
+      }
+    }
+
+    @Override
+    public byte[] createByteArray() {
+      int length = readInt();
+      if (length == -1) {
+        return null;
+      }
+      if (length == 0) {
+        return EMPTY_BYTE_ARRAY;
+      }
+      int paddedLength = alignToInt(length);
+      if (readZeroes(paddedLength)) {
+        return new byte[length];
+      }
+      if (isPastEnd()) {
+        throw new UnreliableBehaviorError(
+            String.format(
+                Locale.US, "Byte array's length prefix is %d but there is no array", length));
+      }
+      int start = beginRead(BYTES, paddedLength, byte[].class);
+      if (dataPosition < dataSize && tags[dataPosition / INT_SIZE_BYTES] == CONTINUATION) {
+        // Looks like the length doesn't correspond to the array.
+        throw new UnreliableBehaviorError(
+            String.format(
+                Locale.US, "Byte array's length prefix is %d but the array is longer", length));
+      }
+      return Arrays.copyOfRange(data, start, start + length);
+    }
+
+    @Override
+    public boolean readByteArray(byte[] dest, int destLen) {
+      byte[] result = createByteArray();
+      if (result == null || destLen != result.length) {
+        // As for ByteBuffer, let android.os.Parcel throw.
+        return false;
+      }
+      System.arraycopy(result, 0, dest, 0, destLen);
+      return true;
+    }
+
+    @Override
+    public void writeStrongBinder(IBinder b) {
+      int start = beginWrite(BINDER, BINDER_SIZE_BYTES);
+      Arrays.fill(data, start, dataPosition, (byte) 0);
+      putInt(start, BINDER_TYPE_BINDER);
+      if (b == null) {
+        putInt(start + 2 * INT_SIZE_BYTES, -1);
+      } else {
+        putInt(start + 2 * INT_SIZE_BYTES, binders.size());
+        binders.add(b);
+      }
+    }
+
+    @Override
+    public IBinder readStrongBinder() {
+      if (isPastEnd()) {
+        return null;
+      }
+      checkReadable(BINDER, IBinder.class);
+      if (tags[dataPosition / INT_SIZE_BYTES] != BINDER) {
+        throw new UnreliableBehaviorError(
+            "Reading a binder from data that wasn't written as one at position " + dataPosition);
+      }
+      int index = getInt(beginRead(BINDER, BINDER_SIZE_BYTES, IBinder.class) + 2 * INT_SIZE_BYTES);
+      return index < 0 ? null : binders.get(index);
+    }
+
+    @Override
+    public void appendFrom(Buffer otherBuffer, int offset, int length) {
+      CompactByteBuffer other = checkSameRepresentation(this, otherBuffer);
+      if (dataPosition != dataSize) {
+        // See ByteBuffer.appendFrom().
+        throw new UnreliableBehaviorError(
+            "Real Android parcels behave unreliably if appendFrom is "
+                + "called from any position other than the end");
+      }
+      int start = dataPosition;
+      setDataSize(start + length);
+      System.arraycopy(other.data, offset, data, start, length);
+      int words = (length + INT_SIZE_BYTES - 1) / INT_SIZE_BYTES;
+      if (offset % INT_SIZE_BYTES == 0 && start % INT_SIZE_BYTES == 0) {
+        // Copy the tags too; reads will validate whether any values were only partly copied.
+        int word = start / INT_SIZE_BYTES;
+        System.arraycopy(other.tags, offset / INT_SIZE_BYTES, tags, word, words);
+        for (int i = word; i < word + words; i++) {
+          if (tags[i] == BINDER && (i + 3) * INT_SIZE_BYTES <= dataSize) {
+            int pos = i * INT_SIZE_BYTES + 2 * INT_SIZE_BYTES;
+            int index = getInt(pos);
+            if (index >= 0) {
+              putInt(pos, binders.size());
+              binders.add(other.binders.get(index));
+            }
+          }
+        }
+      } else {
+        int firstWord = start / INT_SIZE_BYTES;
+        int lastWord = (start + length - 1) / INT_SIZE_BYTES;
+        Arrays.fill(tags, firstWord, lastWord + 1, UNTYPED);
+      }
+      dataPosition = start + length;
+      failNextReadIfPastEnd = true;
+    }
+
+    /** Returns whether the given bytes start like the output of {@link #toByteArray()}. */
+    static boolean isCompactFormat(byte[] array, int offset, int length) {
+      return length >= 2 * INT_SIZE_BYTES && getInt(array, offset) == MAGIC;
+    }
+
+    /** Creates a buffer from the output of {@link #toByteArray()}. */
+    static CompactByteBuffer fromByteArray(byte[] array, int offset, int length) {
+      int size = getInt(array, offset + INT_SIZE_BYTES);
+      int words = (size + INT_SIZE_BYTES - 1) / INT_SIZE_BYTES;
+      if (size < 0 || length != 2 * INT_SIZE_BYTES + size + words) {
+        throw new UnreliableBehaviorError("ShadowParcel unable to unmarshall its compact format");
+      }
+      CompactByteBuffer buffer = new CompactByteBuffer();
+      int dataStart = offset + 2 * INT_SIZE_BYTES;
+      buffer.data = Arrays.copyOfRange(array, dataStart, dataStart + size);
+      buffer.tags = Arrays.copyOfRange(array, dataStart + size, dataStart + size + words);
+      // Android leaves the data position at the end in this case.
+      buffer.dataSize = size;
+      buffer.dataPosition = size;
+      buffer.failNextReadIfPastEnd = true;
+      return buffer;
+    }
+
+    /** Creates a buffer holding untyped data, e.g. a parcel marshalled on a device. */
+    static CompactByteBuffer fromRawBytes(byte[] array, int offset, int length) {
+      CompactByteBuffer buffer = new CompactByteBuffer();
+      buffer.data = Arrays.copyOfRange(array, offset, offset + length);
+      buffer.tags = new byte[(length + INT_SIZE_BYTES - 1) / INT_SIZE_BYTES];
+      Arrays.fill(buffer.tags, UNTYPED);
+      buffer.dataSize = length;
+      buffer.dataPosition = length;
+      buffer.failNextReadIfPastEnd = true;
+      return buffer;
+    }
+
+    @Override
+    public byte[] toByteArray() {
+      int words = (dataSize + INT_SIZE_BYTES - 1) / INT_SIZE_BYTES;
+      for (int i = 0; i < words; i++) {
+        if (tags[i] == UNINITIALIZED) {
+          throw new UnreliableBehaviorError(
+              "Reading uninitialized data at position " + i * INT_SIZE_BYTES);
+        } else if (tags[i] == BINDER
+            && ((i + 3) * INT_SIZE_BYTES > dataSize || getInt((i + 2) * INT_SIZE_BYTES) >= 0)) {
+          // Null binders are written with index -1 and hold no object, so they may be marshalled.
+          throw new RuntimeException("Tried to marshall a Parcel that contained Binder objects.");
+        }
+      }
+      byte[] result = new byte[2 * INT_SIZE_BYTES + dataSize + words];
+      putInt(result, 0, MAGIC);
+      putInt(result, INT_SIZE_BYTES, dataSize);
+      System.arraycopy(data, 0, result, 2 * INT_SIZE_BYTES, dataSize);
+      System.arraycopy(tags, 0, result, 2 * INT_SIZE_BYTES + dataSize, words);
+      return result;
+    }
+
+    @Override
+    public int dataAvailable() {
+      return dataSize - dataPosition;
+    }
+
+    @Override
+    public int dataCapacity() {
+      return data.length;
+    }
+
+    @Override
+    public int dataPosition() {
+      return dataPosition;
+    }
+
+    @Override
+    public int dataSize() {
+      return dataSize;
+    }
+
+    @Override
+    public void setDataPosition(int pos) {
+      if (pos > dataSize) {
+        // NOTE: Real parcel ignores this until a write occurs.
+        throw new UnreliableBehaviorError(pos + " greater than dataSize " + dataSize);
+      }
+      dataPosition = pos;
+      failNextReadIfPastEnd = false;
+    }
+
+    @Override
+    public void setDataSize(int size) {
+      if (size < dataSize) {
+        // Clear the inaccessible bytes, so they read as uninitialized if the size grows again.
+        // Values truncated mid-way are detected at read time.
+        Arrays.fill(data, size, dataSize, (byte) 0);
+        Arrays.fill(
+            tags,
+            (size + INT_SIZE_BYTES - 1) / INT_SIZE_BYTES,
+            (dataSize + INT_SIZE_BYTES - 1) / INT_SIZE_BYTES,
+            UNINITIALIZED);
+      }
+      setDataCapacityAtLeast(size);
+      dataSize = size;
+      if (dataPosition >= dataSize) {
+        dataPosition = dataSize;
+      }
+    }
+
+    @Override
+    public void setDataCapacityAtLeast(int newCapacity) {
+      if (newCapacity > data.length) {
+        data = Arrays.copyOf(data, newCapacity);
+        tags = Arrays.copyOf(tags, (newCapacity + INT_SIZE_BYTES - 1) / INT_SIZE_BYTES);
+      }
+    }
+
+    private static int alignToInt(int unpaddedSizeBytes) {
+      return ((unpaddedSizeBytes + 3) / 4) * 4;
+    }
+
+    /** Claims the next sizeBytes for a value of the given type, returning its start position. */
+    private int beginWrite(byte tag, int sizeBytes) {
+      int start = dataPosition;
+      if (start % INT_SIZE_BYTES != 0) {
+        throw new UnreliableBehaviorError("Writing at unaligned position " + start);
+      }
+      int end = start + sizeBytes;
+      if (end > data.length) {
+        // Parcel grows by 3/2 of the new size.
+        setDataCapacityAtLeast(end * 3 / 2);
+      }
+      if (end > dataSize) {
+        failNextReadIfPastEnd = true;
+        dataSize = end;
+      }
+      int word = start / INT_SIZE_BYTES;
+      tags[word] = tag;
+      Arrays.fill(tags, word + 1, end / INT_SIZE_BYTES, CONTINUATION);
+      dataPosition = end;
+      return start;
+    }
+
+    /** Returns true when reading past the end, which fails right after writing. */
+    private boolean isPastEnd() {
+      if (dataPosition < dataSize) {
+        return false;
+      }
+      // See ByteBuffer.readValue().
+      if (failNextReadIfPastEnd) {
+        throw new UnreliableBehaviorError(
+            "Did you forget to setDataPosition(0) before reading the parcel?");
+      }
+      return true;
+    }
+
+    /** Checks that a value of the given type starts at the current position. */
+    private void checkReadable(byte tag, Class<?> clazz) {
+      int found =
+          dataPosition % INT_SIZE_BYTES == 0
+              ? tags[dataPosition / INT_SIZE_BYTES]
+              : CONTINUATION;
+      if (found == tag || found == UNTYPED) {
+        return;
+      }
+      if (found == UNINITIALIZED) {
+        // While Parcel will treat these as zeros, in tests, this is almost always an error.
+        throw new UnreliableBehaviorError("Reading uninitialized data at position " + dataPosition);
+      }
+      if (found == CONTINUATION) {
+        throw new UnreliableBehaviorError(
+            String.format(
+                Locale.US,
+                "Looking for %s at position %d, found the middle of another value",
+                clazz.getSimpleName(),
+                dataPosition));
+      }
+      // See ByteBuffer.readValue() for why this is wrapped.
+      throw new RuntimeException(
+          new UnreliableBehaviorError(
+              String.format(
+                  Locale.US,
+                  "Looking for %s at position %d, found %s, and it is non-portable to"
+                      + " reinterpret it",
+                  clazz.getSimpleName(),
+                  dataPosition,
+                  describeTag(found))));
+    }
+
+    /**
+     * Checks that the next sizeBytes hold a complete value of the given type and consumes them,
+     * returning the value's start position.
+     */
+    private int beginRead(byte tag, int sizeBytes, Class<?> clazz) {
+      checkReadable(tag, clazz);
+      int start = dataPosition;
+      int end = start + sizeBytes;
+      byte expected = tags[start / INT_SIZE_BYTES] == UNTYPED ? UNTYPED : CONTINUATION;
+      for (int pos = start + INT_SIZE_BYTES; pos < end; pos += INT_SIZE_BYTES) {
+        if (pos >= dataSize || tags[pos / INT_SIZE_BYTES] != expected) {
+          throw new UnreliableBehaviorError(
+              String.format(
+                  Locale.US,
+                  "Looking for %s at position %d, but %s interrupts it at position %d",
+                  clazz.getSimpleName(),
+                  start,
+                  pos >= dataSize || tags[pos / INT_SIZE_BYTES] == UNINITIALIZED
+                      ? "uninitialized data or the end of the buffer"
+                      : "another value",
+                  pos));
+        }
+      }
+      if (end > dataSize) {
+        throw new UnreliableBehaviorError(
+            String.format(
+                Locale.US,
+                "Looking for %s at position %d, but the end of the buffer interrupts it",
+                clazz.getSimpleName(),
+                start));
+      }
+      dataPosition = end;
+      return start;
+    }
+
+    /**
+     * Consumes the next {@code bytes} if they're initialized and all zero, which may be read as
+     * zero or empty values of any type, as in {@link ByteBuffer#readZeroes(int)}.
+     */
+    private boolean readZeroes(int bytes) {
+      int end = dataPosition + bytes;
+      if (end > dataSize) {
+        return false;
+      }
+      for (int i = dataPosition; i < end; i++) {
+        if (data[i] != 0) {
+          return false;
+        }
+      }
+      for (int word = dataPosition / INT_SIZE_BYTES; word * INT_SIZE_BYTES < end; word++) {
+        if (tags[word] == UNINITIALIZED) {
+          return false;
+        }
+      }
+      dataPosition = end;
+      return true;
+    }
+
+    private static String describeTag(int tag) {
+      switch (tag) {
+        case INT:
+          return "Integer";
+        case LONG:
+          return "Long";
+        case FLOAT:
+          return "Float";
+        case DOUBLE:
+          return "Double";
+        case STRING:
+          return "String";
+        case BYTES:
+          return "byte[]";
+        case BINDER:
+          return "IBinder";
+        default:
+          return "tag " + tag;
+      }
+    }
+
+    private int getInt(int pos) {
+      return getInt(data, pos);
+    }
+
+    private void putInt(int pos, int value) {
+      putInt(data, pos, value);
+    }
+
+    private long getLong(int pos) {
+      return (getInt(pos) & 0xffffffffL) | ((long) getInt(pos + INT_SIZE_BYTES) << 32);
+    }
+
+    private void putLong(int pos, long value) {
+      putInt(pos, (int) value);
+      putInt(pos + INT_SIZE_BYTES, (int) (value >>> 32));
+    }
+
+    private static int getInt(byte[] array, int pos) {
+      return (array[pos] & 0xff)
+          | (array[pos + 1] & 0xff) << 8
+          | (array[pos + 2] & 0xff) << 16
+          | (array[pos + 3] & 0xff) << 24;
+    }
+
+    private static void putInt(byte[] array, int pos, int value) {
+      array[pos] = (byte) value;
+      array[pos + 1] = (byte) (value >> 8);
+      array[pos + 2] = (byte) (value >> 16);
+      array[pos + 3] = (byte) (value >> 24);
+    }
+  }
+
   @Implementation(maxSdk = P)
   protected static FileDescriptor openFileDescriptor(String file, int mode) throws IOException {
     RandomAccessFile randomAccessFile =
@@ -1174,13 +1902,13 @@ public class ShadowParcel {
     // version changed the field name to "descriptor". But it looks like Robolectric uses the
     // Java version of FileDescriptor instead of the Android version.
     int fd = ReflectionHelpers.getField(val, "fd");
-    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeInt(fd);
+    getBuffer(nativePtr).writeInt(fd);
     return (long) nativeDataPosition(nativePtr);
   }
 
   @Implementation(minSdk = M)
   protected static FileDescriptor nativeReadFileDescriptor(long nativePtr) {
-    int fd = NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readInt();
+    int fd = getBuffer(nativePtr).readInt();
     return ReflectionHelpers.callConstructor(
         FileDescriptor.class, ClassParameter.from(int.class, fd));
   }
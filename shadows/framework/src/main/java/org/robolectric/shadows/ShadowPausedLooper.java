@@ -92,10 +92,75 @@ public final class ShadowPausedLooper extends ShadowLooper {
   public void idleFor(long time, TimeUnit timeUnit) {
     long endingTimeMs = SystemClock.uptimeMillis() + timeUnit.toMillis(time);
     long nextScheduledTimeMs = getNextScheduledTaskTime().toMillis();
-    while (nextScheduledTimeMs != 0 && nextScheduledTimeMs <= endingTimeMs) {
-      SystemClock.setCurrentTimeMillis(nextScheduledTimeMs);
-      idle();
-      nextScheduledTimeMs = getNextScheduledTaskTime().toMillis();
+    if ((nextScheduledTimeMs == 0 || nextScheduledTimeMs > endingTimeMs)
+        && !ShadowDisplayEventReceiver.hasPendingVsync(realLooper.getQueue(), endingTimeMs)) {
+      // nothing to run, so there's no need to involve the looper thread
+      SystemClock.setCurrentTimeMillis(endingTimeMs);
+      return;
+    }
+    executeOnLooper(new IdlingForRunnable(endingTimeMs));
+  }
+
+  /**
+   * Advances the clock by the given amount across all loopers.
+   *
+   * @see ShadowLooper#idleAllLoopersFor(Duration)
+   */
+  static void idleAllLoopersFor(long millis) {
+    long endingTimeMs = SystemClock.uptimeMillis() + millis;
+    while (true) {
+      // Find the earliest scheduled message across all loopers, and every looper that has
+      // something due by then.
+      long nowMs = SystemClock.uptimeMillis();
+      long nextScheduledTimeMs = Long.MAX_VALUE;
+      List<ShadowPausedLooper> dueLoopers = new ArrayList<>();
+      List<Long> dueTimesMs = new ArrayList<>();
+      for (Looper looper : getLoopers()) {
+        if (!looper.getThread().isAlive()) {
+          continue;
+        }
+        ShadowPausedLooper shadowLooper = Shadow.extract(looper);
+        long scheduledTimeMs = shadowLooper.getNextScheduledTaskTime().toMillis();
+        if ((scheduledTimeMs == 0 || scheduledTimeMs > endingTimeMs)
+            && ShadowDisplayEventReceiver.hasPendingVsync(looper.getQueue(), endingTimeMs)) {
+          // a skipped frame is rendered once, at the end
+          scheduledTimeMs = endingTimeMs;
+        }
+        if (scheduledTimeMs == 0 || scheduledTimeMs > endingTimeMs) {
+          continue;
+        }
+        nextScheduledTimeMs = Math.min(nextScheduledTimeMs, scheduledTimeMs);
+        dueLoopers.add(shadowLooper);
+        dueTimesMs.add(scheduledTimeMs);
+      }
+      if (dueLoopers.isEmpty()) {
+        break;
+      }
+
+      long targetTimeMs = Math.max(nowMs, nextScheduledTimeMs);
+      SystemClock.setCurrentTimeMillis(targetTimeMs);
+
+      // Start all background loopers before idling the one for this thread, so they run in
+      // parallel, then wait for them all.
+      List<ControlRunnable> started = new ArrayList<>();
+      ShadowPausedLooper currentThreadLooper = null;
+      for (int i = 0; i < dueLoopers.size(); i++) {
+        ShadowPausedLooper shadowLooper = dueLoopers.get(i);
+        if (dueTimesMs.get(i) > targetTimeMs) {
+          continue;
+        }
+        if (Thread.currentThread() == shadowLooper.realLooper.getThread()) {
+          currentThreadLooper = shadowLooper;
+        } else {
+          started.add(shadowLooper.startOnLooper(shadowLooper.new IdlingRunnable()));
+        }
+      }
+      if (currentThreadLooper != null) {
+        currentThreadLooper.idle();
+      }
+      for (ControlRunnable runnable : started) {
+        runnable.waitTillComplete();
+      }
     }
     SystemClock.setCurrentTimeMillis(endingTimeMs);
   }
@@ -263,6 +328,14 @@ public final class ShadowPausedLooper extends ShadowLooper {
 
   /** Executes the given runnable on the loopers thread, and waits for it to complete. */
   private void executeOnLooper(ControlRunnable runnable) {
+    startOnLooper(runnable).waitTillComplete();
+  }
+
+  /**
+   * Executes the given runnable on the loopers thread. Only waits for it to complete if that's the
+   * current thread.
+   */
+  private ControlRunnable startOnLooper(ControlRunnable runnable) {
     if (Thread.currentThread() == realLooper.getThread()) {
       runnable.run();
     } else {
@@ -271,8 +344,8 @@ public final class ShadowPausedLooper extends ShadowLooper {
             "main looper can only be controlled from main thread");
       }
       looperExecutor.execute(runnable);
-      runnable.waitTillComplete();
     }
+    return runnable;
   }
 
   private void setLooperExecutor(Executor executor) {
@@ -293,15 +366,62 @@ public final class ShadowPausedLooper extends ShadowLooper {
     }
   }
 
+  /** Dispatches all messages that are due at the current time. Must be run on looper thread. */
+  private void dispatchDueMessages() {
+    dispatchDueMessages(false);
+  }
+
+  /**
+   * Dispatches all messages that are due at the current time, after delivering any vsync that was
+   * deferred by frame skipping. Must be run on looper thread.
+   *
+   * @param forceVsync deliver a deferred vsync even if a frame was already rendered at the current
+   *     time
+   */
+  private void dispatchDueMessages(boolean forceVsync) {
+    ShadowDisplayEventReceiver.deliverPendingVsyncs(realLooper.getQueue(), forceVsync);
+    ShadowPausedMessageQueue shadowQueue = shadowQueue();
+    while (!shadowQueue.isIdle()) {
+      Message msg = shadowQueue.getNext();
+      msg.getTarget().dispatchMessage(msg);
+      shadowMsg(msg).recycleUnchecked();
+    }
+  }
+
   private class IdlingRunnable extends ControlRunnable {
 
     @Override
     public void run() {
-      while (!shadowQueue().isIdle()) {
-        Message msg = shadowQueue().getNext();
-        msg.getTarget().dispatchMessage(msg);
-        shadowMsg(msg).recycleUnchecked();
+      dispatchDueMessages(true);
+      runLatch.countDown();
+    }
+  }
+
+  /**
+   * Advances the clock to each scheduled message in turn, up to the given time, dispatching the
+   * messages that become due along the way.
+   *
+   * <p>This all happens in one trip to the looper thread, rather than one per scheduled message.
+   */
+  private class IdlingForRunnable extends ControlRunnable {
+
+    private final long endingTimeMs;
+
+    private IdlingForRunnable(long endingTimeMs) {
+      this.endingTimeMs = endingTimeMs;
+    }
+
+    @Override
+    public void run() {
+      ShadowPausedMessageQueue shadowQueue = shadowQueue();
+      long nextScheduledTimeMs = shadowQueue.getNextScheduledTaskTime().toMillis();
+      while (nextScheduledTimeMs != 0 && nextScheduledTimeMs <= endingTimeMs) {
+        SystemClock.setCurrentTimeMillis(nextScheduledTimeMs);
+        dispatchDueMessages();
+        nextScheduledTimeMs = shadowQueue.getNextScheduledTaskTime().toMillis();
       }
+      SystemClock.setCurrentTimeMillis(endingTimeMs);
+      dispatchDueMessages();
       runLatch.countDown();
     }
   }
@@ -18,6 +18,7 @@ import android.os.MessageQueue.IdleHandler;
 import android.os.SystemClock;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
@@ -42,7 +43,9 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
   // just use this class as the native object
   private static NativeObjRegistry<ShadowPausedMessageQueue> nativeQueueRegistry =
       new NativeObjRegistry<ShadowPausedMessageQueue>(ShadowPausedMessageQueue.class);
-  private boolean isPolling = false;
+  private volatile boolean isPolling = false;
+  // The looper thread blocked in nativePollOnce, if any.
+  private volatile Thread pollingThread;
   private ShadowPausedSystemClock.Listener clockListener;
 
   // shadow constructor instead of nativeInit because nativeInit signature has changed across SDK
@@ -52,7 +55,7 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
     invokeConstructor(MessageQueue.class, realQueue, from(boolean.class, quitAllowed));
     int ptr = (int) nativeQueueRegistry.register(this);
     reflector(ReflectorMessageQueue.class, realQueue).setPtr(ptr);
-    clockListener = newCurrentTimeMillis -> nativeWake(ptr);
+    clockListener = this::wakeIfDue;
     ShadowPausedSystemClock.addListener(clockListener);
   }
 
@@ -90,25 +93,51 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
     if (timeoutMillis == 0) {
       return;
     }
-    synchronized (realQueue) {
+    // Park rather than wait on the queue's monitor: a thread blocked in Object.wait() pins its
+    // carrier when loopers run on virtual threads, while LockSupport.park() releases it.
+    // pollingThread must be published before checking isIdle(), so that a wakeup racing with the
+    // check unparks this thread, making the park below return immediately. Since the clock is
+    // volatile too, a clock advance that wakeIfDue() misses because pollingThread is still null is
+    // seen by isIdle() here.
+    pollingThread = Thread.currentThread();
+    try {
       // only block if queue is empty
-      // ignore timeout since clock is not advancing. ClockListener will notify when clock advances
+      // ignore timeout since clock is not advancing. ClockListener will wake when clock advances
       while (isIdle() && !isQuitting()) {
         isPolling = true;
-        try {
-          realQueue.wait();
-        } catch (InterruptedException e) {
-          // ignore
-        }
+        LockSupport.park(this);
+        // ignore interrupts, but clear them so that park() doesn't return straight away
+        Thread.interrupted();
       }
+    } finally {
       isPolling = false;
+      pollingThread = null;
     }
   }
 
+  /**
+   * Wakes a polling looper thread when the clock reaches its next message. Loopers with nothing
+   * due stay asleep, so advancing the clock doesn't wake every looper thread each time.
+   */
+  private void wakeIfDue(long newCurrentTimeMillis) {
+    Thread thread = pollingThread;
+    if (thread == null) {
+      return;
+    }
+    synchronized (realQueue) {
+      Message head = getMessages();
+      if (head == null || shadowOfMsg(head).getWhen() > newCurrentTimeMillis) {
+        return;
+      }
+    }
+    LockSupport.unpark(thread);
+  }
+
   @Implementation(maxSdk = JELLY_BEAN_MR1)
   protected void nativeWake(int ptr) {
-    synchronized (realQueue) {
-      realQueue.notifyAll();
+    Thread thread = pollingThread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
     }
   }
 
@@ -173,9 +202,7 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
   }
 
   boolean isPolling() {
-    synchronized (realQueue) {
-      return isPolling;
-    }
+    return isPolling;
   }
 
   void quit() {
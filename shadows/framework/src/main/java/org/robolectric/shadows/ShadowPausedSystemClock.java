@@ -32,7 +32,9 @@ public class ShadowPausedSystemClock extends ShadowSystemClock {
   private static final long INITIAL_TIME = 100;
   private static final int MILLIS_PER_NANO = 1000000;
   ;
-  private static long currentTimeMillis = INITIAL_TIME;
+  // Volatile since looper threads read it to decide whether to block; see
+  // ShadowPausedMessageQueue.nativePollOnce().
+  private static volatile long currentTimeMillis = INITIAL_TIME;
   private static List<Listener> listeners = new CopyOnWriteArrayList<>();
 
   /** Callback for clock updates */
@@ -12,61 +12,13 @@ import static android.os.Build.VERSION_CODES.P;
 import static android.os.Build.VERSION_CODES.Q;
 import static android.os.Build.VERSION_CODES.R;
 
-import android.accounts.IAccountManager;
-import android.app.IAlarmManager;
-import android.app.INotificationManager;
-import android.app.ISearchManager;
-import android.app.IUiModeManager;
-import android.app.IWallpaperManager;
-import android.app.admin.IDevicePolicyManager;
-import android.app.job.IJobScheduler;
-import android.app.role.IRoleManager;
-import android.app.slice.ISliceManager;
-import android.app.trust.ITrustManager;
-import android.app.usage.IUsageStatsManager;
 import android.content.Context;
-import android.content.IClipboard;
-import android.content.IRestrictionsManager;
-import android.content.integrity.IAppIntegrityManager;
-import android.content.pm.ICrossProfileApps;
-import android.content.pm.IShortcutService;
-import android.content.rollback.IRollbackManager;
-import android.hardware.biometrics.IAuthService;
-import android.hardware.biometrics.IBiometricService;
-import android.hardware.fingerprint.IFingerprintService;
-import android.hardware.input.IInputManager;
-import android.hardware.location.IContextHubService;
-import android.hardware.usb.IUsbManager;
-import android.location.ICountryDetector;
-import android.location.ILocationManager;
-import android.media.IAudioService;
-import android.media.IMediaRouterService;
-import android.media.session.ISessionManager;
-import android.net.IConnectivityManager;
-import android.net.INetworkPolicyManager;
-import android.net.INetworkScoreService;
-import android.net.nsd.INsdManager;
-import android.net.wifi.IWifiManager;
-import android.net.wifi.aware.IWifiAwareManager;
-import android.net.wifi.p2p.IWifiP2pManager;
-import android.net.wifi.rtt.IWifiRttManager;
 import android.os.BatteryStats;
 import android.os.Binder;
-import android.os.IBatteryPropertiesRegistrar;
 import android.os.IBinder;
-import android.os.IDumpstate;
 import android.os.IInterface;
-import android.os.IPowerManager;
-import android.os.IThermalService;
-import android.os.IUserManager;
 import android.os.RemoteException;
 import android.os.ServiceManager;
-import android.os.storage.IStorageManager;
-import com.android.internal.app.IAppOpsService;
-import com.android.internal.app.IBatteryStats;
-import com.android.internal.appwidget.IAppWidgetService;
-import com.android.internal.os.IDropBoxManagerService;
-import com.android.internal.view.IInputMethodManager;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -75,7 +27,7 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.Resetter;
-import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.reflector.Stubs;
 
 /** Shadow for {@link ServiceManager}. */
 @SuppressWarnings("NewApi")
@@ -86,88 +38,94 @@ public class ShadowServiceManager {
   private static final Set<String> unavailableServices = new HashSet<>();
 
   static {
-    addBinderService(Context.CLIPBOARD_SERVICE, IClipboard.class);
-    addBinderService(Context.WIFI_P2P_SERVICE, IWifiP2pManager.class);
-    addBinderService(Context.ACCOUNT_SERVICE, IAccountManager.class);
-    addBinderService(Context.USB_SERVICE, IUsbManager.class);
-    addBinderService(Context.LOCATION_SERVICE, ILocationManager.class);
-    addBinderService(Context.INPUT_METHOD_SERVICE, IInputMethodManager.class);
-    addBinderService(Context.ALARM_SERVICE, IAlarmManager.class);
-    addBinderService(Context.POWER_SERVICE, IPowerManager.class);
-    addBinderService(BatteryStats.SERVICE_NAME, IBatteryStats.class);
-    addBinderService(Context.DROPBOX_SERVICE, IDropBoxManagerService.class);
-    addBinderService(Context.DEVICE_POLICY_SERVICE, IDevicePolicyManager.class);
-    addBinderService(Context.CONNECTIVITY_SERVICE, IConnectivityManager.class);
-    addBinderService(Context.WIFI_SERVICE, IWifiManager.class);
-    addBinderService(Context.SEARCH_SERVICE, ISearchManager.class);
-    addBinderService(Context.UI_MODE_SERVICE, IUiModeManager.class);
-    addBinderService(Context.NETWORK_POLICY_SERVICE, INetworkPolicyManager.class);
-    addBinderService(Context.INPUT_SERVICE, IInputManager.class);
-    addBinderService(Context.COUNTRY_DETECTOR, ICountryDetector.class);
-    addBinderService(Context.NSD_SERVICE, INsdManager.class);
-    addBinderService(Context.AUDIO_SERVICE, IAudioService.class);
-    addBinderService(Context.APPWIDGET_SERVICE, IAppWidgetService.class);
-    addBinderService(Context.NOTIFICATION_SERVICE, INotificationManager.class);
-    addBinderService(Context.WALLPAPER_SERVICE, IWallpaperManager.class);
+    addBinderService(Context.CLIPBOARD_SERVICE, "android.content.IClipboard");
+    addBinderService(Context.WIFI_P2P_SERVICE, "android.net.wifi.p2p.IWifiP2pManager");
+    addBinderService(Context.ACCOUNT_SERVICE, "android.accounts.IAccountManager");
+    addBinderService(Context.USB_SERVICE, "android.hardware.usb.IUsbManager");
+    addBinderService(Context.LOCATION_SERVICE, "android.location.ILocationManager");
+    addBinderService(Context.INPUT_METHOD_SERVICE, "com.android.internal.view.IInputMethodManager");
+    addBinderService(Context.ALARM_SERVICE, "android.app.IAlarmManager");
+    addBinderService(Context.POWER_SERVICE, "android.os.IPowerManager");
+    addBinderService(BatteryStats.SERVICE_NAME, "com.android.internal.app.IBatteryStats");
+    addBinderService(Context.DROPBOX_SERVICE, "com.android.internal.os.IDropBoxManagerService");
+    addBinderService(Context.DEVICE_POLICY_SERVICE, "android.app.admin.IDevicePolicyManager");
+    addBinderService(Context.CONNECTIVITY_SERVICE, "android.net.IConnectivityManager");
+    addBinderService(Context.WIFI_SERVICE, "android.net.wifi.IWifiManager");
+    addBinderService(Context.SEARCH_SERVICE, "android.app.ISearchManager");
+    addBinderService(Context.UI_MODE_SERVICE, "android.app.IUiModeManager");
+    addBinderService(Context.NETWORK_POLICY_SERVICE, "android.net.INetworkPolicyManager");
+    addBinderService(Context.INPUT_SERVICE, "android.hardware.input.IInputManager");
+    addBinderService(Context.COUNTRY_DETECTOR, "android.location.ICountryDetector");
+    addBinderService(Context.NSD_SERVICE, "android.net.nsd.INsdManager");
+    addBinderService(Context.AUDIO_SERVICE, "android.media.IAudioService");
+    addBinderService(Context.APPWIDGET_SERVICE, "com.android.internal.appwidget.IAppWidgetService");
+    addBinderService(Context.NOTIFICATION_SERVICE, "android.app.INotificationManager");
+    addBinderService(Context.WALLPAPER_SERVICE, "android.app.IWallpaperManager");
 
     if (RuntimeEnvironment.getApiLevel() >= JELLY_BEAN_MR1) {
-      addBinderService(Context.USER_SERVICE, IUserManager.class);
+      addBinderService(Context.USER_SERVICE, "android.os.IUserManager");
     }
     if (RuntimeEnvironment.getApiLevel() >= JELLY_BEAN_MR2) {
-      addBinderService(Context.APP_OPS_SERVICE, IAppOpsService.class);
+      addBinderService(Context.APP_OPS_SERVICE, "com.android.internal.app.IAppOpsService");
     }
     if (RuntimeEnvironment.getApiLevel() >= KITKAT) {
-      addBinderService("batteryproperties", IBatteryPropertiesRegistrar.class);
+      addBinderService("batteryproperties", "android.os.IBatteryPropertiesRegistrar");
     }
     if (RuntimeEnvironment.getApiLevel() >= LOLLIPOP) {
-      addBinderService(Context.RESTRICTIONS_SERVICE, IRestrictionsManager.class);
-      addBinderService(Context.TRUST_SERVICE, ITrustManager.class);
-      addBinderService(Context.JOB_SCHEDULER_SERVICE, IJobScheduler.class);
-      addBinderService(Context.NETWORK_SCORE_SERVICE, INetworkScoreService.class);
-      addBinderService(Context.USAGE_STATS_SERVICE, IUsageStatsManager.class);
-      addBinderService(Context.MEDIA_ROUTER_SERVICE, IMediaRouterService.class);
-      addBinderService(Context.MEDIA_SESSION_SERVICE, ISessionManager.class, true);
+      addBinderService(Context.RESTRICTIONS_SERVICE, "android.content.IRestrictionsManager");
+      addBinderService(Context.TRUST_SERVICE, "android.app.trust.ITrustManager");
+      addBinderService(Context.JOB_SCHEDULER_SERVICE, "android.app.job.IJobScheduler");
+      addBinderService(Context.NETWORK_SCORE_SERVICE, "android.net.INetworkScoreService");
+      addBinderService(Context.USAGE_STATS_SERVICE, "android.app.usage.IUsageStatsManager");
+      addBinderService(Context.MEDIA_ROUTER_SERVICE, "android.media.IMediaRouterService");
+      addBinderService(
+          Context.MEDIA_SESSION_SERVICE, "android.media.session.ISessionManager", true);
     }
     if (RuntimeEnvironment.getApiLevel() >= M) {
-      addBinderService(Context.FINGERPRINT_SERVICE, IFingerprintService.class);
+      addBinderService(
+          Context.FINGERPRINT_SERVICE, "android.hardware.fingerprint.IFingerprintService");
     }
     if (RuntimeEnvironment.getApiLevel() >= N) {
-      addBinderService(Context.CONTEXTHUB_SERVICE, IContextHubService.class);
+      addBinderService(Context.CONTEXTHUB_SERVICE, "android.hardware.location.IContextHubService");
     }
     if (RuntimeEnvironment.getApiLevel() >= N_MR1) {
-      addBinderService(Context.SHORTCUT_SERVICE, IShortcutService.class);
+      addBinderService(Context.SHORTCUT_SERVICE, "android.content.pm.IShortcutService");
     }
     if (RuntimeEnvironment.getApiLevel() >= O) {
-      addBinderService("mount", IStorageManager.class);
-      addBinderService(Context.WIFI_AWARE_SERVICE, IWifiAwareManager.class);
+      addBinderService("mount", "android.os.storage.IStorageManager");
+      addBinderService(Context.WIFI_AWARE_SERVICE, "android.net.wifi.aware.IWifiAwareManager");
     } else {
       addBinderService("mount", "android.os.storage.IMountService");
     }
     if (RuntimeEnvironment.getApiLevel() >= P) {
-      addBinderService(Context.SLICE_SERVICE, ISliceManager.class);
-      addBinderService(Context.CROSS_PROFILE_APPS_SERVICE, ICrossProfileApps.class);
-      addBinderService(Context.WIFI_RTT_RANGING_SERVICE, IWifiRttManager.class);
+      addBinderService(Context.SLICE_SERVICE, "android.app.slice.ISliceManager");
+      addBinderService(Context.CROSS_PROFILE_APPS_SERVICE, "android.content.pm.ICrossProfileApps");
+      addBinderService(Context.WIFI_RTT_RANGING_SERVICE, "android.net.wifi.rtt.IWifiRttManager");
     }
     if (RuntimeEnvironment.getApiLevel() >= Q) {
-      addBinderService(Context.BIOMETRIC_SERVICE, IBiometricService.class);
-      addBinderService(Context.ROLE_SERVICE, IRoleManager.class);
-      addBinderService(Context.ROLLBACK_SERVICE, IRollbackManager.class);
-      addBinderService(Context.THERMAL_SERVICE, IThermalService.class);
-      addBinderService(Context.BUGREPORT_SERVICE, IDumpstate.class);
+      addBinderService(Context.BIOMETRIC_SERVICE, "android.hardware.biometrics.IBiometricService");
+      addBinderService(Context.ROLE_SERVICE, "android.app.role.IRoleManager");
+      addBinderService(Context.ROLLBACK_SERVICE, "android.content.rollback.IRollbackManager");
+      addBinderService(Context.THERMAL_SERVICE, "android.os.IThermalService");
+      addBinderService(Context.BUGREPORT_SERVICE, "android.os.IDumpstate");
     }
     if (RuntimeEnvironment.getApiLevel() >= R) {
-      addBinderService(Context.APP_INTEGRITY_SERVICE, IAppIntegrityManager.class);
-      addBinderService(Context.AUTH_SERVICE, IAuthService.class);
+      addBinderService(
+          Context.APP_INTEGRITY_SERVICE, "android.content.integrity.IAppIntegrityManager");
+      addBinderService(Context.AUTH_SERVICE, "android.hardware.biometrics.IAuthService");
     }
   }
 
   /**
    * A data class that holds descriptor information about binder services. It also holds the cached
    * binder object if it is requested by {@link #getService(String)}.
+   *
+   * <p>Services registered by class name aren't loaded until they are first requested, since most
+   * tests only use a few of them.
    */
   private static class BinderService {
 
-    private final Class<? extends IInterface> clazz;
+    private Class<? extends IInterface> clazz;
     private final String className;
     private final boolean useDeepBinder;
     private Binder cachedBinder;
@@ -180,12 +138,16 @@ public class ShadowServiceManager {
 
     IBinder getBinder() {
       if (cachedBinder == null) {
+        if (clazz == null) {
+          try {
+            clazz = Class.forName(className).asSubclass(IInterface.class);
+          } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+          }
+        }
         cachedBinder = new Binder();
         cachedBinder.attachInterface(
-            useDeepBinder
-                ? ReflectionHelpers.createDeepProxy(clazz)
-                : ReflectionHelpers.createNullProxy(clazz),
-            className);
+            useDeepBinder ? Stubs.deepStub(clazz) : Stubs.nullStub(clazz), className);
       }
       return cachedBinder;
     }
@@ -200,14 +162,14 @@ public class ShadowServiceManager {
     addBinderService(name, clazz, clazz.getCanonicalName(), useDeepBinder);
   }
 
+  /** Adds a binder service whose interface, {@code className}, is loaded on first use. */
   protected static void addBinderService(String name, String className) {
-    Class<? extends IInterface> clazz;
-    try {
-      clazz = Class.forName(className).asSubclass(IInterface.class);
-    } catch (ClassNotFoundException e) {
-      throw new RuntimeException(e);
-    }
-    addBinderService(name, clazz, className, false);
+    addBinderService(name, className, false);
+  }
+
+  /** Adds a binder service whose interface, {@code className}, is loaded on first use. */
+  protected static void addBinderService(String name, String className, boolean useDeepBinder) {
+    addBinderService(name, null, className, useDeepBinder);
   }
 
   protected static void addBinderService(
@@ -1,15 +1,137 @@
 package org.robolectric.shadows;
 
+import static org.robolectric.util.reflector.Reflector.reflector;
+
 import android.app.QueuedWork;
+import android.content.Context;
 import android.os.Build.VERSION_CODES;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.annotation.Resetter;
 import org.robolectric.shadow.api.Shadow;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+import org.robolectric.util.reflector.Accessor;
+import org.robolectric.util.reflector.ForType;
 
-/** Dummy container class for nested shadow class */
+/** Container class for the nested SharedPreferences shadow classes. */
 public class ShadowSharedPreferences {
 
+  private static final String SHARED_PREFERENCES_IMPL_CLASS_NAME =
+      "android.app.SharedPreferencesImpl";
+
+  private static final boolean WRITE_BEHIND_BY_DEFAULT =
+      Boolean.getBoolean("robolectric.writeBehindSharedPreferences");
+  private static volatile boolean writeBehind = WRITE_BEHIND_BY_DEFAULT;
+
+  /** The latest commit to each SharedPreferences file that hasn't been written to it yet. */
+  private static final Map<File, PendingWrite> pendingWrites = new HashMap<>();
+
+  /**
+   * Sets whether SharedPreferences are only kept in memory, rather than written to their XML files
+   * on every {@code commit()} and {@code apply()}. In this mode, a file is only written when {@link
+   * Context#getSharedPreferencesPath(String)} is called for it, when preferences opened with {@link
+   * Context#MODE_MULTI_PROCESS} are checked for changes on disk, or by {@link
+   * #flushPendingWrites()}.
+   *
+   * <p>Defaults to the value of the {@code robolectric.writeBehindSharedPreferences} system
+   * property, and is reset to that after each test. Only affects API 26 and above.
+   */
+  public static void setWriteBehindEnabled(boolean enabled) {
+    writeBehind = enabled;
+    if (!enabled) {
+      flushPendingWrites();
+    }
+  }
+
+  /** Writes the files of all SharedPreferences whose changes are only in memory. */
+  public static void flushPendingWrites() {
+    List<PendingWrite> writes;
+    synchronized (pendingWrites) {
+      writes = new ArrayList<>(pendingWrites.values());
+      pendingWrites.clear();
+    }
+    for (PendingWrite write : writes) {
+      writeToFile(write.sharedPreferencesImpl, write.memoryCommitResult, true);
+    }
+  }
+
+  /** Writes the given SharedPreferences file if its changes are only in memory. */
+  static void flushPendingWrite(File file) {
+    PendingWrite write;
+    synchronized (pendingWrites) {
+      write = pendingWrites.remove(file);
+    }
+    if (write != null) {
+      writeToFile(write.sharedPreferencesImpl, write.memoryCommitResult, true);
+    }
+  }
+
+  private static void writeToFile(
+      Object sharedPreferencesImpl, Object memoryCommitResult, boolean isFromSyncCommit) {
+    Shadow.directlyOn(
+        sharedPreferencesImpl,
+        SHARED_PREFERENCES_IMPL_CLASS_NAME,
+        "writeToFile",
+        ClassParameter.from(memoryCommitResult.getClass(), memoryCommitResult),
+        ClassParameter.from(boolean.class, isFromSyncCommit));
+  }
+
+  @Implements(
+      className = SHARED_PREFERENCES_IMPL_CLASS_NAME,
+      minSdk = VERSION_CODES.O,
+      isInAndroidSdk = false,
+      looseSignatures = true)
+  public static class ShadowSharedPreferencesImpl {
+
+    @RealObject Object realObject;
+
+    @Implementation
+    protected void writeToFile(Object memoryCommitResult, Object isFromSyncCommit) {
+      if (!writeBehind) {
+        ShadowSharedPreferences.writeToFile(
+            realObject, memoryCommitResult, (Boolean) isFromSyncCommit);
+        return;
+      }
+
+      _MemoryCommitResult_ commit = reflector(_MemoryCommitResult_.class, memoryCommitResult);
+      File file = reflector(_SharedPreferencesImpl_.class, realObject).getFile();
+      synchronized (pendingWrites) {
+        PendingWrite pending = pendingWrites.get(file);
+        // Commits made with apply() may reach here after later ones made with commit().
+        if (pending == null
+            || reflector(_MemoryCommitResult_.class, pending.memoryCommitResult)
+                    .getMemoryStateGeneration()
+                < commit.getMemoryStateGeneration()) {
+          pendingWrites.put(file, new PendingWrite(realObject, memoryCommitResult));
+        }
+      }
+      commit.setDiskWriteResult(false, true);
+    }
+
+    @Implementation
+    protected void startReloadIfChangedUnexpectedly() {
+      // The file is stale, or missing, until pending changes are written.
+      flushPendingWrite(reflector(_SharedPreferencesImpl_.class, realObject).getFile());
+      Shadow.directlyOn(
+          realObject, SHARED_PREFERENCES_IMPL_CLASS_NAME, "startReloadIfChangedUnexpectedly");
+    }
+
+    @Resetter
+    public static void reset() {
+      writeBehind = WRITE_BEHIND_BY_DEFAULT;
+      // The test's data directory is deleted, so there's no point writing these.
+      synchronized (pendingWrites) {
+        pendingWrites.clear();
+      }
+    }
+  }
+
   @Implements(
       className = "android.app.SharedPreferencesImpl$EditorImpl",
       minSdk = VERSION_CODES.O,
@@ -25,4 +147,31 @@ public class ShadowSharedPreferences {
       QueuedWork.waitToFinish();
     }
   }
+
+  /** A commit that hasn't been written to its file yet. */
+  private static class PendingWrite {
+    final Object sharedPreferencesImpl;
+    final Object memoryCommitResult;
+
+    PendingWrite(Object sharedPreferencesImpl, Object memoryCommitResult) {
+      this.sharedPreferencesImpl = sharedPreferencesImpl;
+      this.memoryCommitResult = memoryCommitResult;
+    }
+  }
+
+  /** Accessor interface for {@code SharedPreferencesImpl}'s internals. */
+  @ForType(className = SHARED_PREFERENCES_IMPL_CLASS_NAME)
+  interface _SharedPreferencesImpl_ {
+    @Accessor("mFile")
+    File getFile();
+  }
+
+  /** Accessor interface for {@code SharedPreferencesImpl.MemoryCommitResult}'s internals. */
+  @ForType(className = "android.app.SharedPreferencesImpl$MemoryCommitResult")
+  interface _MemoryCommitResult_ {
+    @Accessor("memoryStateGeneration")
+    long getMemoryStateGeneration();
+
+    void setDiskWriteResult(boolean wasWritten, boolean result);
+  }
 }
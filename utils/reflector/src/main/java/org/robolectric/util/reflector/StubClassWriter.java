@@ -0,0 +1,111 @@
+package org.robolectric.util.reflector;
+
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.V1_5;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+
+/** Generates the classes returned by {@link Stubs}. */
+@SuppressWarnings("NewApi")
+class StubClassWriter extends ClassWriter {
+
+  private static final Type OBJECT_TYPE = Type.getType(Object.class);
+  private static final Type STUBS_TYPE = Type.getType(Stubs.class);
+  private static final org.objectweb.asm.commons.Method OBJECT_INIT =
+      new org.objectweb.asm.commons.Method("<init>", Type.VOID_TYPE, new Type[0]);
+  private static final org.objectweb.asm.commons.Method STUBS$DEEP_STUB =
+      new org.objectweb.asm.commons.Method(
+          "deepStub", OBJECT_TYPE, new Type[] {Type.getType(Class.class)});
+
+  private final Class<?> iClass;
+  private final Type stubType;
+  private final boolean deep;
+
+  StubClassWriter(Class<?> iClass, String stubClassName, boolean deep) {
+    super(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+
+    this.iClass = iClass;
+    this.stubType = Type.getObjectType(stubClassName.replace('.', '/'));
+    this.deep = deep;
+  }
+
+  void write() {
+    visit(
+        V1_5,
+        ACC_PUBLIC | ACC_SUPER | ACC_FINAL,
+        stubType.getInternalName(),
+        null,
+        OBJECT_TYPE.getInternalName(),
+        new String[] {Type.getInternalName(iClass)});
+
+    writeConstructor();
+
+    Set<String> written = new HashSet<>();
+    for (Method method : iClass.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers())) {
+        continue;
+      }
+      org.objectweb.asm.commons.Method asmMethod =
+          org.objectweb.asm.commons.Method.getMethod(method);
+      // the same method may be inherited from more than one superinterface
+      if (written.add(asmMethod.toString())) {
+        writeStubMethod(method, asmMethod);
+      }
+    }
+
+    visitEnd();
+  }
+
+  private void writeConstructor() {
+    GeneratorAdapter init = new GeneratorAdapter(ACC_PUBLIC, OBJECT_INIT, null, null, this);
+    init.loadThis();
+    init.invokeConstructor(OBJECT_TYPE, OBJECT_INIT);
+    init.returnValue();
+    init.endMethod();
+  }
+
+  private void writeStubMethod(Method method, org.objectweb.asm.commons.Method asmMethod) {
+    GeneratorAdapter generator = new GeneratorAdapter(ACC_PUBLIC, asmMethod, null, null, this);
+    Class<?> returnClass = method.getReturnType();
+    Type returnType = asmMethod.getReturnType();
+    switch (returnType.getSort()) {
+      case Type.VOID:
+        break;
+      case Type.BOOLEAN:
+      case Type.CHAR:
+      case Type.BYTE:
+      case Type.SHORT:
+      case Type.INT:
+        generator.push(0);
+        break;
+      case Type.LONG:
+        generator.push(0L);
+        break;
+      case Type.FLOAT:
+        generator.push(0f);
+        break;
+      case Type.DOUBLE:
+        generator.push(0d);
+        break;
+      default:
+        if (deep && returnClass.isInterface() && Modifier.isPublic(returnClass.getModifiers())) {
+          generator.push(returnType);
+          generator.invokeStatic(STUBS_TYPE, STUBS$DEEP_STUB);
+          generator.checkCast(returnType);
+        } else {
+          generator.visitInsn(ACONST_NULL);
+        }
+    }
+    generator.returnValue();
+    generator.endMethod();
+  }
+}
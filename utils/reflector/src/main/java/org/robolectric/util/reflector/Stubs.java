@@ -0,0 +1,67 @@
+package org.robolectric.util.reflector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides do-nothing implementations of interfaces, for example of the AIDL interfaces of system
+ * services that tests don't interact with.
+ *
+ * <p>Unlike a {@link java.lang.reflect.Proxy}, the implementation is a generated class whose
+ * methods return constants, so calling them doesn't involve an {@link
+ * java.lang.reflect.InvocationHandler} or reflection.
+ */
+@SuppressWarnings("NewApi")
+public class Stubs {
+
+  private static final AtomicInteger COUNTER = new AtomicInteger();
+
+  private static final ClassValue<Object> NULL_STUBS =
+      new ClassValue<Object>() {
+        @Override
+        protected Object computeValue(Class<?> type) {
+          return createStub(type, false);
+        }
+      };
+
+  private static final ClassValue<Object> DEEP_STUBS =
+      new ClassValue<Object>() {
+        @Override
+        protected Object computeValue(Class<?> type) {
+          return createStub(type, true);
+        }
+      };
+
+  /**
+   * Returns an implementation of {@code iClass} whose methods do nothing and return zero, false or
+   * null.
+   */
+  public static <T> T nullStub(Class<T> iClass) {
+    return iClass.cast(NULL_STUBS.get(iClass));
+  }
+
+  /**
+   * Returns an implementation of {@code iClass} whose methods do nothing and return a deep stub if
+   * they return a public interface, or else zero, false or null. As with {@link
+   * org.robolectric.util.ReflectionHelpers#createDeepProxy(Class)}, this is to keep code that
+   * chains calls from crashing.
+   */
+  public static <T> T deepStub(Class<T> iClass) {
+    return iClass.cast(DEEP_STUBS.get(iClass));
+  }
+
+  private static Object createStub(Class<?> iClass, boolean deep) {
+    if (!iClass.isInterface()) {
+      throw new IllegalArgumentException(iClass + " is not an interface");
+    }
+    String stubClassName =
+        iClass.getName() + (deep ? "$$DeepStub" : "$$Stub") + COUNTER.getAndIncrement();
+    StubClassWriter writer = new StubClassWriter(iClass, stubClassName, deep);
+    writer.write();
+    Class<?> stubClass = UnsafeAccess.defineClass(iClass, stubClassName, writer.toByteArray());
+    try {
+      return stubClass.getConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
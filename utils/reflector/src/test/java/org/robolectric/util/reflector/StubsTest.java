@@ -0,0 +1,76 @@
+package org.robolectric.util.reflector;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.lang.reflect.Proxy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class StubsTest {
+
+  @Test
+  public void nullStub_returnsDefaultValues() {
+    Service stub = Stubs.nullStub(Service.class);
+
+    stub.doNothing("a");
+    assertThat(stub.getBoolean()).isFalse();
+    assertThat(stub.getChar()).isEqualTo('\0');
+    assertThat(stub.getInt(1, 2L)).isEqualTo(0);
+    assertThat(stub.getLong()).isEqualTo(0L);
+    assertThat(stub.getDouble()).isEqualTo(0d);
+    assertThat(stub.getString()).isNull();
+    assertThat(stub.getCallback()).isNull();
+    assertThat(stub.getInherited()).isEqualTo(0f);
+  }
+
+  @Test
+  public void nullStub_isGeneratedClassNotProxy() {
+    Service stub = Stubs.nullStub(Service.class);
+
+    assertThat(Proxy.isProxyClass(stub.getClass())).isFalse();
+    assertThat(stub.getClass().getPackage()).isEqualTo(Service.class.getPackage());
+    assertThat(Stubs.nullStub(Service.class)).isSameInstanceAs(stub);
+  }
+
+  @Test
+  public void deepStub_returnsDeepStubsForInterfaces() {
+    Service stub = Stubs.deepStub(Service.class);
+
+    Callback callback = stub.getCallback();
+    assertThat(callback).isSameInstanceAs(Stubs.deepStub(Callback.class));
+    assertThat(callback.next().next()).isSameInstanceAs(callback);
+    assertThat(stub.getString()).isNull();
+    assertThat(stub.getInt(1, 2L)).isEqualTo(0);
+  }
+
+  public interface Base {
+    float getInherited();
+
+    int getInt(int i, long l);
+  }
+
+  public interface Service extends Base {
+    void doNothing(String s);
+
+    boolean getBoolean();
+
+    char getChar();
+
+    @Override
+    int getInt(int i, long l);
+
+    long getLong();
+
+    double getDouble();
+
+    String getString();
+
+    Callback getCallback();
+  }
+
+  public interface Callback {
+    Callback next();
+  }
+}
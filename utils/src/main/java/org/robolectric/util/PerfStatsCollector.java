@@ -39,6 +39,11 @@ public class PerfStatsCollector {
     this.enabled = isEnabled;
   }
 
+  /** Returns false if perf stats aren't being retained, so costly measurements can be skipped. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
   public Event startEvent(String eventName) {
     return new Event(eventName);
   }
@@ -5,9 +5,10 @@ import static org.robolectric.util.Scheduler.IdleState.PAUSED;
 import static org.robolectric.util.Scheduler.IdleState.UNPAUSED;
 
 import java.time.Duration;
-import java.util.Iterator;
-import java.util.PriorityQueue;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class that manages a queue of Runnables that are scheduled to run now (or at some time in the
@@ -49,14 +50,20 @@ public class Scheduler {
   private static final long START_TIME = 100;
   private volatile long currentTime = START_TIME;
   /**
-   * PriorityQueue doesn't maintain ordering based on insertion; track that ourselves to preserve
-   * FIFO order for posted runnables with the same scheduled time.
+   * The heap doesn't maintain ordering based on insertion; track that ourselves to preserve FIFO
+   * order for posted runnables with the same scheduled time.
    */
-  private long nextTimeDisambiguator = 0;
+  private final AtomicLong nextTimeDisambiguator = new AtomicLong();
 
   private boolean isExecutingRunnable = false;
   private final Thread associatedThread = Thread.currentThread();
-  private final PriorityQueue<ScheduledRunnable> runnables = new PriorityQueue<>();
+  private final RunnableHeap runnables = new RunnableHeap();
+  /**
+   * Runnables posted from threads other than the associated one. These are added without taking
+   * the scheduler's lock, and moved into {@link #runnables} the next time it is accessed.
+   */
+  private final ConcurrentLinkedQueue<ScheduledRunnable> pendingRunnables =
+      new ConcurrentLinkedQueue<>();
   private volatile IdleState idleState = UNPAUSED;
 
   /**
@@ -136,7 +143,7 @@ public class Scheduler {
    *
    * @param runnable Runnable to add.
    */
-  public synchronized void post(Runnable runnable) {
+  public void post(Runnable runnable) {
     postDelayed(runnable, 0, TimeUnit.MILLISECONDS);
   }
 
@@ -146,18 +153,28 @@ public class Scheduler {
    * @param runnable Runnable to add.
    * @param delayMillis Delay in millis.
    */
-  public synchronized void postDelayed(Runnable runnable, long delayMillis) {
+  public void postDelayed(Runnable runnable, long delayMillis) {
     postDelayed(runnable, delayMillis, TimeUnit.MILLISECONDS);
   }
 
   /** Add a runnable to the queue to be run after a delay. */
-  public synchronized void postDelayed(Runnable runnable, long delay, TimeUnit unit) {
+  public void postDelayed(Runnable runnable, long delay, TimeUnit unit) {
     long delayMillis = unit.toMillis(delay);
-    if ((idleState != CONSTANT_IDLE && (isPaused() || delayMillis > 0))
-        || Thread.currentThread() != associatedThread) {
-      runnables.add(new ScheduledRunnable(runnable, currentTime + delayMillis));
-    } else {
-      runOrQueueRunnable(runnable, currentTime + delayMillis);
+    if (Thread.currentThread() != associatedThread) {
+      // Runnables posted from other threads are never run inline, so there's no need to wait for
+      // the lock, which the associated thread may be holding while it runs tasks.
+      pendingRunnables.add(
+          new ScheduledRunnable(
+              runnable, currentTime + delayMillis, nextTimeDisambiguator.getAndIncrement()));
+      return;
+    }
+    synchronized (this) {
+      if (idleState != CONSTANT_IDLE && (isPaused() || delayMillis > 0)) {
+        runnables.add(
+            currentTime + delayMillis, nextTimeDisambiguator.getAndIncrement(), runnable);
+      } else {
+        runOrQueueRunnable(runnable, currentTime + delayMillis);
+      }
     }
   }
 
@@ -168,13 +185,14 @@ public class Scheduler {
    */
   public synchronized void postAtFrontOfQueue(Runnable runnable) {
     if (isPaused() || Thread.currentThread() != associatedThread) {
+      drainPendingRunnables();
       final long timeDisambiguator;
       if (runnables.isEmpty()) {
-        timeDisambiguator = nextTimeDisambiguator++;
+        timeDisambiguator = nextTimeDisambiguator.getAndIncrement();
       } else {
-        timeDisambiguator = runnables.peek().timeDisambiguator - 1;
+        timeDisambiguator = runnables.peekTimeDisambiguator() - 1;
       }
-      runnables.add(new ScheduledRunnable(runnable, 0, timeDisambiguator));
+      runnables.add(0, timeDisambiguator, runnable);
     } else {
       runOrQueueRunnable(runnable, currentTime);
     }
@@ -186,12 +204,8 @@ public class Scheduler {
    * @param runnable Runnable to remove.
    */
   public synchronized void remove(Runnable runnable) {
-    Iterator<ScheduledRunnable> iterator = runnables.iterator();
-    while (iterator.hasNext()) {
-      if (iterator.next().runnable == runnable) {
-        iterator.remove();
-      }
-    }
+    drainPendingRunnables();
+    runnables.removeAll(runnable);
   }
 
   /**
@@ -201,13 +215,8 @@ public class Scheduler {
    * @return True if a runnable was executed.
    */
   public synchronized boolean advanceToLastPostedRunnable() {
-    long currentMaxTime = currentTime;
-    for (ScheduledRunnable scheduled : runnables) {
-      if (currentMaxTime < scheduled.scheduledTime) {
-        currentMaxTime = scheduled.scheduledTime;
-      }
-    }
-    return advanceTo(currentMaxTime);
+    drainPendingRunnables();
+    return advanceTo(Math.max(currentTime, runnables.maxScheduledTime()));
   }
 
   /**
@@ -216,7 +225,8 @@ public class Scheduler {
    * @return True if a runnable was executed.
    */
   public synchronized boolean advanceToNextPostedRunnable() {
-    return !runnables.isEmpty() && advanceTo(runnables.peek().scheduledTime);
+    drainPendingRunnables();
+    return !runnables.isEmpty() && advanceTo(runnables.peekScheduledTime());
   }
 
   /**
@@ -248,6 +258,7 @@ public class Scheduler {
    * @return True if a runnable was executed.
    */
   public synchronized boolean advanceTo(long endTime) {
+    drainPendingRunnables();
     if (endTime < currentTime || runnables.isEmpty()) {
       currentTime = endTime;
       return false;
@@ -255,7 +266,7 @@ public class Scheduler {
 
     int runCount = 0;
     while (nextTaskIsScheduledBefore(endTime)) {
-      runOneTask();
+      runNextTask();
       ++runCount;
     }
     currentTime = endTime;
@@ -268,15 +279,12 @@ public class Scheduler {
    * @return True if a runnable was executed.
    */
   public synchronized boolean runOneTask() {
-    ScheduledRunnable postedRunnable = runnables.poll();
-    if (postedRunnable != null) {
-      if (postedRunnable.scheduledTime > currentTime) {
-        currentTime = postedRunnable.scheduledTime;
-      }
-      postedRunnable.run();
-      return true;
+    drainPendingRunnables();
+    if (runnables.isEmpty()) {
+      return false;
     }
-    return false;
+    runNextTask();
+    return true;
   }
 
   /**
@@ -290,6 +298,7 @@ public class Scheduler {
 
   /** Reset the internal state of the Scheduler. */
   public synchronized void reset() {
+    pendingRunnables.clear();
     runnables.clear();
     idleState = UNPAUSED;
     currentTime = START_TIME;
@@ -302,26 +311,23 @@ public class Scheduler {
    * @return Number of enqueues runnables.
    */
   public synchronized int size() {
+    drainPendingRunnables();
     return runnables.size();
   }
 
   @SuppressWarnings("AndroidJdkLibsChecker")
   public synchronized Duration getNextScheduledTaskTime() {
-    return runnables.isEmpty() ? Duration.ZERO : Duration.ofMillis(runnables.peek().scheduledTime);
+    drainPendingRunnables();
+    return runnables.isEmpty() ? Duration.ZERO : Duration.ofMillis(runnables.peekScheduledTime());
   }
 
   @SuppressWarnings("AndroidJdkLibsChecker")
   public synchronized Duration getLastScheduledTaskTime() {
+    drainPendingRunnables();
     if (runnables.isEmpty()) {
       return Duration.ZERO;
     }
-    long currentMaxTime = currentTime;
-    for (ScheduledRunnable scheduled : runnables) {
-      if (currentMaxTime < scheduled.scheduledTime) {
-        currentMaxTime = scheduled.scheduledTime;
-      }
-    }
-    return Duration.ofMillis(currentMaxTime);
+    return Duration.ofMillis(Math.max(currentTime, runnables.maxScheduledTime()));
   }
 
   /**
@@ -339,12 +345,36 @@ public class Scheduler {
   }
 
   private boolean nextTaskIsScheduledBefore(long endingTime) {
-    return !runnables.isEmpty() && runnables.peek().scheduledTime <= endingTime;
+    drainPendingRunnables();
+    return !runnables.isEmpty() && runnables.peekScheduledTime() <= endingTime;
+  }
+
+  /** Moves runnables posted from other threads into the heap. Must hold the lock. */
+  private void drainPendingRunnables() {
+    ScheduledRunnable pending;
+    while ((pending = pendingRunnables.poll()) != null) {
+      runnables.add(pending.scheduledTime, pending.timeDisambiguator, pending.runnable);
+    }
+  }
+
+  /** Runs the first runnable in the (non-empty) heap. Must hold the lock. */
+  private void runNextTask() {
+    long scheduledTime = runnables.peekScheduledTime();
+    Runnable runnable = runnables.poll();
+    if (scheduledTime > currentTime) {
+      currentTime = scheduledTime;
+    }
+    isExecutingRunnable = true;
+    try {
+      runnable.run();
+    } finally {
+      isExecutingRunnable = false;
+    }
   }
 
   private void runOrQueueRunnable(Runnable runnable, long scheduledTime) {
     if (isExecutingRunnable) {
-      runnables.add(new ScheduledRunnable(runnable, scheduledTime));
+      runnables.add(scheduledTime, nextTimeDisambiguator.getAndIncrement(), runnable);
       return;
     }
     isExecutingRunnable = true;
@@ -370,37 +400,153 @@ public class Scheduler {
     }
   }
 
-  private class ScheduledRunnable implements Comparable<ScheduledRunnable> {
+  /** A runnable posted from another thread, waiting to be added to the heap. */
+  private static class ScheduledRunnable {
     private final Runnable runnable;
     private final long scheduledTime;
     private final long timeDisambiguator;
 
-    private ScheduledRunnable(Runnable runnable, long scheduledTime) {
-      this(runnable, scheduledTime, nextTimeDisambiguator++);
-    }
-
     private ScheduledRunnable(Runnable runnable, long scheduledTime, long timeDisambiguator) {
       this.runnable = runnable;
       this.scheduledTime = scheduledTime;
       this.timeDisambiguator = timeDisambiguator;
     }
+  }
 
-    @Override
-    public int compareTo(ScheduledRunnable runnable) {
-      int timeCompare = Long.compare(scheduledTime, runnable.scheduledTime);
-      if (timeCompare == 0) {
-        return Long.compare(timeDisambiguator, runnable.timeDisambiguator);
+  /**
+   * A 4-ary min-heap of runnables ordered by scheduled time, then by time disambiguator. Keys are
+   * kept in primitive arrays so that ordering runnables doesn't allocate or dereference per-entry
+   * objects. Not thread safe.
+   */
+  private static final class RunnableHeap {
+    private static final int ARITY = 4;
+
+    private long[] scheduledTimes = new long[16];
+    private long[] timeDisambiguators = new long[16];
+    private Runnable[] runnables = new Runnable[16];
+    private int size;
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    int size() {
+      return size;
+    }
+
+    long peekScheduledTime() {
+      return scheduledTimes[0];
+    }
+
+    long peekTimeDisambiguator() {
+      return timeDisambiguators[0];
+    }
+
+    long maxScheduledTime() {
+      long max = Long.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        max = Math.max(max, scheduledTimes[i]);
+      }
+      return max;
+    }
+
+    void add(long scheduledTime, long timeDisambiguator, Runnable runnable) {
+      if (size == runnables.length) {
+        int capacity = size * 2;
+        scheduledTimes = Arrays.copyOf(scheduledTimes, capacity);
+        timeDisambiguators = Arrays.copyOf(timeDisambiguators, capacity);
+        runnables = Arrays.copyOf(runnables, capacity);
+      }
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) / ARITY;
+        if (!isBefore(scheduledTime, timeDisambiguator, parent)) {
+          break;
+        }
+        move(parent, i);
+        i = parent;
       }
-      return timeCompare;
+      set(i, scheduledTime, timeDisambiguator, runnable);
     }
 
-    public void run() {
-      isExecutingRunnable = true;
-      try {
-        runnable.run();
-      } finally {
-        isExecutingRunnable = false;
+    Runnable poll() {
+      Runnable first = runnables[0];
+      int last = --size;
+      long scheduledTime = scheduledTimes[last];
+      long timeDisambiguator = timeDisambiguators[last];
+      Runnable runnable = runnables[last];
+      runnables[last] = null;
+      if (last > 0) {
+        siftDown(0, scheduledTime, timeDisambiguator, runnable);
       }
+      return first;
+    }
+
+    /** Removes every occurrence of the given runnable. */
+    void removeAll(Runnable runnable) {
+      int kept = 0;
+      for (int i = 0; i < size; i++) {
+        if (runnables[i] != runnable) {
+          move(i, kept++);
+        }
+      }
+      Arrays.fill(runnables, kept, size, null);
+      if (kept == size) {
+        return;
+      }
+      size = kept;
+      for (int i = (size - 2) / ARITY; i >= 0 && size > 1; i--) {
+        siftDown(i, scheduledTimes[i], timeDisambiguators[i], runnables[i]);
+      }
+    }
+
+    void clear() {
+      Arrays.fill(runnables, 0, size, null);
+      size = 0;
+    }
+
+    private void siftDown(int i, long scheduledTime, long timeDisambiguator, Runnable runnable) {
+      while (true) {
+        int firstChild = i * ARITY + 1;
+        if (firstChild >= size) {
+          break;
+        }
+        int best = firstChild;
+        int end = Math.min(firstChild + ARITY, size);
+        for (int child = firstChild + 1; child < end; child++) {
+          if (isBefore(scheduledTimes[child], timeDisambiguators[child], best)) {
+            best = child;
+          }
+        }
+        if (!isBefore(
+            scheduledTimes[best], timeDisambiguators[best], scheduledTime, timeDisambiguator)) {
+          break;
+        }
+        move(best, i);
+        i = best;
+      }
+      set(i, scheduledTime, timeDisambiguator, runnable);
+    }
+
+    private boolean isBefore(long scheduledTime, long timeDisambiguator, int index) {
+      return isBefore(
+          scheduledTime, timeDisambiguator, scheduledTimes[index], timeDisambiguators[index]);
+    }
+
+    private static boolean isBefore(
+        long scheduledTime, long timeDisambiguator, long otherTime, long otherDisambiguator) {
+      return scheduledTime < otherTime
+          || (scheduledTime == otherTime && timeDisambiguator < otherDisambiguator);
+    }
+
+    private void move(int from, int to) {
+      set(to, scheduledTimes[from], timeDisambiguators[from], runnables[from]);
+    }
+
+    private void set(int i, long scheduledTime, long timeDisambiguator, Runnable runnable) {
+      scheduledTimes[i] = scheduledTime;
+      timeDisambiguators[i] = timeDisambiguator;
+      runnables[i] = runnable;
     }
   }
 }
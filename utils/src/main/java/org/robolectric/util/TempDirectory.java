@@ -1,40 +1,94 @@
 package org.robolectric.util;
 
+import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * A directory of temporary files, deleted when {@link #destroy()} is called or the JVM exits.
+ *
+ * <p>If the {@code robolectric.inMemoryTempDirectories} system property is true, temp directories
+ * are created on a memory-backed filesystem (such as {@code /dev/shm} on Linux) when one is
+ * available, so tests that write a lot of app data don't pay for disk I/O. They are still ordinary
+ * files, so {@link Path#toFile()} and the framework's {@link java.io.File}-based APIs work on them.
+ *
+ * <p>Directories that haven't been destroyed when the JVM exits are deleted by a single shutdown
+ * hook shared by all instances.
+ */
 @SuppressWarnings({"NewApi", "AndroidJdkLibsChecker"})
 public class TempDirectory {
+  private static final boolean IN_MEMORY_BY_DEFAULT =
+      Boolean.getBoolean("robolectric.inMemoryTempDirectories");
+
+  /** A writable directory on a memory-backed filesystem, or null if there isn't one. */
+  private static final Path IN_MEMORY_ROOT = findInMemoryRoot();
+
+  /**
+   * How many directories may wait for {@link #destroyInBackground()} to delete them; past that,
+   * callers delete their own, so a slow disk can't let undeleted directories pile up.
+   */
+  private static final int MAX_PENDING_DELETIONS = 16;
+
+  /** Directories that haven't been deleted yet, which the shutdown hook deletes. */
+  private static final Set<TempDirectory> undeleted = ConcurrentHashMap.newKeySet();
+
+  private static final ThreadPoolExecutor deleter = createDeleter();
+
+  static {
+    // File.deleteOnExit won't delete non empty directories, so clear them manually.
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(TempDirectory::destroyUndeleted, "TempDirectory cleanup"));
+  }
+
   private final Path basePath;
+  private final boolean inMemory;
 
   public TempDirectory() {
     this("test-dir");
   }
 
   public TempDirectory(String name) {
+    this(name, IN_MEMORY_BY_DEFAULT);
+  }
+
+  /**
+   * Creates a temp directory.
+   *
+   * @param inMemory whether to create it on a memory-backed filesystem; it's created on the
+   *     default one if there's none available
+   */
+  public TempDirectory(String name, boolean inMemory) {
+    this.inMemory = inMemory && IN_MEMORY_ROOT != null;
     try {
-      basePath = Files.createTempDirectory("robolectric-" + name);
+      String prefix = "robolectric-" + name;
+      basePath =
+          this.inMemory
+              ? Files.createTempDirectory(IN_MEMORY_ROOT, prefix)
+              : Files.createTempDirectory(prefix);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    undeleted.add(this);
+  }
 
-    // Use a manual hook that actually clears the directory
-    // This is necessary because File.deleteOnExit won't delete non empty directories
-    Runtime.getRuntime()
-        .addShutdownHook(
-            new Thread(
-                new Runnable() {
-                  @Override
-                  public void run() {
-                    destroy();
-                  }
-                }));
+  /** Returns true if this directory is on a memory-backed filesystem. */
+  public boolean isInMemory() {
+    return inMemory;
   }
 
   public Path createFile(String name, String contents) {
@@ -70,21 +124,108 @@ public class TempDirectory {
     return path;
   }
 
+  /**
+   * Deletes this directory and everything in it. Does nothing if it was already deleted. If it
+   * can't be deleted, the shutdown hook tries again.
+   */
   public void destroy() {
+    // Claim the directory, so that concurrent calls don't both delete it.
+    if (!undeleted.remove(this)) {
+      return;
+    }
+    long bytes;
     try {
-      clearDirectory(basePath);
+      bytes = clearDirectory(basePath);
       Files.delete(basePath);
-    } catch (IOException ignored) {
+    } catch (IOException e) {
+      undeleted.add(this);
+      Logger.debug("Failed to delete %s: %s", basePath, e);
+      return;
+    }
+    Logger.debug("Deleted %s (%d bytes of files)", basePath, bytes);
+  }
+
+  /**
+   * Deletes this directory on a background thread, or on the calling thread if too many deletions
+   * are already waiting.
+   */
+  public void destroyInBackground() {
+    destroyInBackground(deleter);
+  }
+
+  @VisibleForTesting
+  void destroyInBackground(Executor executor) {
+    if (undeleted.contains(this)) {
+      executor.execute(this::destroy);
+    }
+  }
+
+  /** Returns the total size of the files in this directory, or 0 if it was deleted. */
+  public long size() {
+    if (!Files.isDirectory(basePath)) {
+      return 0;
+    }
+    LongAdder bytes = new LongAdder();
+    try {
+      Files.walkFileTree(
+          basePath,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              bytes.add(attrs.size());
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
+    return bytes.sum();
+  }
+
+  private static ThreadPoolExecutor createDeleter() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            10,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_DELETIONS),
+            runnable -> {
+              Thread thread = new Thread(runnable, "TempDirectory deleter");
+              thread.setDaemon(true);
+              return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static void destroyUndeleted() {
+    deleter.shutdownNow();
+    try {
+      deleter.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ignored) {
+    }
+    for (TempDirectory tempDirectory : new ArrayList<>(undeleted)) {
+      tempDirectory.destroy();
+    }
+  }
+
+  private static Path findInMemoryRoot() {
+    Path shm = Paths.get("/dev/shm");
+    return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : null;
   }
 
-  private void clearDirectory(final Path directory) throws IOException {
+  /** Deletes everything in {@code directory}, returning the total size of the files deleted. */
+  private long clearDirectory(final Path directory) throws IOException {
+    LongAdder bytes = new LongAdder();
     Files.walkFileTree(
         directory,
         new SimpleFileVisitor<Path>() {
           @Override
           public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
               throws IOException {
+            bytes.add(attrs.size());
             Files.delete(file);
             return FileVisitResult.CONTINUE;
           }
@@ -97,5 +238,6 @@ public class TempDirectory {
             return FileVisitResult.CONTINUE;
           }
         });
+    return bytes.sum();
   }
 }
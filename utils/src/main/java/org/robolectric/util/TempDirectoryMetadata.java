@@ -0,0 +1,19 @@
+package org.robolectric.util;
+
+/**
+ * Data about the {@link TempDirectory} a test wrote its app data to, reported as perf stats
+ * metadata.
+ */
+public class TempDirectoryMetadata {
+
+  private final long bytesWritten;
+
+  public TempDirectoryMetadata(long bytesWritten) {
+    this.bytesWritten = bytesWritten;
+  }
+
+  /** Returns the total size of the files left in the directory when the test finished. */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+}
@@ -0,0 +1,289 @@
+package org.robolectric.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Records, for each test, which classes were loaded into the sandbox and how long each took, which
+ * shadow {@code @Implementation} methods were called and which resources were resolved.
+ *
+ * <p>Profiling is enabled by setting the {@code robolectric.profileDir} system property to a
+ * directory. A JSON trace named after each test class is written there once all of its tests have
+ * run. Because sandboxes are reused, the first test run in each sandbox usually accounts for most
+ * class loading; the trace shows which of its classes were the most expensive.
+ *
+ * @since 4.5
+ */
+public class TestProfiler {
+
+  public static final String PROFILE_DIR_PROPERTY = "robolectric.profileDir";
+
+  private static final TestProfiler INSTANCE = new TestProfiler(profileDir(), System::nanoTime);
+
+  private final File profileDir;
+  private final Clock clock;
+
+  private final List<ClassLoad> classLoads = new ArrayList<>();
+  private final Map<String, LongAdder> implementationCalls = new ConcurrentHashMap<>();
+  private final Map<Integer, ResourceLookups> resourceLookups = new ConcurrentHashMap<>();
+  private final List<TestTrace> finishedTests = new ArrayList<>();
+  private final ThreadLocal<Deque<ClassLoadFrame>> classLoadFrames =
+      ThreadLocal.withInitial(ArrayDeque::new);
+
+  TestProfiler(File profileDir, Clock clock) {
+    this.profileDir = profileDir;
+    this.clock = clock;
+  }
+
+  public static TestProfiler getInstance() {
+    return INSTANCE;
+  }
+
+  private static File profileDir() {
+    String dir = System.getProperty(PROFILE_DIR_PROPERTY);
+    return dir == null || dir.isEmpty() ? null : new File(dir);
+  }
+
+  /** Returns true if profiling was requested; if not, all other methods do nothing. */
+  public boolean isEnabled() {
+    return profileDir != null;
+  }
+
+  /**
+   * Marks the start of loading a class; must be followed by {@link #classLoadFinished(String)} on
+   * the same thread. Loads may nest, in which case the outer class isn't charged for the inner one.
+   */
+  public void classLoadStarted() {
+    if (!isEnabled()) {
+      return;
+    }
+    classLoadFrames.get().push(new ClassLoadFrame(clock.nanoTime()));
+  }
+
+  /** Marks the class currently being loaded on this thread as instrumented. */
+  public void classInstrumented() {
+    if (!isEnabled()) {
+      return;
+    }
+    ClassLoadFrame frame = classLoadFrames.get().peek();
+    if (frame != null) {
+      frame.instrumented = true;
+    }
+  }
+
+  /** Marks the end of loading a class, whether or not it succeeded. */
+  public void classLoadFinished(String className) {
+    if (!isEnabled()) {
+      return;
+    }
+    Deque<ClassLoadFrame> frames = classLoadFrames.get();
+    ClassLoadFrame frame = frames.pop();
+    long elapsedNs = clock.nanoTime() - frame.startTimeNs;
+    ClassLoadFrame outer = frames.peek();
+    if (outer != null) {
+      outer.nestedTimeNs += elapsedNs;
+    }
+    synchronized (classLoads) {
+      classLoads.add(
+          new ClassLoad(className, frame.instrumented, elapsedNs - frame.nestedTimeNs));
+    }
+  }
+
+  /** Records a call to a shadow method, e.g. {@code org.robolectric.shadows.ShadowFoo#bar}. */
+  public void implementationCalled(String shadowMethod) {
+    if (!isEnabled()) {
+      return;
+    }
+    implementationCalls.computeIfAbsent(shadowMethod, k -> new LongAdder()).increment();
+  }
+
+  /**
+   * Records a lookup of the given resource. The resource's name is only computed, using {@code
+   * resourceNamer}, the first time it's seen in a test.
+   */
+  public void resourceResolved(int resId, IntFunction<String> resourceNamer) {
+    if (!isEnabled()) {
+      return;
+    }
+    resourceLookups
+        .computeIfAbsent(resId, id -> new ResourceLookups(id, resourceNamer.apply(id)))
+        .count
+        .increment();
+  }
+
+  /** Ends the current test, attributing everything recorded since the last test to it. */
+  public void finishTest(String testName) {
+    if (!isEnabled()) {
+      return;
+    }
+    TestTrace trace = new TestTrace(testName);
+    synchronized (classLoads) {
+      trace.classLoads.addAll(classLoads);
+      classLoads.clear();
+    }
+    implementationCalls.forEach(
+        (name, count) -> trace.implementationCalls.add(new Count(name, count.sum())));
+    implementationCalls.clear();
+    for (ResourceLookups lookups : resourceLookups.values()) {
+      trace.resourceLookups.add(new Count(lookups.describe(), lookups.count.sum()));
+    }
+    resourceLookups.clear();
+    trace.implementationCalls.sort(Count.MOST_FIRST);
+    trace.resourceLookups.sort(Count.MOST_FIRST);
+    synchronized (finishedTests) {
+      finishedTests.add(trace);
+    }
+  }
+
+  /** Writes the traces of all tests finished since the last call to a file named for the class. */
+  public void finishTestClass(String testClassName) {
+    if (!isEnabled()) {
+      return;
+    }
+    List<TestTrace> traces;
+    synchronized (finishedTests) {
+      traces = new ArrayList<>(finishedTests);
+      finishedTests.clear();
+    }
+    profileDir.mkdirs();
+    File file = new File(profileDir, testClassName + ".json");
+    try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      writeTrace(out, testClassName, traces);
+    } catch (IOException e) {
+      Logger.error("couldn't write profile to " + file, e);
+    }
+  }
+
+  private static void writeTrace(Appendable out, String testClassName, List<TestTrace> traces)
+      throws IOException {
+    out.append("{\"testClass\":");
+    appendString(out, testClassName);
+    out.append(",\"tests\":[");
+    for (int i = 0; i < traces.size(); i++) {
+      TestTrace trace = traces.get(i);
+      if (i > 0) {
+        out.append(',');
+      }
+      out.append("\n{\"name\":");
+      appendString(out, trace.name);
+
+      out.append(",\"classes\":[");
+      for (int j = 0; j < trace.classLoads.size(); j++) {
+        ClassLoad classLoad = trace.classLoads.get(j);
+        out.append(j > 0 ? ",\n" : "\n").append("{\"name\":");
+        appendString(out, classLoad.className);
+        out.append(",\"instrumented\":").append(String.valueOf(classLoad.instrumented));
+        out.append(",\"micros\":").append(String.valueOf(classLoad.selfTimeNs / 1000));
+        out.append('}');
+      }
+
+      out.append("],\"implementations\":");
+      appendCounts(out, "method", trace.implementationCalls);
+      out.append(",\"resources\":");
+      appendCounts(out, "resource", trace.resourceLookups);
+      out.append('}');
+    }
+    out.append("]}\n");
+  }
+
+  private static void appendCounts(Appendable out, String key, List<Count> counts)
+      throws IOException {
+    out.append('[');
+    for (int i = 0; i < counts.size(); i++) {
+      Count count = counts.get(i);
+      out.append(i > 0 ? ",\n" : "\n").append("{\"").append(key).append("\":");
+      appendString(out, count.name);
+      out.append(",\"count\":").append(String.valueOf(count.count)).append('}');
+    }
+    out.append(']');
+  }
+
+  private static void appendString(Appendable out, String s) throws IOException {
+    out.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.append('\\').append(c);
+      } else if (c < 0x20) {
+        out.append(String.format("\\u%04x", (int) c));
+      } else {
+        out.append(c);
+      }
+    }
+    out.append('"');
+  }
+
+  private static class ClassLoadFrame {
+    final long startTimeNs;
+    long nestedTimeNs;
+    boolean instrumented;
+
+    ClassLoadFrame(long startTimeNs) {
+      this.startTimeNs = startTimeNs;
+    }
+  }
+
+  private static class ClassLoad {
+    final String className;
+    final boolean instrumented;
+    final long selfTimeNs;
+
+    ClassLoad(String className, boolean instrumented, long selfTimeNs) {
+      this.className = className;
+      this.instrumented = instrumented;
+      this.selfTimeNs = selfTimeNs;
+    }
+  }
+
+  private static class ResourceLookups {
+    final int resId;
+    final String name;
+    final LongAdder count = new LongAdder();
+
+    ResourceLookups(int resId, String name) {
+      this.resId = resId;
+      this.name = name;
+    }
+
+    String describe() {
+      String id = String.format("0x%08x", resId);
+      return name == null ? id : id + " " + name;
+    }
+  }
+
+  private static class Count {
+    static final Comparator<Count> MOST_FIRST =
+        (a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.name.compareTo(b.name);
+
+    final String name;
+    final long count;
+
+    Count(String name, long count) {
+      this.name = name;
+      this.count = count;
+    }
+  }
+
+  private static class TestTrace {
+    final String name;
+    final List<ClassLoad> classLoads = new ArrayList<>();
+    final List<Count> implementationCalls = new ArrayList<>();
+    final List<Count> resourceLookups = new ArrayList<>();
+
+    TestTrace(String name) {
+      this.name = name;
+    }
+  }
+}
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Before;
 import org.junit.Test;
@@ -591,6 +592,51 @@ public class SchedulerTest {
     }
   }
 
+  @Test(timeout = 1000)
+  public void schedulerAllowsConcurrentPost_whileLockIsHeld() throws InterruptedException {
+    Thread t =
+        new Thread("schedulerAllowsConcurrentPost") {
+          @Override
+          public void run() {
+            scheduler.postDelayed(new AddToTranscript("background"), 10);
+          }
+        };
+    // Grab the lock and then start a thread that tries to post. The other thread should not
+    // deadlock.
+    synchronized (scheduler) {
+      t.start();
+      t.join();
+    }
+
+    assertThat(scheduler.size()).isEqualTo(1);
+    scheduler.advanceBy(10, TimeUnit.MILLISECONDS);
+    assertThat(transcript).containsExactly("background");
+  }
+
+  @Test
+  public void manyRunnables_runInTimeThenPostingOrder() {
+    Random random = new Random(0);
+    List<List<String>> byTime = new ArrayList<>();
+    for (int time = 0; time < 100; time++) {
+      byTime.add(new ArrayList<>());
+    }
+    for (int i = 0; i < 10_000; i++) {
+      int delay = random.nextInt(100);
+      String event = "task" + i;
+      byTime.get(delay).add(event);
+      scheduler.postDelayed(new AddToTranscript(event), delay);
+    }
+    List<String> expected = new ArrayList<>();
+    for (List<String> events : byTime) {
+      expected.addAll(events);
+    }
+
+    scheduler.advanceToLastPostedRunnable();
+
+    assertThat(transcript).containsExactlyElementsIn(expected).inOrder();
+    assertThat(scheduler.size()).isEqualTo(0);
+  }
+
   private class AddToTranscript implements Runnable {
     private String event;
 
@@ -1,9 +1,14 @@
 package org.robolectric.util;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -18,4 +23,58 @@ public class TempDirectoryTest {
     Path path2 = tempDir.create("dir2");
     assertThat(path.getParent().toString()).isEqualTo(path2.getParent().toString());
   }
+
+  @Test
+  public void inMemoryDirs_supportFiles() throws IOException {
+    TempDirectory tempDir = new TempDirectory("temp_dir", true);
+    Path path = tempDir.createFile("file", "contents");
+    File file = path.toFile();
+
+    assertThat(file.exists()).isTrue();
+    assertThat(new String(Files.readAllBytes(file.toPath()), UTF_8)).isEqualTo("contents");
+    if (tempDir.isInMemory()) {
+      assertThat(path.startsWith("/dev/shm")).isTrue();
+    }
+
+    tempDir.destroy();
+    assertThat(file.getParentFile().exists()).isFalse();
+  }
+
+  @Test
+  public void defaultDirs_areNotInMemory() {
+    TempDirectory tempDir = new TempDirectory("temp_dir", false);
+    assertThat(tempDir.isInMemory()).isFalse();
+    tempDir.destroy();
+  }
+
+  @Test
+  public void size_countsFiles() {
+    TempDirectory tempDir = new TempDirectory("temp_dir");
+    tempDir.createFile("file1", "1234");
+    tempDir.create("dir");
+    tempDir.createFile("dir/file2", "56");
+
+    assertThat(tempDir.size()).isEqualTo(6L);
+    tempDir.destroy();
+    tempDir.destroy();
+    assertThat(tempDir.size()).isEqualTo(0L);
+  }
+
+  @Test
+  public void destroyInBackground_deletesDirectoryOnExecutor() {
+    TempDirectory tempDir = new TempDirectory("temp_dir");
+    File file = tempDir.createFile("file", "contents").toFile();
+    List<Runnable> tasks = new ArrayList<>();
+
+    tempDir.destroyInBackground(tasks::add);
+    assertThat(file.getParentFile().exists()).isTrue();
+    assertThat(tasks).hasSize(1);
+
+    tasks.get(0).run();
+    assertThat(file.getParentFile().exists()).isFalse();
+
+    // Once it's deleted, there's nothing left to do.
+    tempDir.destroyInBackground(tasks::add);
+    assertThat(tasks).hasSize(1);
+  }
 }
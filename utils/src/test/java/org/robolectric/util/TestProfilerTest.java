@@ -0,0 +1,103 @@
+package org.robolectric.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestProfilerTest {
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File profileDir;
+  private long nowNs;
+  private TestProfiler profiler;
+
+  @Before
+  public void setUp() throws Exception {
+    profileDir = new File(tempFolder.getRoot(), "profiles");
+    profiler = new TestProfiler(profileDir, () -> nowNs);
+  }
+
+  @Test
+  public void nestedClassLoadsAreNotChargedToTheOuterClass() throws Exception {
+    profiler.classLoadStarted();
+    nowNs += 3_000;
+    profiler.classLoadStarted();
+    profiler.classInstrumented();
+    nowNs += 5_000;
+    profiler.classLoadFinished("com.example.Super");
+    nowNs += 2_000;
+    profiler.classLoadFinished("com.example.Sub");
+    profiler.finishTest("test");
+    profiler.finishTestClass("com.example.SubTest");
+
+    assertThat(readProfile("com.example.SubTest"))
+        .isEqualTo(
+            "{\"testClass\":\"com.example.SubTest\",\"tests\":[\n"
+                + "{\"name\":\"test\",\"classes\":[\n"
+                + "{\"name\":\"com.example.Super\",\"instrumented\":true,\"micros\":5},\n"
+                + "{\"name\":\"com.example.Sub\",\"instrumented\":false,\"micros\":5}],"
+                + "\"implementations\":[],\"resources\":[]}]}\n");
+  }
+
+  @Test
+  public void countsAreAttributedToEachTest() throws Exception {
+    List<Integer> namedResources = new ArrayList<>();
+    profiler.implementationCalled("ShadowFoo#bar");
+    profiler.implementationCalled("ShadowFoo#baz");
+    profiler.implementationCalled("ShadowFoo#baz");
+    for (int i = 0; i < 3; i++) {
+      profiler.resourceResolved(
+          0x7f010001,
+          id -> {
+            namedResources.add(id);
+            return "app:string/name";
+          });
+    }
+    profiler.finishTest("first");
+    profiler.implementationCalled("ShadowFoo#bar");
+    profiler.finishTest("second");
+    profiler.finishTestClass("FooTest");
+
+    assertThat(namedResources).containsExactly(0x7f010001);
+    assertThat(readProfile("FooTest"))
+        .isEqualTo(
+            "{\"testClass\":\"FooTest\",\"tests\":[\n"
+                + "{\"name\":\"first\",\"classes\":[],\"implementations\":[\n"
+                + "{\"method\":\"ShadowFoo#baz\",\"count\":2},\n"
+                + "{\"method\":\"ShadowFoo#bar\",\"count\":1}],\"resources\":[\n"
+                + "{\"resource\":\"0x7f010001 app:string/name\",\"count\":3}]},\n"
+                + "{\"name\":\"second\",\"classes\":[],\"implementations\":[\n"
+                + "{\"method\":\"ShadowFoo#bar\",\"count\":1}],\"resources\":[]}]}\n");
+  }
+
+  @Test
+  public void disabledProfilerRecordsNothing() throws Exception {
+    TestProfiler disabled = new TestProfiler(null, () -> nowNs);
+
+    disabled.classLoadStarted();
+    disabled.classLoadFinished("com.example.Foo");
+    disabled.implementationCalled("ShadowFoo#bar");
+    disabled.finishTest("test");
+    disabled.finishTestClass("FooTest");
+
+    assertThat(disabled.isEnabled()).isFalse();
+    assertThat(tempFolder.getRoot().list()).isEmpty();
+  }
+
+  private String readProfile(String testClassName) throws Exception {
+    return new String(
+        Files.readAllBytes(new File(profileDir, testClassName + ".json").toPath()),
+        StandardCharsets.UTF_8);
+  }
+}